@@ -92,4 +92,18 @@ public interface ByteBufAllocatorBuilder {
      * <p>Default is {@link LeakDetectionPolicy#Disabled}
      */
     ByteBufAllocatorBuilder leakDetectionPolicy(LeakDetectionPolicy leakDetectionPolicy);
+
+    /**
+     * Place the memory of the direct buffers on a NUMA node.
+     *
+     * <p>The direct buffers are allocated from the unpooled allocator, and zeroed, by a thread bound to a CPU of the
+     * node, so that Linux places their pages on that node. This is meant for big and long-lived buffers, like the
+     * caches of the ledger storage, allocated with {@link PoolingPolicy#PooledDirect}.
+     *
+     * <p>If the NUMA topology of the host is not known, the direct buffers are allocated without controlling their
+     * placement.
+     *
+     * <p>Default is -1, to not control the placement of the direct buffers.
+     */
+    ByteBufAllocatorBuilder numaNode(int numaNode);
 }
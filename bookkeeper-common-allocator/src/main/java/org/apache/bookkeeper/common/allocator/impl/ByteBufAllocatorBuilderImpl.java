@@ -37,11 +37,12 @@ public class ByteBufAllocatorBuilderImpl implements ByteBufAllocatorBuilder {
     OutOfMemoryPolicy outOfMemoryPolicy = OutOfMemoryPolicy.FallbackToHeap;
     Consumer<OutOfMemoryError> outOfMemoryListener = null;
     LeakDetectionPolicy leakDetectionPolicy = LeakDetectionPolicy.Disabled;
+    int numaNode = -1;
 
     @Override
     public ByteBufAllocatorWithOomHandler build() {
         return new ByteBufAllocatorImpl(pooledAllocator, unpooledAllocator, poolingPolicy, poolingConcurrency,
-                outOfMemoryPolicy, outOfMemoryListener, leakDetectionPolicy);
+                outOfMemoryPolicy, outOfMemoryListener, leakDetectionPolicy, numaNode);
     }
 
     @Override
@@ -86,4 +87,10 @@ public class ByteBufAllocatorBuilderImpl implements ByteBufAllocatorBuilder {
         return this;
     }
 
+    @Override
+    public ByteBufAllocatorBuilder numaNode(int numaNode) {
+        this.numaNode = numaNode;
+        return this;
+    }
+
 }
@@ -29,6 +29,7 @@ import org.apache.bookkeeper.common.allocator.ByteBufAllocatorWithOomHandler;
 import org.apache.bookkeeper.common.allocator.LeakDetectionPolicy;
 import org.apache.bookkeeper.common.allocator.OutOfMemoryPolicy;
 import org.apache.bookkeeper.common.allocator.PoolingPolicy;
+import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,12 +48,13 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
     private final ByteBufAllocator unpooledAllocator;
     private final PoolingPolicy poolingPolicy;
     private final OutOfMemoryPolicy outOfMemoryPolicy;
+    private final int numaNode;
     private Consumer<OutOfMemoryError> outOfMemoryListener;
 
     ByteBufAllocatorImpl(ByteBufAllocator pooledAllocator, ByteBufAllocator unpooledAllocator,
             PoolingPolicy poolingPolicy, int poolingConcurrency, OutOfMemoryPolicy outOfMemoryPolicy,
             Consumer<OutOfMemoryError> outOfMemoryListener,
-            LeakDetectionPolicy leakDetectionPolicy) {
+            LeakDetectionPolicy leakDetectionPolicy, int numaNode) {
         super(poolingPolicy == PoolingPolicy.PooledDirect /* preferDirect */);
 
         this.poolingPolicy = poolingPolicy;
@@ -91,6 +93,14 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
 
         this.unpooledAllocator = (unpooledAllocator != null) ? unpooledAllocator : UnpooledByteBufAllocator.DEFAULT;
 
+        if (numaNode >= 0 && !CpuAffinity.getNumaNodes().contains(numaNode)) {
+            log.warn("NUMA node {} not found, direct buffers will be allocated without controlling their placement",
+                    numaNode);
+            this.numaNode = -1;
+        } else {
+            this.numaNode = numaNode;
+        }
+
         // The setting is static in Netty, so it will actually affect all
         // allocators
         switch (leakDetectionPolicy) {
@@ -158,7 +168,9 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
     }
 
     private ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity, boolean canFallbackToHeap) {
-        if (poolingPolicy == PoolingPolicy.PooledDirect) {
+        if (numaNode >= 0) {
+            return newNumaDirectBuffer(initialCapacity, maxCapacity);
+        } else if (poolingPolicy == PoolingPolicy.PooledDirect) {
             try {
                 return pooledAllocator.directBuffer(initialCapacity, maxCapacity);
             } catch (OutOfMemoryError e) {
@@ -187,9 +199,31 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
         }
     }
 
+    private ByteBuf newNumaDirectBuffer(int initialCapacity, int maxCapacity) {
+        // The pages of the buffer are placed on the NUMA node of the thread writing them first, so the buffer is
+        // both allocated and zeroed by a thread of the node
+        ByteBuf[] buffer = new ByteBuf[1];
+        try {
+            CpuAffinity.runOnNumaNode(numaNode, () -> {
+                ByteBuf newBuffer = unpooledAllocator.directBuffer(initialCapacity, maxCapacity);
+                try {
+                    newBuffer.setZero(0, newBuffer.capacity());
+                } catch (Throwable t) {
+                    newBuffer.release();
+                    throw t;
+                }
+                buffer[0] = newBuffer;
+            });
+        } catch (OutOfMemoryError e) {
+            outOfMemoryListener.accept(e);
+            throw e;
+        }
+        return buffer[0];
+    }
+
     @Override
     public boolean isDirectBufferPooled() {
-        return pooledAllocator != null && pooledAllocator.isDirectBufferPooled();
+        return numaNode < 0 && pooledAllocator != null && pooledAllocator.isDirectBufferPooled();
     }
 
     @Override
@@ -0,0 +1,100 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.common.allocator.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.common.allocator.ByteBufAllocatorBuilder;
+import org.apache.bookkeeper.common.allocator.OutOfMemoryPolicy;
+import org.apache.bookkeeper.common.allocator.PoolingPolicy;
+import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the NUMA placement of the direct buffers of {@link ByteBufAllocatorImpl}.
+ */
+public class ByteBufAllocatorImplTest {
+
+    private static int numaNode() {
+        // Any node: when the topology is not known, the buffers are allocated on the calling thread
+        return CpuAffinity.getNumaNodes().isEmpty() ? 0 : CpuAffinity.getNumaNodes().first();
+    }
+
+    @Test
+    public void numaDirectBuffers() {
+        ByteBufAllocator allocator = ByteBufAllocatorBuilder.create()
+                .poolingPolicy(PoolingPolicy.PooledDirect)
+                .pooledAllocator(PooledByteBufAllocator.DEFAULT)
+                .numaNode(numaNode())
+                .build();
+
+        ByteBuf buffer = allocator.directBuffer(64 * 1024, 64 * 1024);
+        try {
+            assertTrue(buffer.isDirect());
+            assertEquals(64 * 1024, buffer.capacity());
+            for (int i = 0; i < buffer.capacity(); i++) {
+                assertEquals(0, buffer.getByte(i));
+            }
+        } finally {
+            buffer.release();
+        }
+
+        // The default buffers are direct too
+        buffer = allocator.buffer(1024);
+        try {
+            assertTrue(buffer.isDirect());
+        } finally {
+            buffer.release();
+        }
+        assertFalse(((ByteBufAllocatorImpl) allocator).isDirectBufferPooled());
+    }
+
+    @Test
+    public void numaDirectBufferOutOfMemory() {
+        OutOfMemoryError oom = new OutOfMemoryError("test");
+        AtomicReference<OutOfMemoryError> notified = new AtomicReference<>();
+        ByteBufAllocator failingAllocator = mock(ByteBufAllocator.class);
+        when(failingAllocator.directBuffer(anyInt(), anyInt())).thenThrow(oom);
+
+        ByteBufAllocator allocator = ByteBufAllocatorBuilder.create()
+                .poolingPolicy(PoolingPolicy.PooledDirect)
+                .pooledAllocator(PooledByteBufAllocator.DEFAULT)
+                .unpooledAllocator(failingAllocator)
+                .outOfMemoryPolicy(OutOfMemoryPolicy.ThrowException)
+                .outOfMemoryListener(notified::set)
+                .numaNode(numaNode())
+                .build();
+
+        assertSame(oom, assertThrows(OutOfMemoryError.class, () -> allocator.directBuffer(1024)));
+        assertSame(oom, notified.get());
+    }
+}
@@ -18,25 +18,53 @@
  */
 package org.apache.bookkeeper.common.util;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Controller for tracking the amount of memory used for some task.
+ *
+ * <p>Memory can be reserved in a blocking way, with {@link #reserveMemory(long)}, or without blocking the
+ * caller, with {@link #reserveMemoryAsync(long)}. The asynchronous reservations waiting for memory are
+ * served in order, as the memory is released.
  */
 public class MemoryLimitController {
 
+    private static final CompletableFuture<Void> RESERVED = CompletableFuture.completedFuture(null);
+
+    private static final class PendingReservation {
+        final long size;
+        final CompletableFuture<Void> future;
+
+        PendingReservation(long size, CompletableFuture<Void> future) {
+            this.size = size;
+            this.future = future;
+        }
+    }
+
     private final long memoryLimit;
     private final AtomicLong currentUsage = new AtomicLong();
     private final ReentrantLock mutex = new ReentrantLock(false);
     private final Condition condition = mutex.newCondition();
+    private final Queue<PendingReservation> pendingReservations = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger numPendingReservations = new AtomicInteger();
 
     public MemoryLimitController(long memoryLimitBytes) {
         this.memoryLimit = memoryLimitBytes;
     }
 
     public boolean tryReserveMemory(long size) {
+        return doTryReserveMemory(size);
+    }
+
+    private boolean doTryReserveMemory(long size) {
         while (true) {
             long current = currentUsage.get();
             long newUsage = current + size;
@@ -58,7 +86,7 @@ public class MemoryLimitController {
             mutex.lock();
 
             try {
-                while (!tryReserveMemory(size)) {
+                while (!doTryReserveMemory(size)) {
                     condition.await();
                 }
             } finally {
@@ -67,6 +95,58 @@ public class MemoryLimitController {
         }
     }
 
+    /**
+     * Reserve memory without blocking.
+     *
+     * <p>If the memory cannot be reserved right away, or if other reservations are already waiting, the
+     * reservation is queued and the future is completed once the memory has been reserved. The future may be
+     * completed by any thread releasing memory, so its callbacks should be short. A future already completed
+     * may be shared by several reservations.
+     *
+     * @param size the amount of memory to reserve
+     * @return a future completed when the memory has been reserved
+     */
+    public CompletableFuture<Void> reserveMemoryAsync(long size) {
+        if (pendingReservations.isEmpty() && doTryReserveMemory(size)) {
+            return RESERVED;
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        numPendingReservations.incrementAndGet();
+        pendingReservations.add(new PendingReservation(size, future));
+        // The memory may have been released before the reservation was queued
+        processPendingReservations();
+        return future;
+    }
+
+    /**
+     * Serve the queued reservations, in order, as long as there is enough memory.
+     */
+    protected void processPendingReservations() {
+        List<CompletableFuture<Void>> reserved = null;
+        mutex.lock();
+        try {
+            PendingReservation reservation;
+            while ((reservation = pendingReservations.peek()) != null && doTryReserveMemory(reservation.size)) {
+                pendingReservations.poll();
+                numPendingReservations.decrementAndGet();
+                if (reserved == null) {
+                    reserved = new ArrayList<>();
+                }
+                reserved.add(reservation.future);
+            }
+        } finally {
+            mutex.unlock();
+        }
+
+        // Complete the futures outside of the lock, their callbacks may reserve memory again
+        if (reserved != null) {
+            for (CompletableFuture<Void> future : reserved) {
+                future.complete(null);
+            }
+        }
+    }
+
     public void releaseMemory(long size) {
         long newUsage = currentUsage.addAndGet(-size);
         if (newUsage + size > memoryLimit && newUsage <= memoryLimit) {
@@ -78,9 +158,20 @@ public class MemoryLimitController {
                 mutex.unlock();
             }
         }
+
+        if (!pendingReservations.isEmpty()) {
+            processPendingReservations();
+        }
     }
 
     public long currentUsage() {
         return currentUsage.get();
     }
+
+    /**
+     * Get the number of asynchronous reservations waiting for memory.
+     */
+    public int pendingReservations() {
+        return numPendingReservations.get();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.common.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket built on a {@link MemoryLimitController}.
+ *
+ * <p>The reserved memory is the amount of tokens taken from the bucket and the memory limit is the capacity
+ * of the bucket. Instead of being released by the callers, the tokens are given back to the bucket over time,
+ * at a fixed rate. The bucket is refilled lazily, when tokens are reserved, and while reservations are
+ * waiting for tokens a task is scheduled to refill it when the first of them can be served.
+ */
+public class TokenBucketController extends MemoryLimitController {
+
+    private static final long MIN_REFILL_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long capacity;
+    private final double tokensPerNano;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong lastRefillNanos;
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private final AtomicBoolean refillScheduled = new AtomicBoolean();
+
+    /**
+     * Create a full token bucket.
+     *
+     * @param tokensPerSecond the rate at which the tokens are given back to the bucket
+     * @param capacity the capacity of the bucket, the largest burst of reservations
+     * @param scheduler the scheduler used to serve the reservations waiting for tokens
+     */
+    public TokenBucketController(long tokensPerSecond, long capacity, ScheduledExecutorService scheduler) {
+        super(capacity);
+        if (tokensPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Invalid token bucket: " + tokensPerSecond + " tokens per second, "
+                    + "capacity of " + capacity + " tokens");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.scheduler = scheduler;
+        this.lastRefillNanos = new AtomicLong(System.nanoTime());
+    }
+
+    @Override
+    public boolean tryReserveMemory(long size) {
+        refill();
+        return super.tryReserveMemory(size);
+    }
+
+    /**
+     * Reserve tokens, blocking until they have been given back to the bucket.
+     *
+     * <p>The waiters of the blocking reservations are only signalled by the releases, so the caller sleeps
+     * until enough tokens should have been given back instead. An interrupted caller leaves no reservation
+     * behind.
+     */
+    @Override
+    public void reserveMemory(long size) throws InterruptedException {
+        while (!tryReserveMemory(size)) {
+            TimeUnit.NANOSECONDS.sleep(refillDelayNanos());
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> reserveMemoryAsync(long size) {
+        refill();
+        CompletableFuture<Void> future = super.reserveMemoryAsync(size);
+        if (!future.isDone()) {
+            scheduleRefill();
+        }
+        return future;
+    }
+
+    // Give back the tokens accrued since the last refill, up to the capacity of the bucket. The concurrent
+    // refills are skipped, the next one will give back their tokens
+    private void refill() {
+        if (!refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            long last = lastRefillNanos.get();
+            long tokens = (long) ((now - last) * tokensPerNano);
+            if (tokens <= 0) {
+                // Keep accruing from the last refill, to not lose the fractions of tokens
+                return;
+            }
+            // Only advance by the time of the whole tokens, the remaining fraction accrues to the next refill
+            lastRefillNanos.set(Math.min(now, last + (long) (tokens / tokensPerNano)));
+            // Only the reservations race with the refill, so the usage cannot fall below what is read here
+            long used = currentUsage();
+            if (used > 0) {
+                releaseMemory(Math.min(used, tokens));
+            }
+        } finally {
+            refilling.set(false);
+        }
+    }
+
+    private void scheduleRefill() {
+        if (!refillScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delayNanos = refillDelayNanos();
+        try {
+            scheduler.schedule(() -> {
+                refillScheduled.set(false);
+                refill();
+                processPendingReservations();
+                if (pendingReservations() > 0) {
+                    scheduleRefill();
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // The scheduler is shut down, the waiters will only be served by the next reservations
+            refillScheduled.set(false);
+        }
+    }
+
+    // The first waiter can be served once the usage is back to the capacity
+    private long refillDelayNanos() {
+        return Math.max(MIN_REFILL_DELAY_NANOS, (long) ((currentUsage() - capacity) / tokensPerNano));
+    }
+}
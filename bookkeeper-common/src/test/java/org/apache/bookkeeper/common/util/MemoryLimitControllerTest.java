@@ -0,0 +1,152 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.common.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Unit tests for {@link MemoryLimitController}.
+ */
+@Timeout(60)
+public class MemoryLimitControllerTest {
+
+    @Test
+    public void reserveMemoryAsyncWithinLimit() {
+        MemoryLimitController mlc = new MemoryLimitController(100);
+
+        CompletableFuture<Void> first = mlc.reserveMemoryAsync(50);
+        CompletableFuture<Void> second = mlc.reserveMemoryAsync(50);
+        assertTrue(first.isDone());
+        // The completed future is shared by the reservations served right away
+        assertSame(first, second);
+        assertEquals(100, mlc.currentUsage());
+        assertEquals(0, mlc.pendingReservations());
+    }
+
+    @Test
+    public void reserveMemoryAsyncWaitsForRelease() {
+        MemoryLimitController mlc = new MemoryLimitController(100);
+        // A single reservation may go over the limit
+        assertTrue(mlc.reserveMemoryAsync(150).isDone());
+
+        CompletableFuture<Void> pending = mlc.reserveMemoryAsync(10);
+        assertFalse(pending.isDone());
+        assertEquals(1, mlc.pendingReservations());
+        assertEquals(150, mlc.currentUsage());
+
+        // Still above the limit
+        mlc.releaseMemory(40);
+        assertFalse(pending.isDone());
+
+        mlc.releaseMemory(10);
+        assertTrue(pending.isDone());
+        assertEquals(0, mlc.pendingReservations());
+        assertEquals(110, mlc.currentUsage());
+    }
+
+    @Test
+    public void reserveMemoryAsyncServedInOrder() {
+        MemoryLimitController mlc = new MemoryLimitController(100);
+        mlc.reserveMemoryAsync(101);
+
+        List<Integer> served = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int id = i;
+            CompletableFuture<Void> future = mlc.reserveMemoryAsync(30);
+            future.thenRun(() -> served.add(id));
+            futures.add(future);
+        }
+        assertEquals(5, mlc.pendingReservations());
+
+        // The queued reservations are not overtaken, even by one that would fit
+        assertFalse(mlc.reserveMemoryAsync(1).isDone());
+        assertEquals(6, mlc.pendingReservations());
+
+        // Each reservation may take the usage over the limit, the next ones wait for the following release
+        mlc.releaseMemory(101);
+        assertEquals(4, served.size());
+        assertEquals(120, mlc.currentUsage());
+
+        mlc.releaseMemory(30);
+        mlc.releaseMemory(30);
+        for (CompletableFuture<Void> future : futures) {
+            assertTrue(future.isDone());
+        }
+        assertEquals(0, mlc.pendingReservations());
+        assertEquals(5, served.size());
+        for (int i = 0; i < served.size(); i++) {
+            assertEquals(i, (int) served.get(i));
+        }
+    }
+
+    @Test
+    public void reserveMemoryAsyncReservesAgainFromCallback() {
+        MemoryLimitController mlc = new MemoryLimitController(10);
+        mlc.reserveMemoryAsync(11);
+
+        CompletableFuture<Void> chained = mlc.reserveMemoryAsync(5)
+                .thenCompose(ignored -> mlc.reserveMemoryAsync(5));
+        assertFalse(chained.isDone());
+
+        mlc.releaseMemory(11);
+        assertTrue(chained.isDone());
+        assertEquals(10, mlc.currentUsage());
+    }
+
+    @Test
+    public void blockingAndAsyncReservations() throws Exception {
+        MemoryLimitController mlc = new MemoryLimitController(10);
+        mlc.reserveMemory(11);
+
+        CountDownLatch reserved = new CountDownLatch(1);
+        Thread blocked = new Thread(() -> {
+            try {
+                mlc.reserveMemory(5);
+                reserved.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        blocked.start();
+        CompletableFuture<Void> pending = mlc.reserveMemoryAsync(5);
+        assertFalse(reserved.await(100, TimeUnit.MILLISECONDS));
+        assertFalse(pending.isDone());
+
+        // The release serves both the blocked and the asynchronous reservations
+        mlc.releaseMemory(11);
+        assertTrue(reserved.await(10, TimeUnit.SECONDS));
+        assertTrue(pending.isDone());
+        blocked.join();
+        assertEquals(10, mlc.currentUsage());
+    }
+}
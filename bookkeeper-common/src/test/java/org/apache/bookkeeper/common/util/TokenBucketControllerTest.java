@@ -0,0 +1,169 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.common.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Unit tests for {@link TokenBucketController}.
+ */
+@Timeout(60)
+public class TokenBucketControllerTest {
+
+    private ScheduledExecutorService scheduler;
+
+    @BeforeEach
+    public void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    public void teardown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void invalidBucket() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucketController(0, 10, scheduler));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucketController(10, 0, scheduler));
+    }
+
+    @Test
+    public void burstUpToCapacity() {
+        // Slow enough to not refill the bucket during the test
+        TokenBucketController bucket = new TokenBucketController(1, 10, scheduler);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(bucket.tryReserveMemory(1));
+        }
+        // A single reservation may take the bucket over its capacity
+        assertTrue(bucket.tryReserveMemory(1));
+        assertFalse(bucket.tryReserveMemory(1));
+        assertEquals(11, bucket.currentUsage());
+    }
+
+    @Test
+    public void tokensAreGivenBackOverTime() throws Exception {
+        TokenBucketController bucket = new TokenBucketController(1000, 10, scheduler);
+        assertTrue(bucket.tryReserveMemory(11));
+        assertFalse(bucket.tryReserveMemory(1));
+
+        Thread.sleep(50);
+        assertTrue(bucket.tryReserveMemory(1));
+        assertTrue(bucket.currentUsage() < 11);
+    }
+
+    @Test
+    public void asyncReservationsServedByRefill() throws Exception {
+        TokenBucketController bucket = new TokenBucketController(200, 10, scheduler);
+        // The first waiter is served once 20 tokens are back, after 100 ms
+        assertTrue(bucket.reserveMemoryAsync(30).isDone());
+
+        // No release is coming: the waiters are served by the scheduled refills, in order
+        List<Integer> served = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int id = i;
+            CompletableFuture<Void> future = bucket.reserveMemoryAsync(5);
+            futures.add(future.thenRun(() -> served.add(id)));
+        }
+        assertFalse(futures.get(0).isDone());
+        assertTrue(bucket.pendingReservations() > 0);
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        assertEquals(0, bucket.pendingReservations());
+        for (int i = 0; i < served.size(); i++) {
+            assertEquals(i, (int) served.get(i));
+        }
+    }
+
+    @Test
+    public void asyncReservationsWithoutScheduler() throws Exception {
+        TokenBucketController bucket = new TokenBucketController(1000, 10, scheduler);
+        scheduler.shutdownNow();
+        assertTrue(bucket.reserveMemoryAsync(11).isDone());
+
+        // The waiter is served by the next reservation once the tokens are back
+        CompletableFuture<Void> pending = bucket.reserveMemoryAsync(1);
+        assertFalse(pending.isDone());
+        Thread.sleep(50);
+        bucket.reserveMemoryAsync(1);
+        assertTrue(pending.isDone());
+    }
+
+    @Test
+    public void blockingReservationsFollowTheRate() throws Exception {
+        TokenBucketController bucket = new TokenBucketController(100, 1, scheduler);
+        assertTrue(bucket.tryReserveMemory(2));
+
+        // 30 tokens at 100 tokens per second: the fractions of tokens are not lost between the refills
+        long start = System.nanoTime();
+        for (int i = 0; i < 30; i++) {
+            bucket.reserveMemory(1);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 250, "elapsed: " + elapsedMillis);
+        assertTrue(elapsedMillis < 5_000, "elapsed: " + elapsedMillis);
+        // The blocking reservations are not queued
+        assertEquals(0, bucket.pendingReservations());
+    }
+
+    @Test
+    public void interruptedBlockingReservation() throws Exception {
+        TokenBucketController bucket = new TokenBucketController(1, 10, scheduler);
+        assertTrue(bucket.tryReserveMemory(11));
+
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread blocked = new Thread(() -> {
+            try {
+                bucket.reserveMemory(1);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            done.countDown();
+        });
+        blocked.start();
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+
+        blocked.interrupt();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(interrupted.get());
+        // Nothing is left behind by the interrupted reservation
+        assertEquals(0, bucket.pendingReservations());
+        assertEquals(11, bucket.currentUsage());
+    }
+}
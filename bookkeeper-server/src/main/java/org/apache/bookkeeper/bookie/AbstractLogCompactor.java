@@ -69,6 +69,7 @@ public abstract class AbstractLogCompactor {
         private final RateLimiter rateLimiter;
         private final boolean isThrottleByBytes;
         private final AtomicBoolean cancelled = new AtomicBoolean(false);
+        private volatile CompactionIOBudget ioBudget;
 
         Throttler(ServerConfiguration conf) {
             this.isThrottleByBytes  = conf.getIsThrottleByBytes();
@@ -76,6 +77,11 @@ public abstract class AbstractLogCompactor {
                 ? conf.getCompactionRateByBytes() : conf.getCompactionRateByEntries());
         }
 
+        // the bytes acquired are also charged to the I/O budget
+        void setIOBudget(CompactionIOBudget ioBudget) {
+            this.ioBudget = ioBudget;
+        }
+
         // acquire. if bybytes: bytes of this entry; if byentries: 1.
         boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
             return rateLimiter.tryAcquire(this.isThrottleByBytes ? permits : 1, timeout, unit);
@@ -88,19 +94,29 @@ public abstract class AbstractLogCompactor {
             long timeout = 100;
             long start = System.currentTimeMillis();
             while (!tryAcquire(permits, timeout, TimeUnit.MILLISECONDS)) {
-                if (cancelled.get()) {
-                    throw new IOException("Failed to get permits takes "
-                            + (System.currentTimeMillis() - start)
-                            + " ms may be compactor has been shutting down");
-                }
-                try {
-                    TimeUnit.MILLISECONDS.sleep(timeout);
-                } catch (InterruptedException e) {
-                    // ignore
+                waitIfNotCancelled(start, timeout);
+            }
+            CompactionIOBudget budget = ioBudget;
+            if (budget != null) {
+                while (!budget.tryAcquire(permits, timeout, TimeUnit.MILLISECONDS)) {
+                    waitIfNotCancelled(start, timeout);
                 }
             }
         }
 
+        private void waitIfNotCancelled(long start, long timeout) throws IOException {
+            if (cancelled.get()) {
+                throw new IOException("Failed to get permits takes "
+                        + (System.currentTimeMillis() - start)
+                        + " ms may be compactor has been shutting down");
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(timeout);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+
         public void cancelledAcquire() {
             cancelled.set(true);
         }
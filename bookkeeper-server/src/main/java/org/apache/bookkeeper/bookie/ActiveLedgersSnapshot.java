@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRange;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The ledgers of the metadata store, shared by the garbage collectors of all the ledger directories of
+ * a bookie.
+ *
+ * <p>The first garbage collector to run in a GC cycle scans the metadata store, and the others reuse
+ * its snapshot until it gets older than the GC wait time, instead of scanning the metadata store
+ * once per directory.
+ */
+public class ActiveLedgersSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ActiveLedgersSnapshot.class);
+
+    private final LedgerManager ledgerManager;
+    private final long maxAgeNanos;
+
+    private Snapshot snapshot = null;
+
+    public ActiveLedgersSnapshot(LedgerManager ledgerManager, long maxAgeMillis) {
+        this.ledgerManager = ledgerManager;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+    }
+
+    /**
+     * Get the current snapshot, or scan the metadata store if it is too old.
+     */
+    synchronized Snapshot get(long zkOpTimeoutMs) throws IOException {
+        long now = System.nanoTime();
+        if (snapshot == null || now - snapshot.getScanStartNanos() >= maxAgeNanos) {
+            // Drop the previous snapshot before scanning, so that both are never in memory
+            snapshot = null;
+            snapshot = scan(now, zkOpTimeoutMs);
+        }
+        return snapshot;
+    }
+
+    private Snapshot scan(long scanStartNanos, long zkOpTimeoutMs) throws IOException {
+        ConcurrentLongHashSet ledgers = ConcurrentLongHashSet.newBuilder()
+                .expectedItems(4096)
+                .concurrencyLevel(1)
+                .build();
+        LedgerRangeIterator ledgerRangeIterator = ledgerManager.getLedgerRanges(zkOpTimeoutMs);
+        while (ledgerRangeIterator.hasNext()) {
+            LedgerRange lRange = ledgerRangeIterator.next();
+            for (long ledgerId : lRange.getLedgers()) {
+                ledgers.add(ledgerId);
+            }
+        }
+        LOG.info("Scanned {} ledgers in the metadata store in {} ms", ledgers.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scanStartNanos));
+        return new Snapshot(scanStartNanos, ledgers);
+    }
+
+    /**
+     * The ledgers found in the metadata store by a scan.
+     */
+    static final class Snapshot {
+        private final long scanStartNanos;
+        private final ConcurrentLongHashSet ledgers;
+
+        Snapshot(long scanStartNanos, ConcurrentLongHashSet ledgers) {
+            this.scanStartNanos = scanStartNanos;
+            this.ledgers = ledgers;
+        }
+
+        /**
+         * Get the {@link System#nanoTime()} at which the scan started. The ledgers created after this
+         * time might be missing from the snapshot.
+         */
+        long getScanStartNanos() {
+            return scanStartNanos;
+        }
+
+        boolean contains(long ledgerId) {
+            return ledgers.contains(ledgerId);
+        }
+    }
+}
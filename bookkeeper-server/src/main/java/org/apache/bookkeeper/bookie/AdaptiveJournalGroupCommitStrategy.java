@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+
+/**
+ * Size the journal batches from the observed fsync latency and arrival rate, aiming at
+ * the target latency of <code>journalGroupCommitTargetLatencyMSec</code>.
+ *
+ * <p>An entry is acknowledged after the wait for its batch and the fsync of the batch, so
+ * the batch can wait for the part of the target latency which is not spent in the fsync.
+ * When less than one more entry is expected during that time, grouping brings no benefit
+ * and the batch is flushed as soon as the queue is empty. The batch is also flushed once
+ * it holds the bytes expected to arrive during a fsync, bounded by
+ * <code>journalBufferedWritesThreshold</code>.
+ */
+public class AdaptiveJournalGroupCommitStrategy implements JournalGroupCommitStrategy {
+
+    // Weight of the last observation in the moving averages
+    private static final double ALPHA = 0.2;
+    private static final long MIN_GROUP_BYTES = 4 * 1024;
+
+    private final long targetLatencyNanos;
+    private final long maxGroupBytesLimit;
+    private final long maxGroupEntries;
+
+    // Updated by the force write thread
+    private volatile double avgSyncLatencyNanos = 0;
+
+    // Only accessed by the journal thread
+    private double avgEntriesPerNano = 0;
+    private double avgEntrySize = 0;
+    private long lastBatchTime = 0;
+
+    private volatile long maxGroupWaitNanos = 0;
+    private volatile long maxGroupBytes;
+
+    public AdaptiveJournalGroupCommitStrategy(ServerConfiguration conf) {
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(conf.getJournalGroupCommitTargetLatencyMSec());
+        this.maxGroupBytesLimit = Math.max(MIN_GROUP_BYTES, conf.getJournalBufferedWritesThreshold());
+        this.maxGroupEntries = conf.getJournalBufferedEntriesThreshold();
+        this.maxGroupBytes = maxGroupBytesLimit;
+    }
+
+    @Override
+    public long getMaxGroupWaitNanos() {
+        return maxGroupWaitNanos;
+    }
+
+    @Override
+    public long getMaxGroupBytes() {
+        return maxGroupBytes;
+    }
+
+    @Override
+    public long getMaxGroupEntries() {
+        return maxGroupEntries;
+    }
+
+    @Override
+    public void onBatchWritten(int entries, long bytes) {
+        onBatchWritten(entries, bytes, MathUtils.nowInNano());
+    }
+
+    @VisibleForTesting
+    void onBatchWritten(int entries, long bytes, long now) {
+        if (lastBatchTime != 0 && now > lastBatchTime && entries > 0) {
+            avgEntriesPerNano = ewma(avgEntriesPerNano, (double) entries / (now - lastBatchTime));
+            avgEntrySize = ewma(avgEntrySize, (double) bytes / entries);
+        }
+        lastBatchTime = now;
+
+        double syncLatencyNanos = avgSyncLatencyNanos;
+
+        long groupWaitNanos = Math.max(0, Math.min(targetLatencyNanos, (long) (targetLatencyNanos - syncLatencyNanos)));
+        if (avgEntriesPerNano * groupWaitNanos < 1) {
+            groupWaitNanos = 0;
+        }
+
+        long groupBytes = (long) (avgEntriesPerNano * avgEntrySize * syncLatencyNanos);
+
+        this.maxGroupWaitNanos = groupWaitNanos;
+        this.maxGroupBytes = Math.max(MIN_GROUP_BYTES, Math.min(maxGroupBytesLimit, groupBytes));
+    }
+
+    @Override
+    public void onSync(long syncLatencyNanos) {
+        avgSyncLatencyNanos = ewma(avgSyncLatencyNanos, syncLatencyNanos);
+    }
+
+    private static double ewma(double average, double value) {
+        return average == 0 ? value : ALPHA * value + (1 - ALPHA) * average;
+    }
+}
@@ -104,12 +104,15 @@ public interface BookKeeperServerStats {
 
     String JOURNAL_SCOPE = "journal";
     String JOURNAL_DIRS = "JOURNAL_DIRS";
+    String JOURNAL_REPLAY_PROGRESS = "JOURNAL_REPLAY_PROGRESS";
     String JOURNAL_ADD_ENTRY = "JOURNAL_ADD_ENTRY";
     String JOURNAL_FORCE_LEDGER = "JOURNAL_FORCE_LEDGER";
     String JOURNAL_SYNC = "JOURNAL_SYNC";
     String JOURNAL_FORCE_WRITE_ENQUEUE = "JOURNAL_FORCE_WRITE_ENQUEUE";
     String JOURNAL_FORCE_WRITE_BATCH_ENTRIES = "JOURNAL_FORCE_WRITE_BATCH_ENTRIES";
     String JOURNAL_FORCE_WRITE_BATCH_BYTES = "JOURNAL_FORCE_WRITE_BATCH_BYTES";
+    String JOURNAL_GROUP_COMMIT_WAIT = "JOURNAL_GROUP_COMMIT_WAIT";
+    String JOURNAL_GROUP_COMMIT_BATCH_BYTES = "JOURNAL_GROUP_COMMIT_BATCH_BYTES";
     String JOURNAL_FLUSH_LATENCY = "JOURNAL_FLUSH_LATENCY";
     String JOURNAL_QUEUE_LATENCY = "JOURNAL_QUEUE_LATENCY";
     String JOURNAL_QUEUE_MAX_SIZE = "JOURNAL_QUEUE_MAX_SIZE";
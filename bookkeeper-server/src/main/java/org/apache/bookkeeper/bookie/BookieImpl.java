@@ -129,6 +129,10 @@ public class BookieImpl implements Bookie {
 
     private final boolean writeDataToJournal;
 
+    // Progress of the journal replay, in bytes of the journal files to replay
+    private volatile long journalReplayBytes = 0;
+    private volatile long journalReplayTotalBytes = -1;
+
     // Write Callback do nothing
     static class NopWriteCallback implements WriteCallback {
         @Override
@@ -431,11 +435,19 @@ public class BookieImpl implements Bookie {
 
         JournalAliveListener journalAliveListener =
                 () -> BookieImpl.this.triggerBookieShutdown(ExitCode.BOOKIE_EXCEPTION);
-        // instantiate the journals
+        // instantiate the journals, one per stripe of each journal directory. The stripes are interleaved
+        // across the directories, so that the ledgers routed to consecutive journals use different devices
+        checkJournalStripes(journalDirectories, conf.getJournalStripesPerDirectory());
         journals = Lists.newArrayList();
-        for (int i = 0; i < journalDirectories.size(); i++) {
-            journals.add(Journal.newJournal(i, journalDirectories.get(i),
-                    conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator, journalAliveListener));
+        for (int stripe = 0; stripe < conf.getJournalStripesPerDirectory(); stripe++) {
+            for (int i = 0; i < journalDirectories.size(); i++) {
+                File journalDirectory = Journal.getJournalStripeDirectory(journalDirectories.get(i), stripe);
+                if (!journalDirectory.isDirectory() && !journalDirectory.mkdirs()) {
+                    throw new IOException("Unable to create journal directory " + journalDirectory);
+                }
+                journals.add(Journal.newJournal(i, stripe, journalDirectory,
+                        conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator, journalAliveListener));
+            }
         }
 
         this.entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
@@ -494,7 +506,28 @@ public class BookieImpl implements Bookie {
         handles = new HandleFactoryImpl(ledgerStorage);
 
         // Expose Stats
-        this.bookieStats = new BookieStats(statsLogger, journalDirectories.size(), conf.getJournalQueueSize());
+        this.bookieStats = new BookieStats(statsLogger, journals.size(), conf.getJournalQueueSize(),
+                this::getJournalReplayProgress);
+    }
+
+    /**
+     * Check that no journal directory holds the journal files of a stripe above the configured number
+     * of stripes. These stripes would not be replayed, and the entries not yet checkpointed would be lost.
+     */
+    static void checkJournalStripes(List<File> journalDirectories, int journalStripesPerDirectory)
+            throws IOException {
+        for (File journalDirectory : journalDirectories) {
+            for (int stripe : Journal.listJournalStripes(journalDirectory)) {
+                File stripeDirectory = Journal.getJournalStripeDirectory(journalDirectory, stripe);
+                if (stripe >= journalStripesPerDirectory
+                        && !Journal.listJournalIds(stripeDirectory, null).isEmpty()) {
+                    throw new IOException("Journal directory " + stripeDirectory + " holds the journal files of"
+                            + " stripe " + stripe + ", but journalStripesPerDirectory is "
+                            + journalStripesPerDirectory + ". Restore journalStripesPerDirectory, or remove the"
+                            + " directory once the bookie has checkpointed its entries");
+                }
+            }
+        }
     }
 
     @VisibleForTesting
@@ -611,21 +644,52 @@ public class BookieImpl implements Bookie {
             }
         };
 
+        List<List<Long>> journalLogs = new ArrayList<>(journals.size());
+        long totalBytes = 0;
         for (Journal journal : journals) {
-            replay(journal, scanner);
+            List<Long> logs = getLogsToReplay(journal);
+            journalLogs.add(logs);
+            for (Long id : logs) {
+                totalBytes += getJournalFileLength(journal, id);
+            }
+            if (!logs.isEmpty()) {
+                totalBytes -= journal.getLastLogMark().getCurMark().getLogFileOffset();
+            }
+        }
+        journalReplayTotalBytes = totalBytes;
+
+        int numReplayThreads = conf.getNumJournalReplayThreads();
+        if (numReplayThreads > 1) {
+            LOG.info("Replaying journal with {} threads", numReplayThreads);
+            try (JournalReplayExecutor replayExecutor = new JournalReplayExecutor(scanner, numReplayThreads,
+                    conf.getJournalMaxMemorySizeMb() * 1024 * 1024)) {
+                for (int i = 0; i < journals.size(); i++) {
+                    replay(journals.get(i), journalLogs.get(i), replayExecutor.asScanner(),
+                            replayExecutor::awaitPendingRecords);
+                }
+            }
+        } else {
+            for (int i = 0; i < journals.size(); i++) {
+                replay(journals.get(i), journalLogs.get(i), scanner, () -> {});
+            }
         }
+        journalReplayBytes = totalBytes;
         long elapsedTs = System.currentTimeMillis() - startTs;
         LOG.info("Finished replaying journal in {} ms.", elapsedTs);
     }
 
+    private static long getJournalFileLength(Journal journal, long id) {
+        return new File(journal.getJournalDirectory(), Long.toHexString(id) + ".txn").length();
+    }
+
     /**
-     * Replay journal files and updates journal's in-memory lastLogMark object.
+     * Get the journal files to replay, starting from the journal's lastLogMark.
      *
      * @param journal Journal object corresponding to a journalDir
-     * @param scanner Scanner to process replayed entries.
+     * @return the ids of the journal files to replay
      * @throws IOException
      */
-    private void replay(Journal journal, JournalScanner scanner) throws IOException {
+    private List<Long> getLogsToReplay(Journal journal) throws IOException {
         final LogMark markedLog = journal.getLastLogMark().getCurMark();
         List<Long> logs = Journal.listJournalIds(journal.getJournalDirectory(), journalId ->
             journalId >= markedLog.getLogFileId());
@@ -637,6 +701,25 @@ public class BookieImpl implements Bookie {
                 throw new IOException("Recovery log " + markedLog.getLogFileId() + " is missing at " + path);
             }
         }
+        return logs;
+    }
+
+    private interface ReplayBarrier {
+        void await() throws IOException;
+    }
+
+    /**
+     * Replay journal files and updates journal's in-memory lastLogMark object.
+     *
+     * @param journal Journal object corresponding to a journalDir
+     * @param logs Journal files to replay
+     * @param scanner Scanner to process replayed entries.
+     * @param barrier Waits until the replayed entries are processed.
+     * @throws IOException
+     */
+    private void replay(Journal journal, List<Long> logs, JournalScanner scanner, ReplayBarrier barrier)
+            throws IOException {
+        final LogMark markedLog = journal.getLastLogMark().getCurMark();
 
         // TODO: When reading in the journal logs that need to be synced, we
         // should use BufferedChannels instead to minimize the amount of
@@ -647,7 +730,14 @@ public class BookieImpl implements Bookie {
                 logPosition = markedLog.getLogFileOffset();
             }
             LOG.info("Replaying journal {} from position {}", id, logPosition);
-            long scanOffset = journal.scanJournal(id, logPosition, scanner, conf.isSkipReplayJournalInvalidRecord());
+            final long replayedBytes = journalReplayBytes - logPosition;
+            long scanOffset = journal.scanJournal(id, logPosition, (journalVersion, offset, recBuff) -> {
+                journalReplayBytes = replayedBytes + offset;
+                scanner.process(journalVersion, offset, recBuff);
+            }, conf.isSkipReplayJournalInvalidRecord());
+            // The entries read must be added to the ledger storage before moving the LastLogMark past them
+            barrier.await();
+            journalReplayBytes = replayedBytes + getJournalFileLength(journal, id);
             // Update LastLogMark after completely replaying journal
             // scanOffset will point to EOF position
             // After LedgerStorage flush, SyncThread should persist this to disk
@@ -655,6 +745,20 @@ public class BookieImpl implements Bookie {
         }
     }
 
+    /**
+     * Get the progress of the journal replay, as a percentage of the size of the journal files to replay.
+     */
+    int getJournalReplayProgress() {
+        long totalBytes = journalReplayTotalBytes;
+        if (totalBytes < 0) {
+            // the replay has not started yet
+            return 0;
+        } else if (totalBytes == 0) {
+            return 100;
+        }
+        return (int) Math.min(100, journalReplayBytes * 100 / totalBytes);
+    }
+
     @Override
     public synchronized void start() {
         bookieThread = new BookieCriticalThread(() -> run(), "Bookie-" + conf.getBookiePort());
@@ -145,6 +145,46 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
         }
     }
 
+    /**
+     * Copy a range of another file at the position of the next write operation. The write buffer
+     * is flushed first, then the range is transferred from file to file with
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, so it is
+     * never copied in memory.
+     *
+     * @param src the channel of the file to copy from
+     * @param srcPos the position of the range in the source file
+     * @param len the length of the range
+     * @return the position where the range has been written
+     * @throws IOException if the transfer fails.
+     */
+    public long transferFrom(FileChannel src, long srcPos, long len) throws IOException {
+        long dstPos;
+        boolean shouldForceWrite = false;
+        synchronized (this) {
+            flush();
+            dstPos = position;
+            long transferred = 0;
+            while (transferred < len) {
+                long bytes = src.transferTo(srcPos + transferred, len - transferred, fileChannel);
+                if (bytes <= 0) {
+                    throw new IOException("Short transfer of " + len + " bytes at position " + srcPos
+                            + ": only " + transferred + " bytes transferred");
+                }
+                transferred += bytes;
+            }
+            position += len;
+            writeBufferStartPosition.set(fileChannel.position());
+            if (doRegularFlushes) {
+                unpersistedBytes.addAndGet(len);
+                shouldForceWrite = unpersistedBytes.get() >= unpersistedBytesBound;
+            }
+        }
+        if (shouldForceWrite) {
+            forceWrite(false);
+        }
+        return dstPos;
+    }
+
     /**
      * Get the position where the next write operation will begin writing from.
      * @return
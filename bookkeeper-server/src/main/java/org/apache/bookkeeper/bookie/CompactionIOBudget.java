@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.RateLimiter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.bookkeeper.common.util.MathUtils;
+
+/**
+ * I/O budget, in bytes per second, shared by the compaction and the foreground writes of a ledger storage.
+ *
+ * <p>The foreground writes are never throttled, they are only accounted. Every second, the rate
+ * left to the compaction is updated to the budget minus the foreground write rate of the previous
+ * second, so the compaction yields to the foreground traffic. The compaction always keeps a tenth
+ * of the budget, to make progress while the foreground traffic exceeds the budget.
+ */
+class CompactionIOBudget {
+
+    private static final long ADJUST_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long budgetBytesPerSecond;
+    private final long minCompactionBytesPerSecond;
+    private final RateLimiter rateLimiter;
+    private final LongAdder foregroundBytes = new LongAdder();
+
+    private long lastAdjustNanos;
+
+    CompactionIOBudget(long budgetBytesPerSecond) {
+        this.budgetBytesPerSecond = budgetBytesPerSecond;
+        this.minCompactionBytesPerSecond = Math.max(1, budgetBytesPerSecond / 10);
+        this.rateLimiter = RateLimiter.create(budgetBytesPerSecond);
+        this.lastAdjustNanos = MathUtils.nowInNano();
+    }
+
+    /**
+     * Account the bytes written by the foreground traffic.
+     */
+    void recordForegroundBytes(long bytes) {
+        foregroundBytes.add(bytes);
+    }
+
+    /**
+     * Try to acquire budget for bytes read or written by the compaction, waiting up to the timeout.
+     */
+    boolean tryAcquire(int bytes, long timeout, TimeUnit unit) {
+        maybeAdjustRate(MathUtils.nowInNano());
+        return rateLimiter.tryAcquire(Math.max(1, bytes), timeout, unit);
+    }
+
+    double getCompactionRate() {
+        return rateLimiter.getRate();
+    }
+
+    @VisibleForTesting
+    synchronized void maybeAdjustRate(long now) {
+        long elapsedNanos = now - lastAdjustNanos;
+        if (elapsedNanos < ADJUST_INTERVAL_NANOS) {
+            return;
+        }
+
+        long foregroundBytesPerSecond = foregroundBytes.sumThenReset() * ADJUST_INTERVAL_NANOS / elapsedNanos;
+        rateLimiter.setRate(Math.max(minCompactionBytesPerSecond, budgetBytesPerSecond - foregroundBytesPerSecond));
+        lastAdjustNanos = now;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Orders the entry logs to compact by the space reclaimed per byte of I/O.
+ *
+ * <p>Compacting an entry log reads the whole log, rewrites its remaining entries, and has a fixed
+ * cost to create the new log and update the index. The score of an entry log is the space it
+ * reclaims divided by this cost. At the same usage, a large log scores better than a small one,
+ * because the fixed cost is spread over more reclaimed bytes. The logs with the best score are
+ * compacted first, so the space is recovered faster under a time limit or an I/O budget.
+ */
+class CompactionPlanner {
+
+    // Cost of compacting an entry log, whatever its size, expressed in bytes of I/O
+    static final long FIXED_COST_BYTES = 1024 * 1024;
+
+    /**
+     * An entry log to compact, with its score.
+     */
+    static class Candidate {
+        final long entryLogId;
+        final double usage;
+        final double score;
+
+        Candidate(long entryLogId, double usage, double score) {
+            this.entryLogId = entryLogId;
+            this.usage = usage;
+            this.score = score;
+        }
+    }
+
+    private final List<Candidate> candidates = new ArrayList<>();
+
+    /**
+     * Add an entry log to compact.
+     *
+     * @param meta the entry log metadata
+     * @param usage the usage of the entry log, used for reporting
+     */
+    void add(EntryLogMetadata meta, double usage) {
+        candidates.add(new Candidate(meta.getEntryLogId(), usage, score(meta)));
+    }
+
+    static double score(EntryLogMetadata meta) {
+        long totalSize = meta.getTotalSize();
+        long remainingSize = meta.getRemainingSize();
+        long reclaimableSize = totalSize - remainingSize;
+        return (double) reclaimableSize / (totalSize + remainingSize + FIXED_COST_BYTES);
+    }
+
+    /**
+     * Get the entry logs to compact, the best score first.
+     */
+    List<Candidate> plan() {
+        List<Candidate> plan = new ArrayList<>(candidates);
+        plan.sort(Comparator.comparingDouble((Candidate c) -> c.score).reversed());
+        return plan;
+    }
+}
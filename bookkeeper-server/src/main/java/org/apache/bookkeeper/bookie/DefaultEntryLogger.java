@@ -59,6 +59,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Pattern;
 import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogTransferScanner;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.NullStatsLogger;
@@ -221,6 +222,9 @@ public class DefaultEntryLogger implements EntryLogger {
 
     private volatile BufferedLogChannel compactionLogChannel;
 
+    // Max size of a range of adjacent entries copied at once from an entry log to the compaction log
+    private static final int MAX_COMPACTION_TRANSFER_SIZE = 1024 * 1024;
+
     final EntryLoggerAllocator entryLoggerAllocator;
     private final EntryLogManager entryLogManager;
 
@@ -527,6 +531,10 @@ public class DefaultEntryLogger implements EntryLogger {
                     + entryLogId + ".log");
             return true;
         }
+        if (entryLoggerAllocator.recycleEntryLog(entryLogFile)) {
+            LOG.info("Recycled entry log file {} as a spare file", entryLogFile);
+            return true;
+        }
         if (!entryLogFile.delete()) {
             LOG.warn("Could not delete entry log file {}", entryLogFile);
             return false;
@@ -692,6 +700,99 @@ public class DefaultEntryLogger implements EntryLogger {
         }
     }
 
+    /**
+     * Copy the entries of the ledgers accepted by the scanner from an entry log to the compaction log.
+     * Only the headers of the entries are read: the ranges of adjacent entries are transferred from
+     * file to file, and the scanner is passed the new location of each entry once it has been copied.
+     */
+    private void transferEntriesForCompaction(long entryLogId, EntryLogTransferScanner scanner)
+            throws IOException {
+        // Buffer where to read the entrySize (4 bytes), the ledgerId (8 bytes) and the entryId (8 bytes)
+        ByteBuf headerBuffer = Unpooled.buffer(4 + 8 + 8);
+        BufferedReadChannel bc;
+        try {
+            bc = getChannelForLogId(entryLogId);
+        } catch (IOException e) {
+            LOG.warn("Failed to get channel to transfer entry log: " + entryLogId + ".log");
+            throw e;
+        }
+        // Entries of the range not copied yet, with their offset in the entry log
+        List<EntryLocation> pending = new ArrayList<>();
+        long rangeStart = 0;
+        long rangeEnd = 0;
+
+        long pos = LOGFILE_HEADER_SIZE;
+        while (pos < bc.size()) {
+            if (readFromLogChannel(entryLogId, bc, headerBuffer, pos) != headerBuffer.capacity()) {
+                LOG.warn("Short read for entry header from entrylog {}", entryLogId);
+                break;
+            }
+            long offset = pos;
+
+            int entrySize = headerBuffer.readInt();
+            if (entrySize <= 0) { // hitting padding
+                pos++;
+                headerBuffer.clear();
+                continue;
+            }
+            long ledgerId = headerBuffer.readLong();
+            long entryId = headerBuffer.readLong();
+            headerBuffer.clear();
+
+            pos += 4 + entrySize;
+            if (ledgerId == INVALID_LID || !scanner.accept(ledgerId)) {
+                continue;
+            }
+            scanner.beforeTransfer(ledgerId, entryId, entrySize);
+
+            if (!pending.isEmpty()
+                    && (offset != rangeEnd || pos - rangeStart > MAX_COMPACTION_TRANSFER_SIZE)) {
+                transferRangeForCompaction(bc, rangeStart, rangeEnd, pending, scanner);
+            }
+            if (pending.isEmpty()) {
+                rangeStart = offset;
+            }
+            pending.add(new EntryLocation(ledgerId, entryId, offset));
+            rangeEnd = pos;
+        }
+
+        if (!pending.isEmpty()) {
+            transferRangeForCompaction(bc, rangeStart, rangeEnd, pending, scanner);
+        }
+    }
+
+    private void transferRangeForCompaction(BufferedReadChannel bc, long rangeStart, long rangeEnd,
+                                            List<EntryLocation> entries, EntryLogTransferScanner scanner)
+            throws IOException {
+        long compactionLogId;
+        long dstPos;
+        synchronized (compactionLogLock) {
+            if (compactionLogChannel == null) {
+                createNewCompactionLog();
+            }
+            compactionLogId = compactionLogChannel.getLogId();
+            dstPos = compactionLogChannel.transferFrom(bc.validateAndGetFileChannel(), rangeStart,
+                    rangeEnd - rangeStart);
+            for (int i = 0; i < entries.size(); i++) {
+                compactionLogChannel.registerWrittenEntry(entries.get(i).getLedger(),
+                        entryEnd(entries, i, rangeEnd) - entries.get(i).getLocation());
+            }
+        }
+
+        for (int i = 0; i < entries.size(); i++) {
+            EntryLocation entry = entries.get(i);
+            // The location points past the size header of the entry
+            long location = (compactionLogId << 32L) | (dstPos + entry.getLocation() - rangeStart + 4);
+            int entrySize = (int) (entryEnd(entries, i, rangeEnd) - entry.getLocation() - 4);
+            scanner.process(entry.getLedger(), entry.getEntry(), location, entrySize);
+        }
+        entries.clear();
+    }
+
+    private static long entryEnd(List<EntryLocation> entries, int i, long rangeEnd) {
+        return i + 1 < entries.size() ? entries.get(i + 1).getLocation() : rangeEnd;
+    }
+
     static long logIdForOffset(long offset) {
         return offset >> 32L;
     }
@@ -837,6 +938,49 @@ public class DefaultEntryLogger implements EntryLogger {
     }
 
 
+    @Override
+    public ByteBuf readRange(long entryLocation, int maxSize) throws IOException {
+        long entryLogId = logIdForOffset(entryLocation);
+        long pos = posForOffset(entryLocation) - 4; // include the size header of the first entry
+
+        BufferedReadChannel fc;
+        try {
+            fc = getChannelForLogId(entryLogId);
+        } catch (FileNotFoundException e) {
+            throw new IOException("Missing entry log file id: " + entryLogId, e);
+        }
+
+        ByteBuf data = allocator.buffer(maxSize, maxSize);
+        try {
+            FileChannel fileChannel = logid2FileChannel.get(entryLogId);
+            int rc;
+            if (fileChannel == null || entryLogManager.getCurrentLogIfPresent(entryLogId) != null) {
+                // The range might still be in the write buffer of the current log
+                rc = readFromLogChannel(entryLogId, fc, data, pos);
+            } else {
+                // Bypass the read buffer, to read the whole range with a single positional read
+                rc = 0;
+                while (data.isWritable()) {
+                    int n = fileChannel.read(data.internalNioBuffer(data.writerIndex(), data.writableBytes()),
+                            pos + rc);
+                    if (n <= 0) {
+                        break;
+                    }
+                    data.writerIndex(data.writerIndex() + n);
+                    rc += n;
+                }
+            }
+
+            if (rc <= 0) {
+                throw new IOException("Short read from log file id: " + entryLogId + " at " + pos);
+            }
+        } catch (IOException e) {
+            ReferenceCountUtil.release(data);
+            throw e;
+        }
+        return data;
+    }
+
     private ByteBuf internalReadEntry(long ledgerId, long entryId, long location, boolean validateEntry)
             throws IOException, Bookie.NoEntryException {
         long entryLogId = logIdForOffset(location);
@@ -1324,6 +1468,11 @@ public class DefaultEntryLogger implements EntryLogger {
             return addEntryForCompaction(ledgerId, entry);
         }
         @Override
+        public void transferEntries(EntryLogger entryLogger, EntryLogTransferScanner scanner)
+                throws IOException {
+            transferEntriesForCompaction(logIdToCompact, scanner);
+        }
+        @Override
         public void scan(EntryLogScanner scanner) throws IOException {
             scanEntryLog(compactionLogId, scanner);
         }
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+
+/**
+ * Group the journal entries with the static thresholds of the configuration:
+ * <code>journalMaxGroupWaitMSec</code>, <code>journalBufferedWritesThreshold</code> and
+ * <code>journalBufferedEntriesThreshold</code>.
+ */
+public class DefaultJournalGroupCommitStrategy implements JournalGroupCommitStrategy {
+
+    private final long maxGroupWaitNanos;
+    private final long maxGroupBytes;
+    private final long maxGroupEntries;
+
+    public DefaultJournalGroupCommitStrategy(ServerConfiguration conf) {
+        this.maxGroupWaitNanos = TimeUnit.MILLISECONDS.toNanos(conf.getJournalMaxGroupWaitMSec());
+        this.maxGroupBytes = conf.getJournalBufferedWritesThreshold();
+        this.maxGroupEntries = conf.getJournalBufferedEntriesThreshold();
+    }
+
+    @Override
+    public long getMaxGroupWaitNanos() {
+        return maxGroupWaitNanos;
+    }
+
+    @Override
+    public long getMaxGroupBytes() {
+        return maxGroupBytes;
+    }
+
+    @Override
+    public long getMaxGroupEntries() {
+        return maxGroupEntries;
+    }
+}
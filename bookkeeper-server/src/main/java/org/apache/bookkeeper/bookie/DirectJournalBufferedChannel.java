@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.Buffer;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.BufferPool;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIORing;
+
+/**
+ * A {@link BufferedChannel} writing a journal file with direct I/O, bypassing the page cache.
+ *
+ * <p>The data is staged in an aligned {@link Buffer} acquired from a {@link BufferPool}. Direct I/O
+ * requires writes aligned to {@link Buffer#ALIGNMENT}, so a flush writes the staged data padded
+ * with zeros up to the next alignment. The journal replay reads the zeros as the end of the journal.
+ * The last partial block is kept in the buffer, to be written again with the data following it.
+ * With a journalAlignmentSize multiple of {@link Buffer#ALIGNMENT}, the journal flushes end on a
+ * block boundary and no block is written twice.
+ *
+ * <p>The writes and the fsyncs are submitted to a {@link NativeIORing}. A flush hands the buffer
+ * over to the ring and continues in a new buffer, so the journal thread keeps adding entries while
+ * the previous ones are written. It only waits for the write of the previous flush, which keeps the
+ * rewrites of the last partial block in order and bounds the buffers of a file to two.
+ */
+class DirectJournalBufferedChannel extends BufferedChannel {
+
+    private static final ByteBuf ZEROS = Unpooled.unreleasableBuffer(
+            Unpooled.wrappedBuffer(new byte[Buffer.ALIGNMENT]));
+
+    private final NativeIO nativeIO;
+    private final NativeIORing ring;
+    private final BufferPool bufferPool;
+    private final String filename;
+    private final int fd;
+
+    private Buffer buffer;
+    // Offset in the file of the start of the buffer, always aligned
+    private long bufferStartOffset;
+    // Write of the last flush, completed once its buffer is released
+    private volatile CompletableFuture<Integer> lastWrite = CompletableFuture.completedFuture(0);
+
+    DirectJournalBufferedChannel(NativeIO nativeIO, NativeIORing ring, BufferPool bufferPool,
+                                 ByteBufAllocator allocator, File file, FileChannel fc) throws IOException {
+        // The data is staged in the aligned buffer, instead of the write buffer of BufferedChannel
+        super(allocator, fc, 0, 0, 0);
+        this.nativeIO = nativeIO;
+        this.ring = ring;
+        this.bufferPool = bufferPool;
+        this.filename = file.toString();
+
+        try {
+            this.fd = nativeIO.open(filename, NativeIO.O_WRONLY | NativeIO.O_DIRECT, 00644);
+        } catch (NativeIOException ne) {
+            ReferenceCountUtil.release(writeBuffer);
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString(), ne);
+        }
+
+        try {
+            this.buffer = bufferPool.acquire();
+            this.buffer.reset();
+
+            // Start from the beginning of the block holding the current position
+            long startPosition = position();
+            this.bufferStartOffset = startPosition - startPosition % Buffer.ALIGNMENT;
+            int head = (int) (startPosition - bufferStartOffset);
+            if (head > 0) {
+                ByteBuffer headBytes = ByteBuffer.allocate(head);
+                while (headBytes.hasRemaining()) {
+                    if (fc.read(headBytes, bufferStartOffset + headBytes.position()) <= 0) {
+                        throw new IOException(exMsg("Short read of the journal head")
+                                              .kv("file", filename).kv("position", startPosition).toString());
+                    }
+                }
+                headBytes.flip();
+                buffer.writeByteBuf(Unpooled.wrappedBuffer(headBytes));
+            }
+        } catch (IOException | RuntimeException e) {
+            // Leave the file channel open, the caller can still write the file without direct I/O
+            if (buffer != null) {
+                bufferPool.release(buffer);
+                buffer = null;
+            }
+            try {
+                nativeIO.close(fd);
+            } catch (NativeIOException ne) {
+                e.addSuppressed(ne);
+            }
+            ReferenceCountUtil.release(writeBuffer);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void write(ByteBuf src) throws IOException {
+        int len = src.readableBytes();
+        int copied = 0;
+        while (copied < len) {
+            int bytesToCopy = Math.min(len - copied, buffer.size() - buffer.position());
+            buffer.writeByteBuf(src.slice(src.readerIndex() + copied, bytesToCopy));
+            copied += bytesToCopy;
+
+            // if we have run out of buffer space, we should flush to the file
+            if (buffer.position() == buffer.size()) {
+                flush();
+            }
+        }
+        position += len;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        int dataEnd = buffer.position();
+        if (bufferStartOffset + dataEnd == writeBufferStartPosition.get()) {
+            // Nothing written since the last flush
+            return;
+        }
+
+        // The previous write may cover the block written again at the start of this one
+        waitForWrite(lastWrite);
+
+        int alignedEnd = Buffer.nextAlignment(dataEnd);
+        buffer.writeByteBuf(ZEROS.slice(0, alignedEnd - dataEnd));
+        long writeOffset = bufferStartOffset;
+        Buffer writtenBuffer = buffer;
+        CompletableFuture<Integer> write;
+        try {
+            write = ring.pwrite(fd, writtenBuffer.pointer(), alignedEnd, writeOffset);
+            ring.submit();
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg("Write error")
+                                  .kv("file", filename)
+                                  .kv("offset", writeOffset)
+                                  .kv("writeSize", alignedEnd)
+                                  .kv("errno", ne.getErrno()).toString(), ne);
+        }
+
+        // Keep the last partial block in a new buffer, it will be written again with the data following it
+        int tailStart = dataEnd - dataEnd % Buffer.ALIGNMENT;
+        int tailLength = dataEnd - tailStart;
+        buffer = bufferPool.acquire();
+        buffer.reset();
+        ByteBuf tail = Unpooled.buffer(tailLength);
+        try {
+            writtenBuffer.readByteBuf(tail, tailStart, tailLength);
+            buffer.writeByteBuf(tail);
+        } finally {
+            tail.release();
+        }
+
+        // Only released once the tail is copied, the pool may hand it over again
+        lastWrite = write.handle((ret, cause) -> {
+            bufferPool.release(writtenBuffer);
+            if (cause != null) {
+                throw new CompletionException(writeError(writeOffset, alignedEnd, cause));
+            } else if (ret != alignedEnd) {
+                throw new CompletionException(new IOException(exMsg("Incomplete write")
+                                                              .kv("file", filename)
+                                                              .kv("offset", writeOffset)
+                                                              .kv("writeSize", alignedEnd)
+                                                              .kv("bytesWritten", ret).toString()));
+            }
+            return ret;
+        });
+
+        bufferStartOffset += tailStart;
+        writeBufferStartPosition.set(bufferStartOffset + tailLength);
+    }
+
+    @Override
+    public long forceWrite(boolean forceMetadata) throws IOException {
+        // The data bypassed the page cache, but the device cache and the file metadata still need a sync
+        long positionForceWrite = writeBufferStartPosition.get();
+        // The write of the last flush before positionForceWrite, or a later one
+        CompletableFuture<Integer> write = lastWrite;
+        CompletableFuture<Integer> fsync;
+        try {
+            fsync = ring.fsync(fd);
+            ring.submit();
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString(), ne);
+        }
+        // The fsync starts after the queued writes of the file, but does not fail with them
+        waitForWrite(write);
+        try {
+            fsync.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException(exMsg("Interrupted while syncing").kv("file", filename).toString(), ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof NativeIOException) {
+                NativeIOException ne = (NativeIOException) cause;
+                throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                                      .kv("errno", ne.getErrno()).toString(), ne);
+            }
+            throw new IOException(exMsg("Sync error").kv("file", filename).toString(), cause);
+        }
+        return positionForceWrite;
+    }
+
+    private void waitForWrite(CompletableFuture<Integer> write) throws IOException {
+        try {
+            write.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException(exMsg("Interrupted while writing").kv("file", filename).toString(), ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException(exMsg("Write error").kv("file", filename).toString(), ee.getCause());
+        }
+    }
+
+    private IOException writeError(long offset, int writeSize, Throwable cause) {
+        if (cause instanceof NativeIOException) {
+            return new IOException(exMsg("Write error")
+                                   .kv("file", filename)
+                                   .kv("offset", offset)
+                                   .kv("writeSize", writeSize)
+                                   .kv("errno", ((NativeIOException) cause).getErrno()).toString(), cause);
+        }
+        return new IOException(exMsg("Write error")
+                               .kv("file", filename)
+                               .kv("offset", offset)
+                               .kv("writeSize", writeSize).toString(), cause);
+    }
+
+    /**
+     * Preallocate a range of the file with fallocate. The new blocks read as zeros.
+     *
+     * @return false if the range could not be preallocated, eg. if the filesystem does not support fallocate
+     */
+    boolean preallocate(long offset, long length) {
+        try {
+            nativeIO.fallocate(fd, 0, offset, length);
+            return true;
+        } catch (NativeIOException ne) {
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized int getNumOfBytesInWriteBuffer() {
+        return (int) (position - writeBufferStartPosition.get());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+
+        try {
+            // The buffer of the last write is released when it completes
+            waitForWrite(lastWrite);
+        } catch (IOException e) {
+            // The write failed, the file is closed anyway
+        }
+
+        try {
+            nativeIO.close(fd);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString(), ne);
+        } finally {
+            bufferPool.release(buffer);
+            buffer = null;
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+
+/**
+ * A pool of spare entry log files, kept in each ledger directory.
+ *
+ * <p>Spare files are empty, but have the disk space of a full entry log reserved with fallocate,
+ * without changing their size. A new entry log takes a spare file by renaming it, so that the
+ * rollover neither creates a new file nor allocates new blocks while it is written. The entry logs
+ * removed by the garbage collector are renamed and truncated, and become spare files again.
+ *
+ * <p>The pool is filled up when the entry logger starts. After that, new spare files are only
+ * created when a ledger directory has no spare file left, so that the pool has room for the
+ * recycled entry logs.
+ *
+ * <p>When fallocate is not available, the spare files are still recycled, but without any
+ * reserved space.
+ */
+@Slf4j
+class EntryLogFilePool {
+
+    static final String SPARE_FILE_SUFFIX = ".spare";
+
+    private final int filesPerDir;
+    private final long fileSize;
+    private final List<File> ledgerDirs;
+    private NativeIO nativeIO;
+
+    // ledger dir -> spare files of the dir
+    private final Map<File, Deque<File>> spareFiles = new HashMap<>();
+    private long nextSpareFileId = 0;
+
+    EntryLogFilePool(List<File> ledgerDirs, int filesPerDir, long fileSize) {
+        this.ledgerDirs = ledgerDirs;
+        this.filesPerDir = filesPerDir;
+        this.fileSize = fileSize;
+
+        this.nativeIO = filesPerDir > 0 ? new NativeIOImpl() : null;
+
+        for (File dir : ledgerDirs) {
+            Deque<File> files = new ArrayDeque<>();
+            File[] existing = dir.listFiles(file -> file.getName().endsWith(SPARE_FILE_SUFFIX));
+            if (existing != null) {
+                for (File f : existing) {
+                    nextSpareFileId = Math.max(nextSpareFileId, spareFileId(f) + 1);
+                    if (files.size() >= filesPerDir) {
+                        if (!f.delete()) {
+                            log.warn("Could not delete spare entry log file {}", f);
+                        }
+                    } else if (f.length() == 0) {
+                        files.add(f);
+                    } else if (truncate(f)) {
+                        // The bookie stopped while an entry log was being recycled
+                        log.info("Truncated spare entry log file {}", f);
+                        preallocate(f);
+                        files.add(f);
+                    }
+                }
+            }
+            spareFiles.put(dir, files);
+        }
+    }
+
+    boolean isEnabled() {
+        return filesPerDir > 0;
+    }
+
+    /**
+     * Take a spare file of a ledger directory and rename it as a new entry log.
+     *
+     * @return true if the new entry log has been created from a spare file
+     */
+    boolean take(File dir, File newLogFile) {
+        File spareFile;
+        synchronized (this) {
+            Deque<File> files = spareFiles.get(dir);
+            spareFile = files != null ? files.poll() : null;
+        }
+        if (spareFile == null) {
+            return false;
+        }
+        if (spareFile.length() > 0 && !truncate(spareFile)) {
+            return false;
+        }
+        if (!spareFile.renameTo(newLogFile)) {
+            log.warn("Could not rename spare entry log file {} to {}", spareFile, newLogFile);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Recycle an entry log which has been removed, as a spare file of its ledger directory.
+     *
+     * @return false if the pool is full and the entry log must be deleted
+     */
+    boolean recycle(File logFile) {
+        File dir = logFile.getParentFile();
+        File spareFile;
+        synchronized (this) {
+            Deque<File> files = spareFiles.get(dir);
+            if (files == null || files.size() >= filesPerDir) {
+                return false;
+            }
+            spareFile = new File(dir, Long.toHexString(nextSpareFileId++) + SPARE_FILE_SUFFIX);
+        }
+
+        if (!logFile.renameTo(spareFile)) {
+            log.warn("Could not rename entry log file {} to {}", logFile, spareFile);
+            return false;
+        }
+        // A crash before the truncation leaves a spare file with the content of the entry log, which is
+        // truncated when the pool is loaded again
+        if (!truncate(spareFile)) {
+            return true;
+        }
+        preallocate(spareFile);
+        add(dir, spareFile);
+        return true;
+    }
+
+    /**
+     * Create and preallocate new spare files, until each ledger directory has its count of spare files.
+     */
+    void fill() {
+        fill(filesPerDir);
+    }
+
+    /**
+     * Create and preallocate a new spare file in the ledger directories without any spare file.
+     */
+    void fillEmpty() {
+        fill(1);
+    }
+
+    private void fill(int minFiles) {
+        for (File dir : ledgerDirs) {
+            while (true) {
+                File spareFile;
+                synchronized (this) {
+                    if (spareFiles.get(dir).size() >= minFiles) {
+                        break;
+                    }
+                    spareFile = new File(dir, Long.toHexString(nextSpareFileId++) + SPARE_FILE_SUFFIX);
+                }
+                try {
+                    if (!spareFile.createNewFile()) {
+                        log.warn("Found existing spare entry log file {}", spareFile);
+                        continue;
+                    }
+                } catch (IOException e) {
+                    log.warn("Could not create spare entry log file {}", spareFile, e);
+                    break;
+                }
+                preallocate(spareFile);
+                add(dir, spareFile);
+            }
+        }
+    }
+
+    private synchronized void add(File dir, File spareFile) {
+        spareFiles.get(dir).add(spareFile);
+    }
+
+    synchronized int getSpareFilesCount(File dir) {
+        Deque<File> files = spareFiles.get(dir);
+        return files != null ? files.size() : 0;
+    }
+
+    private void preallocate(File spareFile) {
+        NativeIO nativeIO;
+        synchronized (this) {
+            nativeIO = this.nativeIO;
+        }
+        if (nativeIO == null) {
+            return;
+        }
+
+        int fd;
+        try {
+            fd = nativeIO.open(spareFile.getPath(), NativeIO.O_WRONLY, 00644);
+        } catch (NativeIOException e) {
+            log.warn("Could not open spare entry log file {}: {}", spareFile, e.getMessage());
+            return;
+        } catch (LinkageError e) {
+            log.warn("Unable to load NativeIO, spare entry log files will not be preallocated: {}", e.getMessage());
+            synchronized (this) {
+                this.nativeIO = null;
+            }
+            return;
+        }
+        try {
+            // Reserve the blocks without changing the size, the file still reads as an empty entry log
+            nativeIO.fallocate(fd, NativeIO.FALLOC_FL_KEEP_SIZE, 0, fileSize);
+        } catch (NativeIOException e) {
+            log.warn("Could not preallocate spare entry log file {}, preallocation is disabled: {}",
+                    spareFile, e.getMessage());
+            synchronized (this) {
+                this.nativeIO = null;
+            }
+        } finally {
+            try {
+                nativeIO.close(fd);
+            } catch (NativeIOException e) {
+                log.warn("Could not close spare entry log file {}: {}", spareFile, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Truncate a spare file, or delete it if it cannot be truncated.
+     *
+     * @return true if the spare file has been truncated
+     */
+    private static boolean truncate(File spareFile) {
+        try (RandomAccessFile raf = new RandomAccessFile(spareFile, "rw")) {
+            raf.setLength(0);
+            return true;
+        } catch (IOException e) {
+            log.warn("Could not truncate spare entry log file {}", spareFile, e);
+            if (!spareFile.delete()) {
+                log.warn("Could not delete spare entry log file {}", spareFile);
+            }
+            return false;
+        }
+    }
+
+    private static long spareFileId(File spareFile) {
+        String name = spareFile.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SPARE_FILE_SUFFIX.length()), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
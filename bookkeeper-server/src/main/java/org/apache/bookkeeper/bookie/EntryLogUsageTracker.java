@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+import org.apache.commons.lang3.mutable.MutableLong;
+
+/**
+ * Keep the remaining size of the entry logs up to date as the ledgers are deleted.
+ *
+ * <p>For each ledger, the tracker knows the entry logs holding its entries and their size, so the
+ * deletion of a ledger is applied as a delta to the remaining size of these entry logs only. The
+ * garbage collector then revisits the entry logs modified since its previous cycle, instead of
+ * checking every ledger of every entry log.
+ */
+class EntryLogUsageTracker {
+
+    // ledgerId -> (entryLogId -> size of the ledger in the entry log)
+    private final ConcurrentLongHashMap<ConcurrentLongLongHashMap> ledgerLogs =
+            ConcurrentLongHashMap.<ConcurrentLongLongHashMap>newBuilder()
+                    .expectedItems(4096)
+                    .concurrencyLevel(1)
+                    .build();
+
+    // entryLogId -> ledgers tracked in ledgerLogs for the entry log
+    private final ConcurrentLongHashMap<ConcurrentLongHashSet> logLedgers =
+            ConcurrentLongHashMap.<ConcurrentLongHashSet>newBuilder()
+                    .expectedItems(1024)
+                    .concurrencyLevel(1)
+                    .build();
+
+    // entryLogId -> remaining size of the entry log
+    private final ConcurrentLongLongHashMap remainingSizes = ConcurrentLongLongHashMap.newBuilder()
+            .expectedItems(1024)
+            .concurrencyLevel(1)
+            .build();
+
+    // entry logs whose remaining size changed since the last call to drainModifiedEntryLogs()
+    private final ConcurrentLongHashSet modifiedLogs = ConcurrentLongHashSet.newBuilder()
+            .expectedItems(256)
+            .concurrencyLevel(1)
+            .build();
+
+    private long totalRemainingSize = 0;
+
+    /**
+     * Start tracking an entry log, or refresh its ledgers and remaining size from its metadata.
+     */
+    synchronized void addEntryLog(EntryLogMetadata meta) {
+        long entryLogId = meta.getEntryLogId();
+        // The ledgers removed from the metadata since the entry log was tracked must be forgotten
+        untrackLedgers(entryLogId);
+        ConcurrentLongHashSet ledgers = ConcurrentLongHashSet.newBuilder()
+                .expectedItems(Math.max((int) meta.getLedgersMap().size(), 4))
+                .concurrencyLevel(1)
+                .build();
+        meta.getLedgersMap().forEach((ledgerId, size) -> {
+            ledgerLogs.computeIfAbsent(ledgerId, k -> ConcurrentLongLongHashMap.newBuilder()
+                    .expectedItems(4)
+                    .concurrencyLevel(1)
+                    .build())
+                    .put(entryLogId, size);
+            ledgers.add(ledgerId);
+        });
+        logLedgers.put(entryLogId, ledgers);
+        long previousSize = remainingSizes.put(entryLogId, meta.getRemainingSize());
+        totalRemainingSize += meta.getRemainingSize() - Math.max(previousSize, 0L);
+    }
+
+    /**
+     * Stop tracking an entry log.
+     */
+    synchronized void removeEntryLog(EntryLogMetadata meta) {
+        long entryLogId = meta.getEntryLogId();
+        untrackLedgers(entryLogId);
+        long remainingSize = remainingSizes.remove(entryLogId);
+        if (remainingSize > 0) {
+            totalRemainingSize -= remainingSize;
+        }
+        modifiedLogs.remove(entryLogId);
+    }
+
+    private void untrackLedgers(long entryLogId) {
+        ConcurrentLongHashSet ledgers = logLedgers.remove(entryLogId);
+        if (ledgers == null) {
+            return;
+        }
+        ledgers.forEach(ledgerId -> {
+            ConcurrentLongLongHashMap logs = ledgerLogs.get(ledgerId);
+            if (logs != null) {
+                logs.remove(entryLogId);
+                if (logs.isEmpty()) {
+                    ledgerLogs.remove(ledgerId, logs);
+                }
+            }
+        });
+    }
+
+    /**
+     * Apply the deletion of a ledger to the entry logs holding its entries.
+     */
+    synchronized void ledgerDeleted(long ledgerId) {
+        ConcurrentLongLongHashMap logs = ledgerLogs.remove(ledgerId);
+        if (logs == null) {
+            return;
+        }
+        MutableLong deletedSize = new MutableLong(0L);
+        logs.forEach((entryLogId, size) -> {
+            ConcurrentLongHashSet ledgers = logLedgers.get(entryLogId);
+            if (ledgers != null) {
+                ledgers.remove(ledgerId);
+            }
+            long remainingSize = remainingSizes.get(entryLogId);
+            if (remainingSize >= 0) {
+                remainingSizes.put(entryLogId, Math.max(remainingSize - size, 0L));
+                deletedSize.add(Math.min(remainingSize, size));
+                modifiedLogs.add(entryLogId);
+            }
+        });
+        totalRemainingSize -= deletedSize.longValue();
+    }
+
+    /**
+     * Get, and forget, the entry logs modified since the previous call.
+     */
+    synchronized List<Long> drainModifiedEntryLogs() {
+        List<Long> entryLogIds = new ArrayList<>((int) modifiedLogs.size());
+        modifiedLogs.forEach(entryLogIds::add);
+        modifiedLogs.clear();
+        return entryLogIds;
+    }
+
+    synchronized long getTotalRemainingSize() {
+        return totalRemainingSize;
+    }
+
+    synchronized void clear() {
+        ledgerLogs.clear();
+        logLedgers.clear();
+        remainingSizes.clear();
+        modifiedLogs.clear();
+        totalRemainingSize = 0;
+    }
+}
@@ -41,6 +41,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import lombok.extern.slf4j.Slf4j;
@@ -63,6 +64,7 @@ class EntryLoggerAllocator {
     private final DefaultEntryLogger.RecentEntryLogsStatus recentlyCreatedEntryLogsStatus;
     private final boolean entryLogPreAllocationEnabled;
     private final ByteBufAllocator byteBufAllocator;
+    private final EntryLogFilePool spareFilePool;
     final ByteBuf logfileHeader = Unpooled.buffer(DefaultEntryLogger.LOGFILE_HEADER_SIZE);
     private volatile long writingLogId = -1;
     private volatile long writingCompactingLogId = -1;
@@ -77,6 +79,9 @@ class EntryLoggerAllocator {
         this.recentlyCreatedEntryLogsStatus = recentlyCreatedEntryLogsStatus;
         this.entryLogPreAllocationEnabled = conf.isEntryLogFilePreAllocationEnabled();
         this.allocatorExecutor = Executors.newSingleThreadExecutor();
+        this.spareFilePool = new EntryLogFilePool(ledgerDirsManager.getAllLedgerDirs(),
+                conf.getEntryLogSpareFilesCount(), conf.getEntryLogSizeLimit());
+        fillSpareFiles(spareFilePool::fill);
 
         // Initialize the entry log header buffer. This cannot be a static object
         // since in our unit tests, we run multiple Bookies and thus EntryLoggers
@@ -180,6 +185,7 @@ class EntryLoggerAllocator {
         } while (testLogFile == null);
 
         File newLogFile = new File(dirForNextEntryLog, logFileName);
+        boolean recycled = spareFilePool.isEnabled() && spareFilePool.take(dirForNextEntryLog, newLogFile);
         FileChannel channel = new RandomAccessFile(newLogFile, "rw").getChannel();
 
         BufferedLogChannel logChannel = new BufferedLogChannel(byteBufAllocator, channel, conf.getWriteBufferBytes(),
@@ -195,10 +201,43 @@ class EntryLoggerAllocator {
             recentlyCreatedEntryLogsStatus.createdEntryLog(preallocatedLogId);
         }
 
-        log.info("Created new entry log file {} for logId {}.", newLogFile, preallocatedLogId);
+        if (recycled) {
+            fillSpareFiles(spareFilePool::fillEmpty);
+        }
+
+        log.info("Created new entry log file {} for logId {}{}.", newLogFile, preallocatedLogId,
+                recycled ? " from a spare file" : "");
         return logChannel;
     }
 
+    /**
+     * Recycle a removed entry log as a spare file, instead of deleting it.
+     *
+     * @return false if the entry log has not been recycled and must be deleted
+     */
+    boolean recycleEntryLog(File logFile) {
+        return spareFilePool.isEnabled() && spareFilePool.recycle(logFile);
+    }
+
+    /**
+     * Create the missing spare files in background.
+     */
+    private void fillSpareFiles(Runnable fill) {
+        if (!spareFilePool.isEnabled()) {
+            return;
+        }
+        try {
+            allocatorExecutor.execute(fill);
+        } catch (RejectedExecutionException e) {
+            log.debug("Allocator is stopped, not creating the spare entry log files");
+        }
+    }
+
+    @VisibleForTesting
+    EntryLogFilePool getSpareFilePool() {
+        return spareFilePool;
+    }
+
 
     private synchronized void closePreAllocateLog() {
         if (preallocation != null) {
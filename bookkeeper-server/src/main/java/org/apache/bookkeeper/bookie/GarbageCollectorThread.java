@@ -30,6 +30,7 @@ import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
@@ -126,6 +127,16 @@ public class GarbageCollectorThread implements Runnable {
     private static final AtomicLong threadNum = new AtomicLong(0);
     final AbstractLogCompactor.Throttler throttler;
 
+    // Order the entry logs to compact by reclaimed space per byte of I/O, instead of by usage
+    final boolean costBasedCompaction;
+    // I/O budget shared by the compaction and the foreground writes, null if not configured
+    final CompactionIOBudget ioBudget;
+
+    // Entry logs holding each ledger, to only revisit the entry logs of the deleted ledgers, null if not enabled
+    final EntryLogUsageTracker usageTracker;
+    // Whether the next cycle has to check all the entry logs, and rebuild the usage tracker
+    private volatile boolean checkAllEntryLogs = true;
+
     /**
      * Create a garbage collector thread.
      *
@@ -180,6 +191,7 @@ public class GarbageCollectorThread implements Runnable {
             () -> garbageCollector.getNumActiveLedgers()
         );
 
+        this.usageTracker = conf.isGcIncrementalEntryLogUsageEnabled() ? new EntryLogUsageTracker() : null;
         this.garbageCleaner = ledgerId -> {
             try {
                 if (LOG.isDebugEnabled()) {
@@ -187,6 +199,9 @@ public class GarbageCollectorThread implements Runnable {
                 }
                 gcStats.getDeletedLedgerCounter().inc();
                 ledgerStorage.deleteLedger(ledgerId);
+                if (usageTracker != null) {
+                    usageTracker.ledgerDeleted(ledgerId);
+                }
             } catch (IOException e) {
                 LOG.error("Exception when deleting the ledger index file on the Bookie: ", e);
             }
@@ -223,6 +238,14 @@ public class GarbageCollectorThread implements Runnable {
         }
 
         this.throttler = new AbstractLogCompactor.Throttler(conf);
+        this.costBasedCompaction = conf.isCostBasedCompactionEnabled();
+        if (conf.getCompactionIOBudgetMB() > 0) {
+            this.ioBudget = new CompactionIOBudget(conf.getCompactionIOBudgetMB() * 1024L * 1024L);
+            this.throttler.setIOBudget(ioBudget);
+            this.compactor.throttler.setIOBudget(ioBudget);
+        } else {
+            this.ioBudget = null;
+        }
         if (minorCompactionInterval > 0 && minorCompactionThreshold > 0) {
             if (minorCompactionThreshold > 1.0d) {
                 throw new IOException("Invalid minor compaction threshold "
@@ -414,6 +437,11 @@ public class GarbageCollectorThread implements Runnable {
         // Recover and clean up previous state if using transactional compaction
         compactor.cleanUpAndRecover();
 
+        if (force) {
+            // a forced cycle checks all the entry logs, whatever the usage tracker recorded
+            checkAllEntryLogs = true;
+        }
+
         try {
             // gc inactive/deleted ledgers
             // this is used in extractMetaFromEntryLogs to calculate the usage of entry log
@@ -490,38 +518,73 @@ public class GarbageCollectorThread implements Runnable {
      * Garbage collect those entry loggers which are not associated with any active ledgers.
      */
     private void doGcEntryLogs() throws EntryLogMetadataMapException {
+        if (usageTracker != null && !checkAllEntryLogs) {
+            doGcModifiedEntryLogs();
+            return;
+        }
+        if (usageTracker != null) {
+            usageTracker.clear();
+        }
+
         // Get a cumulative count, don't update until complete
         AtomicLong totalEntryLogSizeAcc = new AtomicLong(0L);
 
         // Loop through all of the entry logs and remove the non-active ledgers.
         entryLogMetaMap.forEach((entryLogId, meta) -> {
-            try {
-                boolean modified = removeIfLedgerNotExists(meta);
-                if (meta.isEmpty()) {
-                    // This means the entry log is not associated with any active
-                    // ledgers anymore.
-                    // We can remove this entry log file now.
-                    LOG.info("Deleting entryLogId {} as it has no active ledgers!", entryLogId);
-                    if (removeEntryLog(entryLogId)) {
-                        gcStats.getReclaimedSpaceViaDeletes().addCount(meta.getTotalSize());
-                    } else {
-                        gcStats.getReclaimFailedToDelete().inc();
-                    }
-                } else if (modified) {
-                    // update entryLogMetaMap only when the meta modified.
-                    entryLogMetaMap.put(meta.getEntryLogId(), meta);
-                }
-            } catch (EntryLogMetadataMapException e) {
-                // Ignore and continue because ledger will not be cleaned up
-                // from entry-logger in this pass and will be taken care in next
-                // schedule task
-                LOG.warn("Failed to remove ledger from entry-log metadata {}", entryLogId, e);
-            }
-           totalEntryLogSizeAcc.getAndAdd(meta.getRemainingSize());
+            gcEntryLog(entryLogId, meta);
+            totalEntryLogSizeAcc.getAndAdd(meta.getRemainingSize());
         });
 
         this.totalEntryLogSize = totalEntryLogSizeAcc.get();
         this.numActiveEntryLogs = entryLogMetaMap.size();
+        checkAllEntryLogs = false;
+    }
+
+    /**
+     * Garbage collect the entry logs holding the ledgers deleted since the previous cycle, as
+     * recorded by the usage tracker.
+     */
+    private void doGcModifiedEntryLogs() throws EntryLogMetadataMapException {
+        List<Long> entryLogIds = usageTracker.drainModifiedEntryLogs();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Revisiting {} entry logs with deleted ledgers", entryLogIds.size());
+        }
+        for (long entryLogId : entryLogIds) {
+            entryLogMetaMap.forKey(entryLogId, this::gcEntryLog);
+        }
+
+        this.totalEntryLogSize = usageTracker.getTotalRemainingSize();
+        this.numActiveEntryLogs = entryLogMetaMap.size();
+    }
+
+    private void gcEntryLog(long entryLogId, EntryLogMetadata meta) {
+        try {
+            boolean modified = removeIfLedgerNotExists(meta);
+            if (meta.isEmpty()) {
+                // This means the entry log is not associated with any active
+                // ledgers anymore.
+                // We can remove this entry log file now.
+                LOG.info("Deleting entryLogId {} as it has no active ledgers!", entryLogId);
+                if (removeEntryLog(entryLogId)) {
+                    gcStats.getReclaimedSpaceViaDeletes().addCount(meta.getTotalSize());
+                } else {
+                    gcStats.getReclaimFailedToDelete().inc();
+                }
+            } else {
+                if (modified) {
+                    // update entryLogMetaMap only when the meta modified.
+                    entryLogMetaMap.put(meta.getEntryLogId(), meta);
+                }
+                if (usageTracker != null) {
+                    usageTracker.addEntryLog(meta);
+                }
+            }
+        } catch (EntryLogMetadataMapException e) {
+            // Ignore and continue because ledger will not be cleaned up
+            // from entry-logger in this pass and will be taken care in next
+            // schedule task
+            LOG.warn("Failed to remove ledger from entry-log metadata {}", entryLogId, e);
+        }
     }
 
     private boolean removeIfLedgerNotExists(EntryLogMetadata meta) throws EntryLogMetadataMapException {
@@ -565,6 +628,8 @@ public class GarbageCollectorThread implements Runnable {
             compactableBuckets.add(new LinkedList<>());
         }
 
+        CompactionPlanner planner = costBasedCompaction ? new CompactionPlanner() : null;
+
         long start = System.currentTimeMillis();
         MutableLong end = new MutableLong(start);
         MutableLong timeDiff = new MutableLong(0);
@@ -589,7 +654,11 @@ public class GarbageCollectorThread implements Runnable {
                 return;
             }
 
-            compactableBuckets.get(bucketIndex).add(meta.getEntryLogId());
+            if (planner != null) {
+                planner.add(meta, usage);
+            } else {
+                compactableBuckets.get(bucketIndex).add(meta.getEntryLogId());
+            }
         });
 
         LOG.info(
@@ -604,6 +673,30 @@ public class GarbageCollectorThread implements Runnable {
         long lastPrintTimestamp = 0;
         AtomicInteger processedEntryLogCnt = new AtomicInteger(0);
 
+        if (planner != null) {
+            List<CompactionPlanner.Candidate> plan = planner.plan();
+            for (CompactionPlanner.Candidate candidate : plan) {
+                if (timeDiff.getValue() < maxTimeMillis) {
+                    end.setValue(System.currentTimeMillis());
+                    timeDiff.setValue(end.getValue() - start);
+                }
+
+                if ((maxTimeMillis > 0 && timeDiff.getValue() >= maxTimeMillis) || !running) {
+                    break;
+                }
+
+                if (System.currentTimeMillis() - lastPrintTimestamp >= MINUTE) {
+                    lastPrintTimestamp = System.currentTimeMillis();
+                    LOG.info("Compaction progress {} / {}, current compaction entryLogId: {}",
+                        processedEntryLogCnt.get(), plan.size(), candidate.entryLogId);
+                }
+                if (compactEntryLog(candidate.entryLogId, threshold)) {
+                    compactedBuckets[calculateUsageIndex(numBuckets, candidate.usage)]++;
+                    processedEntryLogCnt.getAndIncrement();
+                }
+            }
+        }
+
         stopCompaction:
         for (int currBucket = 0; currBucket <= maxBucket; currBucket++) {
             LinkedList<Long> entryLogIds = compactableBuckets.get(currBucket);
@@ -626,24 +719,10 @@ public class GarbageCollectorThread implements Runnable {
                     LOG.info("Compaction progress {} / {}, current compaction entryLogId: {}",
                         processedEntryLogCnt.get(), totalEntryLogIds, logId);
                 }
-                entryLogMetaMap.forKey(logId, (entryLogId, meta) -> {
-                    if (meta == null) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Metadata for entry log {} already deleted", logId);
-                        }
-                        return;
-                    }
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Compacting entry log {} with usage {} below threshold {}",
-                                meta.getEntryLogId(), meta.getUsage(), threshold);
-                    }
-
-                    long priorRemainingSize = meta.getRemainingSize();
-                    compactEntryLog(meta);
-                    gcStats.getReclaimedSpaceViaCompaction().addCount(meta.getTotalSize() - priorRemainingSize);
+                if (compactEntryLog(logId, threshold)) {
                     compactedBuckets[bucketIndex]++;
                     processedEntryLogCnt.getAndIncrement();
-                });
+                }
             }
         }
 
@@ -660,6 +739,43 @@ public class GarbageCollectorThread implements Runnable {
                 entryLogUsageBuckets, compactedBuckets);
     }
 
+    /**
+     * Compact an entry log, if its metadata still exists.
+     *
+     * @return true if the entry log was compacted
+     */
+    private boolean compactEntryLog(long logId, double threshold) throws EntryLogMetadataMapException {
+        MutableBoolean compacted = new MutableBoolean(false);
+        entryLogMetaMap.forKey(logId, (entryLogId, meta) -> {
+            if (meta == null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Metadata for entry log {} already deleted", logId);
+                }
+                return;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Compacting entry log {} with usage {} below threshold {}",
+                        meta.getEntryLogId(), meta.getUsage(), threshold);
+            }
+
+            long priorRemainingSize = meta.getRemainingSize();
+            compactEntryLog(meta);
+            gcStats.getReclaimedSpaceViaCompaction().addCount(meta.getTotalSize() - priorRemainingSize);
+            compacted.setTrue();
+        });
+        return compacted.booleanValue();
+    }
+
+    /**
+     * Account the bytes written by the foreground traffic of the ledger storage, the compaction
+     * yields to them when an I/O budget is configured.
+     */
+    public void recordForegroundBytes(long bytes) {
+        if (ioBudget != null) {
+            ioBudget.recordForegroundBytes(bytes);
+        }
+    }
+
     /**
      * Calculate the index for the batch based on the usage between 0 and 1.
      *
@@ -695,6 +811,7 @@ public class GarbageCollectorThread implements Runnable {
 
         // Interrupt GC executor thread
         gcExecutor.shutdownNow();
+        garbageCollector.close();
         try {
             entryLogMetaMap.close();
         } catch (Exception e) {
@@ -713,6 +830,9 @@ public class GarbageCollectorThread implements Runnable {
         // remove entry log file successfully
         if (entryLogger.removeEntryLog(entryLogId)) {
             LOG.info("Removing entry log metadata for {}", entryLogId);
+            if (usageTracker != null) {
+                entryLogMetaMap.forKey(entryLogId, (logId, meta) -> usageTracker.removeEntryLog(meta));
+            }
             entryLogMetaMap.remove(entryLogId);
             return true;
         }
@@ -785,6 +905,9 @@ public class GarbageCollectorThread implements Runnable {
                     }
                 } else {
                     entryLogMetaMap.put(entryLogId, entryLogMeta);
+                    if (usageTracker != null) {
+                        usageTracker.addEntryLog(entryLogMeta);
+                    }
                 }
             } catch (IOException | RuntimeException e) {
                 LOG.warn("Premature exception when processing " + entryLogId
@@ -793,6 +916,14 @@ public class GarbageCollectorThread implements Runnable {
         }
     }
 
+    /**
+     * Share the scan of the ledgers of the metadata store with the garbage collectors of the other
+     * ledger directories.
+     */
+    public void setActiveLedgersSnapshot(ActiveLedgersSnapshot activeLedgersSnapshot) {
+        garbageCollector.setActiveLedgersSnapshot(activeLedgersSnapshot);
+    }
+
     CompactableLedgerStorage getLedgerStorage() {
         return ledgerStorage;
     }
@@ -556,7 +556,9 @@ public class InterleavedLedgerStorage implements CompactableLedgerStorage, Entry
         /*
          * Log the entry
          */
+        int entrySize = entry.readableBytes();
         long pos = entryLogger.addEntry(ledgerId, entry, rollLog);
+        gcThread.recordForegroundBytes(entrySize);
 
         /*
          * Set offset of entry id to be the current ledger position
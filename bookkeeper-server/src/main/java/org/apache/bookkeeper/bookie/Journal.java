@@ -32,6 +32,7 @@ import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -41,16 +42,24 @@ import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
 import org.apache.bookkeeper.bookie.stats.JournalStats;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.Buffer;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.BufferPool;
 import org.apache.bookkeeper.common.collections.BatchedArrayBlockingQueue;
 import org.apache.bookkeeper.common.collections.BatchedBlockingQueue;
 import org.apache.bookkeeper.common.collections.BlockingMpscQueue;
 import org.apache.bookkeeper.common.collections.RecyclableArrayList;
 import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.bookkeeper.common.util.nativeio.NativeIORing;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.proto.BookieRequestHandler;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
@@ -92,6 +101,10 @@ public class Journal implements CheckpointSource {
                 int capacity) -> new BufferedChannel(UnpooledByteBufAllocator.DEFAULT, fc, capacity);
 
         BufferedChannel create(FileChannel fc, int capacity) throws IOException;
+
+        default BufferedChannel create(File file, FileChannel fc, int capacity) throws IOException {
+            return create(fc, capacity);
+        }
     }
 
 
@@ -541,8 +554,9 @@ public class Journal implements CheckpointSource {
             long fsyncStartTime = MathUtils.nowInNano();
             try {
                 lastRequest.flushFileToDisk();
-                journalStats.getJournalSyncStats().registerSuccessfulEvent(MathUtils.elapsedNanos(fsyncStartTime),
-                        TimeUnit.NANOSECONDS);
+                long fsyncLatencyNanos = MathUtils.elapsedNanos(fsyncStartTime);
+                journalStats.getJournalSyncStats().registerSuccessfulEvent(fsyncLatencyNanos, TimeUnit.NANOSECONDS);
+                groupCommitStrategy.onSync(fsyncLatencyNanos);
                 lastLogMark.setCurLogMark(lastRequest.logId, lastRequest.lastFlushedPosition);
             } catch (IOException ioe) {
                 journalStats.getJournalSyncStats()
@@ -587,6 +601,8 @@ public class Journal implements CheckpointSource {
 
     static final long MB = 1024 * 1024L;
     static final int KB = 1024;
+    // aligned buffers of the journal files written with direct I/O
+    static final int DIRECT_IO_BUFFERS = 4;
     // max journal file size
     final long maxJournalSize;
     // pre-allocation size for the journal files
@@ -601,16 +617,20 @@ public class Journal implements CheckpointSource {
     final ForceWriteThread forceWriteThread;
     final FileChannelProvider fileChannelProvider;
 
-    // Time after which we will stop grouping and issue the flush
-    private final long maxGroupWaitInNanos;
-    // Threshold after which we flush any buffered journal entries
-    private final long bufferedEntriesThreshold;
-    // Threshold after which we flush any buffered journal writes
-    private final long bufferedWritesThreshold;
+    // Decides the max wait and the thresholds after which we flush the buffered journal entries
+    final JournalGroupCommitStrategy groupCommitStrategy;
     // should we flush if the queue is empty
     private final boolean flushWhenQueueEmpty;
     // should we hint the filesystem to remove pages from cache after force write
     private final boolean removePagesFromCache;
+    // should we write the journal files with direct I/O, it is disabled if direct I/O fails
+    private volatile boolean journalDirectIO;
+    private final NativeIO nativeIO;
+    // aligned buffers of the journal files written with direct I/O
+    private final BufferPool directIOBufferPool;
+    // ring submitting the direct I/O writes and fsyncs, and the thread of the blocking ring
+    private final NativeIORing directIORing;
+    private final ExecutorService directIOExecutor;
     private final int journalFormatVersionToWrite;
     private final int journalAlignmentSize;
     // control PageCache flush interval when syncData disabled to reduce disk io util
@@ -627,6 +647,8 @@ public class Journal implements CheckpointSource {
 
     private final String lastMarkFileName;
 
+    private static final String STRIPE_PREFIX = "stripe-";
+
     private final Counter callbackTime;
     private final Counter journalTime;
     private static final String journalThreadName = "BookieJournal";
@@ -655,9 +677,19 @@ public class Journal implements CheckpointSource {
 
     public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
             LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger, ByteBufAllocator allocator) {
+        this(journalIndex, 0, journalDirectory, conf, ledgerDirsManager, statsLogger, allocator);
+    }
+
+    /**
+     * Create a journal writing a stripe of a journal directory. The journal directory of a stripe
+     * is given by {@link #getJournalStripeDirectory(File, int)}, and each stripe has its own last log mark.
+     */
+    public Journal(int journalIndex, int journalStripe, File journalDirectory, ServerConfiguration conf,
+            LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger, ByteBufAllocator allocator) {
         this.allocator = allocator;
 
-        StatsLogger journalStatsLogger = statsLogger.scopeLabel("journalIndex", String.valueOf(journalIndex));
+        StatsLogger journalStatsLogger = statsLogger.scopeLabel("journalIndex", String.valueOf(journalIndex))
+                .scopeLabel("journalStripe", String.valueOf(journalStripe));
 
         if (conf.isBusyWaitEnabled()) {
             // To achieve lower latency, use busy-wait blocking queue implementation
@@ -669,7 +701,8 @@ public class Journal implements CheckpointSource {
         }
 
         // Adjust the journal max memory in case there are multiple journals configured.
-        long journalMaxMemory = conf.getJournalMaxMemorySizeMb() / conf.getJournalDirNames().length * 1024 * 1024;
+        long journalMaxMemory = conf.getJournalMaxMemorySizeMb()
+                / ((long) conf.getJournalDirNames().length * conf.getJournalStripesPerDirectory()) * 1024 * 1024;
         this.memoryLimitController = new MemoryLimitController(journalMaxMemory);
         this.ledgerDirsManager = ledgerDirsManager;
         this.conf = conf;
@@ -681,9 +714,6 @@ public class Journal implements CheckpointSource {
         this.maxBackupJournals = conf.getMaxBackupJournals();
         this.forceWriteThread = new ForceWriteThread((__) -> this.interruptThread(),
                 conf.getJournalAdaptiveGroupWrites(), journalStatsLogger);
-        this.maxGroupWaitInNanos = TimeUnit.MILLISECONDS.toNanos(conf.getJournalMaxGroupWaitMSec());
-        this.bufferedWritesThreshold = conf.getJournalBufferedWritesThreshold();
-        this.bufferedEntriesThreshold = conf.getJournalBufferedEntriesThreshold();
         this.journalFormatVersionToWrite = conf.getJournalFormatVersionToWrite();
         this.journalAlignmentSize = conf.getJournalAlignmentSize();
         this.journalPageCacheFlushIntervalMSec = conf.getJournalPageCacheFlushIntervalMSec();
@@ -692,17 +722,42 @@ public class Journal implements CheckpointSource {
 
         this.journalTime = journalStatsLogger.getThreadScopedCounter("journal-thread-time");
 
-        // Unless there is a cap on the max wait (which requires group force writes)
-        // we cannot skip flushing for queue empty
-        this.flushWhenQueueEmpty = maxGroupWaitInNanos <= 0 || conf.getJournalFlushWhenQueueEmpty();
+        this.flushWhenQueueEmpty = conf.getJournalFlushWhenQueueEmpty();
 
         this.removePagesFromCache = conf.getJournalRemovePagesFromCache();
-        // read last log mark
-        if (conf.getJournalDirs().length == 1) {
-            lastMarkFileName = LAST_MARK_DEFAULT_NAME;
+
+        this.journalDirectIO = conf.getJournalDirectIO();
+        if (journalDirectIO) {
+            try {
+                this.nativeIO = new NativeIOImpl();
+                // The buffer being filled and the buffer being written, for the current journal file
+                // and for the file being rolled over
+                this.directIOBufferPool = new BufferPool(nativeIO, allocator,
+                        Buffer.nextAlignment(Math.max(journalWriteBufferSize, 2 * Buffer.ALIGNMENT)),
+                        DIRECT_IO_BUFFERS);
+            } catch (IOException e) {
+                LOG.error("Failed to allocate the journal direct I/O buffers");
+                throw new RuntimeException(e);
+            }
+            this.directIOExecutor = Executors.newSingleThreadExecutor(
+                    new DefaultThreadFactory("bookie-journal-direct-io"));
+            this.directIORing = newDirectIORing(nativeIO, conf.getJournalDirectIOIoUring(), directIOExecutor);
         } else {
-            lastMarkFileName = LAST_MARK_DEFAULT_NAME + "." + journalIndex;
+            this.nativeIO = null;
+            this.directIOBufferPool = null;
+            this.directIOExecutor = null;
+            this.directIORing = null;
+        }
+
+        // read last log mark
+        String markFileName = LAST_MARK_DEFAULT_NAME;
+        if (conf.getJournalDirs().length > 1) {
+            markFileName += "." + journalIndex;
         }
+        if (journalStripe > 0) {
+            markFileName += "." + STRIPE_PREFIX + journalStripe;
+        }
+        lastMarkFileName = markFileName;
         lastLogMark.readLog();
         if (LOG.isDebugEnabled()) {
             LOG.debug("Last Log Mark : {}", lastLogMark.getCurMark());
@@ -715,6 +770,14 @@ public class Journal implements CheckpointSource {
             throw new RuntimeException(e);
         }
 
+        try {
+            this.groupCommitStrategy = JournalGroupCommitStrategy.newStrategy(
+                    conf.getJournalGroupCommitStrategy(), conf);
+        } catch (IOException e) {
+            LOG.error("Failed to initiate journal group commit strategy: {}", conf.getJournalGroupCommitStrategy());
+            throw new RuntimeException(e);
+        }
+
         // Expose Stats
         this.journalStats = new JournalStats(journalStatsLogger, journalMaxMemory,
                 () -> memoryLimitController.currentUsage());
@@ -735,6 +798,52 @@ public class Journal implements CheckpointSource {
                 journalAliveListener);
     }
 
+    @VisibleForTesting
+    static Journal newJournal(int journalIndex, int journalStripe, File journalDirectory, ServerConfiguration conf,
+                              LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger,
+                              ByteBufAllocator allocator, JournalAliveListener journalAliveListener) {
+        Journal journal = new Journal(journalIndex, journalStripe, journalDirectory, conf, ledgerDirsManager,
+                statsLogger, allocator);
+        journal.journalAliveListener = journalAliveListener;
+        return journal;
+    }
+
+    /**
+     * Get the directory of a stripe of a journal directory. The first stripe writes
+     * in the journal directory itself, so a bookie without striping keeps its layout.
+     */
+    public static File getJournalStripeDirectory(File journalDirectory, int journalStripe) {
+        return journalStripe == 0 ? journalDirectory : new File(journalDirectory, STRIPE_PREFIX + journalStripe);
+    }
+
+    /**
+     * List the stripes of a journal directory found on disk, in increasing order. The first stripe
+     * is always listed, as it writes in the journal directory itself.
+     */
+    public static List<Integer> listJournalStripes(File journalDirectory) {
+        List<Integer> stripes = new ArrayList<>();
+        stripes.add(0);
+        File[] files = journalDirectory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if (!f.isDirectory() || !name.startsWith(STRIPE_PREFIX)) {
+                    continue;
+                }
+                try {
+                    int stripe = Integer.parseInt(name.substring(STRIPE_PREFIX.length()));
+                    if (stripe > 0) {
+                        stripes.add(stripe);
+                    }
+                } catch (NumberFormatException nfe) {
+                    LOG.warn("Ignoring directory {} in journal directory {}", name, journalDirectory);
+                }
+            }
+        }
+        Collections.sort(stripes);
+        return stripes;
+    }
+
     JournalStats getJournalStats() {
         return this.journalStats;
     }
@@ -993,6 +1102,16 @@ public class Journal implements CheckpointSource {
             long dequeueStartTime = 0L;
             long lastFlushTimeMs = System.currentTimeMillis();
 
+            // Time after which we will stop grouping and issue the flush
+            long maxGroupWaitInNanos = groupCommitStrategy.getMaxGroupWaitNanos();
+            // Threshold after which we flush any buffered journal writes
+            long bufferedWritesThreshold = groupCommitStrategy.getMaxGroupBytes();
+            // Threshold after which we flush any buffered journal entries
+            long bufferedEntriesThreshold = groupCommitStrategy.getMaxGroupEntries();
+            // Unless there is a cap on the max wait (which requires group force writes)
+            // we cannot skip flushing for queue empty
+            boolean flushWhenQueueEmpty = this.flushWhenQueueEmpty || maxGroupWaitInNanos <= 0;
+
             final ObjectHashSet<BookieRequestHandler> writeHandlers = new ObjectHashSet<>();
             QueueEntry[] localQueueEntries = new QueueEntry[conf.getJournalQueueSize()];
             int localQueueEntriesIdx = 0;
@@ -1132,6 +1251,11 @@ public class Journal implements CheckpointSource {
                             .registerSuccessfulValue(numEntriesToFlush);
                         journalStats.getForceWriteBatchBytesStats()
                             .registerSuccessfulValue(batchSize);
+                        journalStats.getGroupCommitWaitStats()
+                            .registerSuccessfulEvent(maxGroupWaitInNanos, TimeUnit.NANOSECONDS);
+                        journalStats.getGroupCommitBatchBytesStats()
+                            .registerSuccessfulValue(bufferedWritesThreshold);
+                        groupCommitStrategy.onBatchWritten(toFlush.size(), batchSize);
                         boolean shouldRolloverJournal = (lastFlushPosition > maxJournalSize);
                         // Trigger data sync to disk in the "Force-Write" thread.
                         // Trigger data sync to disk has three situations:
@@ -1154,6 +1278,11 @@ public class Journal implements CheckpointSource {
                         numEntriesToFlush = 0;
 
                         batchSize = 0L;
+
+                        maxGroupWaitInNanos = groupCommitStrategy.getMaxGroupWaitNanos();
+                        bufferedWritesThreshold = groupCommitStrategy.getMaxGroupBytes();
+                        bufferedEntriesThreshold = groupCommitStrategy.getMaxGroupEntries();
+                        flushWhenQueueEmpty = this.flushWhenQueueEmpty || maxGroupWaitInNanos <= 0;
                         // check whether journal file is over file limit
                         if (shouldRolloverJournal) {
                             // if the journal file is rolled over, the journal file will be closed after last
@@ -1235,8 +1364,45 @@ public class Journal implements CheckpointSource {
         LOG.info("Journal exited loop!");
     }
 
+    private static NativeIORing newDirectIORing(NativeIO nativeIO, boolean ioUringEnabled, ExecutorService executor) {
+        if (ioUringEnabled) {
+            try {
+                return nativeIO.newIoUringRing(4 * DIRECT_IO_BUFFERS);
+            } catch (NativeIOException | RuntimeException | LinkageError e) {
+                LOG.warn("io_uring is not available for the journal, falling back to blocking writes: {}",
+                        e.getMessage());
+            }
+        }
+        return nativeIO.newBlockingRing(executor);
+    }
+
     public BufferedChannelBuilder getBufferedChannelBuilder() {
-        return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
+        if (directIOBufferPool == null) {
+            return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
+        }
+
+        return new BufferedChannelBuilder() {
+            @Override
+            public BufferedChannel create(FileChannel fc, int capacity) throws IOException {
+                return new BufferedChannel(allocator, fc, capacity);
+            }
+
+            @Override
+            public BufferedChannel create(File file, FileChannel fc, int capacity) throws IOException {
+                if (journalDirectIO) {
+                    try {
+                        return new DirectJournalBufferedChannel(nativeIO, directIORing, directIOBufferPool,
+                                allocator, file, fc);
+                    } catch (IOException | RuntimeException | LinkageError e) {
+                        // eg. the filesystem does not support O_DIRECT, or the native library is not available
+                        LOG.warn("Failed to open journal file {} with direct I/O,"
+                                + " falling back to buffered writes", file, e);
+                        journalDirectIO = false;
+                    }
+                }
+                return create(fc, capacity);
+            }
+        };
     }
 
     /**
@@ -1257,6 +1423,11 @@ public class Journal implements CheckpointSource {
             running = false;
             this.interruptThread();
             this.joinThread();
+            if (directIOBufferPool != null) {
+                directIORing.close();
+                directIOExecutor.shutdown();
+                directIOBufferPool.close();
+            }
             LOG.info("Finished Shutting down Journal thread");
         } catch (IOException | InterruptedException ie) {
             Thread.currentThread().interrupt();
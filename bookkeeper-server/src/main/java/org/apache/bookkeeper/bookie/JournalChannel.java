@@ -185,11 +185,11 @@ class JournalChannel implements Closeable {
             }
             fc = channel.getFileChannel();
             formatVersion = formatVersionToWrite;
-            writeHeader(bcBuilder, writeBufferSize);
+            writeHeader(bcBuilder, fn, writeBufferSize);
         } else if (reuseFile) { // Open an existing journal to write, it needs fileChannelProvider support reuse file.
             fc = channel.getFileChannel();
             formatVersion = formatVersionToWrite;
-            writeHeader(bcBuilder, writeBufferSize);
+            writeHeader(bcBuilder, fn, writeBufferSize);
         } else {  // open an existing file to read.
             fc = channel.getFileChannel();
             bc = null; // readonly
@@ -247,7 +247,7 @@ class JournalChannel implements Closeable {
         }
     }
 
-    private void writeHeader(Journal.BufferedChannelBuilder bcBuilder,
+    private void writeHeader(Journal.BufferedChannelBuilder bcBuilder, File fn,
                              int writeBufferSize) throws IOException {
         int headerSize = (V4 == formatVersion) ? VERSION_HEADER_SIZE : HEADER_SIZE;
         ByteBuffer bb = ByteBuffer.allocate(headerSize);
@@ -258,9 +258,18 @@ class JournalChannel implements Closeable {
         bb.clear();
         fc.write(bb);
 
-        bc = bcBuilder.create(fc, writeBufferSize);
+        bc = bcBuilder.create(fn, fc, writeBufferSize);
         forceWrite(true);
         nextPrealloc = this.preAllocSize;
+        preAllocate();
+    }
+
+    private void preAllocate() throws IOException {
+        if (bc instanceof DirectJournalBufferedChannel
+                && ((DirectJournalBufferedChannel) bc).preallocate(nextPrealloc - preAllocSize, preAllocSize)) {
+            return;
+        }
+        zeros.clear();
         fc.write(zeros, nextPrealloc - journalAlignSize);
     }
 
@@ -285,8 +294,7 @@ class JournalChannel implements Closeable {
     void preAllocIfNeeded(long size) throws IOException {
         if (bc.position() + size > nextPrealloc) {
             nextPrealloc += preAllocSize;
-            zeros.clear();
-            fc.write(zeros, nextPrealloc - journalAlignSize);
+            preAllocate();
         }
     }
 
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.IOException;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+
+/**
+ * Decide how the journal groups the added entries before flushing them and
+ * issuing a force write.
+ *
+ * <p>The journal thread asks for the current limits after each flush. A batch is
+ * flushed when its oldest entry has waited for {@link #getMaxGroupWaitNanos()}, when
+ * it exceeds {@link #getMaxGroupBytes()} or {@link #getMaxGroupEntries()}, or when the
+ * queue is empty and no wait is allowed.
+ */
+public interface JournalGroupCommitStrategy {
+
+    /**
+     * Create the strategy with the given class name. The class must have a public
+     * constructor taking the {@link ServerConfiguration}.
+     *
+     * @param strategyClassName class name of the strategy
+     * @param conf server configuration
+     * @return the group commit strategy
+     * @throws IOException if the strategy cannot be instantiated
+     */
+    static JournalGroupCommitStrategy newStrategy(String strategyClassName, ServerConfiguration conf)
+            throws IOException {
+        try {
+            Class<?> strategyClass = Class.forName(strategyClassName);
+            Object obj = strategyClass.getConstructor(ServerConfiguration.class).newInstance(conf);
+            return (JournalGroupCommitStrategy) obj;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Max time the oldest entry of a batch can wait before the batch is flushed. A value
+     * lower or equal than 0 means that the batch is flushed as soon as the queue is empty.
+     */
+    long getMaxGroupWaitNanos();
+
+    /**
+     * Size of the buffered writes after which the batch is flushed.
+     */
+    long getMaxGroupBytes();
+
+    /**
+     * Number of entries after which the batch is flushed. A value lower or equal than 0
+     * means no limit.
+     */
+    long getMaxGroupEntries();
+
+    /**
+     * Notify that a batch has been written to the journal file. Called by the journal thread.
+     *
+     * @param entries number of entries of the batch
+     * @param bytes size of the batch
+     */
+    default void onBatchWritten(int entries, long bytes) {
+    }
+
+    /**
+     * Notify that the journal has been synced to the disk. Called by the force write thread.
+     *
+     * @param syncLatencyNanos time spent in the fsync
+     */
+    default void onSync(long syncLatencyNanos) {
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+
+/**
+ * Applies the records read from the journals to the ledger storage with several threads.
+ *
+ * <p>The journal files are still read sequentially by a single thread, which only copies each
+ * record and hands it to an {@link OrderedExecutor}. The records of a ledger are processed in
+ * the journal order by the same thread, so a ledger key is always applied before the entries and
+ * the fence or explicit LAC records following it. The records of different ledgers are processed
+ * in parallel.
+ *
+ * <p>The memory of the records read but not processed yet is bounded, the reading thread waits when
+ * the bound is reached.
+ */
+@Slf4j
+class JournalReplayExecutor implements AutoCloseable {
+
+    private final JournalScanner scanner;
+    private final OrderedExecutor executor;
+    private final MemoryLimitController memoryLimitController;
+
+    private long pendingRecords = 0;
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    JournalReplayExecutor(JournalScanner scanner, int numThreads, long maxPendingBytes) {
+        this.scanner = scanner;
+        this.executor = OrderedExecutor.newBuilder().numThreads(numThreads).name("JournalReplayThreads").build();
+        this.memoryLimitController = new MemoryLimitController(maxPendingBytes);
+    }
+
+    /**
+     * Get a scanner submitting the records to the replay threads. The scanner fails once a record
+     * could not be processed.
+     */
+    JournalScanner asScanner() {
+        return (journalVersion, offset, recBuff) -> {
+            checkFailure();
+
+            int size = recBuff.remaining();
+            try {
+                memoryLimitController.reserveMemory(size);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while replaying the journal", ie);
+            }
+
+            // The scanner reuses the record buffer, so the record is copied before being processed by another thread
+            ByteBuffer record = ByteBuffer.allocate(size);
+            record.put(recBuff).flip();
+            long ledgerId = record.getLong(0);
+
+            synchronized (this) {
+                pendingRecords++;
+            }
+            executor.executeOrdered(ledgerId, () -> {
+                try {
+                    if (failure.get() == null) {
+                        scanner.process(journalVersion, offset, record);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.error("Failed to replay a journal record of ledger {} at offset {}", ledgerId, offset, e);
+                    failure.compareAndSet(null, e instanceof IOException ? (IOException) e : new IOException(e));
+                } finally {
+                    memoryLimitController.releaseMemory(size);
+                    recordProcessed();
+                }
+            });
+        };
+    }
+
+    private synchronized void recordProcessed() {
+        if (--pendingRecords == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait until all the records submitted so far have been processed.
+     *
+     * @throws IOException if a record could not be processed
+     */
+    synchronized void awaitPendingRecords() throws IOException {
+        try {
+            while (pendingRecords > 0) {
+                wait();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying the journal", ie);
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure.get();
+        if (e != null) {
+            throw new IOException("Failed to replay the journal", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -24,14 +24,20 @@ package org.apache.bookkeeper.bookie;
 import static org.apache.bookkeeper.common.concurrent.FutureUtils.result;
 
 import com.google.common.collect.Sets;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeSet;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -84,6 +90,9 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
     private int activeLedgerCounter;
     private StatsLogger statsLogger;
     private final int maxConcurrentRequests;
+    // Executor deleting the ledgers in parallel, null if they are deleted by the GC thread
+    private final ExecutorService deleteExecutor;
+    private volatile ActiveLedgersSnapshot activeLedgersSnapshot = null;
 
     public ScanAndCompareGarbageCollector(LedgerManager ledgerManager, CompactableLedgerStorage ledgerStorage,
             ServerConfiguration conf, StatsLogger statsLogger) throws IOException {
@@ -104,6 +113,11 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
 
         verifyMetadataOnGc = conf.getVerifyMetadataOnGC();
 
+        int deleteThreads = conf.getGcLedgerDeleteThreads();
+        this.deleteExecutor = deleteThreads > 1
+                ? Executors.newFixedThreadPool(deleteThreads, new DefaultThreadFactory("GarbageCollectorDelete"))
+                : null;
+
         this.activeLedgerCounter = 0;
     }
 
@@ -119,8 +133,10 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
             return;
         }
 
+        List<Future<?>> pendingDeletes = new ArrayList<>();
         try {
             // Get a set of all ledgers on the bookie
+            long listStartNanos = System.nanoTime();
             NavigableSet<Long> bkActiveLedgers = Sets.newTreeSet(ledgerStorage.getActiveLedgersInRange(0,
                     Long.MAX_VALUE));
             this.activeLedgerCounter = bkActiveLedgers.size();
@@ -141,16 +157,31 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
                 lastOverReplicatedLedgerGcTimeMillis = System.currentTimeMillis();
             }
 
-            // Iterate over all the ledger on the metadata store
             long zkOpTimeoutMs = this.conf.getZkTimeout() * 2;
+            ActiveLedgersSnapshot sharedSnapshot = activeLedgersSnapshot;
+            if (sharedSnapshot != null) {
+                ActiveLedgersSnapshot.Snapshot snapshot = sharedSnapshot.get(zkOpTimeoutMs);
+                // A snapshot taken before listing the ledgers of the bookie might miss the ledgers created since
+                boolean snapshotMayMissLedgers = snapshot.getScanStartNanos() - listStartNanos < 0;
+                for (Long bkLid : bkActiveLedgers) {
+                    if (!snapshot.contains(bkLid)) {
+                        if ((verifyMetadataOnGc || snapshotMayMissLedgers)
+                                && !canDeleteLedger(bkLid, zkOpTimeoutMs, snapshotMayMissLedgers)) {
+                            continue;
+                        }
+                        deleteLedger(garbageCleaner, bkLid, pendingDeletes);
+                    }
+                }
+                return;
+            }
+
+            // Iterate over all the ledger on the metadata store
             LedgerRangeIterator ledgerRangeIterator = ledgerManager
                     .getLedgerRanges(zkOpTimeoutMs);
             Set<Long> ledgersInMetadata = null;
             long start;
             long end = -1;
             boolean done = false;
-            AtomicBoolean isBookieInEnsembles = new AtomicBoolean(false);
-            Versioned<LedgerMetadata> metadata = null;
             while (!done) {
                 start = end + 1;
                 if (ledgerRangeIterator.hasNext()) {
@@ -170,48 +201,93 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
                 }
                 for (Long bkLid : subBkActiveLedgers) {
                     if (!ledgersInMetadata.contains(bkLid)) {
-                        if (verifyMetadataOnGc) {
-                            isBookieInEnsembles.set(false);
-                            metadata = null;
-                            int rc = BKException.Code.OK;
-                            try {
-                                metadata = result(ledgerManager.readLedgerMetadata(bkLid), zkOpTimeoutMs,
-                                        TimeUnit.MILLISECONDS);
-                            } catch (BKException | TimeoutException e) {
-                                if (e instanceof BKException) {
-                                    rc = ((BKException) e).getCode();
-                                } else {
-                                    LOG.warn("Time-out while fetching metadata for Ledger {} : {}.", bkLid,
-                                            e.getMessage());
-
-                                    continue;
-                                }
-                            }
-                            // check bookie should be part of ensembles in one
-                            // of the segment else ledger should be deleted from
-                            // local storage
-                            if (metadata != null && metadata.getValue() != null) {
-                                metadata.getValue().getAllEnsembles().forEach((entryId, ensembles) -> {
-                                    if (ensembles != null && ensembles.contains(selfBookieAddress)) {
-                                        isBookieInEnsembles.set(true);
-                                    }
-                                });
-                                if (isBookieInEnsembles.get()) {
-                                    continue;
-                                }
-                            } else if (rc != BKException.Code.NoSuchLedgerExistsOnMetadataServerException) {
-                                LOG.warn("Ledger {} Missing in metadata list, but ledgerManager returned rc: {}.",
-                                        bkLid, rc);
-                                continue;
-                            }
+                        if (verifyMetadataOnGc && !canDeleteLedger(bkLid, zkOpTimeoutMs, false)) {
+                            continue;
                         }
-                        garbageCleaner.clean(bkLid);
+                        deleteLedger(garbageCleaner, bkLid, pendingDeletes);
                     }
                 }
             }
         } catch (Throwable t) {
             // ignore exception, collecting garbage next time
             LOG.warn("Exception when iterating over the metadata", t);
+        } finally {
+            waitForDeletes(pendingDeletes);
+        }
+    }
+
+    /**
+     * Read the metadata of a ledger missing from the ledgers listed in the metadata store, to check
+     * whether it can be deleted.
+     *
+     * @param ledgerMayBeNew whether the ledger might have been created after the metadata store was
+     *                       listed, in which case it is kept as long as its metadata exists
+     */
+    private boolean canDeleteLedger(long bkLid, long zkOpTimeoutMs, boolean ledgerMayBeNew) throws Exception {
+        Versioned<LedgerMetadata> metadata = null;
+        int rc = BKException.Code.OK;
+        try {
+            metadata = result(ledgerManager.readLedgerMetadata(bkLid), zkOpTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (BKException | TimeoutException e) {
+            if (e instanceof BKException) {
+                rc = ((BKException) e).getCode();
+            } else {
+                LOG.warn("Time-out while fetching metadata for Ledger {} : {}.", bkLid, e.getMessage());
+                return false;
+            }
+        }
+        // check bookie should be part of ensembles in one
+        // of the segment else ledger should be deleted from
+        // local storage
+        if (metadata != null && metadata.getValue() != null) {
+            if (ledgerMayBeNew || !verifyMetadataOnGc) {
+                return false;
+            }
+            AtomicBoolean isBookieInEnsembles = new AtomicBoolean(false);
+            metadata.getValue().getAllEnsembles().forEach((entryId, ensembles) -> {
+                if (ensembles != null && ensembles.contains(selfBookieAddress)) {
+                    isBookieInEnsembles.set(true);
+                }
+            });
+            return !isBookieInEnsembles.get();
+        } else if (rc != BKException.Code.NoSuchLedgerExistsOnMetadataServerException) {
+            LOG.warn("Ledger {} Missing in metadata list, but ledgerManager returned rc: {}.", bkLid, rc);
+            return false;
+        }
+        return true;
+    }
+
+    private void deleteLedger(GarbageCleaner garbageCleaner, long ledgerId, List<Future<?>> pendingDeletes) {
+        if (deleteExecutor == null) {
+            garbageCleaner.clean(ledgerId);
+        } else {
+            pendingDeletes.add(deleteExecutor.submit(() -> garbageCleaner.clean(ledgerId)));
+        }
+    }
+
+    private void waitForDeletes(List<Future<?>> pendingDeletes) {
+        for (Future<?> delete : pendingDeletes) {
+            try {
+                delete.get();
+            } catch (ExecutionException e) {
+                LOG.warn("Failed to delete ledger", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Share the scan of the metadata store with the garbage collectors of the other ledger directories.
+     */
+    void setActiveLedgersSnapshot(ActiveLedgersSnapshot activeLedgersSnapshot) {
+        this.activeLedgersSnapshot = activeLedgersSnapshot;
+    }
+
+    void close() {
+        if (deleteExecutor != null) {
+            deleteExecutor.shutdownNow();
         }
     }
 
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.List;
 import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogTransferScanner;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.slf4j.Logger;
@@ -46,6 +47,7 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
     final EntryLogger entryLogger;
     final CompactableLedgerStorage ledgerStorage;
     final List<EntryLocation> offsets = new ArrayList<>();
+    final boolean zeroCopyCompaction;
 
     // compaction log file suffix
     public static final String COMPACTING_SUFFIX = ".log.compacting";
@@ -60,6 +62,7 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
         super(conf, logRemover);
         this.entryLogger = entryLogger;
         this.ledgerStorage = ledgerStorage;
+        this.zeroCopyCompaction = conf.isZeroCopyCompactionEnabled();
     }
 
     /**
@@ -161,6 +164,10 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
 
         @Override
         void start() throws IOException {
+            if (zeroCopyCompaction) {
+                transferEntryLog();
+                return;
+            }
             // scan entry log into compaction log and offset list
             entryLogger.scanEntryLog(metadata.getEntryLogId(), new EntryLogScanner() {
                 @Override
@@ -192,6 +199,41 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
             });
         }
 
+        /**
+         * Copy the entries from file to file into the compaction log, and only collect their new
+         * locations.
+         */
+        private void transferEntryLog() throws IOException {
+            compactionLog.transferEntries(entryLogger, new EntryLogTransferScanner() {
+                @Override
+                public boolean accept(long ledgerId) {
+                    return metadata.containsLedger(ledgerId);
+                }
+
+                @Override
+                public void beforeTransfer(long ledgerId, long entryId, int entrySize) throws IOException {
+                    if (entryId < -1) {
+                        LOG.warn("Transferring ledgerId {}, but found invalid entry with entryId {}",
+                                ledgerId, entryId);
+                        throw new IOException("Invalid entry found in ledger " + ledgerId + ": " + entryId);
+                    }
+                    throttler.acquire(entrySize);
+                }
+
+                @Override
+                public void process(long ledgerId, long entryId, long location, int entrySize) {
+                    synchronized (TransactionalEntryLogCompactor.this) {
+                        offsets.add(new EntryLocation(ledgerId, entryId, location));
+                    }
+
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Compact transfer entry : lid = {}, eid = {}, offset = {}",
+                                ledgerId, entryId, location);
+                    }
+                }
+            });
+        }
+
         @Override
         boolean complete() {
             if (offsets.isEmpty()) {
@@ -32,10 +32,12 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENTRIES_OF_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_DIRS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_QUEUE_MAX_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_PROGRESS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_BYTES;
 
+import java.util.function.Supplier;
 import lombok.Getter;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
@@ -88,12 +90,15 @@ public class BookieStats {
     private final OpStatsLogger addBytesStats;
     @StatsDoc(name = BOOKIE_READ_ENTRY_BYTES, help = "bytes stats of ReadEntry on a bookie")
     private final OpStatsLogger readBytesStats;
-    @StatsDoc(name = JOURNAL_DIRS, help = "number of configured journal directories")
+    @StatsDoc(name = JOURNAL_DIRS, help = "number of journals, one per stripe of each journal directory")
     private final Gauge<Integer> journalDirsGauge;
     @StatsDoc(name = JOURNAL_QUEUE_MAX_SIZE, help = "maximum length of a journal queue")
     private final Gauge<Integer> journalQueueMaxQueueSizeGauge;
+    @StatsDoc(name = JOURNAL_REPLAY_PROGRESS, help = "percentage of the journal files replayed on bookie startup")
+    private final Gauge<Integer> journalReplayProgressGauge;
 
-    public BookieStats(StatsLogger statsLogger, int numJournalDirs, int maxJournalQueueSize) {
+    public BookieStats(StatsLogger statsLogger, int numJournals, int maxJournalQueueSize,
+                       Supplier<Integer> journalReplayProgress) {
         this.statsLogger = statsLogger;
         writeBytes = statsLogger.getCounter(WRITE_BYTES);
         readBytes = statsLogger.getCounter(READ_BYTES);
@@ -107,12 +112,12 @@ public class BookieStats {
         journalDirsGauge = new Gauge<Integer>() {
             @Override
             public Integer getDefaultValue() {
-                return numJournalDirs;
+                return numJournals;
             }
 
             @Override
             public Integer getSample() {
-                return numJournalDirs;
+                return numJournals;
             }
         };
         statsLogger.registerGauge(JOURNAL_DIRS, journalDirsGauge);
@@ -128,6 +133,18 @@ public class BookieStats {
             }
         };
         statsLogger.registerGauge(JOURNAL_QUEUE_MAX_SIZE, journalQueueMaxQueueSizeGauge);
+        journalReplayProgressGauge = new Gauge<Integer>() {
+            @Override
+            public Integer getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Integer getSample() {
+                return journalReplayProgress.get();
+            }
+        };
+        statsLogger.registerGauge(JOURNAL_REPLAY_PROGRESS, journalReplayProgressGauge);
     }
 
 
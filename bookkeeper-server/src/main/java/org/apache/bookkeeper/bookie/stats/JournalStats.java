@@ -31,6 +31,8 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_W
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_ENQUEUE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_GROUPING_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_QUEUE_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_BATCH_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_WAIT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_MEMORY_MAX;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_MEMORY_USED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE;
@@ -131,6 +133,16 @@ public class JournalStats {
         help = "The distribution of number of bytes grouped together into a force write request"
     )
     private final OpStatsLogger forceWriteBatchBytesStats;
+    @StatsDoc(
+        name = JOURNAL_GROUP_COMMIT_WAIT,
+        help = "The distribution of the max wait chosen by the group commit strategy for a journal flush"
+    )
+    private final OpStatsLogger groupCommitWaitStats;
+    @StatsDoc(
+        name = JOURNAL_GROUP_COMMIT_BATCH_BYTES,
+        help = "The distribution of the max batch size chosen by the group commit strategy for a journal flush"
+    )
+    private final OpStatsLogger groupCommitBatchBytesStats;
     @StatsDoc(
         name = JOURNAL_QUEUE_SIZE,
         help = "The journal queue size"
@@ -188,6 +200,9 @@ public class JournalStats {
         forceWriteBatchEntriesStats =
                 statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_FORCE_WRITE_BATCH_ENTRIES);
         forceWriteBatchBytesStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_FORCE_WRITE_BATCH_BYTES);
+        groupCommitWaitStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_GROUP_COMMIT_WAIT);
+        groupCommitBatchBytesStats =
+                statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_GROUP_COMMIT_BATCH_BYTES);
         journalQueueSize = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_QUEUE_SIZE);
         forceWriteQueueSize = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_FORCE_WRITE_QUEUE_SIZE);
         flushMaxWaitCounter = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_WAIT);
@@ -43,6 +43,35 @@ public interface CompactionEntryLog {
      */
     long addEntry(long ledgerId, ByteBuf entry) throws IOException;
 
+    /**
+     * Copy the entries of the log being compacted that belong to the ledgers accepted by the
+     * scanner.
+     *
+     * <p>By default, the entries are read from the entry logger and added to this log one by one.
+     * Implementations able to copy them from file to file, without reading their payload in memory,
+     * should override it.
+     *
+     * @param entryLogger the entry logger holding the log being compacted
+     * @param scanner the scanner selecting the entries and collecting their new locations
+     */
+    default void transferEntries(EntryLogger entryLogger, EntryLogTransferScanner scanner) throws IOException {
+        entryLogger.scanEntryLog(getSrcLogId(), new EntryLogScanner() {
+            @Override
+            public boolean accept(long ledgerId) {
+                return scanner.accept(ledgerId);
+            }
+
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                long entryId = entry.getLong(entry.readerIndex() + 8);
+                int entrySize = entry.readableBytes();
+                scanner.beforeTransfer(ledgerId, entryId, entrySize);
+                long location = addEntry(ledgerId, entry);
+                scanner.process(ledgerId, entryId, location, entrySize);
+            }
+        });
+    }
+
     /**
      * Scan the entry log, reading out all contained entries.
      */
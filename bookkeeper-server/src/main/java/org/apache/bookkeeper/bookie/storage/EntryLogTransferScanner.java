@@ -0,0 +1,66 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage;
+
+import java.io.IOException;
+
+/**
+ * Scan the entries copied from an entry log file to another, without reading their payload.
+ */
+public interface EntryLogTransferScanner {
+    /**
+     * Tests whether or not the entries belongs to the specified ledger
+     * should be copied.
+     *
+     * @param ledgerId
+     *          Ledger ID.
+     * @return true if and only the entries of the ledger should be copied.
+     */
+    boolean accept(long ledgerId);
+
+    /**
+     * Called for each entry before it is copied, eg. to throttle the copy.
+     *
+     * @param ledgerId
+     *          Ledger ID.
+     * @param entryId
+     *          Entry ID.
+     * @param entrySize
+     *          Size of the entry.
+     * @throws IOException
+     */
+    void beforeTransfer(long ledgerId, long entryId, int entrySize) throws IOException;
+
+    /**
+     * Process an entry, once it has been copied.
+     *
+     * @param ledgerId
+     *          Ledger ID.
+     * @param entryId
+     *          Entry ID.
+     * @param location
+     *          Location of the entry in the destination entry log.
+     * @param entrySize
+     *          Size of the entry.
+     * @throws IOException
+     */
+    void process(long ledgerId, long entryId, long location, int entrySize) throws IOException;
+}
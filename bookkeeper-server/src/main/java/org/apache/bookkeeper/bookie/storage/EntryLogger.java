@@ -67,6 +67,17 @@ public interface EntryLogger extends AutoCloseable {
     ByteBuf readEntry(long ledgerId, long entryId, long entryLocation)
             throws IOException, NoEntryException;
 
+    /**
+     * Read a contiguous range of an entrylog with a single positional read, starting
+     * from the size header of the entry at the given location. The range contains the
+     * entries as they are stored in the log, each one prefixed by its size.
+     * @param entryLocation the location of the first entry of the range
+     * @param maxSize the max number of bytes to read
+     * @return the range (the caller must release it), which may be shorter than maxSize
+     *         when the end of the log is reached
+     */
+    ByteBuf readRange(long entryLocation, int maxSize) throws IOException;
+
     /**
      * Flush any outstanding writes to disk.
      */
@@ -44,7 +44,7 @@ import org.apache.bookkeeper.common.util.nativeio.NativeIO;
  * an integer, or long, the value will be negative (assuming the read is
  * a java read, and thus a signed int).
  */
-class Buffer {
+public class Buffer {
     /* Padding byte must have MSB set, so if read at the start
      * of an integer or long, the returned value is negative. */
     public static final byte PADDING_BYTE = (byte) 0xF0;
@@ -119,7 +119,7 @@ class Buffer {
      * number of readable bytes of the bytebuf. Progresses the readerIndex of the passed
      * bytebuf by the number of bytes read (i.e. to the end).
      */
-    void writeByteBuf(ByteBuf bytebuf) throws IOException {
+    public void writeByteBuf(ByteBuf bytebuf) throws IOException {
         int bytesWritten = bytebuf.readableBytes();
         ByteBuffer bytesToPut = bytebuf.nioBuffer();
         byteBuffer.put(bytesToPut);
@@ -169,7 +169,7 @@ class Buffer {
      * If there are not enough bytes in the buffer to satify the read, some of the bytes are read
      * into the byte buffer and the number of bytes read is returned.
      */
-    int readByteBuf(ByteBuf buffer, int offset, int size) throws IOException {
+    public int readByteBuf(ByteBuf buffer, int offset, int size) throws IOException {
         int originalLimit = byteBuffer.limit();
         byteBuffer.position(offset);
         int bytesToRead = Math.min(size, byteBuffer.capacity() - offset);
@@ -191,7 +191,7 @@ class Buffer {
      * The data pointer object for the native buffer. This can be used
      * by JNI method which take a char* or void*.
      */
-    long pointer() {
+    public long pointer() {
         return pointer;
     }
 
@@ -211,14 +211,14 @@ class Buffer {
     /**
      * @return the number of bytes which have been written to this buffer.
      */
-    int position() {
+    public int position() {
         return byteBuffer.position();
     }
 
     /**
      * @return the size of the buffer (i.e. the max number of bytes writable, or the max offset readable)
      */
-    int size() {
+    public int size() {
         return bufferSize;
     }
 
@@ -237,7 +237,7 @@ class Buffer {
      * Clear the bytes written. This doesn't actually destroy the data, but moves the position back to the start of
      * the buffer.
      */
-    void reset() {
+    public void reset() {
         byteBuffer.clear();
     }
 
@@ -255,11 +255,11 @@ class Buffer {
         return padding;
     }
 
-    static boolean isAligned(long size) {
+    public static boolean isAligned(long size) {
         return size >= 0 && ((ALIGNMENT - 1) & size) == 0;
     }
 
-    static int nextAlignment(int pos) {
+    public static int nextAlignment(int pos) {
         checkArgument(pos <= MAX_ALIGNMENT,
                       "position (0x%x) must be lower or equal to max alignment (0x%x)",
                        pos, MAX_ALIGNMENT);
@@ -31,14 +31,15 @@ import org.apache.bookkeeper.common.util.nativeio.NativeIO;
 public class BufferPool implements AutoCloseable {
     private final ArrayBlockingQueue<Buffer> pool;
 
-    BufferPool(NativeIO nativeIO, ByteBufAllocator allocator, int bufferSize, int maxPoolSize) throws IOException {
+    public BufferPool(NativeIO nativeIO, ByteBufAllocator allocator, int bufferSize, int maxPoolSize)
+            throws IOException {
         pool = new ArrayBlockingQueue<>(maxPoolSize);
         for (int i = 0; i < maxPoolSize; i++) {
             pool.add(new Buffer(nativeIO, allocator, bufferSize));
         }
     }
 
-    Buffer acquire() throws IOException {
+    public Buffer acquire() throws IOException {
         try {
             return pool.take();
         } catch (InterruptedException ie) {
@@ -47,7 +48,7 @@ public class BufferPool implements AutoCloseable {
         }
     }
 
-    void release(Buffer buffer) {
+    public void release(Buffer buffer) {
         buffer.reset();
         if (!pool.add(buffer)) {
             buffer.free();
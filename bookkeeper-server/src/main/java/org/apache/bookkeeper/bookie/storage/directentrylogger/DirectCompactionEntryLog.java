@@ -29,11 +29,11 @@ import io.netty.buffer.ByteBufAllocator;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.util.concurrent.ExecutorService;
 import org.apache.bookkeeper.bookie.EntryLogMetadata;
 import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
 import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIORing;
 import org.apache.bookkeeper.slogger.Slogger;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 
@@ -53,14 +53,14 @@ public abstract class DirectCompactionEntryLog implements CompactionEntryLog {
                                      int dstLogId,
                                      File ledgerDir,
                                      long maxFileSize,
-                                     ExecutorService writeExecutor,
+                                     NativeIORing ioRing,
                                      BufferPool writeBuffers,
                                      NativeIO nativeIO,
                                      ByteBufAllocator allocator,
                                      Slogger slog) throws IOException {
         return new WritingDirectCompactionEntryLog(
                 srcLogId, dstLogId, ledgerDir, maxFileSize,
-                writeExecutor, writeBuffers, nativeIO, allocator, slog);
+                ioRing, writeBuffers, nativeIO, allocator, slog);
     }
 
     static CompactionEntryLog recoverLog(int srcLogId,
@@ -219,7 +219,7 @@ public abstract class DirectCompactionEntryLog implements CompactionEntryLog {
                                         int dstLogId,
                                         File ledgerDir,
                                         long maxFileSize,
-                                        ExecutorService writeExecutor,
+                                        NativeIORing ioRing,
                                         BufferPool writeBuffers,
                                         NativeIO nativeIO,
                                         ByteBufAllocator allocator,
@@ -228,7 +228,7 @@ public abstract class DirectCompactionEntryLog implements CompactionEntryLog {
 
             this.writer = new WriterWithMetadata(
                     new DirectWriter(dstLogId, compactingFile.toString(), maxFileSize,
-                                     writeExecutor, writeBuffers, nativeIO, slog),
+                                     ioRing, writeBuffers, nativeIO, slog),
                     new EntryLogMetadata(dstLogId),
                     allocator);
 
@@ -37,7 +37,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
@@ -56,6 +59,8 @@ import org.apache.bookkeeper.bookie.storage.EntryLogIds;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
 import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIORing;
 import org.apache.bookkeeper.slogger.Slogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.LedgerDirUtil;
@@ -67,7 +72,7 @@ public class DirectEntryLogger implements EntryLogger {
     private final Slogger slog;
     private final File ledgerDir;
     private final EntryLogIds ids;
-    private final ExecutorService writeExecutor;
+    private final NativeIORing ioRing;
     private final ExecutorService flushExecutor;
     private final long maxFileSize;
     private final DirectEntryLoggerStats stats;
@@ -79,6 +84,11 @@ public class DirectEntryLogger implements EntryLogger {
 
     private WriterWithMetadata curWriter;
 
+    // With more than one active writer, ledgerId -> writer of the ledger, from the least recently used
+    private final int maxActiveWriters;
+    private final long writerIdleTimeNanos;
+    private final LinkedHashMap<Long, WriterWithMetadata> ledgerWriters = new LinkedHashMap<>(16, 0.75f, true);
+
     private List<Future<?>> pendingFlushes;
     private final NativeIO nativeIO;
     private final List<Cache<?, ?>> allCaches = new CopyOnWriteArrayList<>();
@@ -86,6 +96,38 @@ public class DirectEntryLogger implements EntryLogger {
 
     private static final int NUMBER_OF_WRITE_BUFFERS = 8;
 
+    /**
+     * Maximum number of entry logs written at the same time. It bounds the number of write buffers, and
+     * the size of the io_uring queue which has 4 entries per write buffer.
+     */
+    public static final int MAX_ACTIVE_WRITERS = 256;
+
+    public DirectEntryLogger(File ledgerDir,
+                             EntryLogIds ids,
+                             NativeIO nativeIO,
+                             ByteBufAllocator allocator,
+                             ExecutorService writeExecutor,
+                             ExecutorService flushExecutor,
+                             long maxFileSize,
+                             int maxSaneEntrySize,
+                             long totalWriteBufferSize,
+                             long totalReadBufferSize,
+                             int readBufferSize,
+                             int numReadThreads,
+                             int maxFdCacheTimeSeconds,
+                             Slogger slogParent,
+                             StatsLogger stats) throws IOException {
+        this(ledgerDir, ids, nativeIO, allocator, writeExecutor, flushExecutor, maxFileSize, maxSaneEntrySize,
+             totalWriteBufferSize, totalReadBufferSize, readBufferSize, numReadThreads, maxFdCacheTimeSeconds,
+             false, slogParent, stats);
+    }
+
+    /**
+     * Create an entry logger which can submit the writes and fsyncs of its entry logs with io_uring.
+     *
+     * @param ioUringEnabled submit the writes and fsyncs of the entry logs with io_uring, when available.
+     *                       Otherwise, they are issued with blocking syscalls from the writeExecutor.
+     */
     public DirectEntryLogger(File ledgerDir,
                              EntryLogIds ids,
                              NativeIO nativeIO,
@@ -99,11 +141,50 @@ public class DirectEntryLogger implements EntryLogger {
                              int readBufferSize,
                              int numReadThreads,
                              int maxFdCacheTimeSeconds,
+                             boolean ioUringEnabled,
                              Slogger slogParent,
                              StatsLogger stats) throws IOException {
+        this(ledgerDir, ids, nativeIO, allocator, writeExecutor, flushExecutor, maxFileSize, maxSaneEntrySize,
+             totalWriteBufferSize, totalReadBufferSize, readBufferSize, numReadThreads, maxFdCacheTimeSeconds,
+             ioUringEnabled, 1, 0, slogParent, stats);
+    }
+
+    /**
+     * Create an entry logger which can write the entries of each ledger to its own entry log.
+     *
+     * <p>With more than one active writer, the entries of a ledger are appended to the entry log of the
+     * ledger, so that the log can be deleted without compaction once the ledger is deleted. When a new
+     * ledger is written while maxActiveWriters logs are already open, the log of the least recently
+     * written ledger is closed. The logs of the ledgers which have not been written for
+     * writerIdleTimeSeconds are closed on flush.
+     *
+     * @param maxActiveWriters maximum number of entry logs written at the same time. With 1, the entries of
+     *                         all the ledgers are interleaved in a single entry log.
+     * @param writerIdleTimeSeconds time after which the entry log of a ledger which is not written is closed.
+     *                              0 or less keeps the logs open until they are evicted or full.
+     */
+    public DirectEntryLogger(File ledgerDir,
+                             EntryLogIds ids,
+                             NativeIO nativeIO,
+                             ByteBufAllocator allocator,
+                             ExecutorService writeExecutor,
+                             ExecutorService flushExecutor,
+                             long maxFileSize,
+                             int maxSaneEntrySize,
+                             long totalWriteBufferSize,
+                             long totalReadBufferSize,
+                             int readBufferSize,
+                             int numReadThreads,
+                             int maxFdCacheTimeSeconds,
+                             boolean ioUringEnabled,
+                             int maxActiveWriters,
+                             int writerIdleTimeSeconds,
+                             Slogger slogParent,
+                             StatsLogger stats) throws IOException {
+        checkArgument(maxActiveWriters > 0 && maxActiveWriters <= MAX_ACTIVE_WRITERS,
+                      "Max active writers must be between 1 and %s [%s]", MAX_ACTIVE_WRITERS, maxActiveWriters);
         this.ledgerDir = ledgerDir;
         this.flushExecutor = flushExecutor;
-        this.writeExecutor = writeExecutor;
         this.pendingFlushes = new ArrayList<>();
         this.nativeIO = nativeIO;
         this.unflushedLogs = ConcurrentHashMap.newKeySet();
@@ -112,14 +193,27 @@ public class DirectEntryLogger implements EntryLogger {
         this.maxSaneEntrySize = maxSaneEntrySize;
         this.readBufferSize = Buffer.nextAlignment(readBufferSize);
         this.ids = ids;
+        this.maxActiveWriters = maxActiveWriters;
+        this.writerIdleTimeNanos = TimeUnit.SECONDS.toNanos(writerIdleTimeSeconds);
         this.slog = slogParent.kv("directory", ledgerDir).ctx(DirectEntryLogger.class);
 
+        // Each active writer holds a buffer, and so does each evicted writer until it is closed
+        int numberOfWriteBuffers = NUMBER_OF_WRITE_BUFFERS + 2 * (maxActiveWriters - 1);
+        int singleWriteBufferSize = Buffer.nextAlignment((int) (totalWriteBufferSize / numberOfWriteBuffers));
+        // An entry must fit in a write buffer, which gets smaller as the writers are added
+        checkArgument(maxActiveWriters == 1 || singleWriteBufferSize >= maxSaneEntrySize + Integer.BYTES,
+                      "Write buffers of %s bytes for %s active writers cannot hold entries of %s bytes,"
+                      + " the write buffer size must be raised or the number of active writers lowered",
+                      singleWriteBufferSize, maxActiveWriters, maxSaneEntrySize);
+
+        // Each write buffer can have one write in flight, plus the fsyncs
+        this.ioRing = newIoRing(nativeIO, ioUringEnabled, 4 * numberOfWriteBuffers, writeExecutor, slog);
+
         this.stats = new DirectEntryLoggerStats(stats);
 
         this.allocator = allocator;
 
-        int singleWriteBufferSize = Buffer.nextAlignment((int) (totalWriteBufferSize / NUMBER_OF_WRITE_BUFFERS));
-        this.writeBuffers = new BufferPool(nativeIO, allocator, singleWriteBufferSize, NUMBER_OF_WRITE_BUFFERS);
+        this.writeBuffers = new BufferPool(nativeIO, allocator, singleWriteBufferSize, numberOfWriteBuffers);
 
         // The total read buffer memory needs to get split across all the read threads, since the caches
         // are thread-specific and we want to ensure we don't pass the total memory limit.
@@ -145,6 +239,7 @@ public class DirectEntryLogger implements EntryLogger {
             .kv("maxSaneEntrySize", maxSaneEntrySize)
             .kv("totalWriteBufferSize", totalWriteBufferSize)
             .kv("singleWriteBufferSize", singleWriteBufferSize)
+            .kv("maxActiveWriters", maxActiveWriters)
             .kv("totalReadBufferSize", totalReadBufferSize)
             .kv("readBufferSize", readBufferSize)
             .kv("perThreadBufferSize", perThreadBufferSize)
@@ -179,26 +274,108 @@ public class DirectEntryLogger implements EntryLogger {
 
         long offset;
         synchronized (this) {
-            if (curWriter != null
-                && curWriter.shouldRoll(buf, maxFileSize)) {
-                // roll the log. asynchronously flush and close current log
-                flushAndCloseCurrent();
-                curWriter = null;
-            }
-            if (curWriter == null) {
-                int newId = ids.nextId();
-                curWriter = new WriterWithMetadata(newDirectWriter(newId),
-                                                   new EntryLogMetadata(newId),
-                                                   allocator);
-                slog.kv("newLogId", newId).info(Events.LOG_ROLL);
-            }
+            if (maxActiveWriters > 1) {
+                offset = addEntryToLedgerLog(ledgerId, buf);
+            } else {
+                if (curWriter != null
+                    && curWriter.shouldRoll(buf, maxFileSize)) {
+                    // roll the log. asynchronously flush and close current log
+                    flushAndCloseCurrent();
+                    curWriter = null;
+                }
+                if (curWriter == null) {
+                    curWriter = newWriter();
+                }
 
-            offset = curWriter.addEntry(ledgerId, buf);
+                offset = curWriter.addEntry(ledgerId, buf);
+            }
         }
         stats.getAddEntryStats().registerSuccessfulEvent(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         return offset;
     }
 
+    /**
+     * Append an entry to the entry log of its ledger. Must be called with the entry logger lock held.
+     */
+    private long addEntryToLedgerLog(long ledgerId, ByteBuf buf) throws IOException {
+        WriterWithMetadata writer = ledgerWriters.get(ledgerId);
+        if (writer != null && writer.shouldRoll(buf, maxFileSize)) {
+            ledgerWriters.remove(ledgerId);
+            flushAndClose(writer);
+            writer = null;
+        }
+        if (writer == null) {
+            if (ledgerWriters.size() >= maxActiveWriters) {
+                Iterator<Map.Entry<Long, WriterWithMetadata>> iter = ledgerWriters.entrySet().iterator();
+                Map.Entry<Long, WriterWithMetadata> eldest = iter.next();
+                iter.remove();
+                slog.kv("ledgerId", eldest.getKey()).kv("logId", eldest.getValue().logId())
+                    .info(Events.LOG_EVICTED);
+                flushAndClose(eldest.getValue());
+            }
+            waitForPendingCloses();
+            writer = newWriter();
+            ledgerWriters.put(ledgerId, writer);
+        }
+        return writer.addEntry(ledgerId, buf);
+    }
+
+    /**
+     * Close the entry logs of the ledgers which have not been written for the idle time.
+     */
+    private synchronized void closeIdleLedgerLogs() throws IOException {
+        if (writerIdleTimeNanos <= 0 || ledgerWriters.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Long, WriterWithMetadata>> iter = ledgerWriters.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Long, WriterWithMetadata> e = iter.next();
+            if (now - e.getValue().lastAddNanos() >= writerIdleTimeNanos) {
+                iter.remove();
+                slog.kv("ledgerId", e.getKey()).kv("logId", e.getValue().logId()).info(Events.LOG_EVICTED);
+                flushAndClose(e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Wait until less than maxActiveWriters logs are being closed, so that the evicted writers cannot hold
+     * all the write buffers. Must be called with the entry logger lock held.
+     */
+    private void waitForPendingCloses() throws IOException {
+        int pendingCloses = 0;
+        Future<?> oldestPendingClose = null;
+        for (Future<?> f : pendingFlushes) {
+            if (!f.isDone()) {
+                pendingCloses++;
+                if (oldestPendingClose == null) {
+                    oldestPendingClose = f;
+                }
+            }
+        }
+        if (pendingCloses < maxActiveWriters) {
+            return;
+        }
+        try {
+            oldestPendingClose.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an entry log to be closed", ie);
+        } catch (ExecutionException ee) {
+            // the failure is reported by the next flush
+        }
+    }
+
+    private WriterWithMetadata newWriter() throws IOException {
+        int newId = ids.nextId();
+        WriterWithMetadata writer = new WriterWithMetadata(newDirectWriter(newId),
+                                                           new EntryLogMetadata(newId),
+                                                           allocator);
+        slog.kv("newLogId", newId).info(Events.LOG_ROLL);
+        return writer;
+    }
+
     @Override
     public ByteBuf readEntry(long entryLocation)
             throws IOException, NoEntryException {
@@ -211,6 +388,20 @@ public class DirectEntryLogger implements EntryLogger {
         return internalReadEntry(ledgerId, entryId, entryLocation, true);
     }
 
+    @Override
+    public ByteBuf readRange(long entryLocation, int maxSize) throws IOException {
+        int logId = (int) (entryLocation >> 32);
+        long pos = (entryLocation & 0xFFFFFFFFL) - Integer.BYTES; // include the size header of the first entry
+
+        LogReader reader = getReader(logId);
+        int size = (int) Math.min(maxSize, reader.maxOffset() - pos);
+        if (size <= 0) {
+            throw new NoEntryException(exMsg("Entry location doesn't exist").kv("location", entryLocation).toString(),
+                    -1L, -1L);
+        }
+        return reader.readBufferAt(pos, size);
+    }
+
     private LogReader getReader(int logId) throws IOException {
         Cache<Integer, LogReader> cache = caches.get();
         try {
@@ -273,6 +464,7 @@ public class DirectEntryLogger implements EntryLogger {
     @Override
     public void flush() throws IOException {
         long start = System.nanoTime();
+        closeIdleLedgerLogs();
         Future<?> currentFuture = flushCurrent();
 
         List<Future<?>> outstandingFlushes;
@@ -300,15 +492,20 @@ public class DirectEntryLogger implements EntryLogger {
     }
 
     private Future<?> flushCurrent() throws IOException {
-        WriterWithMetadata flushWriter;
+        List<WriterWithMetadata> flushWriters = new ArrayList<>();
         synchronized (this) {
-            flushWriter = this.curWriter;
+            if (this.curWriter != null) {
+                flushWriters.add(this.curWriter);
+            }
+            flushWriters.addAll(ledgerWriters.values());
         }
-        if (flushWriter != null) {
+        if (!flushWriters.isEmpty()) {
             return flushExecutor.submit(() -> {
                     long start = System.nanoTime();
                     try {
-                        flushWriter.flush();
+                        for (WriterWithMetadata flushWriter : flushWriters) {
+                            flushWriter.flush();
+                        }
                         stats.getWriterFlushStats().registerSuccessfulEvent(
                                 System.nanoTime() - start, TimeUnit.NANOSECONDS);
                     } catch (Throwable t) {
@@ -323,16 +520,27 @@ public class DirectEntryLogger implements EntryLogger {
         }
     }
 
-    private void flushAndCloseCurrent() throws IOException {
-        WriterWithMetadata flushWriter;
+    private synchronized void flushAndCloseCurrent() throws IOException {
+        WriterWithMetadata flushWriter = this.curWriter;
+        this.curWriter = null;
+        flushAndClose(flushWriter);
+    }
 
+    private synchronized void flushAndCloseAll() throws IOException {
+        flushAndCloseCurrent();
+        for (WriterWithMetadata flushWriter : ledgerWriters.values()) {
+            flushAndClose(flushWriter);
+        }
+        ledgerWriters.clear();
+    }
+
+    /**
+     * Asynchronously flush and close a writer which has been removed from the active writers.
+     */
+    private synchronized void flushAndClose(WriterWithMetadata flushWriter) {
         CompletableFuture<Void> flushPromise = new CompletableFuture<>();
-        synchronized (this) {
-            flushWriter = this.curWriter;
-            this.curWriter = null;
+        pendingFlushes.add(flushPromise);
 
-            pendingFlushes.add(flushPromise);
-        }
         if (flushWriter != null) {
             flushExecutor.execute(() -> {
                 long start = System.nanoTime();
@@ -355,16 +563,30 @@ public class DirectEntryLogger implements EntryLogger {
 
     @Override
     public void close() throws IOException {
-        flushAndCloseCurrent(); // appends metadata to current log
+        flushAndCloseAll(); // appends metadata to current logs
         flush(); // wait for all outstanding flushes
 
         for (Cache<?, ?> c : allCaches) {
             c.invalidateAll();
         }
 
+        ioRing.close();
         writeBuffers.close();
     }
 
+    private static NativeIORing newIoRing(NativeIO nativeIO, boolean ioUringEnabled, int ioUringEntries,
+                                          ExecutorService writeExecutor, Slogger slog) {
+        if (ioUringEnabled) {
+            try {
+                return nativeIO.newIoUringRing(ioUringEntries);
+            } catch (NativeIOException | RuntimeException | LinkageError e) {
+                slog.kv("message", e.getMessage())
+                    .warn(Events.IO_URING_NOT_AVAILABLE);
+            }
+        }
+        return nativeIO.newBlockingRing(writeExecutor);
+    }
+
     @Override
     public Collection<Long> getFlushedLogIds() {
         return LedgerDirUtil.logIdsInDirectory(ledgerDir).stream()
@@ -450,7 +672,7 @@ public class DirectEntryLogger implements EntryLogger {
     private LogWriter newDirectWriter(int newId) throws IOException {
         unflushedLogs.add(newId);
         LogWriter writer = new DirectWriter(newId, logFilename(ledgerDir, newId), maxFileSize,
-                                            writeExecutor, writeBuffers, nativeIO, slog);
+                                            ioRing, writeBuffers, nativeIO, slog);
         ByteBuf buf = allocator.buffer(Buffer.ALIGNMENT);
         try {
             Header.writeEmptyHeader(buf);
@@ -474,7 +696,7 @@ public class DirectEntryLogger implements EntryLogger {
     public CompactionEntryLog newCompactionLog(long srcLogId) throws IOException {
         int dstLogId = ids.nextId();
         return DirectCompactionEntryLog.newLog((int) srcLogId, dstLogId, ledgerDir,
-                                               maxFileSize, writeExecutor, writeBuffers,
+                                               maxFileSize, ioRing, writeBuffers,
                                                nativeIO, allocator, slog);
     }
 
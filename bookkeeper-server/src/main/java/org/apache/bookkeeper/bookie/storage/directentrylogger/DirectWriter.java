@@ -29,10 +29,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Future;
 import org.apache.bookkeeper.common.util.nativeio.NativeIO;
 import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIORing;
 import org.apache.bookkeeper.slogger.Slogger;
 import org.apache.commons.lang3.SystemUtils;
 
@@ -42,7 +44,7 @@ class DirectWriter implements LogWriter {
     final int id;
     final String filename;
     final BufferPool bufferPool;
-    final ExecutorService writeExecutor;
+    final NativeIORing ioRing;
     final Object bufferLock = new Object();
     final List<Future<?>> outstandingWrites = new ArrayList<Future<?>>();
     final Slogger slog;
@@ -53,13 +55,13 @@ class DirectWriter implements LogWriter {
     DirectWriter(int id,
                  String filename,
                  long maxFileSize,
-                 ExecutorService writeExecutor,
+                 NativeIORing ioRing,
                  BufferPool bufferPool,
                  NativeIO nativeIO, Slogger slog) throws IOException {
         checkArgument(maxFileSize > 0, "Max file size (%d) must be positive");
         this.id = id;
         this.filename = filename;
-        this.writeExecutor = writeExecutor;
+        this.ioRing = ioRing;
         this.nativeIO = nativeIO;
         this.slog = slog.ctx(DirectWriter.class);
 
@@ -124,38 +126,61 @@ class DirectWriter implements LogWriter {
         Buffer tmpBuffer = bufferPool.acquire();
         tmpBuffer.reset();
         tmpBuffer.writeByteBuf(buf);
-        Future<?> f = writeExecutor.submit(() -> {
-            writeByteBuf(tmpBuffer, bytesToWrite, offset);
-            return null;
-            });
-        addOutstandingWrite(f);
+        queueWrite(tmpBuffer, bytesToWrite, offset);
+        submit();
     }
 
-    private void writeByteBuf(Buffer buffer, int bytesToWrite, long offsetToWrite) throws IOException{
+    /**
+     * Queue the write of a buffer on the ring. The buffer is released once written.
+     */
+    private void queueWrite(Buffer buffer, int bytesToWrite, long offsetToWrite) throws IOException {
+        CompletableFuture<Integer> write;
         try {
-            if (bytesToWrite <= 0) {
-                return;
+            write = ioRing.pwrite(fd, buffer.pointer(), bytesToWrite, offsetToWrite);
+        } catch (NativeIOException ne) {
+            bufferPool.release(buffer);
+            throw writeError(ne, buffer, bytesToWrite, offsetToWrite);
+        }
+
+        addOutstandingWrite(write.handle((ret, error) -> {
+            bufferPool.release(buffer);
+            if (error != null) {
+                throw new CompletionException(writeError(error, buffer, bytesToWrite, offsetToWrite));
             }
-            int ret = nativeIO.pwrite(fd, buffer.pointer(), bytesToWrite, offsetToWrite);
             if (ret != bytesToWrite) {
-                throw new IOException(exMsg("Incomplete write")
+                throw new CompletionException(new IOException(exMsg("Incomplete write")
                     .kv("filename", filename)
                     .kv("pointer", buffer.pointer())
                     .kv("offset", offsetToWrite)
                     .kv("writeSize", bytesToWrite)
                     .kv("bytesWritten", ret)
-                    .toString());
+                    .toString()));
             }
+            return null;
+        }));
+    }
+
+    private IOException writeError(Throwable error, Buffer buffer, int bytesToWrite, long offsetToWrite) {
+        return new IOException(exMsg("Write error")
+            .kv("filename", filename)
+            .kv("offset", offsetToWrite)
+            .kv("writeSize", bytesToWrite)
+            .kv("pointer", buffer.pointer())
+            .kv("errno", errno(error))
+            .toString(), error);
+    }
+
+    private static int errno(Throwable error) {
+        return error instanceof NativeIOException ? ((NativeIOException) error).getErrno() : -1;
+    }
+
+    private void submit() throws IOException {
+        try {
+            ioRing.submit();
         } catch (NativeIOException ne) {
-            throw new IOException(exMsg("Write error")
-                .kv("filename", filename)
-                .kv("offset", offsetToWrite)
-                .kv("writeSize", bytesToWrite)
-                .kv("pointer", buffer.pointer())
-                .kv("errno", ne.getErrno())
-                .toString());
-        } finally {
-            bufferPool.release(buffer);
+            throw new IOException(exMsg(ne.getMessage())
+                                  .kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString(), ne);
         }
     }
 
@@ -163,7 +188,7 @@ class DirectWriter implements LogWriter {
     public int writeDelimited(ByteBuf buf) throws IOException {
         synchronized (bufferLock) {
             if (!nativeBuffer.hasSpace(serializedSize(buf))) {
-                flushBuffer();
+                flushBuffer(false);
             }
 
             int readable = buf.readableBytes();
@@ -185,7 +210,7 @@ class DirectWriter implements LogWriter {
     public void position(long offset) throws IOException {
         synchronized (bufferLock) {
             if (nativeBuffer != null && nativeBuffer.position() > 0) {
-                flushBuffer();
+                flushBuffer(false);
             }
             if ((offset % Buffer.ALIGNMENT) != 0) {
                 throw new IOException(exMsg("offset must be multiple of alignment")
@@ -206,18 +231,20 @@ class DirectWriter implements LogWriter {
 
     @Override
     public void flush() throws IOException {
-        flushBuffer();
+        // The last write and the fsync are submitted together
+        CompletableFuture<Integer> fsync = flushBuffer(true);
 
         waitForOutstandingWrites();
 
-        try {
-            int ret = nativeIO.fsync(fd);
+        waitForFuture(fsync.handle((ret, error) -> {
+            if (error != null) {
+                throw new CompletionException(new IOException(exMsg(error.getMessage())
+                                                              .kv("file", filename)
+                                                              .kv("errno", errno(error)).toString(), error));
+            }
             checkState(ret == 0, "Fsync should throw exception on non-zero return (%d)", ret);
-        } catch (NativeIOException ne) {
-            throw new IOException(exMsg(ne.getMessage())
-                                  .kv("file", filename)
-                                  .kv("errno", ne.getErrno()).toString());
-        }
+            return null;
+        }));
     }
 
     @Override
@@ -286,31 +313,46 @@ class DirectWriter implements LogWriter {
         }
     }
 
-    private void flushBuffer() throws IOException {
+    /**
+     * Write the current buffer and, if requested, fsync the file.
+     *
+     * @return the future of the fsync, or null if not requested
+     */
+    private CompletableFuture<Integer> flushBuffer(boolean fsync) throws IOException {
         synchronized (bufferLock) {
+            boolean flushed = false;
             if (this.nativeBuffer != null) {
                 int bytesToWrite = this.nativeBuffer.padToAlignment();
-                if (bytesToWrite == 0) {
-                    return;
-                }
+                if (bytesToWrite > 0) {
+                    Buffer bufferToFlush = this.nativeBuffer;
+                    this.nativeBuffer = null;
 
-                Buffer bufferToFlush = this.nativeBuffer;
-                this.nativeBuffer = null;
+                    long offsetToWrite = offset;
+                    offset += bytesToWrite;
 
-                long offsetToWrite = offset;
-                offset += bytesToWrite;
+                    queueWrite(bufferToFlush, bytesToWrite, offsetToWrite);
+                    flushed = true;
+                }
+            }
 
-                Future<?> f = writeExecutor.submit(() -> {
-                    writeByteBuf(bufferToFlush, bytesToWrite, offsetToWrite);
-                    return null;
-                });
-                addOutstandingWrite(f);
+            CompletableFuture<Integer> fsyncFuture = null;
+            if (fsync) {
+                try {
+                    fsyncFuture = ioRing.fsync(fd);
+                } catch (NativeIOException ne) {
+                    fsyncFuture = new CompletableFuture<>();
+                    fsyncFuture.completeExceptionally(ne);
+                }
+            }
+            submit();
 
+            if (flushed) {
                 // must acquire after triggering the write
                 // otherwise it could try to acquire a buffer without kicking off
                 // a subroutine that will free another
                 this.nativeBuffer = bufferPool.acquire();
             }
+            return fsyncFuture;
         }
     }
 
@@ -31,6 +31,13 @@ public enum Events {
      */
     FALLOCATE_NOT_AVAILABLE,
 
+    /**
+     * io_uring is not available on this host, generally because of a non-Linux operating system or a kernel
+     * older than 5.6. The writes and fsyncs of the entry logs are issued with blocking syscalls from the write
+     * executor instead.
+     */
+    IO_URING_NOT_AVAILABLE,
+
     /**
      * EntryLog ID candidates selected. These are the set entry log ID that subsequent entry log files
      * will use. To find the candidates, the bookie lists all the log ids which have already been used,
@@ -60,6 +67,12 @@ public enum Events {
      */
     LOG_ROLL,
 
+    /**
+     * The log file of a ledger has been closed, because the entries of another ledger had to be written
+     * to a new log and too many logs were open, or because the ledger has not been written for a while.
+     */
+    LOG_EVICTED,
+
     /**
      * A log file has been deleted. This happens as a result of GC, when all entries in the file
      * belong to deleted ledgers, or compaction, where the live entries have been copied to a new
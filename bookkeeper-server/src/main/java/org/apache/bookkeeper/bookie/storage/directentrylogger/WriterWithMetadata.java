@@ -34,12 +34,14 @@ class WriterWithMetadata {
     private final LogWriter writer;
     private final EntryLogMetadata metadata;
     private final ByteBufAllocator allocator;
+    private long lastAddNanos;
 
     WriterWithMetadata(LogWriter writer, EntryLogMetadata metadata,
                        ByteBufAllocator allocator) throws IOException {
         this.writer = writer;
         this.metadata = metadata;
         this.allocator = allocator;
+        this.lastAddNanos = System.nanoTime();
 
         ByteBuf buf = allocator.buffer(Buffer.ALIGNMENT);
         try {
@@ -63,10 +65,15 @@ class WriterWithMetadata {
         int size = entry.readableBytes();
         metadata.addLedgerSize(ledgerId, size + Integer.BYTES);
         long offset = writer.writeDelimited(entry);
+        lastAddNanos = System.nanoTime();
         checkState(offset < Integer.MAX_VALUE, "Offsets can't be higher than max int (%d)", offset);
         return ((long) writer.logId()) << 32 | offset;
     }
 
+    long lastAddNanos() {
+        return lastAddNanos;
+    }
+
     void flush() throws IOException {
         writer.flush();
     }
@@ -43,6 +43,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.bookie.ActiveLedgersSnapshot;
 import org.apache.bookkeeper.bookie.BookieException;
 import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
@@ -91,8 +92,16 @@ public class DbLedgerStorage implements LedgerStorage {
         "dbStorage_directIOEntryLoggerReadBufferSizeMB";
     public static final String DIRECT_IO_ENTRYLOGGER_MAX_FD_CACHE_TIME_SECONDS =
         "dbStorage_directIOEntryLoggerMaxFdCacheTimeSeconds";
+    public static final String DIRECT_IO_ENTRYLOGGER_IO_URING = "dbStorage_directIOEntryLoggerIoUring";
+    public static final String DIRECT_IO_ENTRYLOGGER_MAX_ACTIVE_WRITERS =
+        "dbStorage_directIOEntryLoggerMaxActiveWriters";
+    public static final String DIRECT_IO_ENTRYLOGGER_WRITER_IDLE_TIME_SECONDS =
+        "dbStorage_directIOEntryLoggerWriterIdleTimeSeconds";
 
     static final String MAX_THROTTLE_TIME_MILLIS = "dbStorage_maxThrottleTimeMs";
+    static final String WRITE_CACHE_SORT_PARALLELISM = "dbStorage_writeCacheSortParallelism";
+    static final String WRITE_CACHES_COUNT = "dbStorage_writeCachesCount";
+    static final String NUMA_AWARE_CACHES = "dbStorage_numaAwareCaches";
 
     private static final int MB = 1024 * 1024;
 
@@ -103,6 +112,18 @@ public class DbLedgerStorage implements LedgerStorage {
 
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     static final String READ_AHEAD_CACHE_BATCH_BYTES_SIZE = "dbStorage_readAheadCacheBatchBytesSize";
+    static final String READ_AHEAD_CACHE_ADAPTIVE = "dbStorage_readAheadCacheAdaptive";
+    static final String READ_AHEAD_CACHE_MAX_BATCH_SIZE = "dbStorage_readAheadCacheMaxBatchSize";
+    static final String READ_AHEAD_ASYNC = "dbStorage_readAheadAsync";
+    static final String READ_AHEAD_PREFETCH_THREADS = "dbStorage_readAheadPrefetchThreads";
+    static final String READ_AHEAD_PREFETCH_MAX_PENDING = "dbStorage_readAheadPrefetchMaxPending";
+    static final String READ_AHEAD_MAX_RANGE_READ_BYTES = "dbStorage_readAheadMaxRangeReadBytes";
+    static final int DEFAULT_READ_AHEAD_PREFETCH_MAX_PENDING = 1000;
+    static final int DEFAULT_READ_AHEAD_MAX_RANGE_READ_BYTES = 1024 * 1024;
+    static final String READ_AHEAD_CACHE_EVICTION_POLICY = "dbStorage_readAheadCacheEvictionPolicy";
+    static final String READ_AHEAD_CACHE_PROTECTED_RATIO = "dbStorage_readAheadCacheProtectedRatio";
+    static final String ENTRY_LOCATION_INDEX_STORAGE = "dbStorage_entryLocationIndexStorage";
+    static final String ENTRY_LOCATION_INDEX_MAX_MAPPED_LEDGERS = "dbStorage_entryLocationIndexMaxMappedLedgers";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
     // the default value is -1. this feature(limit of read ahead bytes) is disabled
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_BYTES_SIZE = -1;
@@ -224,6 +245,17 @@ public class DbLedgerStorage implements LedgerStorage {
                     numReadThreads = conf.getServerNumIOThreads();
                 }
 
+                int maxActiveWriters = (int) getLongVariableOrDefault(
+                    conf,
+                    DIRECT_IO_ENTRYLOGGER_MAX_ACTIVE_WRITERS,
+                    1);
+                if (maxActiveWriters > DirectEntryLogger.MAX_ACTIVE_WRITERS) {
+                    log.warn("{} is {}, only {} entry logs are written at the same time",
+                            DIRECT_IO_ENTRYLOGGER_MAX_ACTIVE_WRITERS, maxActiveWriters,
+                            DirectEntryLogger.MAX_ACTIVE_WRITERS);
+                    maxActiveWriters = DirectEntryLogger.MAX_ACTIVE_WRITERS;
+                }
+
                 entrylogger = new DirectEntryLogger(ledgerDir, new EntryLogIdsImpl(ldm, slog),
                     new NativeIOImpl(),
                     allocator, entryLoggerWriteExecutor, entryLoggerFlushExecutor,
@@ -234,6 +266,9 @@ public class DbLedgerStorage implements LedgerStorage {
                     readBufferSize,
                     numReadThreads,
                     maxFdCacheTimeSeconds,
+                    getBooleanVariableOrDefault(conf, DIRECT_IO_ENTRYLOGGER_IO_URING, false),
+                    maxActiveWriters,
+                    (int) getLongVariableOrDefault(conf, DIRECT_IO_ENTRYLOGGER_WRITER_IDLE_TIME_SECONDS, 300),
                     slog, statsLogger);
             } else {
                 entrylogger = new DefaultEntryLogger(conf, ldm, null, statsLogger, allocator);
@@ -249,6 +284,13 @@ public class DbLedgerStorage implements LedgerStorage {
             }
         }
 
+        if (conf.isGcSharedLedgerMetadataSnapshotEnabled() && ledgerManager != null && ledgerStorageList.size() > 1) {
+            // Scan the ledgers of the metadata store once per GC cycle, instead of once per directory
+            ActiveLedgersSnapshot activeLedgersSnapshot = new ActiveLedgersSnapshot(ledgerManager,
+                    conf.getGcWaitTime());
+            ledgerStorageList.forEach(s -> s.setActiveLedgersSnapshot(activeLedgersSnapshot));
+        }
+
         // parent DbLedgerStorage stats (not per directory)
         readaheadBatchSizeGauge = new Gauge<Integer>() {
             @Override
@@ -484,9 +526,11 @@ public class DbLedgerStorage implements LedgerStorage {
         int dirIndex = MathUtils.signSafeMod(ledgerId, ledgerDirs.size());
         String indexBasePath = indexDirs.get(dirIndex).toString();
 
-        EntryLocationIndex entryLocationIndex = new EntryLocationIndex(serverConf,
-                (basePath, subPath, dbConfigType, conf1) ->
-                        new KeyValueStorageRocksDB(basePath, subPath, DbConfigType.Default, conf1, true),
+        KeyValueStorageFactory storageFactory = EntryLocationIndex.isMappedStorage(serverConf)
+                ? KeyValueStorageMappedLocations.factory
+                : (basePath, subPath, dbConfigType, conf1) ->
+                        new KeyValueStorageRocksDB(basePath, subPath, DbConfigType.Default, conf1, true);
+        EntryLocationIndex entryLocationIndex = new EntryLocationIndex(serverConf, storageFactory,
                 indexBasePath, NullStatsLogger.INSTANCE);
         try {
             long lastEntryId = entryLocationIndex.getLastEntryInLedger(ledgerId);
@@ -55,6 +55,8 @@ class DbLedgerStorageStats {
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
+    private static final String READAHEAD_DEDUPLICATED = "readahead-deduplicated";
+    private static final String READAHEAD_REJECTED = "readahead-rejected";
     private static final String FLUSH = "flush";
     private static final String FLUSH_ENTRYLOG = "flush-entrylog";
     private static final String FLUSH_LOCATIONS_INDEX = "flush-locations-index";
@@ -70,6 +72,8 @@ class DbLedgerStorageStats {
     private static final String WRITE_CACHE_COUNT = "write-cache-count";
     private static final String READ_CACHE_SIZE = "read-cache-size";
     private static final String READ_CACHE_COUNT = "read-cache-count";
+    private static final String READ_CACHE_EVICTED = "read-cache-evicted";
+    private static final String READ_CACHE_PROMOTED = "read-cache-promoted";
 
     @StatsDoc(
         name = ADD_ENTRY,
@@ -134,6 +138,16 @@ class DbLedgerStorageStats {
             help = "Time spent on readahead operations"
     )
     private final Counter readAheadTime;
+    @StatsDoc(
+            name = READAHEAD_DEDUPLICATED,
+            help = "number of readahead requests skipped because the same entries were already being read ahead"
+    )
+    private final Counter readAheadDeduplicatedCounter;
+    @StatsDoc(
+            name = READAHEAD_REJECTED,
+            help = "number of readahead requests dropped because too many readahead requests were pending"
+    )
+    private final Counter readAheadRejectedCounter;
     @StatsDoc(
         name = FLUSH,
         help = "operation stats of flushing write cache to entry log files"
@@ -195,12 +209,24 @@ class DbLedgerStorageStats {
         help = "Current number of entries in read cache"
     )
     private final Gauge<Long> readCacheCountGauge;
+    @StatsDoc(
+        name = READ_CACHE_EVICTED,
+        help = "Total number of entries evicted from read cache on segment roll-over"
+    )
+    private final Gauge<Long> readCacheEvictedGauge;
+    @StatsDoc(
+        name = READ_CACHE_PROMOTED,
+        help = "Total number of read cache entries promoted to the protected area after being read again"
+    )
+    private final Gauge<Long> readCachePromotedGauge;
 
     DbLedgerStorageStats(StatsLogger stats,
                          Supplier<Long> writeCacheSizeSupplier,
                          Supplier<Long> writeCacheCountSupplier,
                          Supplier<Long> readCacheSizeSupplier,
-                         Supplier<Long> readCacheCountSupplier) {
+                         Supplier<Long> readCacheCountSupplier,
+                         Supplier<Long> readCacheEvictedSupplier,
+                         Supplier<Long> readCachePromotedSupplier) {
         addEntryStats = stats.getThreadScopedOpStatsLogger(ADD_ENTRY);
         readEntryStats = stats.getThreadScopedOpStatsLogger(READ_ENTRY);
         readFromLocationIndexTime = stats.getThreadScopedCounter(READ_ENTRY_LOCATIONS_INDEX_TIME);
@@ -212,6 +238,8 @@ class DbLedgerStorageStats {
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
         readAheadTime = stats.getThreadScopedCounter(READAHEAD_TIME);
+        readAheadDeduplicatedCounter = stats.getCounter(READAHEAD_DEDUPLICATED);
+        readAheadRejectedCounter = stats.getCounter(READAHEAD_REJECTED);
         flushStats = stats.getOpStatsLogger(FLUSH);
         flushEntryLogStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG);
         flushLocationIndexStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX);
@@ -271,6 +299,30 @@ class DbLedgerStorageStats {
             }
         };
         stats.registerGauge(READ_CACHE_COUNT, readCacheCountGauge);
+        readCacheEvictedGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return readCacheEvictedSupplier.get();
+            }
+        };
+        stats.registerGauge(READ_CACHE_EVICTED, readCacheEvictedGauge);
+        readCachePromotedGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return readCachePromotedSupplier.get();
+            }
+        };
+        stats.registerGauge(READ_CACHE_PROMOTED, readCachePromotedGauge);
     }
 
 }
@@ -20,9 +20,11 @@
  */
 package org.apache.bookkeeper.bookie.storage.ldb;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -34,6 +36,7 @@ import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,8 +48,17 @@ import org.slf4j.LoggerFactory;
  */
 public class EntryLocationIndex implements Closeable {
 
+    static final String STORAGE_ROCKSDB = "rocksdb";
+    static final String STORAGE_MAPPED = "mapped";
+
+    private static final long NO_WATERMARK = -1L;
+
     private final KeyValueStorage locationsDb;
     private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
+    // ledgerId -> 1 + the last entry id added to the index, for every ledger in the index. It is loaded when the
+    // index is opened, so a ledger without a watermark has no entry in the index. No entry at or past the
+    // watermark can be found either, so these lookups are answered without accessing the storage
+    private final ConcurrentLongLongHashMap watermarks = ConcurrentLongLongHashMap.newBuilder().build();
     private final EntryLocationIndexStats stats;
     private boolean isCompacting;
 
@@ -63,6 +75,55 @@ public class EntryLocationIndex implements Closeable {
                     return -1L;
                 }
             });
+        loadWatermarks();
+    }
+
+    /**
+     * Load the watermarks of all the ledgers in the index, seeking from each ledger to the next one rather
+     * than reading all the entries.
+     */
+    private void loadWatermarks() throws IOException {
+        long startTime = System.nanoTime();
+        LongPairWrapper key = LongPairWrapper.get(0, 0);
+        try {
+            Entry<byte[], byte[]> entry = locationsDb.getCeil(key.array);
+            while (entry != null) {
+                long ledgerId = ArrayUtil.getLong(entry.getKey(), 0);
+                key.set(ledgerId, Long.MAX_VALUE);
+                Entry<byte[], byte[]> last = locationsDb.getFloor(key.array);
+                if (last != null && ArrayUtil.getLong(last.getKey(), 0) == ledgerId) {
+                    watermarks.put(ledgerId, ArrayUtil.getLong(last.getKey(), 8) + 1);
+                }
+                if (ledgerId == Long.MAX_VALUE) {
+                    break;
+                }
+                key.set(ledgerId + 1, 0);
+                entry = locationsDb.getCeil(key.array);
+            }
+        } finally {
+            key.recycle();
+        }
+        log.info("Loaded the last entry of {} ledgers from the entry location index in {} ms", watermarks.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+
+    /**
+     * Get the storage factory of the entry location index selected in the configuration.
+     */
+    public static KeyValueStorageFactory getStorageFactory(ServerConfiguration conf) {
+        return isMappedStorage(conf) ? KeyValueStorageMappedLocations.factory : KeyValueStorageRocksDB.factory;
+    }
+
+    static boolean isMappedStorage(ServerConfiguration conf) {
+        String storage = conf.getString(DbLedgerStorage.ENTRY_LOCATION_INDEX_STORAGE, STORAGE_ROCKSDB);
+        if (STORAGE_MAPPED.equalsIgnoreCase(storage)) {
+            return true;
+        } else if (STORAGE_ROCKSDB.equalsIgnoreCase(storage)) {
+            return false;
+        } else {
+            throw new IllegalArgumentException("Invalid value '" + storage + "' for "
+                    + DbLedgerStorage.ENTRY_LOCATION_INDEX_STORAGE);
+        }
     }
 
     @Override
@@ -71,6 +132,16 @@ public class EntryLocationIndex implements Closeable {
     }
 
     public long getLocation(long ledgerId, long entryId) throws IOException {
+        long watermark = watermarks.get(ledgerId);
+        if (watermark == NO_WATERMARK || entryId >= watermark) {
+            // The ledger is unknown, deleted, or the entry was never added to the index
+            if (log.isDebugEnabled()) {
+                log.debug("Entry {}@{} is past the last entry of the ledger in db index", ledgerId, entryId);
+            }
+            stats.getLookupEntryLocationFilteredCounter().inc();
+            return 0;
+        }
+
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get();
 
@@ -150,6 +221,9 @@ public class EntryLocationIndex implements Closeable {
     }
 
     public void addLocation(Batch batch, long ledgerId, long entryId, long location) throws IOException {
+        // The watermark needs to be raised before the entry becomes visible in the index
+        raiseWatermark(ledgerId, entryId);
+
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get(location);
 
@@ -165,6 +239,41 @@ public class EntryLocationIndex implements Closeable {
         }
     }
 
+    /**
+     * Get the watermark of a ledger, loading it from the index when the ledger has none yet: a new ledger, or a
+     * deleted ledger written again.
+     */
+    private long getWatermark(long ledgerId) throws IOException {
+        long watermark = watermarks.get(ledgerId);
+        if (watermark != NO_WATERMARK) {
+            return watermark;
+        }
+
+        try {
+            return watermarks.computeIfAbsent(ledgerId, lId -> {
+                try {
+                    return getLastEntryInLedgerInternal(lId) + 1;
+                } catch (Bookie.NoEntryException e) {
+                    return 0;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void raiseWatermark(long ledgerId, long entryId) throws IOException {
+        long watermark = getWatermark(ledgerId);
+        while (watermark <= entryId) {
+            if (watermarks.compareAndSet(ledgerId, watermark, entryId + 1)) {
+                return;
+            }
+            watermark = getWatermark(ledgerId);
+        }
+    }
+
     public void updateLocations(Iterable<EntryLocation> newLocations) throws IOException {
         if (log.isDebugEnabled()) {
             log.debug("Update locations -- {}", Iterables.size(newLocations));
@@ -188,6 +297,12 @@ public class EntryLocationIndex implements Closeable {
         // We need to find all the LedgerIndexPage records belonging to one specific
         // ledgers
         deletedLedgers.add(ledgerId);
+        watermarks.remove(ledgerId);
+    }
+
+    @VisibleForTesting
+    int watermarksCount() {
+        return (int) watermarks.size();
     }
 
     public String getEntryLocationDBPath() {
@@ -235,6 +350,7 @@ public class EntryLocationIndex implements Closeable {
             batch.flush();
             for (long ledgerId : ledgersToDelete) {
                 deletedLedgers.remove(ledgerId);
+                watermarks.remove(ledgerId);
             }
         } finally {
             firstKeyWrapper.recycle();
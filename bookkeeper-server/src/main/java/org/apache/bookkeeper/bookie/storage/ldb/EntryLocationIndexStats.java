@@ -24,6 +24,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 
 import java.util.function.Supplier;
 import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -42,6 +43,7 @@ class EntryLocationIndexStats {
 
     private static final String ENTRIES_COUNT = "entries-count";
     private static final String LOOKUP_ENTRY_LOCATION = "lookup-entry-location";
+    private static final String LOOKUP_ENTRY_LOCATION_FILTERED = "lookup-entry-location-filtered";
 
     @StatsDoc(
         name = ENTRIES_COUNT,
@@ -55,6 +57,13 @@ class EntryLocationIndexStats {
     )
     private final OpStatsLogger lookupEntryLocationStats;
 
+    @StatsDoc(
+            name = LOOKUP_ENTRY_LOCATION_FILTERED,
+            help = "number of entry location lookups answered without accessing the index,"
+                + " because the entry is past the last entry of the ledger"
+    )
+    private final Counter lookupEntryLocationFilteredCounter;
+
     EntryLocationIndexStats(StatsLogger statsLogger,
                             Supplier<Long> entriesCountSupplier) {
         entriesCountGauge = new Gauge<Long>() {
@@ -70,6 +79,7 @@ class EntryLocationIndexStats {
         };
         statsLogger.registerGauge(ENTRIES_COUNT, entriesCountGauge);
         lookupEntryLocationStats = statsLogger.getOpStatsLogger(LOOKUP_ENTRY_LOCATION);
+        lookupEntryLocationFilteredCounter = statsLogger.getCounter(LOOKUP_ENTRY_LOCATION_FILTERED);
     }
 
 }
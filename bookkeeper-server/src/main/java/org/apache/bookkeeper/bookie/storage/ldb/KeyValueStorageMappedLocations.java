@@ -0,0 +1,1003 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * KeyValueStorage implementation specialized for the entry location index.
+ *
+ * <p>Keys are (ledgerId, entryId) pairs and values are entry log locations. Each ledger keeps its
+ * locations in a dense array indexed by entry id, stored in a memory-mapped file, so that adding or
+ * looking up a location is a single memory access, without the write amplification and the compactions
+ * of a LSM tree. The entries that would make the array too sparse (eg: a ledger that was re-replicated
+ * on this bookie starting from a high entry id) are kept in a small sorted map, persisted next to the
+ * array.
+ *
+ * <p>A location equal to 0 marks an empty slot, since no entry is ever stored at the very beginning of
+ * an entry log.
+ *
+ * <p>Only the arrays of the ledgers in use are mapped: the number of mappings is bounded, to stay well below
+ * the max number of memory mappings of a process, and the arrays that were not accessed recently are
+ * unmapped when more are needed.
+ */
+public class KeyValueStorageMappedLocations implements KeyValueStorage {
+    private static final Logger log = LoggerFactory.getLogger(KeyValueStorageMappedLocations.class);
+
+    static KeyValueStorageFactory factory = (defaultBasePath, subPath, dbConfigType, conf) ->
+            new KeyValueStorageMappedLocations(defaultBasePath, subPath, getMaxMappedLedgers(conf));
+
+    static final int DEFAULT_MAX_MAPPED_LEDGERS = 4096;
+
+    private static final String DIRECTORY_SUFFIX = ".mapped";
+    private static final String SLOTS_FILE_SUFFIX = ".loc";
+    private static final String SPARSE_FILE_SUFFIX = ".sparse";
+    private static final String TMP_FILE_SUFFIX = ".tmp";
+
+    // "BKLI"
+    private static final int MAGIC = 0x424b4c49;
+    private static final int VERSION = 1;
+    // magic, version and base entry id
+    private static final int HEADER_SIZE = 16;
+
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int MAX_SLOTS = 1 << 27;
+    // The array is only grown when at least 1 / MIN_DENSITY of its slots would be in use
+    private static final int MIN_DENSITY = 4;
+
+    private static final long NO_ENTRY = -1L;
+
+    private final File directory;
+    private final ConcurrentSkipListMap<Long, LedgerLocations> ledgers = new ConcurrentSkipListMap<>();
+    private final AtomicLong count = new AtomicLong();
+    // Set when files were created or removed since the last sync of the directory
+    private final AtomicBoolean directoryDirty = new AtomicBoolean();
+
+    // The ledgers whose array may be mapped, in the order they were mapped. A ledger is polled from the
+    // queue to be unmapped, and added back if it was accessed since it was added
+    private final ConcurrentLinkedQueue<LedgerLocations> mappedLedgers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mappedLedgersCount = new AtomicInteger();
+    private final int maxMappedLedgers;
+    private volatile boolean closed = false;
+
+    public KeyValueStorageMappedLocations(String basePath, String subPath) throws IOException {
+        this(basePath, subPath, DEFAULT_MAX_MAPPED_LEDGERS);
+    }
+
+    public KeyValueStorageMappedLocations(String basePath, String subPath, int maxMappedLedgers)
+            throws IOException {
+        checkArgument(maxMappedLedgers > 0, "Invalid max number of mapped ledgers: %s", maxMappedLedgers);
+        this.directory = new File(basePath, getDirectoryName(subPath));
+        this.maxMappedLedgers = maxMappedLedgers;
+
+        File rocksDbDirectory = new File(basePath, subPath);
+        if (!directory.exists() && rocksDbDirectory.exists()) {
+            throw new IOException("Found a RocksDB index at " + rocksDbDirectory
+                    + " while the memory-mapped index at " + directory + " does not exist."
+                    + " The index needs to be rebuilt with the rebuild-db-ledger-locations-index command");
+        }
+
+        Files.createDirectories(directory.toPath());
+        load();
+    }
+
+    /**
+     * Get the name of the directory where the index for the given sub path is stored.
+     */
+    public static String getDirectoryName(String subPath) {
+        return subPath + DIRECTORY_SUFFIX;
+    }
+
+    private static int getMaxMappedLedgers(ServerConfiguration conf) {
+        return conf != null
+                ? conf.getInt(DbLedgerStorage.ENTRY_LOCATION_INDEX_MAX_MAPPED_LEDGERS, DEFAULT_MAX_MAPPED_LEDGERS)
+                : DEFAULT_MAX_MAPPED_LEDGERS;
+    }
+
+    private void load() throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Failed to list the files of " + directory);
+        }
+        Arrays.sort(files);
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TMP_FILE_SUFFIX)) {
+                // Leftover of an interrupted update of a sparse map
+                Files.delete(file.toPath());
+            } else if (name.endsWith(SLOTS_FILE_SUFFIX)) {
+                long ledgerId = Long.parseLong(name.substring(0, name.length() - SLOTS_FILE_SUFFIX.length()), 16);
+                LedgerLocations ledger = LedgerLocations.open(this, ledgerId);
+                ledgers.put(ledgerId, ledger);
+                count.addAndGet(ledger.count());
+            }
+        }
+
+        log.info("Loaded memory-mapped entry location index at {} -- ledgers: {} -- entries: {}", directory,
+                ledgers.size(), count.get());
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) throws IOException {
+        put(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), ArrayUtil.getLong(value, 0));
+        evictMappings();
+    }
+
+    private LedgerLocations put(long ledgerId, long entryId, long location) throws IOException {
+        checkArgument(ledgerId >= 0 && entryId >= 0, "Invalid key (%s, %s)", ledgerId, entryId);
+        if (location == 0) {
+            return remove(ledgerId, entryId);
+        }
+
+        LedgerLocations ledger = ledgers.get(ledgerId);
+        // A failed put means that the ledger was deleted concurrently, retry with a new one
+        while (ledger == null || !ledger.put(entryId, location)) {
+            ledger = createLedger(ledgerId, entryId);
+        }
+        return ledger;
+    }
+
+    private synchronized LedgerLocations createLedger(long ledgerId, long firstEntryId) throws IOException {
+        LedgerLocations ledger = ledgers.get(ledgerId);
+        if (ledger == null || ledger.deleted) {
+            ledger = LedgerLocations.create(this, ledgerId, firstEntryId - firstEntryId % INITIAL_SLOTS);
+            ledgers.put(ledgerId, ledger);
+            directoryDirty.set(true);
+        }
+        return ledger;
+    }
+
+    private LedgerLocations remove(long ledgerId, long entryId) throws IOException {
+        LedgerLocations ledger = ledgers.get(ledgerId);
+        if (ledger != null) {
+            ledger.remove(entryId, entryId + 1);
+            deleteLedgerIfEmpty(ledger);
+        }
+        return ledger;
+    }
+
+    private void deleteRange(long beginLedgerId, long beginEntryId, long endLedgerId, long endEntryId,
+                             Set<LedgerLocations> touchedLedgers) throws IOException {
+        for (LedgerLocations ledger : ledgers.subMap(beginLedgerId, true, endLedgerId, true).values()) {
+            long from = ledger.ledgerId == beginLedgerId ? beginEntryId : 0;
+            long to = ledger.ledgerId == endLedgerId ? endEntryId : Long.MAX_VALUE;
+
+            if (from <= 0 && to > ledger.lastEntryId) {
+                deleteLedger(ledger);
+            } else if (from < to) {
+                ledger.remove(from, to);
+                if (!deleteLedgerIfEmpty(ledger) && touchedLedgers != null) {
+                    touchedLedgers.add(ledger);
+                }
+            }
+        }
+    }
+
+    private boolean deleteLedgerIfEmpty(LedgerLocations ledger) throws IOException {
+        if (ledger.isEmpty()) {
+            deleteLedger(ledger);
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void deleteLedger(LedgerLocations ledger) throws IOException {
+        if (ledger.delete()) {
+            ledgers.remove(ledger.ledgerId, ledger);
+            directoryDirty.set(true);
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] key) throws IOException {
+        long location = getLocation(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8));
+        evictMappings();
+        if (location == 0) {
+            return null;
+        }
+
+        byte[] value = new byte[Long.BYTES];
+        ArrayUtil.setLong(value, 0, location);
+        return value;
+    }
+
+    @Override
+    public int get(byte[] key, byte[] value) throws IOException {
+        if (value.length < Long.BYTES) {
+            throw new IOException("Value array is too small to fit the result");
+        }
+
+        long location = getLocation(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8));
+        evictMappings();
+        if (location == 0) {
+            return -1;
+        }
+
+        ArrayUtil.setLong(value, 0, location);
+        return Long.BYTES;
+    }
+
+    private long getLocation(long ledgerId, long entryId) throws IOException {
+        LedgerLocations ledger = ledgers.get(ledgerId);
+        return ledger != null ? ledger.get(entryId) : 0;
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getFloor(byte[] key) throws IOException {
+        try {
+            return floor(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8));
+        } finally {
+            evictMappings();
+        }
+    }
+
+    private Entry<byte[], byte[]> floor(long ledgerId, long entryId) throws IOException {
+        for (LedgerLocations ledger : ledgers.headMap(ledgerId, true).descendingMap().values()) {
+            long upperBound = ledger.ledgerId == ledgerId ? entryId : Long.MAX_VALUE;
+            while (true) {
+                long foundEntryId = ledger.lower(upperBound);
+                if (foundEntryId == NO_ENTRY) {
+                    break;
+                }
+
+                long location = ledger.get(foundEntryId);
+                if (location != 0) {
+                    return newEntry(ledger.ledgerId, foundEntryId, location);
+                }
+                // Removed in the meantime
+                upperBound = foundEntryId;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getCeil(byte[] key) throws IOException {
+        Cursor cursor = new Cursor(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8),
+                Long.MAX_VALUE, Long.MAX_VALUE);
+        return cursor.hasNext() ? cursor.next() : null;
+    }
+
+    @Override
+    public void delete(byte[] key) throws IOException {
+        remove(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8));
+        evictMappings();
+    }
+
+    @Override
+    public String getDBPath() {
+        return directory.getPath();
+    }
+
+    @Override
+    public CloseableIterator<byte[]> keys() {
+        return keys(0, 0, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    @Override
+    public CloseableIterator<byte[]> keys(byte[] firstKey, byte[] lastKey) {
+        return keys(ArrayUtil.getLong(firstKey, 0), ArrayUtil.getLong(firstKey, 8),
+                ArrayUtil.getLong(lastKey, 0), ArrayUtil.getLong(lastKey, 8));
+    }
+
+    private CloseableIterator<byte[]> keys(long firstLedgerId, long firstEntryId, long lastLedgerId,
+                                           long lastEntryId) {
+        Cursor cursor = new Cursor(firstLedgerId, firstEntryId, lastLedgerId, lastEntryId);
+        return new CloseableIterator<byte[]>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public byte[] next() {
+                return cursor.next().getKey();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public CloseableIterator<Entry<byte[], byte[]>> iterator() {
+        Cursor cursor = new Cursor(0, 0, Long.MAX_VALUE, Long.MAX_VALUE);
+        return new CloseableIterator<Entry<byte[], byte[]>>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() {
+                return cursor.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public void sync() throws IOException {
+        for (LedgerLocations ledger : ledgers.values()) {
+            ledger.flush();
+        }
+        syncDirectory();
+    }
+
+    private void syncDirectory() throws IOException {
+        if (directoryDirty.getAndSet(false)) {
+            try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                directoryDirty.set(true);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public long count() throws IOException {
+        return count.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        closed = true;
+        for (LedgerLocations ledger : ledgers.values()) {
+            ledger.close();
+        }
+        ledgers.clear();
+        mappedLedgers.clear();
+        mappedLedgersCount.set(0);
+    }
+
+    private void mappingAdded(LedgerLocations ledger) {
+        mappedLedgers.add(ledger);
+        mappedLedgersCount.incrementAndGet();
+    }
+
+    // Unmap the arrays of the ledgers that were not accessed recently, until the number of mappings is back
+    // under the limit. Never called with a ledger lock held, as it takes the locks of the ledgers to unmap
+    private void evictMappings() {
+        while (mappedLedgersCount.get() > maxMappedLedgers) {
+            LedgerLocations ledger = mappedLedgers.poll();
+            if (ledger == null) {
+                return;
+            }
+
+            if (ledger.evict()) {
+                mappedLedgersCount.decrementAndGet();
+            } else {
+                // Accessed since it was added, give it a second chance
+                mappedLedgers.add(ledger);
+            }
+        }
+    }
+
+    /**
+     * Get the number of ledgers whose array may be mapped.
+     */
+    int mappedLedgersCount() {
+        return mappedLedgersCount.get();
+    }
+
+    // Release the mapping right away, instead of when the buffer is garbage collected
+    private static void unmap(MappedByteBuffer buffer) {
+        io.netty.util.internal.PlatformDependent.freeDirectBuffer(buffer);
+    }
+
+    @Override
+    public Batch newBatch() {
+        return new MappedLocationsBatch();
+    }
+
+    private static Entry<byte[], byte[]> newEntry(long ledgerId, long entryId, long location) {
+        byte[] key = new byte[2 * Long.BYTES];
+        ArrayUtil.setLong(key, 0, ledgerId);
+        ArrayUtil.setLong(key, 8, entryId);
+        byte[] value = new byte[Long.BYTES];
+        ArrayUtil.setLong(value, 0, location);
+        return new SimpleImmutableEntry<>(key, value);
+    }
+
+    /**
+     * Ascending scan of the keys in [(firstLedgerId, firstEntryId), (lastLedgerId, lastEntryId)).
+     */
+    private class Cursor {
+        private long ledgerId;
+        private long entryId;
+        private final long lastLedgerId;
+        private final long lastEntryId;
+
+        private Entry<byte[], byte[]> nextEntry;
+        private boolean done;
+
+        Cursor(long firstLedgerId, long firstEntryId, long lastLedgerId, long lastEntryId) {
+            this.ledgerId = Math.max(firstLedgerId, 0);
+            this.entryId = firstLedgerId < 0 ? 0 : Math.max(firstEntryId, 0);
+            this.lastLedgerId = lastLedgerId;
+            this.lastEntryId = lastEntryId;
+        }
+
+        boolean hasNext() {
+            if (nextEntry == null && !done) {
+                try {
+                    nextEntry = seek();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                evictMappings();
+                done = nextEntry == null;
+            }
+            return nextEntry != null;
+        }
+
+        Entry<byte[], byte[]> next() {
+            checkState(hasNext());
+            Entry<byte[], byte[]> entry = nextEntry;
+            nextEntry = null;
+            return entry;
+        }
+
+        private Entry<byte[], byte[]> seek() throws IOException {
+            if (ledgerId > lastLedgerId) {
+                return null;
+            }
+
+            for (LedgerLocations ledger : ledgers.subMap(ledgerId, true, lastLedgerId, true).values()) {
+                long from = ledger.ledgerId == ledgerId ? entryId : 0;
+                while (true) {
+                    long foundEntryId = ledger.ceiling(from);
+                    if (foundEntryId == NO_ENTRY
+                            || (ledger.ledgerId == lastLedgerId && foundEntryId >= lastEntryId)) {
+                        break;
+                    }
+
+                    long location = ledger.get(foundEntryId);
+                    if (location != 0) {
+                        ledgerId = ledger.ledgerId;
+                        entryId = foundEntryId + 1;
+                        return newEntry(ledger.ledgerId, foundEntryId, location);
+                    }
+                    // Removed in the meantime
+                    from = foundEntryId + 1;
+                }
+            }
+            return null;
+        }
+    }
+
+    private class MappedLocationsBatch implements Batch {
+        private static final int OP_PUT = 0;
+        private static final int OP_REMOVE = 1;
+        private static final int OP_DELETE_RANGE = 2;
+        // Each operation is made of the operation type and 4 arguments
+        private static final int OP_SIZE = 5;
+
+        private long[] ops = new long[64 * OP_SIZE];
+        private int size = 0;
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            add(OP_PUT, ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), ArrayUtil.getLong(value, 0), 0);
+        }
+
+        @Override
+        public void remove(byte[] key) throws IOException {
+            add(OP_REMOVE, ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), 0, 0);
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+            add(OP_DELETE_RANGE, ArrayUtil.getLong(beginKey, 0), ArrayUtil.getLong(beginKey, 8),
+                    ArrayUtil.getLong(endKey, 0), ArrayUtil.getLong(endKey, 8));
+        }
+
+        private void add(int op, long arg1, long arg2, long arg3, long arg4) {
+            if (size + OP_SIZE > ops.length) {
+                ops = Arrays.copyOf(ops, ops.length * 2);
+            }
+            ops[size++] = op;
+            ops[size++] = arg1;
+            ops[size++] = arg2;
+            ops[size++] = arg3;
+            ops[size++] = arg4;
+        }
+
+        @Override
+        public void clear() {
+            size = 0;
+        }
+
+        @Override
+        public int batchCount() {
+            return size / OP_SIZE;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            Set<LedgerLocations> touchedLedgers = new HashSet<>();
+            LedgerLocations lastLedger = null;
+
+            for (int i = 0; i < size; i += OP_SIZE) {
+                LedgerLocations ledger = null;
+                switch ((int) ops[i]) {
+                case OP_PUT:
+                    ledger = KeyValueStorageMappedLocations.this.put(ops[i + 1], ops[i + 2], ops[i + 3]);
+                    break;
+                case OP_REMOVE:
+                    ledger = KeyValueStorageMappedLocations.this.remove(ops[i + 1], ops[i + 2]);
+                    break;
+                case OP_DELETE_RANGE:
+                    KeyValueStorageMappedLocations.this.deleteRange(ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4],
+                            touchedLedgers);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown batch operation " + ops[i]);
+                }
+                evictMappings();
+
+                // Batches are usually sorted by ledger, avoid hashing the same ledger over and over
+                if (ledger != null && ledger != lastLedger) {
+                    touchedLedgers.add(ledger);
+                    lastLedger = ledger;
+                }
+            }
+
+            for (LedgerLocations ledger : touchedLedgers) {
+                ledger.flush();
+            }
+            syncDirectory();
+        }
+
+        @Override
+        public void close() {
+            size = 0;
+        }
+    }
+
+    /**
+     * The locations of the entries of a single ledger.
+     *
+     * <p>The slots are only accessed with the ledger lock held, since they may be unmapped at any time by
+     * the eviction of the mappings, and an unmapped buffer must never be read.
+     */
+    private static final class LedgerLocations {
+        private final KeyValueStorageMappedLocations storage;
+        private final long ledgerId;
+        private final long baseEntryId;
+        private final File slotsFile;
+        private final File sparseFile;
+
+        // Slot i holds the location of entry baseEntryId + i, null when the slots are not mapped
+        private MappedByteBuffer slots;
+        private int slotsCount;
+        // Set when the slots are accessed, cleared by the eviction of the mappings
+        private boolean referenced;
+        // Entries outside of the slots
+        private final ConcurrentSkipListMap<Long, Long> sparse = new ConcurrentSkipListMap<>();
+
+        // Upper bound of the entry ids stored for this ledger
+        private volatile long lastEntryId = NO_ENTRY;
+        private long count;
+        private boolean slotsDirty;
+        private boolean sparseDirty;
+        private volatile boolean deleted;
+
+        private LedgerLocations(KeyValueStorageMappedLocations storage, long ledgerId, long baseEntryId) {
+            this.storage = storage;
+            this.ledgerId = ledgerId;
+            this.baseEntryId = baseEntryId;
+            String fileName = Long.toHexString(ledgerId);
+            this.slotsFile = new File(storage.directory, fileName + SLOTS_FILE_SUFFIX);
+            this.sparseFile = new File(storage.directory, fileName + SPARSE_FILE_SUFFIX);
+        }
+
+        static LedgerLocations create(KeyValueStorageMappedLocations storage, long ledgerId, long baseEntryId)
+                throws IOException {
+            LedgerLocations ledger = new LedgerLocations(storage, ledgerId, baseEntryId);
+            // Stale files of a ledger that was deleted before a crash
+            Files.deleteIfExists(ledger.slotsFile.toPath());
+            Files.deleteIfExists(ledger.sparseFile.toPath());
+
+            synchronized (ledger) {
+                ledger.slotsCount = INITIAL_SLOTS;
+                MappedByteBuffer slots = ledger.slots();
+                slots.putInt(0, MAGIC);
+                slots.putInt(4, VERSION);
+                slots.putLong(8, baseEntryId);
+                slots.force();
+            }
+            return ledger;
+        }
+
+        static LedgerLocations open(KeyValueStorageMappedLocations storage, long ledgerId) throws IOException {
+            File slotsFile = new File(storage.directory, Long.toHexString(ledgerId) + SLOTS_FILE_SUFFIX);
+            long fileSize = slotsFile.length();
+            if (fileSize < HEADER_SIZE + (long) INITIAL_SLOTS * Long.BYTES
+                    || fileSize > HEADER_SIZE + (long) MAX_SLOTS * Long.BYTES) {
+                throw new IOException("Invalid size " + fileSize + " of entry location index file " + slotsFile);
+            }
+
+            // The slots are only mapped while loading, they are mapped again when the ledger is accessed
+            int slotsCount = (int) ((fileSize - HEADER_SIZE) / Long.BYTES);
+            MappedByteBuffer slots = map(slotsFile, slotsCount);
+            try {
+                if (slots.getInt(0) != MAGIC || slots.getInt(4) != VERSION) {
+                    throw new IOException("Invalid header in entry location index file " + slotsFile);
+                }
+
+                LedgerLocations ledger = new LedgerLocations(storage, ledgerId, slots.getLong(8));
+                ledger.load(slots, slotsCount);
+                return ledger;
+            } finally {
+                unmap(slots);
+            }
+        }
+
+        private synchronized void load(MappedByteBuffer slots, int slotsCount) throws IOException {
+            this.slotsCount = slotsCount;
+            for (int i = 0; i < slotsCount; i++) {
+                if (slots.getLong(slotOffset(i)) != 0) {
+                    count++;
+                    lastEntryId = baseEntryId + i;
+                }
+            }
+
+            if (sparseFile.exists()) {
+                try (DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(sparseFile)))) {
+                    int size = in.readInt();
+                    for (int i = 0; i < size; i++) {
+                        long entryId = in.readLong();
+                        long location = in.readLong();
+                        if (sparse.put(entryId, location) == null) {
+                            count++;
+                        }
+                        lastEntryId = Math.max(lastEntryId, entryId);
+                    }
+                }
+            }
+        }
+
+        private static MappedByteBuffer map(File file, int slotsCount) throws IOException {
+            long size = HEADER_SIZE + (long) slotsCount * Long.BYTES;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                if (raf.length() < size) {
+                    // The file is extended with a hole, the empty slots take no space on disk
+                    raf.setLength(size);
+                    raf.getChannel().force(true);
+                }
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        private static int slotOffset(long slot) {
+            return HEADER_SIZE + (int) slot * Long.BYTES;
+        }
+
+        // Get the slots, mapping them again if they were unmapped. The ledger lock must be held
+        private MappedByteBuffer slots() throws IOException {
+            referenced = true;
+            if (slots == null) {
+                if (storage.closed) {
+                    throw new IOException("Entry location index " + storage.directory + " is closed");
+                }
+                slots = map(slotsFile, slotsCount);
+                storage.mappingAdded(this);
+            }
+            return slots;
+        }
+
+        // Unmap the slots, making sure nothing written through the mapping is lost. The ledger lock must be held
+        private void unmapSlots() {
+            if (slots != null) {
+                if (slotsDirty) {
+                    slots.force();
+                    slotsDirty = false;
+                }
+                unmap(slots);
+                slots = null;
+            }
+        }
+
+        synchronized void close() {
+            unmapSlots();
+        }
+
+        /**
+         * Unmap the slots, unless they were accessed since the last attempt.
+         *
+         * @return true if the slots are not mapped anymore
+         */
+        synchronized boolean evict() {
+            if (slots != null && referenced) {
+                referenced = false;
+                return false;
+            }
+            unmapSlots();
+            return true;
+        }
+
+        synchronized long get(long entryId) throws IOException {
+            if (deleted) {
+                return 0;
+            }
+
+            long slot = entryId - baseEntryId;
+            if (slot >= 0 && slot < slotsCount) {
+                long location = slots().getLong(slotOffset(slot));
+                if (location != 0) {
+                    return location;
+                }
+            }
+
+            Long location = sparse.get(entryId);
+            return location != null ? location : 0;
+        }
+
+        synchronized boolean put(long entryId, long location) throws IOException {
+            if (deleted) {
+                return false;
+            }
+
+            long slot = entryId - baseEntryId;
+            if (slot >= slotsCount && slot < MAX_SLOTS && slot < MIN_DENSITY * (count + 1)) {
+                grow(slot + 1);
+            }
+
+            long previous;
+            if (slot >= 0 && slot < slotsCount) {
+                MappedByteBuffer slots = slots();
+                previous = slots.getLong(slotOffset(slot));
+                slots.putLong(slotOffset(slot), location);
+                slotsDirty = true;
+            } else {
+                Long previousLocation = sparse.put(entryId, location);
+                previous = previousLocation != null ? previousLocation : 0;
+                sparseDirty = true;
+            }
+
+            if (previous == 0) {
+                count++;
+                storage.count.incrementAndGet();
+            }
+            if (entryId > lastEntryId) {
+                lastEntryId = entryId;
+            }
+            return true;
+        }
+
+        /**
+         * Remove the entries in [fromEntryId, toEntryId).
+         */
+        synchronized void remove(long fromEntryId, long toEntryId) throws IOException {
+            if (deleted) {
+                return;
+            }
+
+            long firstSlot = Math.max(fromEntryId - baseEntryId, 0);
+            long lastSlot = Math.min(Math.min(toEntryId, lastEntryId + 1) - baseEntryId, slotsCount);
+            int removed = 0;
+            if (firstSlot < lastSlot) {
+                MappedByteBuffer slots = slots();
+                for (long slot = firstSlot; slot < lastSlot; slot++) {
+                    if (slots.getLong(slotOffset(slot)) != 0) {
+                        slots.putLong(slotOffset(slot), 0);
+                        slotsDirty = true;
+                        removed++;
+                    }
+                }
+            }
+
+            Map<Long, Long> sparseRange = sparse.subMap(fromEntryId, toEntryId);
+            if (!sparseRange.isEmpty()) {
+                removed += sparseRange.size();
+                sparseRange.clear();
+                sparseDirty = true;
+            }
+
+            count -= removed;
+            storage.count.addAndGet(-removed);
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        synchronized boolean isEmpty() {
+            return count == 0;
+        }
+
+        /**
+         * Get the biggest entry id lesser than the given one, or {@link #NO_ENTRY}.
+         */
+        synchronized long lower(long entryId) throws IOException {
+            if (deleted) {
+                return NO_ENTRY;
+            }
+
+            long found = NO_ENTRY;
+            long slot = Math.min(Math.min(entryId - 1, lastEntryId) - baseEntryId, slotsCount - 1);
+            if (slot >= 0) {
+                MappedByteBuffer slots = slots();
+                for (; slot >= 0; slot--) {
+                    if (slots.getLong(slotOffset(slot)) != 0) {
+                        found = baseEntryId + slot;
+                        break;
+                    }
+                }
+            }
+
+            Long sparseEntryId = sparse.lowerKey(entryId);
+            if (sparseEntryId != null && sparseEntryId > found) {
+                found = sparseEntryId;
+            }
+            return found;
+        }
+
+        /**
+         * Get the smallest entry id bigger or equal than the given one, or {@link #NO_ENTRY}.
+         */
+        synchronized long ceiling(long entryId) throws IOException {
+            if (deleted) {
+                return NO_ENTRY;
+            }
+
+            long found = NO_ENTRY;
+            long slot = Math.max(entryId - baseEntryId, 0);
+            long endSlot = Math.min(lastEntryId + 1 - baseEntryId, slotsCount);
+            if (slot < endSlot) {
+                MappedByteBuffer slots = slots();
+                for (; slot < endSlot; slot++) {
+                    if (slots.getLong(slotOffset(slot)) != 0) {
+                        found = baseEntryId + slot;
+                        break;
+                    }
+                }
+            }
+
+            Long sparseEntryId = sparse.ceilingKey(entryId);
+            if (sparseEntryId != null && (found == NO_ENTRY || sparseEntryId < found)) {
+                found = sparseEntryId;
+            }
+            return found;
+        }
+
+        private void grow(long minSlotsCount) throws IOException {
+            int newSlotsCount = slotsCount;
+            while (newSlotsCount < minSlotsCount) {
+                newSlotsCount *= 2;
+            }
+
+            // Make sure nothing written through the old mapping is lost, the old mapping is released once
+            // the new one is in place
+            MappedByteBuffer oldSlots = slots();
+            oldSlots.force();
+            MappedByteBuffer newSlots = map(slotsFile, newSlotsCount);
+
+            // Move the sparse entries that are now covered by the slots
+            Map<Long, Long> covered = sparse.subMap(baseEntryId, baseEntryId + newSlotsCount);
+            for (Map.Entry<Long, Long> e : covered.entrySet()) {
+                newSlots.putLong(slotOffset(e.getKey() - baseEntryId), e.getValue());
+            }
+            slots = newSlots;
+            slotsCount = newSlotsCount;
+            unmap(oldSlots);
+            if (!covered.isEmpty()) {
+                slotsDirty = true;
+                covered.clear();
+                sparseDirty = true;
+            }
+        }
+
+        synchronized void flush() throws IOException {
+            if (deleted) {
+                return;
+            }
+
+            // The slots are forced when they are unmapped
+            if (slotsDirty && slots != null) {
+                slots.force();
+                slotsDirty = false;
+            }
+
+            if (sparseDirty) {
+                if (sparse.isEmpty()) {
+                    Files.deleteIfExists(sparseFile.toPath());
+                } else {
+                    writeSparseFile();
+                }
+                storage.directoryDirty.set(true);
+                sparseDirty = false;
+            }
+        }
+
+        private void writeSparseFile() throws IOException {
+            File tmpFile = new File(sparseFile.getPath() + TMP_FILE_SUFFIX);
+            try (FileOutputStream fos = new FileOutputStream(tmpFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+                out.writeInt(sparse.size());
+                for (Map.Entry<Long, Long> e : sparse.entrySet()) {
+                    out.writeLong(e.getKey());
+                    out.writeLong(e.getValue());
+                }
+                out.flush();
+                fos.getChannel().force(true);
+            }
+            Files.move(tmpFile.toPath(), sparseFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        synchronized boolean delete() throws IOException {
+            if (deleted) {
+                return false;
+            }
+
+            deleted = true;
+            storage.count.addAndGet(-count);
+            count = 0;
+            if (slots != null) {
+                unmap(slots);
+                slots = null;
+            }
+            Files.deleteIfExists(slotsFile.toPath());
+            Files.deleteIfExists(sparseFile.toPath());
+            return true;
+        }
+    }
+}
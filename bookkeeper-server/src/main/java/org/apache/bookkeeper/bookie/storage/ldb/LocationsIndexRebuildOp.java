@@ -56,6 +56,7 @@ public class LocationsIndexRebuildOp {
     }
 
     private static final int BATCH_COMMIT_SIZE = 10_000;
+    private static final String LOCATIONS_INDEX_NAME = "locations";
 
     public void initiate() throws IOException {
         LOG.info("Starting locations index rebuilding");
@@ -67,17 +68,27 @@ public class LocationsIndexRebuildOp {
             throw new IOException("ledger and index dirs size not matched");
         }
         long startTime = System.nanoTime();
-        // Move locations index to a backup directory
+        // The index is rebuilt with the storage selected in the configuration, which allows to switch
+        // from one to the other
+        KeyValueStorageFactory storageFactory = EntryLocationIndex.getStorageFactory(conf);
         for (int i = 0; i < conf.getLedgerDirs().length; i++) {
             File ledgerDir = conf.getLedgerDirs()[i];
             File indexDir = indexDirs[i];
             String iBasePath = BookieImpl.getCurrentDirectory(indexDir).toString();
-            Path indexCurrentPath = FileSystems.getDefault().getPath(iBasePath, "locations");
             String timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date());
-            Path backupPath = FileSystems.getDefault().getPath(iBasePath, "locations.BACKUP-" + timestamp);
-            Files.move(indexCurrentPath, backupPath);
 
-            LOG.info("Created locations index backup at {}", backupPath);
+            // Move the existing locations indexes to a backup directory
+            for (String indexName : new String[] { LOCATIONS_INDEX_NAME,
+                    KeyValueStorageMappedLocations.getDirectoryName(LOCATIONS_INDEX_NAME) }) {
+                Path indexCurrentPath = FileSystems.getDefault().getPath(iBasePath, indexName);
+                if (!Files.exists(indexCurrentPath)) {
+                    continue;
+                }
+                Path backupPath = FileSystems.getDefault().getPath(iBasePath, indexName + ".BACKUP-" + timestamp);
+                Files.move(indexCurrentPath, backupPath);
+
+                LOG.info("Created locations index backup at {}", backupPath);
+            }
 
             File[] lDirs = new File[1];
             lDirs[0] = ledgerDir;
@@ -88,7 +99,7 @@ public class LocationsIndexRebuildOp {
             Set<Long> activeLedgers = getActiveLedgers(conf, KeyValueStorageRocksDB.factory, iBasePath);
             LOG.info("Found {} active ledgers in ledger manager", activeLedgers.size());
 
-            KeyValueStorage newIndex = KeyValueStorageRocksDB.factory.newKeyValueStorage(iBasePath, "locations",
+            KeyValueStorage newIndex = storageFactory.newKeyValueStorage(iBasePath, LOCATIONS_INDEX_NAME,
                     DbConfigType.Default, conf);
 
             int totalEntryLogs = entryLogs.size();
@@ -0,0 +1,97 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+
+/**
+ * Bounded executor for the read-ahead of {@link SingleDirectoryDbLedgerStorage}.
+ *
+ * <p>Read-ahead is a best effort operation: when too many prefetches are pending, new ones
+ * are dropped instead of queueing up behind the others. A prefetch is also dropped when
+ * another one, covering the same first entry of the same ledger, is already in progress.
+ */
+class ReadAheadPrefetcher implements AutoCloseable {
+
+    private final ThreadPoolExecutor executor;
+
+    // ledgerId -> (firstEntryId, lastEntryId) of the prefetch in progress for the ledger
+    private final ConcurrentLongLongPairHashMap inProgress;
+
+    ReadAheadPrefetcher(String name, int numThreads, int maxPendingPrefetches) {
+        this.executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxPendingPrefetches), new DefaultThreadFactory(name));
+        this.inProgress = ConcurrentLongLongPairHashMap.newBuilder()
+                .expectedItems(256)
+                .concurrencyLevel(2 * numThreads)
+                .build();
+    }
+
+    enum Result {
+        SUBMITTED,
+        DEDUPLICATED,
+        REJECTED
+    }
+
+    /**
+     * Submit a prefetch of the entries [firstEntryId, lastEntryId] of a ledger.
+     */
+    Result prefetch(long ledgerId, long firstEntryId, long lastEntryId, Runnable task) {
+        boolean tracked = inProgress.putIfAbsent(ledgerId, 0L, firstEntryId, lastEntryId);
+        if (!tracked) {
+            LongPair range = inProgress.get(ledgerId, 0L);
+            if (range != null && range.first <= firstEntryId && firstEntryId <= range.second) {
+                // The entries are already being prefetched
+                return Result.DEDUPLICATED;
+            }
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    if (tracked) {
+                        inProgress.remove(ledgerId, 0L, firstEntryId, lastEntryId);
+                    }
+                }
+            });
+            return Result.SUBMITTED;
+        } catch (RejectedExecutionException e) {
+            if (tracked) {
+                inProgress.remove(ledgerId, 0L, firstEntryId, lastEntryId);
+            }
+            return Result.REJECTED;
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Read-ahead windows of the ledgers being read, adapted to the access pattern of their readers.
+ *
+ * <p>The windows are kept in a fixed-size table indexed by ledger id, so tracking them allocates nothing
+ * on the read path and the memory used does not grow with the number of ledgers read. Ledgers hashing to
+ * the same slot share it: a ledger taking over a slot restarts from the initial window.
+ */
+class ReadAheadWindows {
+
+    static final int DEFAULT_NUM_SLOTS = 4096;
+
+    private static final class Slot {
+        long ledgerId = -1;
+        int window = -1;
+        long lastMissEntryId = -1;
+        long expectedNextMissEntryId = -1;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+
+    ReadAheadWindows(int numSlots) {
+        checkArgument(numSlots > 0 && Integer.bitCount(numSlots) == 1,
+                "Number of slots must be a power of 2: %s", numSlots);
+        this.slots = new Slot[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = numSlots - 1;
+    }
+
+    /**
+     * Compute how many entries to read ahead after a read cache miss on the given entry.
+     *
+     * <p>A miss right after the entries covered by the previous read-ahead means the ledger
+     * is being read sequentially, and the window is doubled up to {@code maxWindow}. Any other
+     * miss is considered a random access and the window is shrunk, until it reaches zero.
+     *
+     * @param ledgerId the ledger of the entry
+     * @param entryId the entry that was not found in the read cache
+     * @param initialWindow the window used on the first miss and when sequential reads resume
+     * @param maxWindow the upper bound of the window
+     * @return the number of entries to read ahead
+     */
+    int nextWindow(long ledgerId, long entryId, int initialWindow, int maxWindow) {
+        Slot slot = slots[(int) ((ledgerId * 0x9E3779B97F4A7C15L) >>> 32) & mask];
+        synchronized (slot) {
+            if (slot.ledgerId != ledgerId || slot.window < 0) {
+                slot.ledgerId = ledgerId;
+                slot.window = initialWindow;
+            } else if (entryId > slot.lastMissEntryId && entryId <= slot.expectedNextMissEntryId) {
+                slot.window = Math.min(maxWindow, Math.max(2 * slot.window, initialWindow));
+            } else {
+                slot.window = slot.window / 4;
+            }
+
+            slot.lastMissEntryId = entryId;
+            slot.expectedNextMissEntryId = entryId + 1 + slot.window;
+            return slot.window;
+        }
+    }
+}
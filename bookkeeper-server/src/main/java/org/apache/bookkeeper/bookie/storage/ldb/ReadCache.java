@@ -20,17 +20,17 @@
  */
 package org.apache.bookkeeper.bookie.storage.ldb;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.align64;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.util.ReferenceCountUtil;
 import java.io.Closeable;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
 import org.slf4j.Logger;
@@ -45,159 +45,378 @@ import org.slf4j.LoggerFactory;
  * ring-buffer fashion. When the read cache is full, the oldest segment
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
+ *
+ * <p>With the {@link EvictionPolicy#SEGMENTED_LRU} policy, the memory is split
+ * in two rings: a probation ring, where all the new entries are inserted, and a
+ * protected ring, where entries that are read again while in probation get
+ * promoted. A scan through cold entries will then only roll over the probation
+ * ring, while the entries that are being re-read survive in the protected ring.
  */
 public class ReadCache implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
 
     private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
-    private final List<ByteBuf> cacheSegments;
-    private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
+    static final double DEFAULT_PROTECTED_RATIO = 0.5;
+
+    /**
+     * Policy used to decide which entries are kept when the read cache is full.
+     */
+    public enum EvictionPolicy {
+        /**
+         * Entries are evicted in insertion order, one whole segment at a time.
+         */
+        FIFO,
+
+        /**
+         * Entries are inserted in a probation area and are promoted to a protected area
+         * when they are read again. Protected entries are evicted only when the protected
+         * area rolls over and they were not read since.
+         */
+        SEGMENTED_LRU
+    }
+
+    private final EvictionPolicy evictionPolicy;
 
-    private int currentSegmentIdx;
-    private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+    // In FIFO mode, this is the only ring
+    private final SegmentRing probationRing;
+    // Only used in SEGMENTED_LRU mode
+    private final SegmentRing protectedRing;
 
-    private final int segmentSize;
+    private final LongAdder evictedEntries = new LongAdder();
+    private final LongAdder promotedEntries = new LongAdder();
 
     private ByteBufAllocator allocator;
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Allocator of the memory of the segments
+    private final ByteBufAllocator segmentAllocator;
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
-        this.allocator = allocator;
-        int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
-        segmentSize = (int) (maxCacheSize / segmentsCount);
+        this(allocator, maxCacheSize, maxSegmentSize, EvictionPolicy.FIFO, DEFAULT_PROTECTED_RATIO);
+    }
 
-        cacheSegments = new ArrayList<>();
-        cacheIndexes = new ArrayList<>();
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, EvictionPolicy evictionPolicy,
+                     double protectedRatio) {
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE, evictionPolicy, protectedRatio);
+    }
 
-        for (int i = 0; i < segmentsCount; i++) {
-            cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
-            ConcurrentLongLongPairHashMap concurrentLongLongPairHashMap = ConcurrentLongLongPairHashMap.newBuilder()
-                    .expectedItems(4096)
-                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
-                    .build();
-            cacheIndexes.add(concurrentLongLongPairHashMap);
+    /**
+     * Create a read cache whose segments are allocated with the given segment allocator.
+     */
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, EvictionPolicy evictionPolicy,
+                     double protectedRatio, ByteBufAllocator segmentAllocator) {
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE, evictionPolicy, protectedRatio, segmentAllocator);
+    }
+
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize,
+                     EvictionPolicy evictionPolicy, double protectedRatio) {
+        this(allocator, maxCacheSize, maxSegmentSize, evictionPolicy, protectedRatio,
+                UnpooledByteBufAllocator.DEFAULT);
+    }
+
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize,
+                     EvictionPolicy evictionPolicy, double protectedRatio, ByteBufAllocator segmentAllocator) {
+        checkArgument(protectedRatio > 0 && protectedRatio < 1,
+                "Protected ratio must be between 0 and 1: %s", protectedRatio);
+        this.allocator = allocator;
+        this.segmentAllocator = segmentAllocator;
+        this.evictionPolicy = evictionPolicy;
+
+        if (evictionPolicy == EvictionPolicy.SEGMENTED_LRU) {
+            long protectedSize = (long) (maxCacheSize * protectedRatio);
+            probationRing = new SegmentRing(maxCacheSize - protectedSize, maxSegmentSize);
+            protectedRing = new SegmentRing(protectedSize, maxSegmentSize);
+        } else {
+            probationRing = new SegmentRing(maxCacheSize, maxSegmentSize);
+            protectedRing = null;
         }
     }
 
     @Override
     public void close() {
-        cacheSegments.forEach(ReferenceCountUtil::safeRelease);
+        probationRing.close();
+        if (protectedRing != null) {
+            protectedRing.close();
+        }
     }
 
     public void put(long ledgerId, long entryId, ByteBuf entry) {
-        int entrySize = entry.readableBytes();
-        int alignedSize = align64(entrySize);
+        probationRing.put(ledgerId, entryId, entry);
+    }
 
-        lock.readLock().lock();
+    public ByteBuf get(long ledgerId, long entryId) {
+        if (protectedRing == null) {
+            // Null if the entry was not found in any segment
+            return probationRing.get(ledgerId, entryId, null, 0);
+        }
 
-        try {
-            if (entrySize > segmentSize) {
-                log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
-                return;
-            }
-            int offset = currentSegmentOffset.getAndAdd(alignedSize);
-            if (offset + entrySize > segmentSize) {
-                // Roll-over the segment (outside the read-lock)
-            } else {
-                // Copy entry into read cache segment
-                cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(),
-                        entry.readableBytes());
-                cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
-                return;
+        // Give a second chance to hot entries that are next in line for eviction
+        ByteBuf entry = protectedRing.get(ledgerId, entryId, protectedRing, protectedRing.segments.length - 1);
+        if (entry != null) {
+            return entry;
+        }
+
+        // The entry was read again while in probation, move it to the protected ring. A concurrent reader
+        // may miss the entry while it is being moved, which is only a cache miss
+        return probationRing.get(ledgerId, entryId, protectedRing, 0);
+    }
+
+    public boolean hasEntry(long ledgerId, long entryId) {
+        return probationRing.hasEntry(ledgerId, entryId)
+                || (protectedRing != null && protectedRing.hasEntry(ledgerId, entryId));
+    }
+
+    /**
+     * @return the total size of cached entries
+     */
+    public long size() {
+        long size = probationRing.size();
+        if (protectedRing != null) {
+            size += protectedRing.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the total number of cached entries
+     */
+    public long count() {
+        long count = probationRing.count();
+        if (protectedRing != null) {
+            count += protectedRing.count();
+        }
+        return count;
+    }
+
+    /**
+     * @return the total number of entries that were dropped from the cache on segment roll-over
+     */
+    public long evictedCount() {
+        return evictedEntries.sum();
+    }
+
+    /**
+     * @return the total number of entries that were moved to the protected area after being read again
+     */
+    public long promotedCount() {
+        return promotedEntries.sum();
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * A cache segment: a chunk of memory with the index of the entries stored in it.
+     *
+     * <p>Readers and writers pin the segment while they are copying data in or out of it. A segment
+     * is recycled by retiring it, which makes new pin attempts fail, and waiting for the in-flight
+     * copies to complete before clearing the index and resetting the write offset.
+     */
+    private static final class Segment {
+        private static final int RETIRED = Integer.MIN_VALUE;
+
+        private final ByteBuf buffer;
+        private final ConcurrentLongLongPairHashMap index;
+        private final AtomicInteger offset = new AtomicInteger(0);
+        private final AtomicInteger pins = new AtomicInteger(0);
+
+        Segment(ByteBuf buffer) {
+            this.buffer = buffer;
+            index = ConcurrentLongLongPairHashMap.newBuilder()
+                    .expectedItems(4096)
+                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                    .build();
+        }
+
+        boolean pin() {
+            if (pins.incrementAndGet() < 0) {
+                // The segment is being recycled
+                pins.decrementAndGet();
+                return false;
             }
-        } finally {
-            lock.readLock().unlock();
-        }
-
-        // We could not insert in segment, we to get the write lock and roll-over to
-        // next segment
-        lock.writeLock().lock();
-
-        try {
-            int offset = currentSegmentOffset.getAndAdd(entrySize);
-            if (offset + entrySize > segmentSize) {
-                // Rollover to next segment
-                currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
-                currentSegmentOffset.set(alignedSize);
-                cacheIndexes.get(currentSegmentIdx).clear();
-                offset = 0;
+            return true;
+        }
+
+        void unpin() {
+            pins.decrementAndGet();
+        }
+
+        /**
+         * Clear the segment content and make it available for new writes.
+         *
+         * @return the number of entries that were dropped
+         */
+        long recycle() {
+            pins.getAndAdd(RETIRED);
+            while (pins.get() != RETIRED) {
+                // Wait for the in-flight copies to complete. These are only memory copies of
+                // a single entry, so the wait is short.
+                Thread.yield();
             }
 
-            // Copy entry into read cache segment
-            cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
-            cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
-        } finally {
-            lock.writeLock().unlock();
+            long evicted = index.size();
+            index.clear();
+            offset.set(0);
+            // Failed pin attempts may still be in flight and undo their increment later, so the retired
+            // flag is removed rather than the counter being reset
+            pins.addAndGet(-RETIRED);
+            return evicted;
         }
     }
 
-    public ByteBuf get(long ledgerId, long entryId) {
-        lock.readLock().lock();
+    /**
+     * A set of memory segments used in a ring-buffer fashion.
+     *
+     * <p>There is no lock shared between readers and writers: inserts reserve space in the current
+     * segment with an atomic offset, and the roll-over to the next segment is done by a single
+     * writer, while readers only skip the segment being recycled.
+     */
+    private final class SegmentRing {
+        private final Segment[] segments;
+
+        private final AtomicInteger currentSegmentIdx = new AtomicInteger(0);
+        private final AtomicBoolean rolloverInProgress = new AtomicBoolean(false);
+
+        private final int segmentSize;
+
+        SegmentRing(long maxRingSize, int maxSegmentSize) {
+            int segmentsCount = Math.max(2, (int) (maxRingSize / maxSegmentSize));
+            segmentSize = (int) (maxRingSize / segmentsCount);
+
+            segments = new Segment[segmentsCount];
+            for (int i = 0; i < segmentsCount; i++) {
+                segments[i] = new Segment(segmentAllocator.directBuffer(segmentSize, segmentSize));
+            }
+        }
+
+        void close() {
+            for (Segment segment : segments) {
+                ReferenceCountUtil.safeRelease(segment.buffer);
+            }
+        }
+
+        void put(long ledgerId, long entryId, ByteBuf entry) {
+            int entrySize = entry.readableBytes();
+            int alignedSize = align64(entrySize);
+
+            if (entrySize > segmentSize) {
+                log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
+                return;
+            }
 
-        try {
+            while (true) {
+                int segmentIdx = currentSegmentIdx.get();
+                Segment segment = segments[segmentIdx];
+
+                // Avoid reserving space in a segment that is already known to be full
+                if (segment.offset.get() + entrySize <= segmentSize && segment.pin()) {
+                    try {
+                        int offset = segment.offset.getAndAdd(alignedSize);
+                        if (offset + entrySize <= segmentSize) {
+                            // Copy entry into read cache segment
+                            segment.buffer.setBytes(offset, entry, entry.readerIndex(), entrySize);
+                            segment.index.put(ledgerId, entryId, offset, entrySize);
+                            return;
+                        }
+                    } finally {
+                        segment.unpin();
+                    }
+                }
+
+                // The segment is full, only one writer rolls over to the next segment while
+                // the others retry
+                if (rolloverInProgress.compareAndSet(false, true)) {
+                    try {
+                        if (currentSegmentIdx.get() == segmentIdx) {
+                            int nextSegmentIdx = (segmentIdx + 1) % segments.length;
+                            evictedEntries.add(segments[nextSegmentIdx].recycle());
+                            currentSegmentIdx.set(nextSegmentIdx);
+                        }
+                    } finally {
+                        rolloverInProgress.set(false);
+                    }
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+
+        /**
+         * Copy an entry out of the ring.
+         *
+         * <p>If the entry is found in a segment that is at least {@code minMoveAge} segments older than the
+         * current one, it is also moved to the {@code moveTo} ring. The entry is claimed by removing its
+         * location from the segment index, which only one of the concurrent readers can do, so an entry is
+         * moved at most once.
+         */
+        ByteBuf get(long ledgerId, long entryId, SegmentRing moveTo, int minMoveAge) {
             // We need to check all the segments, starting from the current one and looking
             // backward to minimize the
             // checks for recently inserted entries
-            int size = cacheSegments.size();
+            int size = segments.length;
+            int current = currentSegmentIdx.get();
             for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
+                Segment segment = segments[(current + (size - i)) % size];
+                if (!segment.pin()) {
+                    // The segment is being recycled, its entries are gone
+                    continue;
+                }
 
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    int entryOffset = (int) res.first;
-                    int entryLen = (int) res.second;
+                ByteBuf entry = null;
+                boolean move = false;
+                try {
+                    LongPair res = segment.index.get(ledgerId, entryId);
+                    if (res != null) {
+                        int entryOffset = (int) res.first;
+                        int entryLen = (int) res.second;
+
+                        entry = allocator.buffer(entryLen, entryLen);
+                        entry.writeBytes(segment.buffer, entryOffset, entryLen);
+                        move = moveTo != null && i >= minMoveAge
+                                && segment.index.remove(ledgerId, entryId, res.first, res.second);
+                    }
+                } finally {
+                    segment.unpin();
+                }
 
-                    ByteBuf entry = allocator.buffer(entryLen, entryLen);
-                    entry.writeBytes(cacheSegments.get(segmentIdx), entryOffset, entryLen);
+                if (entry != null) {
+                    // Only put once unpinned, as the put may have to recycle this segment
+                    if (move) {
+                        moveTo.put(ledgerId, entryId, entry);
+                        promotedEntries.increment();
+                    }
                     return entry;
                 }
             }
-        } finally {
-            lock.readLock().unlock();
-        }
-
-        // Entry not found in any segment
-        return null;
-    }
 
-    public boolean hasEntry(long ledgerId, long entryId) {
-        lock.readLock().lock();
+            // Entry not found in any segment
+            return null;
+        }
 
-        try {
-            int size = cacheSegments.size();
+        boolean hasEntry(long ledgerId, long entryId) {
+            int size = segments.length;
+            int current = currentSegmentIdx.get();
             for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
-
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
+                if (segments[(current + (size - i)) % size].index.containsKey(ledgerId, entryId)) {
                     return true;
                 }
             }
-        } finally {
-            lock.readLock().unlock();
-        }
-
-        // Entry not found in any segment
-        return false;
-    }
 
-    /**
-     * @return the total size of cached entries
-     */
-    public long size() {
-        lock.readLock().lock();
+            // Entry not found in any segment
+            return false;
+        }
 
-        try {
+        long size() {
             long size = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                if (i == currentSegmentIdx) {
-                    size += currentSegmentOffset.get();
-                } else if (!cacheIndexes.get(i).isEmpty()) {
+            int current = currentSegmentIdx.get();
+            for (int i = 0; i < segments.length; i++) {
+                if (i == current) {
+                    size += Math.min(segments[i].offset.get(), segmentSize);
+                } else if (!segments[i].index.isEmpty()) {
                     size += segmentSize;
                 } else {
                     // the segment is empty
@@ -205,26 +424,15 @@ public class ReadCache implements Closeable {
             }
 
             return size;
-        } finally {
-            lock.readLock().unlock();
         }
-    }
-
-    /**
-     * @return the total number of cached entries
-     */
-    public long count() {
-        lock.readLock().lock();
 
-        try {
+        long count() {
             long count = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                count += cacheIndexes.get(i).size();
+            for (Segment segment : segments) {
+                count += segment.index.size();
             }
 
             return count;
-        } finally {
-            lock.readLock().unlock();
         }
     }
 }
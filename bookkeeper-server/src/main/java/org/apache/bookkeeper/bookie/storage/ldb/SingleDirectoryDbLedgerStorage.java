@@ -30,24 +30,35 @@ import com.google.protobuf.ByteString;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.StampedLock;
+import org.apache.bookkeeper.bookie.ActiveLedgersSnapshot;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
 import org.apache.bookkeeper.bookie.BookieException;
@@ -68,7 +79,11 @@ import org.apache.bookkeeper.bookie.StateManager;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorageDataFormats.LedgerData;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.common.allocator.ByteBufAllocatorBuilder;
+import org.apache.bookkeeper.common.allocator.OutOfMemoryPolicy;
+import org.apache.bookkeeper.common.allocator.PoolingPolicy;
 import org.apache.bookkeeper.common.util.Watcher;
+import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.proto.BookieProtocol;
@@ -102,8 +117,13 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     // Write cache where all new entries are inserted into
     protected volatile WriteCache writeCache;
 
-    // Write cache that is used to swap with writeCache during flushes
-    protected volatile WriteCache writeCacheBeingFlushed;
+    // Write caches that were swapped out, either by a flush or because they were full, and that are waiting to be
+    // flushed or being flushed. Sorted from the most recent to the oldest
+    private volatile WriteCache[] sealedWriteCaches = new WriteCache[0];
+
+    // Empty write caches, ready to replace the current one
+    private final Deque<WriteCache> freeWriteCaches = new ArrayDeque<>();
+    private final int writeCachesCount;
 
     // Cache where we insert entries for speculative reading
     private final ReadCache readCache;
@@ -123,6 +143,15 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final ScheduledExecutorService cleanupExecutor = Executors
             .newSingleThreadScheduledExecutor(new DefaultThreadFactory("db-storage-cleanup"));
 
+    // Executor used for the read-ahead, when it's done in background
+    private final ReadAheadPrefetcher readAheadPrefetcher;
+    // Only used with the adaptive read-ahead
+    private final ReadAheadWindows readAheadWindows;
+    // Pool used to sort the write cache in parallel during flushes, if enabled
+    private final ForkJoinPool writeCacheSortPool;
+    // Executor used to update the indexes of a flushed write cache while the next one is written to the entry log
+    private final ExecutorService indexFlushExecutor;
+
     private final CopyOnWriteArrayList<LedgerDeletionListener> ledgerDeletionListeners = Lists
             .newCopyOnWriteArrayList();
 
@@ -133,6 +162,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final long readCacheMaxSize;
     private final int readAheadCacheBatchSize;
     private final long readAheadCacheBatchBytesSize;
+    private final boolean readAheadCacheAdaptive;
+    private final int readAheadCacheMaxBatchSize;
+    private final int readAheadMaxRangeReadBytes;
 
     private final long maxThrottleTimeNanos;
 
@@ -172,14 +204,54 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 .scopeLabel("ledgerDir", ledgerBaseDir)
                 .scopeLabel("indexDir", indexBaseDir);
 
+        ByteBufAllocator cacheSegmentAllocator = newCacheSegmentAllocator(conf, ledgerBaseDir);
+
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        int writeCacheSortParallelism = conf.getInt(DbLedgerStorage.WRITE_CACHE_SORT_PARALLELISM,
+                Runtime.getRuntime().availableProcessors());
+        if (writeCacheSortParallelism > 1) {
+            this.writeCacheSortPool = new ForkJoinPool(writeCacheSortParallelism, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("db-storage-write-cache-sort-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        } else {
+            this.writeCacheSortPool = null;
+        }
+        this.writeCachesCount = Math.max(2, conf.getInt(DbLedgerStorage.WRITE_CACHES_COUNT, 2));
+        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / writeCachesCount, writeCacheSortPool,
+                cacheSegmentAllocator);
+        for (int i = 1; i < writeCachesCount; i++) {
+            freeWriteCaches.add(new WriteCache(allocator, writeCacheMaxSize / writeCachesCount, writeCacheSortPool,
+                    cacheSegmentAllocator));
+        }
+        if (writeCachesCount > 2) {
+            this.indexFlushExecutor = Executors.newSingleThreadExecutor(
+                    new DefaultThreadFactory("db-storage-index-flush"));
+        } else {
+            this.indexFlushExecutor = null;
+        }
         this.singleLedgerDirs = conf.getLedgerDirs().length == 1;
 
         readCacheMaxSize = readCacheSize;
         this.readAheadCacheBatchSize = readAheadCacheBatchSize;
         this.readAheadCacheBatchBytesSize = readAheadCacheBatchBytesSize;
+        this.readAheadCacheAdaptive = conf.getBoolean(DbLedgerStorage.READ_AHEAD_CACHE_ADAPTIVE, false);
+        this.readAheadCacheMaxBatchSize = Math.max(readAheadCacheBatchSize,
+                conf.getInt(DbLedgerStorage.READ_AHEAD_CACHE_MAX_BATCH_SIZE, 8 * readAheadCacheBatchSize));
+        this.readAheadMaxRangeReadBytes = conf.getInt(DbLedgerStorage.READ_AHEAD_MAX_RANGE_READ_BYTES,
+                DbLedgerStorage.DEFAULT_READ_AHEAD_MAX_RANGE_READ_BYTES);
+        // The adaptive read-ahead is always done in background
+        if (readAheadCacheAdaptive || conf.getBoolean(DbLedgerStorage.READ_AHEAD_ASYNC, false)) {
+            this.readAheadPrefetcher = new ReadAheadPrefetcher("db-storage-read-ahead",
+                    conf.getInt(DbLedgerStorage.READ_AHEAD_PREFETCH_THREADS, 1),
+                    conf.getInt(DbLedgerStorage.READ_AHEAD_PREFETCH_MAX_PENDING,
+                            DbLedgerStorage.DEFAULT_READ_AHEAD_PREFETCH_MAX_PENDING));
+        } else {
+            this.readAheadPrefetcher = null;
+        }
+        this.readAheadWindows = readAheadCacheAdaptive
+                ? new ReadAheadWindows(ReadAheadWindows.DEFAULT_NUM_SLOTS) : null;
 
         // Do not attempt to perform read-ahead more than half the total size of the cache
         maxReadAheadBytesSize = readCacheMaxSize / 2;
@@ -188,12 +260,18 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        ReadCache.EvictionPolicy readCacheEvictionPolicy = ReadCache.EvictionPolicy.valueOf(
+                conf.getString(DbLedgerStorage.READ_AHEAD_CACHE_EVICTION_POLICY,
+                        ReadCache.EvictionPolicy.FIFO.name()).toUpperCase());
+        double readCacheProtectedRatio = conf.getDouble(DbLedgerStorage.READ_AHEAD_CACHE_PROTECTED_RATIO,
+                ReadCache.DEFAULT_PROTECTED_RATIO);
+        readCache = new ReadCache(allocator, readCacheMaxSize, readCacheEvictionPolicy, readCacheProtectedRatio,
+                cacheSegmentAllocator);
 
         ledgerIndex = new LedgerMetadataIndex(conf,
                 KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
         entryLocationIndex = new EntryLocationIndex(conf,
-                KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
+                EntryLocationIndex.getStorageFactory(conf), indexBaseDir, ledgerIndexDirStatsLogger);
 
         transientLedgerInfoCache = ConcurrentLongHashMap.<TransientLedgerInfo>newBuilder()
                 .expectedItems(16 * 1024)
@@ -209,10 +287,24 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         dbLedgerStorageStats = new DbLedgerStorageStats(
             ledgerIndexDirStatsLogger,
-            () -> writeCache.size() + writeCacheBeingFlushed.size(),
-            () -> writeCache.count() + writeCacheBeingFlushed.count(),
+            () -> {
+                long size = writeCache.size();
+                for (WriteCache sealedWriteCache : sealedWriteCaches) {
+                    size += sealedWriteCache.size();
+                }
+                return size;
+            },
+            () -> {
+                long count = writeCache.count();
+                for (WriteCache sealedWriteCache : sealedWriteCaches) {
+                    count += sealedWriteCache.count();
+                }
+                return count;
+            },
             () -> readCache.size(),
-            () -> readCache.count()
+            () -> readCache.count(),
+            () -> readCache.evictedCount(),
+            () -> readCache.promotedCount()
         );
 
         flushExecutorTime = ledgerIndexDirStatsLogger.getThreadScopedCounter("db-storage-thread-time");
@@ -276,11 +368,49 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         gcThread.enableForceGC(forceMajor, forceMinor);
     }
 
+    /**
+     * Create the allocator of the write and read cache segments.
+     *
+     * <p>With NUMA aware caches, the ledger directories are assigned to the NUMA nodes of the host in a round-robin
+     * way, following their order in the configuration, and the cache segments of each directory are placed on its
+     * node.
+     */
+    private static ByteBufAllocator newCacheSegmentAllocator(ServerConfiguration conf, String ledgerBaseDir) {
+        if (!conf.getBoolean(DbLedgerStorage.NUMA_AWARE_CACHES, false)) {
+            return UnpooledByteBufAllocator.DEFAULT;
+        }
+
+        List<Integer> numaNodes = new ArrayList<>(CpuAffinity.getNumaNodes());
+        if (numaNodes.isEmpty()) {
+            log.info("NUMA topology is not known, allocating the caches of {} without NUMA placement", ledgerBaseDir);
+            return UnpooledByteBufAllocator.DEFAULT;
+        }
+
+        // The ledger base dir is the "current" directory inside the configured ledger directory
+        File ledgerDir = new File(ledgerBaseDir).getParentFile();
+        int ledgerDirIndex = Math.max(0, Arrays.asList(conf.getLedgerDirs()).indexOf(ledgerDir));
+        int numaNode = numaNodes.get(ledgerDirIndex % numaNodes.size());
+        log.info("Allocating the caches of {} on NUMA node {}", ledgerBaseDir, numaNode);
+
+        // The segments are direct buffers. They are not pooled, but the default pool is shared for the other buffers
+        return ByteBufAllocatorBuilder.create()
+                .poolingPolicy(PoolingPolicy.PooledDirect)
+                .pooledAllocator(PooledByteBufAllocator.DEFAULT)
+                .outOfMemoryPolicy(OutOfMemoryPolicy.ThrowException)
+                .leakDetectionPolicy(conf.getAllocatorLeakDetectionPolicy())
+                .numaNode(numaNode)
+                .build();
+    }
+
     @Override
     public boolean isInForceGC() {
         return gcThread.isInForceGC();
     }
 
+    void setActiveLedgersSnapshot(ActiveLedgersSnapshot activeLedgersSnapshot) {
+        gcThread.setActiveLedgersSnapshot(activeLedgersSnapshot);
+    }
+
     public void suspendMinorGC() {
         gcThread.suspendMinorGC();
     }
@@ -339,6 +469,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             flush();
 
             gcThread.shutdown();
+            if (readAheadPrefetcher != null) {
+                readAheadPrefetcher.close();
+            }
             entryLogger.close();
 
             cleanupExecutor.shutdown();
@@ -348,7 +481,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             entryLocationIndex.close();
 
             writeCache.close();
-            writeCacheBeingFlushed.close();
+            for (WriteCache sealedWriteCache : sealedWriteCaches) {
+                sealedWriteCache.close();
+            }
+            freeWriteCaches.forEach(WriteCache::close);
+            if (indexFlushExecutor != null) {
+                indexFlushExecutor.shutdown();
+            }
+            if (writeCacheSortPool != null) {
+                writeCacheSortPool.shutdown();
+            }
             readCache.close();
             executor.shutdown();
 
@@ -377,26 +519,28 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return false;
         }
 
-        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
-        // write caches are already thread safe on their own, here we just need to make sure we get references to both
+        // We need to try to read from all the write caches, since recent entries could be found in any of them. The
+        // write caches are already thread safe on their own, here we just need to make sure we get references to all
         // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
         long stamp = writeCacheRotationLock.tryOptimisticRead();
         WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+        WriteCache[] localSealedWriteCaches = sealedWriteCaches;
         if (!writeCacheRotationLock.validate(stamp)) {
             // Fallback to regular read lock approach
             stamp = writeCacheRotationLock.readLock();
             try {
                 localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+                localSealedWriteCaches = sealedWriteCaches;
             } finally {
                 writeCacheRotationLock.unlockRead(stamp);
             }
         }
 
-        boolean inCache = localWriteCache.hasEntry(ledgerId, entryId)
-             || localWriteCacheBeingFlushed.hasEntry(ledgerId, entryId)
-             || readCache.hasEntry(ledgerId, entryId);
+        boolean inCache = localWriteCache.hasEntry(ledgerId, entryId);
+        for (int i = 0; !inCache && i < localSealedWriteCaches.length; i++) {
+            inCache = localSealedWriteCaches[i].hasEntry(ledgerId, entryId);
+        }
+        inCache = inCache || readCache.hasEntry(ledgerId, entryId);
 
         if (inCache) {
             return true;
@@ -480,23 +624,31 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         long stamp = writeCacheRotationLock.tryOptimisticRead();
         boolean inserted = false;
 
-        inserted = writeCache.put(ledgerId, entryId, entry);
+        WriteCache localWriteCache = writeCache;
+        inserted = localWriteCache.put(ledgerId, entryId, entry);
         if (!writeCacheRotationLock.validate(stamp)) {
             // The write cache was rotated while we were inserting. We need to acquire the proper read lock and repeat
             // the operation because we might have inserted in a write cache that was already being flushed and cleared,
             // without being sure about this last entry being flushed or not.
             stamp = writeCacheRotationLock.readLock();
             try {
-                inserted = writeCache.put(ledgerId, entryId, entry);
+                localWriteCache = writeCache;
+                inserted = localWriteCache.put(ledgerId, entryId, entry);
             } finally {
                 writeCacheRotationLock.unlockRead(stamp);
             }
         }
 
+        if (!inserted) {
+            inserted = sealFullWriteCacheAndPut(localWriteCache, ledgerId, entryId, entry);
+        }
+
         if (!inserted) {
             triggerFlushAndAddEntry(ledgerId, entryId, entry);
         }
 
+        gcThread.recordForegroundBytes(entry.readableBytes());
+
         // after successfully insert the entry, update LAC and notify the watchers
         updateCachedLacIfNeeded(ledgerId, lac);
 
@@ -504,6 +656,62 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return entryId;
     }
 
+    /**
+     * Replace a full write cache with one of the free ones, so that the entry can be added without waiting for the
+     * flush. The last free write cache is always kept for the swap done by the flush.
+     */
+    private boolean sealFullWriteCacheAndPut(WriteCache fullWriteCache, long ledgerId, long entryId, ByteBuf entry) {
+        if (writeCachesCount <= 2) {
+            return false;
+        }
+
+        boolean sealed = false;
+        long stamp = writeCacheRotationLock.writeLock();
+        try {
+            if (writeCache == fullWriteCache) {
+                if (freeWriteCaches.size() <= 1) {
+                    return false;
+                }
+
+                sealedWriteCaches = prepend(fullWriteCache, sealedWriteCaches);
+                writeCache = freeWriteCaches.poll();
+                sealed = true;
+            }
+            // Otherwise, the write cache was already replaced by another thread
+
+            if (!writeCache.put(ledgerId, entryId, entry)) {
+                return false;
+            }
+        } finally {
+            writeCacheRotationLock.unlockWrite(stamp);
+        }
+
+        if (sealed) {
+            log.info("Write cache is full, replacing it with a free one and triggering flush");
+            triggerFlush();
+        }
+        return true;
+    }
+
+    private void triggerFlush() {
+        // If the flush has already been triggered or flush has already switched the
+        // cache, we don't need to trigger another flush
+        if (!isFlushOngoing.get() && hasFlushBeenTriggered.compareAndSet(false, true)) {
+            // Trigger an early flush in background
+            log.info("Write cache is full, triggering flush");
+            executor.execute(() -> {
+                    long startTime = System.nanoTime();
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        log.error("Error during flush", e);
+                    } finally {
+                        flushExecutorTime.addLatency(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    }
+                });
+        }
+    }
+
     private void triggerFlushAndAddEntry(long ledgerId, long entryId, ByteBuf entry)
             throws IOException, BookieException {
         long throttledStartTime = MathUtils.nowInNano();
@@ -512,22 +720,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         while (System.nanoTime() < absoluteTimeoutNanos) {
             // Write cache is full, we need to trigger a flush so that it gets rotated
-            // If the flush has already been triggered or flush has already switched the
-            // cache, we don't need to trigger another flush
-            if (!isFlushOngoing.get() && hasFlushBeenTriggered.compareAndSet(false, true)) {
-                // Trigger an early flush in background
-                log.info("Write cache is full, triggering flush");
-                executor.execute(() -> {
-                        long startTime = System.nanoTime();
-                        try {
-                            flush();
-                        } catch (IOException e) {
-                            log.error("Error during flush", e);
-                        } finally {
-                            flushExecutorTime.addLatency(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
-                        }
-                    });
-            }
+            triggerFlush();
 
             long stamp = writeCacheRotationLock.readLock();
             try {
@@ -577,18 +770,18 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return getLastEntry(ledgerId);
         }
 
-        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
-        // write caches are already thread safe on their own, here we just need to make sure we get references to both
+        // We need to try to read from all the write caches, since recent entries could be found in any of them. The
+        // write caches are already thread safe on their own, here we just need to make sure we get references to all
         // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
         long stamp = writeCacheRotationLock.tryOptimisticRead();
         WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+        WriteCache[] localSealedWriteCaches = sealedWriteCaches;
         if (!writeCacheRotationLock.validate(stamp)) {
             // Fallback to regular read lock approach
             stamp = writeCacheRotationLock.readLock();
             try {
                 localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+                localSealedWriteCaches = sealedWriteCaches;
             } finally {
                 writeCacheRotationLock.unlockRead(stamp);
             }
@@ -601,11 +794,13 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return entry;
         }
 
-        // If there's a flush going on, the entry might be in the flush buffer
-        entry = localWriteCacheBeingFlushed.get(ledgerId, entryId);
-        if (entry != null) {
-            dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-            return entry;
+        // If there's a flush going on, the entry might be in the write caches waiting to be flushed
+        for (WriteCache sealedWriteCache : localSealedWriteCaches) {
+            entry = sealedWriteCache.get(ledgerId, entryId);
+            if (entry != null) {
+                dbLedgerStorageStats.getWriteCacheHitCounter().inc();
+                return entry;
+            }
         }
 
         dbLedgerStorageStats.getWriteCacheMissCounter().inc();
@@ -647,12 +842,35 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         // Try to read more entries
         long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        int readAheadCount = readAheadCacheBatchSize;
+        if (readAheadCacheAdaptive) {
+            readAheadCount = readAheadWindows.nextWindow(ledgerId, entryId,
+                    readAheadCacheBatchSize, readAheadCacheMaxBatchSize);
+        }
+
+        if (readAheadCount <= 0) {
+            // no read-ahead
+        } else if (readAheadPrefetcher != null) {
+            // Do not delay the current read with the read-ahead
+            int entrySize = entry.readableBytes();
+            int maxCount = readAheadCount;
+            ReadAheadPrefetcher.Result result = readAheadPrefetcher.prefetch(ledgerId, entryId + 1,
+                    entryId + readAheadCount,
+                    () -> fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation, maxCount, entrySize));
+            if (result == ReadAheadPrefetcher.Result.DEDUPLICATED) {
+                dbLedgerStorageStats.getReadAheadDeduplicatedCounter().inc();
+            } else if (result == ReadAheadPrefetcher.Result.REJECTED) {
+                dbLedgerStorageStats.getReadAheadRejectedCounter().inc();
+            }
+        } else {
+            fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation, readAheadCount, entry.readableBytes());
+        }
 
         return entry;
     }
 
-    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
+    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation,
+                                    int maxCount, int entrySizeHint) {
         long readAheadStartNano = MathUtils.nowInNano();
         int count = 0;
         long size = 0;
@@ -662,7 +880,47 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             long currentEntryLogId = firstEntryLogId;
             long currentEntryLocation = firstEntryLocation;
 
-            while (chargeReadAheadCache(count, size) && currentEntryLogId == firstEntryLogId) {
+            while (count < maxCount && chargeReadAheadCache(count, size) && currentEntryLogId == firstEntryLogId) {
+                // Read the following entries with a single read, sized on the entry that triggered the read-ahead
+                int rangeSize = (int) Math.min(readAheadMaxRangeReadBytes, (maxCount - count) * (entrySizeHint + 4L));
+                if (rangeSize > entrySizeHint + 4) {
+                    int rangeCount = 0;
+                    ByteBuf range = entryLogger.readRange(currentEntryLocation, rangeSize);
+                    try {
+                        while (count < maxCount && chargeReadAheadCache(count, size) && range.readableBytes() >= 4) {
+                            int entrySize = range.getInt(range.readerIndex());
+                            if (entrySize < 2 * Long.BYTES || range.readableBytes() < 4 + entrySize) {
+                                // Either a partial entry, that will be read with the next range, or padding
+                                break;
+                            }
+
+                            ByteBuf entry = range.slice(range.readerIndex() + 4, entrySize);
+                            if (entry.getLong(0) != orginalLedgerId || entry.getLong(8) != firstEntryId) {
+                                // Found an entry belonging to a different ledger, stopping read-ahead
+                                return;
+                            }
+
+                            // Insert entry in read cache
+                            readCache.put(orginalLedgerId, firstEntryId, entry);
+
+                            rangeCount++;
+                            count++;
+                            firstEntryId++;
+                            size += entrySize;
+                            range.skipBytes(4 + entrySize);
+                            currentEntryLocation += 4 + entrySize;
+                        }
+                    } finally {
+                        ReferenceCountUtil.release(range);
+                    }
+
+                    currentEntryLogId = currentEntryLocation >> 32;
+                    if (rangeCount > 0) {
+                        continue;
+                    }
+                    // The next entry is bigger than the range, read it on its own
+                }
+
                 ByteBuf entry = entryLogger.readEntry(orginalLedgerId,
                         firstEntryId, currentEntryLocation);
 
@@ -702,7 +960,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     protected boolean chargeReadAheadCache(int currentReadAheadCount, long currentReadAheadBytes) {
         // compatible with old logic
-        boolean chargeSizeCondition = currentReadAheadCount < readAheadCacheBatchSize
+        boolean chargeSizeCondition = currentReadAheadCount < readAheadCacheMaxBatchSize
                 && currentReadAheadBytes < maxReadAheadBytesSize;
         if (chargeSizeCondition && readAheadCacheBatchBytesSize > 0) {
             // exact limits limit the size and count for each batch
@@ -733,20 +991,23 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 return entry;
             }
 
-            // If there's a flush going on, the entry might be in the flush buffer
-            entry = writeCacheBeingFlushed.getLastEntry(ledgerId);
-            if (entry != null) {
-                if (log.isDebugEnabled()) {
-                    entry.readLong(); // ledgedId
-                    long entryId = entry.readLong();
-                    entry.resetReaderIndex();
+            // If there's a flush going on, the entry might be in the write caches waiting to be flushed
+            for (WriteCache sealedWriteCache : sealedWriteCaches) {
+                entry = sealedWriteCache.getLastEntry(ledgerId);
+                if (entry != null) {
                     if (log.isDebugEnabled()) {
-                        log.debug("Found last entry for ledger {} in write cache being flushed: {}", ledgerId, entryId);
+                        entry.readLong(); // ledgedId
+                        long entryId = entry.readLong();
+                        entry.resetReaderIndex();
+                        if (log.isDebugEnabled()) {
+                            log.debug("Found last entry for ledger {} in write cache being flushed: {}", ledgerId,
+                                    entryId);
+                        }
                     }
-                }
 
-                dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-                return entry;
+                    dbLedgerStorageStats.getWriteCacheHitCounter().inc();
+                    return entry;
+                }
             }
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
@@ -776,7 +1037,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     boolean isFlushRequired() {
         long stamp = writeCacheRotationLock.readLock();
         try {
-            return !writeCache.isEmpty();
+            return !writeCache.isEmpty() || sealedWriteCaches.length > 0;
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
         }
@@ -801,50 +1062,28 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
 
         try {
-            if (writeCache.isEmpty()) {
+            if (writeCache.isEmpty() && sealedWriteCaches.length == 0) {
                 return;
             }
             // Swap the write cache so that writes can continue to happen while the flush is
             // ongoing
-            swapWriteCache();
+            WriteCache[] writeCachesToFlush = swapWriteCache();
 
-            long sizeToFlush = writeCacheBeingFlushed.size();
-            if (log.isDebugEnabled()) {
-                log.debug("Flushing entries. count: {} -- size {} Mb", writeCacheBeingFlushed.count(),
-                        sizeToFlush / 1024.0 / 1024);
+            long sizeToFlush = 0;
+            long countToFlush = 0;
+            for (WriteCache writeCacheToFlush : writeCachesToFlush) {
+                sizeToFlush += writeCacheToFlush.size();
+                countToFlush += writeCacheToFlush.count();
             }
-
-            // Write all the pending entries into the entry logger and collect the offset
-            // position for each entry
-
-            Batch batch = entryLocationIndex.newBatch();
-            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
-                long location = entryLogger.addEntry(ledgerId, entry);
-                entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
-            });
-
-            long entryLoggerStart = MathUtils.nowInNano();
-            entryLogger.flush();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
-
-            long batchFlushStartTime = MathUtils.nowInNano();
-            batch.flush();
-            batch.close();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
             if (log.isDebugEnabled()) {
-                log.debug("DB batch flushed time : {} s",
-                        MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+                log.debug("Flushing entries. count: {} -- size {} Mb -- write caches: {}", countToFlush,
+                        sizeToFlush / 1024.0 / 1024, writeCachesToFlush.length);
             }
 
-            long ledgerIndexStartTime = MathUtils.nowInNano();
-            ledgerIndex.flush();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLedgerIndexStats(), ledgerIndexStartTime);
+            flushWriteCaches(writeCachesToFlush);
 
             lastCheckpoint = thisCheckpoint;
 
-            // Discard all the entry from the write cache, since they're now persisted
-            writeCacheBeingFlushed.clear();
-
             double flushTimeSeconds = MathUtils.elapsedNanos(startTime) / (double) TimeUnit.SECONDS.toNanos(1);
             double flushThroughput = sizeToFlush / 1024.0 / 1024.0 / flushTimeSeconds;
 
@@ -883,19 +1122,27 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     }
 
     /**
-     * Swap the current write cache with the replacement cache.
+     * Swap the current write cache with an empty one, and get all the write caches to flush, from the oldest to the
+     * most recent.
      */
-    private void swapWriteCache() {
+    private WriteCache[] swapWriteCache() {
         long stamp = writeCacheRotationLock.writeLock();
         try {
             // First, swap the current write-cache map with an empty one so that writes will
             // go on unaffected. Only a single flush is happening at the same time
-            WriteCache tmp = writeCacheBeingFlushed;
-            writeCacheBeingFlushed = writeCache;
-            writeCache = tmp;
+            if (!writeCache.isEmpty() && !freeWriteCaches.isEmpty()) {
+                sealedWriteCaches = prepend(writeCache, sealedWriteCaches);
+                writeCache = freeWriteCaches.poll();
+            }
 
             // since the cache is switched, we can allow flush to be triggered
             hasFlushBeenTriggered.set(false);
+
+            WriteCache[] writeCachesToFlush = new WriteCache[sealedWriteCaches.length];
+            for (int i = 0; i < writeCachesToFlush.length; i++) {
+                writeCachesToFlush[i] = sealedWriteCaches[sealedWriteCaches.length - 1 - i];
+            }
+            return writeCachesToFlush;
         } finally {
             try {
                 isFlushOngoing.set(true);
@@ -905,6 +1152,115 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    /**
+     * Flush the write caches in order. When there are multiple write caches to flush, the indexes of each write cache
+     * are updated in background, while the entries of the next one are written to the entry log.
+     */
+    private void flushWriteCaches(WriteCache[] writeCachesToFlush) throws IOException {
+        Future<?> pendingIndexesUpdate = null;
+        try {
+            for (int i = 0; i < writeCachesToFlush.length; i++) {
+                WriteCache writeCacheToFlush = writeCachesToFlush[i];
+
+                // Write all the pending entries into the entry logger and collect the offset
+                // position for each entry
+                Batch batch = entryLocationIndex.newBatch();
+                writeCacheToFlush.forEach((ledgerId, entryId, entry) -> {
+                    long location = entryLogger.addEntry(ledgerId, entry);
+                    entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
+                });
+
+                long entryLoggerStart = MathUtils.nowInNano();
+                entryLogger.flush();
+                recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+
+                // The indexes must be updated in the same order as the write caches were filled
+                waitForIndexesUpdate(pendingIndexesUpdate);
+                pendingIndexesUpdate = null;
+
+                if (indexFlushExecutor != null && i < writeCachesToFlush.length - 1) {
+                    pendingIndexesUpdate = indexFlushExecutor.submit(() -> {
+                        updateIndexes(batch, writeCacheToFlush);
+                        return null;
+                    });
+                } else {
+                    updateIndexes(batch, writeCacheToFlush);
+                }
+            }
+        } catch (IOException e) {
+            if (pendingIndexesUpdate != null) {
+                try {
+                    waitForIndexesUpdate(pendingIndexesUpdate);
+                } catch (IOException e2) {
+                    e.addSuppressed(e2);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void updateIndexes(Batch batch, WriteCache flushedWriteCache) throws IOException {
+        long batchFlushStartTime = MathUtils.nowInNano();
+        batch.flush();
+        batch.close();
+        recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
+        if (log.isDebugEnabled()) {
+            log.debug("DB batch flushed time : {} s",
+                    MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        long ledgerIndexStartTime = MathUtils.nowInNano();
+        ledgerIndex.flush();
+        recordSuccessfulEvent(dbLedgerStorageStats.getFlushLedgerIndexStats(), ledgerIndexStartTime);
+
+        // Discard all the entry from the write cache, since they're now persisted
+        flushedWriteCache.clear();
+
+        long stamp = writeCacheRotationLock.writeLock();
+        try {
+            sealedWriteCaches = remove(flushedWriteCache, sealedWriteCaches);
+            freeWriteCaches.add(flushedWriteCache);
+        } finally {
+            writeCacheRotationLock.unlockWrite(stamp);
+        }
+    }
+
+    private static void waitForIndexesUpdate(Future<?> indexesUpdate) throws IOException {
+        if (indexesUpdate == null) {
+            return;
+        }
+
+        try {
+            indexesUpdate.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while updating the indexes", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to update the indexes", e.getCause());
+        }
+    }
+
+    private static WriteCache[] prepend(WriteCache writeCache, WriteCache[] writeCaches) {
+        WriteCache[] newWriteCaches = new WriteCache[writeCaches.length + 1];
+        newWriteCaches[0] = writeCache;
+        System.arraycopy(writeCaches, 0, newWriteCaches, 1, writeCaches.length);
+        return newWriteCaches;
+    }
+
+    private static WriteCache[] remove(WriteCache writeCache, WriteCache[] writeCaches) {
+        WriteCache[] newWriteCaches = new WriteCache[writeCaches.length - 1];
+        int idx = 0;
+        for (WriteCache wc : writeCaches) {
+            if (wc != writeCache) {
+                newWriteCaches[idx++] = wc;
+            }
+        }
+        return newWriteCaches;
+    }
+
     @Override
     public void flush() throws IOException {
         Checkpoint cp = checkpointSource.newCheckpoint();
@@ -924,6 +1280,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         long stamp = writeCacheRotationLock.readLock();
         try {
             writeCache.deleteLedger(ledgerId);
+            for (WriteCache sealedWriteCache : sealedWriteCaches) {
+                sealedWriteCache.deleteLedger(ledgerId);
+            }
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
         }
@@ -25,9 +25,12 @@ import static com.google.common.base.Preconditions.checkArgument;
 import com.google.common.annotations.VisibleForTesting;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
@@ -49,7 +52,9 @@ import org.slf4j.LoggerFactory;
  * until the cache is cleared.
  *
  * <p>There is the possibility to iterate through the stored entries in an ordered
- * way, by (ledgerId, entry).
+ * way, by (ledgerId, entry). When a sort pool is provided, the entries of a large
+ * cache are grouped by ledger in partitions which are sorted in parallel: the
+ * entries of each ledger are still iterated in order.
  */
 public class WriteCache implements Closeable {
 
@@ -85,19 +90,45 @@ public class WriteCache implements Closeable {
     private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
 
     private final ByteBufAllocator allocator;
+    private final ForkJoinPool sortPool;
 
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize) {
+        this(allocator, maxCacheSize, null);
+    }
+
+    /**
+     * Create a write cache whose entries are sorted in parallel with the given pool in {@link #forEach}.
+     */
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, ForkJoinPool sortPool) {
+        this(allocator, maxCacheSize, sortPool, UnpooledByteBufAllocator.DEFAULT);
+    }
+
+    /**
+     * Create a write cache whose segments are allocated with the given segment allocator.
+     */
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, ForkJoinPool sortPool,
+                      ByteBufAllocator segmentAllocator) {
         // Default maxSegmentSize set to 1Gb
-        this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024);
+        this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024, sortPool, segmentAllocator);
     }
 
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, null);
+    }
+
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, ForkJoinPool sortPool) {
+        this(allocator, maxCacheSize, maxSegmentSize, sortPool, UnpooledByteBufAllocator.DEFAULT);
+    }
+
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, ForkJoinPool sortPool,
+                      ByteBufAllocator segmentAllocator) {
         checkArgument(maxSegmentSize > 0);
 
         long alignedMaxSegmentSize = alignToPowerOfTwo(maxSegmentSize);
         checkArgument(maxSegmentSize == alignedMaxSegmentSize, "Max segment size needs to be in form of 2^n");
 
         this.allocator = allocator;
+        this.sortPool = sortPool;
         this.maxCacheSize = maxCacheSize;
         this.maxSegmentSize = (int) maxSegmentSize;
         this.segmentOffsetMask = maxSegmentSize - 1;
@@ -109,11 +140,11 @@ public class WriteCache implements Closeable {
 
         for (int i = 0; i < segmentsCount - 1; i++) {
             // All intermediate segments will be full-size
-            cacheSegments[i] = Unpooled.directBuffer(maxSegmentSize, maxSegmentSize);
+            cacheSegments[i] = segmentAllocator.directBuffer(maxSegmentSize, maxSegmentSize);
         }
 
         int lastSegmentSize = (int) (maxCacheSize % maxSegmentSize);
-        cacheSegments[segmentsCount - 1] = Unpooled.directBuffer(lastSegmentSize, lastSegmentSize);
+        cacheSegments[segmentsCount - 1] = segmentAllocator.directBuffer(lastSegmentSize, lastSegmentSize);
     }
 
     public void clear() {
@@ -228,6 +259,10 @@ public class WriteCache implements Closeable {
                 sortedEntries = new long[(int) (arrayLen * 2)];
             }
 
+            boolean parallelSort = sortPool != null && entriesToSort >= PARALLEL_SORT_MIN_ENTRIES;
+            int partitions = parallelSort ? sortPool.getParallelism() * PARTITIONS_PER_THREAD : 1;
+            int[] partitionSizes = new int[partitions];
+
             long startTime = MathUtils.nowInNano();
 
             sortedEntriesIdx = 0;
@@ -242,11 +277,23 @@ public class WriteCache implements Closeable {
                 sortedEntries[sortedEntriesIdx + 2] = offset;
                 sortedEntries[sortedEntriesIdx + 3] = length;
                 sortedEntriesIdx += 4;
+                partitionSizes[partition(ledgerId, partitions)] += 4;
             });
 
             if (log.isDebugEnabled()) {
                 log.debug("iteration took {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
             }
+
+            ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
+            for (int i = 0; i < segmentsCount; i++) {
+                entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+            }
+
+            if (parallelSort) {
+                forEachPartition(consumer, entrySegments, partitionSizes);
+                return;
+            }
+
             startTime = MathUtils.nowInNano();
 
             // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
@@ -256,23 +303,7 @@ public class WriteCache implements Closeable {
             }
             startTime = MathUtils.nowInNano();
 
-            ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
-            for (int i = 0; i < segmentsCount; i++) {
-                entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
-            }
-
-            for (int i = 0; i < sortedEntriesIdx; i += 4) {
-                long ledgerId = sortedEntries[i];
-                long entryId = sortedEntries[i + 1];
-                long offset = sortedEntries[i + 2];
-                long length = sortedEntries[i + 3];
-
-                int localOffset = (int) (offset & segmentOffsetMask);
-                int segmentIdx = (int) (offset >>> segmentOffsetBits);
-                ByteBuf entry = entrySegments[segmentIdx];
-                entry.setIndex(localOffset, localOffset + (int) length);
-                consumer.accept(ledgerId, entryId, entry);
-            }
+            consume(consumer, entrySegments, sortedEntries, 0, sortedEntriesIdx);
 
             if (log.isDebugEnabled()) {
                 log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
@@ -282,6 +313,76 @@ public class WriteCache implements Closeable {
         }
     }
 
+    /**
+     * Split the entries in partitions of whole ledgers and sort them in parallel. Each partition is passed to
+     * the consumer as soon as it is sorted, while the following ones are still being sorted.
+     */
+    private void forEachPartition(EntryConsumer consumer, ByteBuf[] entrySegments, int[] partitionSizes)
+            throws IOException {
+        long startTime = MathUtils.nowInNano();
+        int partitions = partitionSizes.length;
+
+        if (partitionedEntries == null || partitionedEntries.length < sortedEntriesIdx) {
+            partitionedEntries = new long[sortedEntries.length];
+        }
+
+        int[] partitionOffsets = new int[partitions + 1];
+        for (int p = 0; p < partitions; p++) {
+            partitionOffsets[p + 1] = partitionOffsets[p] + partitionSizes[p];
+        }
+
+        int[] positions = Arrays.copyOf(partitionOffsets, partitions);
+        for (int i = 0; i < sortedEntriesIdx; i += 4) {
+            int p = partition(sortedEntries[i], partitions);
+            System.arraycopy(sortedEntries, i, partitionedEntries, positions[p], 4);
+            positions[p] += 4;
+        }
+
+        ForkJoinTask<?>[] sortTasks = new ForkJoinTask<?>[partitions];
+        for (int p = 0; p < partitions; p++) {
+            int offset = partitionOffsets[p];
+            int length = partitionSizes[p];
+            sortTasks[p] = sortPool.submit(() -> ArrayGroupSort.sort(partitionedEntries, offset, length));
+        }
+
+        try {
+            for (int p = 0; p < partitions; p++) {
+                sortTasks[p].join();
+                consume(consumer, entrySegments, partitionedEntries, partitionOffsets[p], partitionOffsets[p + 1]);
+            }
+        } finally {
+            // Do not release the array while it is still being sorted
+            for (ForkJoinTask<?> task : sortTasks) {
+                task.quietlyJoin();
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("parallel sorting and entry log adding of {} partitions {} ms", partitions,
+                    MathUtils.elapsedNanos(startTime) / 1e6);
+        }
+    }
+
+    private void consume(EntryConsumer consumer, ByteBuf[] entrySegments, long[] entries, int from, int to)
+            throws IOException {
+        for (int i = from; i < to; i += 4) {
+            long ledgerId = entries[i];
+            long entryId = entries[i + 1];
+            long offset = entries[i + 2];
+            long length = entries[i + 3];
+
+            int localOffset = (int) (offset & segmentOffsetMask);
+            int segmentIdx = (int) (offset >>> segmentOffsetBits);
+            ByteBuf entry = entrySegments[segmentIdx];
+            entry.setIndex(localOffset, localOffset + (int) length);
+            consumer.accept(ledgerId, entryId, entry);
+        }
+    }
+
+    private static int partition(long ledgerId, int partitions) {
+        return (int) (((ledgerId * 0x9E3779B97F4A7C15L) >>> 32) % partitions);
+    }
+
     public long size() {
         return cacheSize.get();
     }
@@ -307,6 +408,12 @@ public class WriteCache implements Closeable {
     private final ReentrantLock sortedEntriesLock = new ReentrantLock();
     private long[] sortedEntries;
     private int sortedEntriesIdx;
+    private long[] partitionedEntries;
+
+    // Below this number of entries, sorting in parallel is not worth the overhead
+    private static final int PARALLEL_SORT_MIN_ENTRIES = 64 * 1024;
+    // More partitions than threads, so that the first partitions are ready to be consumed early
+    private static final int PARTITIONS_PER_THREAD = 4;
 
     private static final Logger log = LoggerFactory.getLogger(WriteCache.class);
 
@@ -24,6 +24,8 @@ import io.netty.buffer.ByteBuf;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.client.api.LedgerEntry;
 import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
@@ -46,6 +48,9 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
 
     BatchedLedgerEntryRequest request;
 
+    // The bookie to send the read to first, or -1 to follow the order of the write set
+    int preferredBookieIndex = -1;
+
     BatchedReadOp(LedgerHandle lh,
                   ClientContext clientCtx,
                   long startEntryId,
@@ -62,6 +67,9 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
         this.requestTimeNanos = MathUtils.nowInNano();
         List<BookieId> ensemble = getLedgerMetadata().getEnsembleAt(startEntryId);
         request = new SequenceReadRequest(ensemble, lh.ledgerId, startEntryId, maxCount, maxSize);
+        if (preferredBookieIndex >= 0) {
+            request.preferBookie(preferredBookieIndex);
+        }
         request.read();
         if (clientCtx.getConf().readSpeculativeRequestPolicy.isPresent()) {
             speculativeTask = clientCtx.getConf().readSpeculativeRequestPolicy.get()
@@ -124,8 +132,25 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
 
     void sendReadTo(int bookieIndex, BookieId to, BatchedLedgerEntryRequest entry) throws InterruptedException {
         if (lh.throttler != null) {
-            lh.throttler.acquire();
+            // Do not block the caller, send the read once it has been admitted by the throttle of the ledger
+            CompletableFuture<Void> admission = lh.throttler.reserveMemoryAsync(1);
+            if (!admission.isDone()) {
+                admission.thenRun(() -> {
+                    // The admission is completed by the thread refilling the throttle, move back to the ledger thread
+                    try {
+                        clientCtx.getMainWorkerPool().executeOrdered(lh.ledgerId,
+                                () -> doSendReadTo(bookieIndex, to, entry));
+                    } catch (RejectedExecutionException e) {
+                        doSendReadTo(bookieIndex, to, entry);
+                    }
+                });
+                return;
+            }
         }
+        doSendReadTo(bookieIndex, to, entry);
+    }
+
+    private void doSendReadTo(int bookieIndex, BookieId to, BatchedLedgerEntryRequest entry) {
         if (isRecoveryRead) {
             int flags = BookieProtocol.FLAG_HIGH_PRIORITY | BookieProtocol.FLAG_DO_FENCING;
             clientCtx.getBookieClient().batchReadEntries(to, lh.ledgerId, entry.eId,
@@ -153,6 +178,16 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
             this.entries = new ArrayList<>(maxCount);
         }
 
+        /**
+         * Read from the given bookie first, the other bookies of the write set are kept in order.
+         */
+        void preferBookie(int bookieIndex) {
+            int replica = writeSet.indexOf(bookieIndex);
+            if (replica > 0) {
+                writeSet.moveAndShift(replica, 0);
+            }
+        }
+
         boolean complete(int bookieIndex, BookieId host, final ByteBufList bufList) {
             if (isComplete()) {
                 return false;
@@ -67,6 +67,7 @@ import org.apache.bookkeeper.common.allocator.ByteBufAllocatorBuilder;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.OrderedScheduler;
 import org.apache.bookkeeper.common.util.ReflectionUtils;
+import org.apache.bookkeeper.common.util.TokenBucketController;
 import org.apache.bookkeeper.conf.AbstractConfiguration;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.feature.FeatureProvider;
@@ -117,6 +118,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
     // The stats logger for this client.
     private final StatsLogger statsLogger;
     private final BookKeeperClientStats clientStats;
+    private final TokenBucketController addThrottler;
     private final double bookieQuarantineRatio;
 
     // whether the event loop group is one we created, or is owned by whoever
@@ -438,6 +440,14 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         this.statsLogger = rootStatsLogger.scope(BookKeeperClientStats.CLIENT_SCOPE);
         this.clientStats = BookKeeperClientStats.newInstance(this.statsLogger);
 
+        // initialize the client-wide throttle of the adds
+        if (internalConf.throttleBytes > 0) {
+            this.addThrottler = new TokenBucketController(internalConf.throttleBytes,
+                    internalConf.throttleBurstBytes, scheduler);
+        } else {
+            this.addThrottler = null;
+        }
+
         // initialize metadata driver
         try {
             String metadataServiceUriStr = conf.getMetadataServiceUri();
@@ -549,6 +559,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         internalConf = ClientInternalConf.fromConfig(conf);
         statsLogger = NullStatsLogger.INSTANCE;
         clientStats = BookKeeperClientStats.newInstance(statsLogger);
+        addThrottler = null;
         scheduler = null;
         requestTimer = null;
         metadataDriver = null;
@@ -1658,6 +1669,11 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
             public ByteBufAllocator getByteBufAllocator() {
                 return allocator;
             }
+
+            @Override
+            public TokenBucketController getAddThrottler() {
+                return addThrottler;
+            }
         };
 
     public ClientContext getClientCtx() {
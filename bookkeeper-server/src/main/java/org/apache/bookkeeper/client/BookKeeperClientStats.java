@@ -24,6 +24,7 @@ package org.apache.bookkeeper.client;
 import org.apache.bookkeeper.client.impl.BookKeeperClientStatsImpl;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 
@@ -58,6 +59,8 @@ public interface BookKeeperClientStats {
     String READ_LAST_CONFIRMED_AND_ENTRY = "READ_LAST_CONFIRMED_AND_ENTRY";
     String READ_LAST_CONFIRMED_AND_ENTRY_RESPONSE = "READ_LAST_CONFIRMED_AND_ENTRY_RESPONSE";
     String PENDING_ADDS = "NUM_PENDING_ADD";
+    String THROTTLED_ADDS = "NUM_THROTTLED_ADD";
+    String ADD_OP_THROTTLE_WAIT = "ADD_ENTRY_THROTTLE_WAIT";
     String ENSEMBLE_CHANGES = "NUM_ENSEMBLE_CHANGE";
     String LAC_UPDATE_HITS = "LAC_UPDATE_HITS";
     String LAC_UPDATE_MISSES = "LAC_UPDATE_MISSES";
@@ -71,6 +74,8 @@ public interface BookKeeperClientStats {
 
     String CHANNEL_READ_OP = "READ_ENTRY";
     String CHANNEL_TIMEOUT_READ = "TIMEOUT_READ_ENTRY";
+    String CHANNEL_BATCH_READ_COUNT = "BATCH_READ_COUNT";
+    String CHANNEL_BATCH_READ_SHRINK = "BATCH_READ_SHRINK";
     String CHANNEL_ADD_OP = "ADD_ENTRY";
     String CHANNEL_TIMEOUT_ADD = "TIMEOUT_ADD_ENTRY";
     String CHANNEL_WRITE_LAC_OP = "WRITE_LAC";
@@ -131,6 +136,20 @@ public interface BookKeeperClientStats {
     Counter getWriteTimedOutDueToNotEnoughFaultDomains();
     void registerPendingAddsGauge(Gauge<Integer> gauge);
 
+    /**
+     * Get the logger of the time the adds wait for the throttles.
+     */
+    default OpStatsLogger getAddOpThrottleWaitLogger() {
+        return NullStatsLogger.INSTANCE.getOpStatsLogger(ADD_OP_THROTTLE_WAIT);
+    }
+
+    /**
+     * Get the counter of the adds waiting for the throttles.
+     */
+    default Counter getThrottledAddsCounter() {
+        return NullStatsLogger.INSTANCE.getCounter(THROTTLED_ADDS);
+    }
+
     static BookKeeperClientStats newInstance(StatsLogger stats) {
         return new BookKeeperClientStatsImpl(stats);
     }
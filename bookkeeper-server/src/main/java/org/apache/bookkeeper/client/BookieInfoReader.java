@@ -62,12 +62,17 @@ public class BookieInfoReader {
     public static class BookieInfo implements WeightedObject {
         private final long freeDiskSpace;
         private final long totalDiskSpace;
+        private final long features;
         public BookieInfo() {
             this(0L, 0L);
         }
         public BookieInfo(long totalDiskSpace, long freeDiskSpace) {
+            this(totalDiskSpace, freeDiskSpace, 0L);
+        }
+        public BookieInfo(long totalDiskSpace, long freeDiskSpace, long features) {
             this.totalDiskSpace = totalDiskSpace;
             this.freeDiskSpace = freeDiskSpace;
+            this.features = features;
         }
         public long getFreeDiskSpace() {
             return freeDiskSpace;
@@ -75,6 +80,13 @@ public class BookieInfoReader {
         public long getTotalDiskSpace() {
             return totalDiskSpace;
         }
+        /**
+         * The optional features of the protocol supported by the bookie, a bitwise OR of
+         * {@link org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoResponse.Features}.
+         */
+        public long getFeatures() {
+            return features;
+        }
         @Override
         public long getWeight() {
             return freeDiskSpace;
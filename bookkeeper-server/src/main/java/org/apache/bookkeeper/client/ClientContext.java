@@ -23,6 +23,7 @@ package org.apache.bookkeeper.client;
 import io.netty.buffer.ByteBufAllocator;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.common.util.TokenBucketController;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.proto.BookieClient;
 
@@ -43,4 +44,11 @@ public interface ClientContext {
     OrderedScheduler getScheduler();
     BookKeeperClientStats getClientStats();
     boolean isClientClosed();
+
+    /**
+     * Get the client-wide throttle of the bytes written by the adds, or null if they are not throttled.
+     */
+    default TokenBucketController getAddThrottler() {
+        return null;
+    }
 }
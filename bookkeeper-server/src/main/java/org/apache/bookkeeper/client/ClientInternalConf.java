@@ -42,6 +42,8 @@ class ClientInternalConf {
     final boolean enableStickyReads;
     final int recoveryReadBatchSize;
     final int throttleValue;
+    final long throttleBytes;
+    final long throttleBurstBytes;
     final int bookieFailureHistoryExpirationMSec;
     final int maxAllowedEnsembleChanges;
     final long timeoutMonitorIntervalSec;
@@ -49,6 +51,8 @@ class ClientInternalConf {
     final boolean useV2WireProtocol;
     final boolean enforceMinNumFaultDomainsForWrite;
     final boolean batchReadEnabled;
+    final int readStripeEntries;
+    final int readStripeMaxInflight;
     final int nettyMaxFrameSizeBytes;
 
     static ClientInternalConf defaultValues() {
@@ -73,8 +77,12 @@ class ClientInternalConf {
         this.waitForWriteSetMs = conf.getWaitTimeoutOnBackpressureMillis();
         this.addEntryQuorumTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getAddEntryQuorumTimeout());
         this.throttleValue = conf.getThrottleValue();
+        this.throttleBytes = conf.getThrottleBytes();
+        this.throttleBurstBytes = conf.getThrottleBurstBytes() > 0 ? conf.getThrottleBurstBytes() : throttleBytes;
         this.bookieFailureHistoryExpirationMSec = conf.getBookieFailureHistoryExpirationMSec();
         this.batchReadEnabled = conf.isBatchReadEnabled();
+        this.readStripeEntries = conf.getReadStripeEntries();
+        this.readStripeMaxInflight = conf.getReadStripeMaxInflight();
         this.nettyMaxFrameSizeBytes = conf.getNettyMaxFrameSizeBytes();
         this.disableEnsembleChangeFeature = featureProvider.getFeature(conf.getDisableEnsembleChangeFeatureName());
         this.delayEnsembleChange = conf.getDelayEnsembleChange();
@@ -30,7 +30,6 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
-import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import java.security.GeneralSecurityException;
@@ -45,7 +44,6 @@ import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
@@ -76,6 +74,7 @@ import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
 import org.apache.bookkeeper.common.concurrent.FutureEventListener;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.TokenBucketController;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.checksum.DigestManager;
@@ -99,10 +98,9 @@ public class LedgerHandle implements WriteHandle {
     final ClientContext clientCtx;
 
     final byte[] ledgerKey;
-    private Versioned<LedgerMetadata> versionedMetadata;
+    private volatile Versioned<LedgerMetadata> versionedMetadata;
     final long ledgerId;
     final ExecutorService executor;
-    long lastAddPushed;
     boolean notSupportBatch;
 
     private enum HandleState {
@@ -110,7 +108,7 @@ public class LedgerHandle implements WriteHandle {
         CLOSED
     }
 
-    private HandleState handleState = HandleState.OPEN;
+    private volatile HandleState handleState = HandleState.OPEN;
     private final CompletableFuture<Void> closePromise = new CompletableFuture<>();
 
     /**
@@ -137,10 +135,9 @@ public class LedgerHandle implements WriteHandle {
      */
     private int stickyBookieIndex;
 
-    long length;
     final DigestManager macManager;
     final DistributionSchedule distributionSchedule;
-    final RateLimiter throttler;
+    final TokenBucketController throttler;
     final LoadingCache<BookieId, Long> bookieFailureHistory;
     final BookiesHealthInfo bookiesHealthInfo;
     final EnumSet<WriteFlag> writeFlags;
@@ -166,6 +163,11 @@ public class LedgerHandle implements WriteHandle {
     final Object metadataLock = new Object();
     boolean changingEnsemble = false;
     final AtomicInteger numEnsembleChanges = new AtomicInteger(0);
+    /**
+     * Assigns the entry ids of the adds, and holds the last add pushed and the length of the ledger.
+     * It is also the queue of the pending adds, unless a subclass replaces {@link #pendingAddOps}.
+     */
+    final PendingAddQueue pendingAddQueue;
     Queue<PendingAddOp> pendingAddOps;
     ExplicitLacFlushPolicy explicitLacFlushPolicy;
 
@@ -173,6 +175,8 @@ public class LedgerHandle implements WriteHandle {
     final Counter lacUpdateHitsCounter;
     final Counter lacUpdateMissesCounter;
     private final OpStatsLogger clientChannelWriteWaitStats;
+    private final OpStatsLogger addThrottleWaitStats;
+    private final Counter throttledAddsCounter;
 
     LedgerHandle(ClientContext clientCtx,
                  long ledgerId, Versioned<LedgerMetadata> versionedMetadata,
@@ -182,17 +186,17 @@ public class LedgerHandle implements WriteHandle {
         this.clientCtx = clientCtx;
 
         this.versionedMetadata = versionedMetadata;
-        this.pendingAddOps = new ConcurrentLinkedQueue<PendingAddOp>();
         this.writeFlags = writeFlags;
 
         LedgerMetadata metadata = versionedMetadata.getValue();
         if (metadata.isClosed()) {
-            lastAddConfirmed = lastAddPushed = metadata.getLastEntryId();
-            length = metadata.getLength();
+            lastAddConfirmed = metadata.getLastEntryId();
+            this.pendingAddQueue = new PendingAddQueue(lastAddConfirmed, metadata.getLength());
         } else {
-            lastAddConfirmed = lastAddPushed = INVALID_ENTRY_ID;
-            length = 0;
+            lastAddConfirmed = INVALID_ENTRY_ID;
+            this.pendingAddQueue = new PendingAddQueue(INVALID_ENTRY_ID, 0);
         }
+        this.pendingAddOps = pendingAddQueue;
 
         this.pendingAddsSequenceHead = lastAddConfirmed;
 
@@ -207,7 +211,8 @@ public class LedgerHandle implements WriteHandle {
         }
 
         if (clientCtx.getConf().throttleValue > 0) {
-            this.throttler = RateLimiter.create(clientCtx.getConf().throttleValue);
+            this.throttler = new TokenBucketController(clientCtx.getConf().throttleValue,
+                    clientCtx.getConf().throttleValue, clientCtx.getScheduler());
         } else {
             this.throttler = null;
         }
@@ -247,6 +252,8 @@ public class LedgerHandle implements WriteHandle {
         lacUpdateHitsCounter = clientCtx.getClientStats().getLacUpdateHitsCounter();
         lacUpdateMissesCounter = clientCtx.getClientStats().getLacUpdateMissesCounter();
         clientChannelWriteWaitStats = clientCtx.getClientStats().getClientChannelWriteWaitLogger();
+        addThrottleWaitStats = clientCtx.getClientStats().getAddOpThrottleWaitLogger();
+        throttledAddsCounter = clientCtx.getClientStats().getThrottledAddsCounter();
 
         clientCtx.getClientStats().registerPendingAddsGauge(new Gauge<Integer>() {
                 @Override
@@ -320,11 +327,11 @@ public class LedgerHandle implements WriteHandle {
      * {@inheritDoc}
      */
     @Override
-    public synchronized long getLastAddConfirmed() {
+    public long getLastAddConfirmed() {
         return lastAddConfirmed;
     }
 
-    synchronized void setLastAddConfirmed(long lac) {
+    void setLastAddConfirmed(long lac) {
         this.lastAddConfirmed = lac;
     }
 
@@ -332,8 +339,16 @@ public class LedgerHandle implements WriteHandle {
      * {@inheritDoc}
      */
     @Override
-    public synchronized long getLastAddPushed() {
-        return lastAddPushed;
+    public long getLastAddPushed() {
+        return pendingAddQueue.getLastAddPushed();
+    }
+
+    /**
+     * Reset the last add pushed. It must not be called while adds are being pushed, other than by the
+     * ledger recovery, which pushes them itself.
+     */
+    void setLastAddPushed(long lastAddPushed) {
+        pendingAddQueue.setLastAddPushed(lastAddPushed);
     }
 
     /**
@@ -364,8 +379,11 @@ public class LedgerHandle implements WriteHandle {
                 versionedMetadata = newMetadata;
                 LedgerMetadata metadata = versionedMetadata.getValue();
                 if (metadata.isClosed()) {
-                    lastAddConfirmed = lastAddPushed = metadata.getLastEntryId();
-                    length = metadata.getLength();
+                    // no more adds can be pushed to a closed ledger
+                    pendingAddQueue.seal();
+                    lastAddConfirmed = metadata.getLastEntryId();
+                    pendingAddQueue.setLastAddPushed(lastAddConfirmed);
+                    pendingAddQueue.setLength(metadata.getLength());
                 }
                 return true;
             } else {
@@ -422,9 +440,15 @@ public class LedgerHandle implements WriteHandle {
      * @param delta
      * @return the length of the ledger after the addition
      */
-    synchronized long addToLength(long delta) {
-        this.length += delta;
-        return this.length;
+    long addToLength(long delta) {
+        return pendingAddQueue.addToLength(delta);
+    }
+
+    /**
+     * Reset the length of the ledger in bytes, with the same restrictions as {@link #setLastAddPushed(long)}.
+     */
+    void setLength(long length) {
+        pendingAddQueue.setLength(length);
     }
 
     /**
@@ -433,8 +457,8 @@ public class LedgerHandle implements WriteHandle {
      * @return the length of the ledger in bytes
      */
     @Override
-    public synchronized long getLength() {
-        return this.length;
+    public long getLength() {
+        return pendingAddQueue.getLength();
     }
 
     /**
@@ -554,12 +578,17 @@ public class LedgerHandle implements WriteHandle {
                     synchronized (LedgerHandle.this) {
                         prevHandleState = handleState;
 
+                        // the adds are pushed without holding the lock, sealing the queue makes sure
+                        // that none of them is pushed after draining
+                        pendingAddQueue.seal();
+
                         // drain pending adds first
                         pendingAdds = drainPendingAddsAndAdjustLength();
 
                         // taking the length must occur after draining, as draining changes the length
-                        lastEntry = lastAddPushed = LedgerHandle.this.lastAddConfirmed;
-                        finalLength = LedgerHandle.this.length;
+                        lastEntry = LedgerHandle.this.lastAddConfirmed;
+                        pendingAddQueue.setLastAddPushed(lastEntry);
+                        finalLength = getLength();
                         handleState = HandleState.CLOSED;
                     }
 
@@ -954,6 +983,19 @@ public class LedgerHandle implements WriteHandle {
 
     private CompletableFuture<LedgerEntries> batchReadEntriesInternalAsync(long startEntry, int maxCount, long maxSize,
             boolean isRecoveryRead) {
+        return batchReadEntriesInternalAsync(startEntry, maxCount, maxSize, isRecoveryRead, -1);
+    }
+
+    /**
+     * Whether the entries of the ledger can be read with batch reads. This requires the v2 wire protocol, and
+     * every bookie of the ensemble to store all the entries.
+     */
+    boolean canBatchRead() {
+        return clientCtx.getConf().useV2WireProtocol && !notSupportBatchRead();
+    }
+
+    CompletableFuture<LedgerEntries> batchReadEntriesInternalAsync(long startEntry, int maxCount, long maxSize,
+            boolean isRecoveryRead, int preferredBookieIndex) {
         int nettyMaxFrameSizeBytes = clientCtx.getConf().nettyMaxFrameSizeBytes;
         if (maxSize > nettyMaxFrameSizeBytes) {
             LOG.info(
@@ -967,6 +1009,7 @@ public class LedgerHandle implements WriteHandle {
         }
         BatchedReadOp op = new BatchedReadOp(this, clientCtx,
                 startEntry, maxCount, maxSize, isRecoveryRead);
+        op.preferredBookieIndex = preferredBookieIndex;
         if (!clientCtx.isClientClosed()) {
             // Waiting on the first one.
             // This is not very helpful if there are multiple ensembles or if bookie goes into unresponsive
@@ -1143,6 +1186,22 @@ public class LedgerHandle implements WriteHandle {
     CompletableFuture<LedgerEntries> readEntriesInternalAsync(long firstEntry,
                                                               long lastEntry,
                                                               boolean isRecoveryRead) {
+        int stripeEntries = clientCtx.getConf().readStripeEntries;
+        if (!isRecoveryRead && stripeEntries > 0 && lastEntry - firstEntry >= stripeEntries
+                && lastEntry - firstEntry < Integer.MAX_VALUE) {
+            if (clientCtx.isClientClosed()) {
+                return FutureUtils.exception(BKException.create(ClientClosedException));
+            }
+            StripedReadOp op = new StripedReadOp(this, clientCtx, firstEntry, lastEntry);
+            op.initiate();
+            return op.future();
+        }
+        return readEntriesUnstripedAsync(firstEntry, lastEntry, isRecoveryRead);
+    }
+
+    CompletableFuture<LedgerEntries> readEntriesUnstripedAsync(long firstEntry,
+                                                               long lastEntry,
+                                                               boolean isRecoveryRead) {
         PendingReadOp op = new PendingReadOp(this, clientCtx,
                                              firstEntry, lastEntry, isRecoveryRead);
         if (!clientCtx.isClientClosed()) {
@@ -1580,25 +1639,9 @@ public class LedgerHandle implements WriteHandle {
     }
 
     protected void doAsyncAddEntry(final PendingAddOp op) {
-        if (throttler != null) {
-            throttler.acquire();
-        }
-
-        boolean wasClosed = false;
-        synchronized (this) {
-            // synchronized on this to ensure that
-            // the ledger isn't closed between checking and
-            // updating lastAddPushed
-            if (isHandleWritable()) {
-                long entryId = ++lastAddPushed;
-                long currentLedgerLength = addToLength(op.payload.readableBytes());
-                op.setEntryId(entryId);
-                op.setLedgerLength(currentLedgerLength);
-                pendingAddOps.add(op);
-            } else {
-                wasClosed = true;
-            }
-        }
+        // The entry id is assigned when the add is queued, without any lock. If the ledger is closed
+        // concurrently, the queue is sealed and the add cannot be queued anymore
+        boolean wasClosed = !isHandleWritable() || !pendingAddQueue.offerNext(op);
 
         if (wasClosed) {
             // make sure the callback is triggered in main worker pool
@@ -1626,6 +1669,47 @@ public class LedgerHandle implements WriteHandle {
             return;
         }
 
+        initiateWhenAdmitted(op);
+    }
+
+    /**
+     * Initiate a queued add once it has been admitted by the throttle of the ledger and by the client-wide
+     * throttle. The caller is never blocked: an add above the rates waits in the queue and is only sent to
+     * the bookies when admitted. As the entry id has already been assigned, the adds still complete in order.
+     */
+    void initiateWhenAdmitted(final PendingAddOp op) {
+        final int entryLength = op.entryLength;
+        CompletableFuture<Void> admission = throttler != null ? throttler.reserveMemoryAsync(1) : null;
+        final TokenBucketController clientThrottler = clientCtx.getAddThrottler();
+        if (clientThrottler != null) {
+            if (admission == null || admission.isDone()) {
+                admission = clientThrottler.reserveMemoryAsync(entryLength);
+            } else {
+                admission = admission.thenCompose(ignored -> clientThrottler.reserveMemoryAsync(entryLength));
+            }
+        }
+
+        if (admission == null || admission.isDone()) {
+            initiateAdd(op);
+            return;
+        }
+
+        // The add is not recycled before being initiated, even if the ledger is closed in the meantime
+        final long startTime = MathUtils.nowInNano();
+        throttledAddsCounter.inc();
+        admission.thenRun(() -> {
+            throttledAddsCounter.dec();
+            addThrottleWaitStats.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            // The admission is completed by the thread refilling the throttle, move back to the ledger thread
+            try {
+                executeOrdered(() -> initiateAdd(op));
+            } catch (RejectedExecutionException e) {
+                initiateAdd(op);
+            }
+        });
+    }
+
+    private void initiateAdd(PendingAddOp op) {
         if (clientCtx.getConf().waitForWriteSetMs >= 0) {
             DistributionSchedule.WriteSet ws = distributionSchedule.getWriteSet(op.getEntryId());
             try {
@@ -1638,7 +1722,6 @@ public class LedgerHandle implements WriteHandle {
         }
 
         op.initiate();
-
     }
 
     synchronized void updateLastConfirmed(long lac, long len) {
@@ -1648,8 +1731,7 @@ public class LedgerHandle implements WriteHandle {
         } else {
             lacUpdateMissesCounter.inc();
         }
-        lastAddPushed = Math.max(lastAddPushed, lac);
-        length = Math.max(length, len);
+        pendingAddQueue.advance(lac, len);
     }
 
     /**
@@ -1985,7 +2067,7 @@ public class LedgerHandle implements WriteHandle {
             isClosed = metadata.isClosed();
             if (isClosed) {
                 lastAddConfirmed = metadata.getLastEntryId();
-                length = metadata.getLength();
+                pendingAddQueue.setLength(metadata.getLength());
             }
         }
         if (isClosed) {
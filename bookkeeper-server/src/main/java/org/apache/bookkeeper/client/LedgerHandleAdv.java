@@ -221,10 +221,6 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
      */
     @Override
     protected void doAsyncAddEntry(final PendingAddOp op) {
-        if (throttler != null) {
-            throttler.acquire();
-        }
-
         boolean wasClosed = false;
         synchronized (this) {
             // synchronized on this to ensure that
@@ -264,18 +260,7 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
             return;
         }
 
-        if (clientCtx.getConf().waitForWriteSetMs >= 0) {
-            DistributionSchedule.WriteSet ws = distributionSchedule.getWriteSet(op.getEntryId());
-            try {
-                if (!waitForWritable(ws, 0, clientCtx.getConf().waitForWriteSetMs)) {
-                    op.allowFailFastOnUnwritableChannel();
-                }
-            } finally {
-                ws.recycle();
-            }
-        }
-
-        op.initiate();
+        initiateWhenAdmitted(op);
     }
 
     @Override
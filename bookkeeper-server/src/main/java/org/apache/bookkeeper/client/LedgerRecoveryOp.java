@@ -118,10 +118,11 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
                                         .lastEntry()
                                         .getKey();
 
-                                lh.lastAddPushed = lh.lastAddConfirmed = Math.max(data.getLastAddConfirmed(),
+                                lh.lastAddConfirmed = Math.max(data.getLastAddConfirmed(),
                                         (lastEnsembleEntryId - 1));
+                                lh.setLastAddPushed(lh.lastAddConfirmed);
 
-                                lh.length = data.getLength();
+                                lh.setLength(data.getLength());
                                 lh.pendingAddsSequenceHead = lh.lastAddConfirmed;
                                 startEntryToRead = endEntryToRead = lh.lastAddConfirmed;
                             }
@@ -192,11 +193,11 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
              * be added again when processing the call to add it.
              */
             synchronized (lh) {
-                lh.length = entry.getLength() - (long) data.length;
+                lh.setLength(entry.getLength() - (long) data.length);
                 // check whether entry id is expected, so we won't overwritten any entries by mistake
-                if (entry.getEntryId() != lh.lastAddPushed + 1) {
+                if (entry.getEntryId() != lh.getLastAddPushed() + 1) {
                     LOG.error("Unexpected to recovery add entry {} as entry {} for ledger {}.",
-                            entry.getEntryId(), (lh.lastAddPushed + 1), lh.getId());
+                            entry.getEntryId(), (lh.getLastAddPushed() + 1), lh.getId());
                     rc = BKException.Code.UnexpectedConditionException;
                 }
             }
@@ -0,0 +1,299 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.UnaryOperator;
+
+/**
+ * Lock-free queue of the pending adds of a ledger, which also assigns their entry ids.
+ *
+ * <p>The last add pushed, the length of the ledger and the sealed flag are held in an immutable
+ * {@link State}, together with the last node of the queue. Appending an add takes the next entry id and
+ * length from the state and replaces it, with its own node as the last one, with a single CAS. Only the
+ * producer that replaced the state links its node after the previous last node, so concurrent producers
+ * never block each other, the adds are always queued in entry id order and the ledger length of each add
+ * matches its position.
+ *
+ * <p>Changing the last add pushed or the length of the ledger replaces the state with the same CAS, but
+ * does not add any node. An add racing with the change either takes its entry id and length from the new
+ * values, or is appended before and is included in them.
+ *
+ * <p>Once {@link #seal()} has been called, no add can be appended anymore. This is how closing the ledger
+ * excludes the adds racing with it.
+ *
+ * <p>{@code head} is a dummy node, the first add is the node after it. An add whose state has been replaced
+ * but whose node is not linked yet is not visible to the consumers, nor are the adds after it.
+ */
+class PendingAddQueue extends AbstractQueue<PendingAddOp> {
+
+    private static final class Node {
+        // null once the add has been polled, or for the initial dummy node
+        volatile PendingAddOp op;
+        volatile Node next;
+
+        Node(PendingAddOp op) {
+            this.op = op;
+        }
+    }
+
+    private static final class State {
+        final long lastAddPushed;
+        final long length;
+        final boolean sealed;
+        // Node of the last add appended, or the initial dummy node
+        final Node last;
+
+        State(long lastAddPushed, long length, boolean sealed, Node last) {
+            this.lastAddPushed = lastAddPushed;
+            this.length = length;
+            this.sealed = sealed;
+            this.last = last;
+        }
+    }
+
+    private static final AtomicReferenceFieldUpdater<PendingAddQueue, Node> HEAD_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(PendingAddQueue.class, Node.class, "head");
+    private static final AtomicReferenceFieldUpdater<PendingAddQueue, State> STATE_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(PendingAddQueue.class, State.class, "state");
+
+    private volatile Node head;
+    private volatile State state;
+
+    PendingAddQueue(long lastAddPushed, long length) {
+        Node dummy = new Node(null);
+        this.head = dummy;
+        this.state = new State(lastAddPushed, length, false, dummy);
+    }
+
+    /**
+     * Append an add, after assigning it the next entry id and the ledger length including its entry.
+     *
+     * @return false if the queue has been sealed, the add has not been appended
+     */
+    boolean offerNext(PendingAddOp op) {
+        Node node = new Node(op);
+        while (true) {
+            State s = state;
+            if (s.sealed) {
+                return false;
+            }
+            State next = new State(s.lastAddPushed + 1, s.length + op.entryLength, false, node);
+            if (STATE_UPDATER.compareAndSet(this, s, next)) {
+                // The add must be fully set up before it is linked, the consumers read it right away
+                op.setEntryId(next.lastAddPushed);
+                op.setLedgerLength(next.length);
+                s.last.next = node;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Replace the state with the entry id and length computed from the current one. The sealed state and
+     * the last node are kept. If the update returns the current state, nothing changes.
+     *
+     * @return the state after the update
+     */
+    private State update(UnaryOperator<State> update) {
+        while (true) {
+            State s = state;
+            State next = update.apply(s);
+            if (next == s || STATE_UPDATER.compareAndSet(this, s, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Prevent any further add to be appended.
+     */
+    void seal() {
+        update(s -> s.sealed ? s : new State(s.lastAddPushed, s.length, true, s.last));
+    }
+
+    long getLastAddPushed() {
+        return state.lastAddPushed;
+    }
+
+    long getLength() {
+        return state.length;
+    }
+
+    /**
+     * Reset the last add pushed. The adds racing with it take their entry id after the new one, so it must
+     * only be called when no add is being pushed, either because the queue has been sealed, or because there
+     * is a single producer.
+     */
+    void setLastAddPushed(long lastAddPushed) {
+        update(s -> new State(lastAddPushed, s.length, s.sealed, s.last));
+    }
+
+    /**
+     * Reset the length of the ledger, with the same restrictions as {@link #setLastAddPushed(long)}.
+     */
+    void setLength(long length) {
+        update(s -> new State(s.lastAddPushed, length, s.sealed, s.last));
+    }
+
+    long addToLength(long delta) {
+        return update(s -> new State(s.lastAddPushed, s.length + delta, s.sealed, s.last)).length;
+    }
+
+    /**
+     * Advance the last add pushed and the length of the ledger, if they are behind the given values.
+     */
+    void advance(long lastAddPushed, long length) {
+        update(s -> s.lastAddPushed >= lastAddPushed && s.length >= length
+                ? s
+                : new State(Math.max(s.lastAddPushed, lastAddPushed), Math.max(s.length, length), s.sealed,
+                            s.last));
+    }
+
+    // Get the node of the first add
+    private Node first() {
+        while (true) {
+            Node h = head;
+            Node next = h.next;
+            if (next == null || next.op != null) {
+                return next;
+            }
+            // The node has just been polled and is the new head: the CAS fails and the loop retries from the
+            // new head
+            HEAD_UPDATER.compareAndSet(this, h, next);
+        }
+    }
+
+    /**
+     * Append an add, as {@link #offerNext(PendingAddOp)}: its entry id and ledger length are assigned by the
+     * queue.
+     *
+     * @return false if the queue has been sealed
+     * @throws IllegalArgumentException if the entry id of the add is already set
+     */
+    @Override
+    public boolean offer(PendingAddOp op) {
+        if (op.getEntryId() != LedgerHandle.INVALID_ENTRY_ID) {
+            throw new IllegalArgumentException("The entry id of the add is already set: " + op.getEntryId());
+        }
+        return offerNext(op);
+    }
+
+    @Override
+    public PendingAddOp poll() {
+        while (true) {
+            Node h = head;
+            Node first = first();
+            if (first == null) {
+                return null;
+            }
+            PendingAddOp op = first.op;
+            if (op != null && h.next == first && HEAD_UPDATER.compareAndSet(this, h, first)) {
+                // The node becomes the dummy head
+                first.op = null;
+                return op;
+            }
+        }
+    }
+
+    @Override
+    public PendingAddOp peek() {
+        while (true) {
+            Node first = first();
+            if (first == null) {
+                return null;
+            }
+            PendingAddOp op = first.op;
+            if (op != null) {
+                return op;
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return peek() == null;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Node n = head.next; n != null; n = n.next) {
+            if (n.op != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Number of nodes linked from the head, including the head.
+     */
+    @VisibleForTesting
+    int nodeCount() {
+        int count = 0;
+        for (Node n = head; n != null; n = n.next) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Weakly consistent iterator on the pending adds.
+     */
+    @Override
+    public Iterator<PendingAddOp> iterator() {
+        return new Iterator<PendingAddOp>() {
+            private Node node = head;
+            private PendingAddOp nextOp = advance();
+
+            private PendingAddOp advance() {
+                while (node != null) {
+                    node = node.next;
+                    PendingAddOp op = node != null ? node.op : null;
+                    if (op != null) {
+                        return op;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nextOp != null;
+            }
+
+            @Override
+            public PendingAddOp next() {
+                if (nextOp == null) {
+                    throw new NoSuchElementException();
+                }
+                PendingAddOp op = nextOp;
+                nextOp = advance();
+                return op;
+            }
+        };
+    }
+}
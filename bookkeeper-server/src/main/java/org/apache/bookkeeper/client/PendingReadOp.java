@@ -25,6 +25,8 @@ import io.netty.buffer.ByteBuf;
 import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
 import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
@@ -167,9 +169,25 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
 
     void sendReadTo(int bookieIndex, BookieId to, SingleLedgerEntryRequest entry) throws InterruptedException {
         if (lh.throttler != null) {
-            lh.throttler.acquire();
+            // Do not block the caller, send the read once it has been admitted by the throttle of the ledger
+            CompletableFuture<Void> admission = lh.throttler.reserveMemoryAsync(1);
+            if (!admission.isDone()) {
+                admission.thenRun(() -> {
+                    // The admission is completed by the thread refilling the throttle, move back to the ledger thread
+                    try {
+                        clientCtx.getMainWorkerPool().executeOrdered(lh.ledgerId,
+                                () -> doSendReadTo(bookieIndex, to, entry));
+                    } catch (RejectedExecutionException e) {
+                        doSendReadTo(bookieIndex, to, entry);
+                    }
+                });
+                return;
+            }
         }
+        doSendReadTo(bookieIndex, to, entry);
+    }
 
+    private void doSendReadTo(int bookieIndex, BookieId to, SingleLedgerEntryRequest entry) {
         if (isRecoveryRead) {
             int flags = BookieProtocol.FLAG_HIGH_PRIORITY | BookieProtocol.FLAG_DO_FENCING;
             clientCtx.getBookieClient().readEntry(to, lh.ledgerId, entry.eId,
@@ -0,0 +1,199 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read a range of entries as stripes of consecutive entries, read in parallel.
+ *
+ * <p>At most {@code readStripeMaxInflight} stripes are read at the same time, the next stripe being read as
+ * soon as one completes, and the entries of all the stripes are returned together, in order. When batch
+ * reads can be used, each stripe is a batch read sent to the next bookie of the ensemble, so the reads are
+ * spread over all the bookies instead of being served by a single one. Otherwise, each stripe is read entry
+ * by entry, from the bookies of the write set of each entry.
+ *
+ * <p>A stripe never spans an ensemble change.
+ */
+class StripedReadOp {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StripedReadOp.class);
+
+    private final LedgerHandle lh;
+    private final ClientContext clientCtx;
+    private final long firstEntry;
+    private final long lastEntry;
+    private final int stripeEntries;
+    private final int maxInflight;
+    private final CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+
+    // The stripes started so far, in order. The entries of a stripe are only allocated when it is started, so
+    // a read failing early does not hold an array the size of the whole range
+    private final List<Stripe> stripes = new ArrayList<>();
+    private long nextStripeStart;
+    private int numInflight = 0;
+    private int nextBookieIndex = 0;
+    private boolean failed = false;
+
+    private static final class Stripe {
+        final long start;
+        final long end;
+        final LedgerEntry[] entries;
+
+        Stripe(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.entries = new LedgerEntry[(int) (end - start + 1)];
+        }
+    }
+
+    StripedReadOp(LedgerHandle lh, ClientContext clientCtx, long firstEntry, long lastEntry) {
+        this.lh = lh;
+        this.clientCtx = clientCtx;
+        this.firstEntry = firstEntry;
+        this.lastEntry = lastEntry;
+        this.stripeEntries = clientCtx.getConf().readStripeEntries;
+        int maxInflight = clientCtx.getConf().readStripeMaxInflight;
+        this.maxInflight = maxInflight > 0 ? maxInflight : lh.getLedgerMetadata().getEnsembleSize();
+        this.nextStripeStart = firstEntry;
+    }
+
+    CompletableFuture<LedgerEntries> future() {
+        return future;
+    }
+
+    void initiate() {
+        synchronized (this) {
+            readNextStripes();
+        }
+    }
+
+    // Start reading the next stripes, up to the max number of stripes in flight
+    private void readNextStripes() {
+        while (!failed && numInflight < maxInflight && nextStripeStart <= lastEntry) {
+            long start = nextStripeStart;
+            long end = Math.min(lastEntry, start + stripeEntries - 1);
+            Long nextEnsembleStart = lh.getLedgerMetadata().getAllEnsembles().higherKey(start);
+            if (nextEnsembleStart != null) {
+                end = Math.min(end, nextEnsembleStart - 1);
+            }
+            nextStripeStart = end + 1;
+            numInflight++;
+            Stripe stripe = new Stripe(start, end);
+            stripes.add(stripe);
+            readStripe(stripe, start);
+        }
+    }
+
+    // Read the entries of the stripe from the given entry to its end
+    private void readStripe(Stripe stripe, long from) {
+        final boolean batched = lh.canBatchRead();
+        CompletableFuture<LedgerEntries> read;
+        if (batched) {
+            int bookieIndex = nextBookieIndex;
+            nextBookieIndex = (nextBookieIndex + 1) % lh.getLedgerMetadata().getEnsembleSize();
+            read = lh.batchReadEntriesInternalAsync(from, (int) (stripe.end - from + 1),
+                    clientCtx.getConf().nettyMaxFrameSizeBytes, false, bookieIndex);
+        } else {
+            read = lh.readEntriesUnstripedAsync(from, stripe.end, false);
+        }
+        read.whenComplete((result, cause) -> stripeRead(stripe, from, batched, result, cause));
+    }
+
+    private void stripeRead(Stripe stripe, long from, boolean batched, LedgerEntries result, Throwable cause) {
+        Throwable error = cause;
+        boolean done;
+        synchronized (this) {
+            if (error == null && !failed) {
+                // The entries are moved to the result of the striped read, so the stripe is not closed
+                long lastRead = from - 1;
+                for (LedgerEntry entry : result) {
+                    stripe.entries[(int) (entry.getEntryId() - stripe.start)] = entry;
+                    lastRead = entry.getEntryId();
+                }
+                if (lastRead >= from && lastRead < stripe.end) {
+                    // A batch read stops at the max size of a response, read the rest of the stripe
+                    readStripe(stripe, lastRead + 1);
+                    return;
+                }
+                if (lastRead < from) {
+                    error = BKException.create(BKException.Code.ReadException);
+                }
+            } else if (error == null) {
+                result.close();
+            } else if (error instanceof BKException.BKBookieHandleNotAvailableException && batched && !failed) {
+                // The bookie does not support the batch reads, read the stripe again entry by entry
+                lh.notSupportBatch = true;
+                readStripe(stripe, from);
+                return;
+            }
+
+            numInflight--;
+            if (error != null || failed) {
+                done = !failed;
+                failed = true;
+            } else {
+                readNextStripes();
+                done = numInflight == 0 && nextStripeStart > lastEntry;
+            }
+        }
+
+        if (!done) {
+            return;
+        }
+        if (error != null) {
+            LOG.error("Striped read of ledger entries failed: L{} E{}-E{}, stripe E{}-E{}",
+                    lh.getId(), firstEntry, lastEntry, stripe.start, stripe.end);
+            releaseEntries();
+            future.completeExceptionally(error);
+        } else {
+            complete();
+        }
+    }
+
+    private synchronized void complete() {
+        List<LedgerEntry> result = new ArrayList<>((int) (lastEntry - firstEntry + 1));
+        for (Stripe stripe : stripes) {
+            result.addAll(Arrays.asList(stripe.entries));
+        }
+        future.complete(LedgerEntriesImpl.create(result));
+    }
+
+    // Release the entries already read, the stripes still in flight are released when they complete
+    private synchronized void releaseEntries() {
+        for (Stripe stripe : stripes) {
+            for (int i = 0; i < stripe.entries.length; i++) {
+                if (stripe.entries[i] != null) {
+                    stripe.entries[i].close();
+                    stripe.entries[i] = null;
+                }
+            }
+        }
+    }
+}
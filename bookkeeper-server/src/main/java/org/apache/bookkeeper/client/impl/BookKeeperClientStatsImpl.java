@@ -84,6 +84,16 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         help = "operation stats of adding entries requests"
     )
     private final OpStatsLogger addOpLogger;
+    @StatsDoc(
+        name = ADD_OP_THROTTLE_WAIT,
+        help = "The latency distribution of waiting time of the adds queued by the add throttles"
+    )
+    private final OpStatsLogger addOpThrottleWaitLogger;
+    @StatsDoc(
+        name = THROTTLED_ADDS,
+        help = "The number of adds queued by the add throttles, waiting to be sent"
+    )
+    private final Counter throttledAddsCounter;
     @StatsDoc(
         name = FORCE_OP,
         help = "operation stats of force requests"
@@ -171,6 +181,8 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         this.readLacAndEntryOpLogger = stats.getOpStatsLogger(READ_LAST_CONFIRMED_AND_ENTRY);
         this.readLacAndEntryRespLogger = stats.getOpStatsLogger(READ_LAST_CONFIRMED_AND_ENTRY_RESPONSE);
         this.addOpLogger = stats.getOpStatsLogger(ADD_OP);
+        this.addOpThrottleWaitLogger = stats.getOpStatsLogger(ADD_OP_THROTTLE_WAIT);
+        this.throttledAddsCounter = stats.getCounter(THROTTLED_ADDS);
         this.forceOpLogger = stats.getOpStatsLogger(FORCE_OP);
         this.addOpUrCounter = stats.getCounter(ADD_OP_UR);
         this.writeLacOpLogger = stats.getOpStatsLogger(WRITE_LAC_OP);
@@ -225,6 +237,10 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         return addOpLogger;
     }
     @Override
+    public OpStatsLogger getAddOpThrottleWaitLogger() {
+        return addOpThrottleWaitLogger;
+    }
+    @Override
     public OpStatsLogger getForceOpLogger() {
         return forceOpLogger;
     }
@@ -253,6 +269,10 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         return addOpUrCounter;
     }
     @Override
+    public Counter getThrottledAddsCounter() {
+        return throttledAddsCounter;
+    }
+    @Override
     public Counter getSpeculativeReadCounter() {
         return speculativeReadCounter;
     }
@@ -42,6 +42,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
 
     // Throttle value
     protected static final String THROTTLE = "throttle";
+    protected static final String THROTTLE_BYTES = "throttleBytes";
+    protected static final String THROTTLE_BURST_BYTES = "throttleBurstBytes";
 
     // Digest Type
     protected static final String DIGEST_TYPE = "digestType";
@@ -205,6 +207,17 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
 
     //For batch read api, it the batch read is not stable, we can fail back to single read by this config.
     protected static final String BATCH_READ_ENABLED = "batchReadEnabled";
+    protected static final String BATCH_READ_ADAPTIVE_ENABLED = "batchReadAdaptiveEnabled";
+    protected static final String BATCH_READ_TARGET_LATENCY_MS = "batchReadTargetLatencyMs";
+
+    // Striped reads: large ranges are split in stripes read in parallel from the bookies of the ensemble
+    protected static final String READ_STRIPE_ENTRIES = "readStripeEntries";
+    protected static final String READ_STRIPE_MAX_INFLIGHT = "readStripeMaxInflight";
+
+    // Add batching: consecutive adds of a ledger to a bookie are sent in a single request (v3 protocol only)
+    protected static final String ADD_ENTRY_BATCH_MAX_ENTRIES = "addEntryBatchMaxEntries";
+    protected static final String ADD_ENTRY_BATCH_MAX_BYTES = "addEntryBatchMaxBytes";
+    protected static final String ADD_ENTRY_BATCH_MAX_DELAY_MICROS = "addEntryBatchMaxDelayMicros";
 
     /**
      * Construct a default client-side configuration.
@@ -242,17 +255,74 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
      * if producing too many requests than the capability of bookie servers can handle.
      * To prevent that from happening, you can set a throttle value here.
      *
+     * <p>The throttle value is the number of adds per second allowed on each ledger. The adds above this
+     * rate are not blocked, they are queued until they are admitted and only then sent to the bookies.
+     *
      * <p>Setting the throttle value to 0, will disable any throttling.
      *
      * @param throttle
      *          Throttle Value
      * @return client configuration
+     * @see #setThrottleBytes(long)
      */
     public ClientConfiguration setThrottleValue(int throttle) {
         this.setProperty(THROTTLE, Integer.toString(throttle));
         return this;
     }
 
+    /**
+     * Get the number of bytes per second that the adds of all the ledgers of the client can write.
+     *
+     * @return the client-wide add throttle, in bytes per second
+     * @see #setThrottleBytes(long)
+     */
+    public long getThrottleBytes() {
+        return this.getLong(THROTTLE_BYTES, 0L);
+    }
+
+    /**
+     * Set the number of bytes per second that the adds of all the ledgers of the client can write.
+     *
+     * <p>Unlike {@link #setThrottleValue(int)}, which counts the adds of each ledger, this throttle accounts
+     * for the size of the entries and is shared by all the ledgers of the client. The adds above this rate
+     * are queued, without blocking the caller, until enough bytes are available.
+     *
+     * <p>Setting the value to 0, will disable the throttling by bytes.
+     *
+     * @param throttleBytes
+     *          the client-wide add throttle, in bytes per second
+     * @return client configuration
+     */
+    public ClientConfiguration setThrottleBytes(long throttleBytes) {
+        this.setProperty(THROTTLE_BYTES, Long.toString(throttleBytes));
+        return this;
+    }
+
+    /**
+     * Get the largest burst of bytes that the adds can write above the rate of {@link #getThrottleBytes()}.
+     *
+     * @return the burst of the client-wide add throttle, in bytes
+     * @see #setThrottleBurstBytes(long)
+     */
+    public long getThrottleBurstBytes() {
+        return this.getLong(THROTTLE_BURST_BYTES, 0L);
+    }
+
+    /**
+     * Set the largest burst of bytes that the adds can write above the rate of {@link #getThrottleBytes()},
+     * after the client has been idle.
+     *
+     * <p>Setting the value to 0, will allow bursts of one second of adds.
+     *
+     * @param throttleBurstBytes
+     *          the burst of the client-wide add throttle, in bytes
+     * @return client configuration
+     */
+    public ClientConfiguration setThrottleBurstBytes(long throttleBurstBytes) {
+        this.setProperty(THROTTLE_BURST_BYTES, Long.toString(throttleBurstBytes));
+        return this;
+    }
+
     /**
      * Get autodetection of digest type.
      *
@@ -2107,6 +2177,176 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return getBoolean(BATCH_READ_ENABLED, true);
     }
 
+    /**
+     * Whether the number of entries of the batch reads is adapted to each bookie.
+     *
+     * @return true if the adaptive batch reads are enabled.
+     * @see #setBatchReadAdaptiveEnabled(boolean)
+     */
+    public boolean isBatchReadAdaptiveEnabled() {
+        return getBoolean(BATCH_READ_ADAPTIVE_ENABLED, false);
+    }
+
+    /**
+     * Enable the adaptive batch reads.
+     *
+     * <p>When enabled, the number of entries asked in each batch read request is chosen per bookie, from the
+     * size and the latency of its recent responses: it grows while the responses come back full within
+     * {@link #getBatchReadTargetLatencyMs()}, shrinks when they are slower, and never asks for more entries
+     * than fit in half of the max frame size. It is never above the max count asked by the caller, so a
+     * batch read may return fewer entries than the max count.
+     *
+     * @param enabled
+     *          whether to enable the adaptive batch reads.
+     * @return client configuration.
+     */
+    public ClientConfiguration setBatchReadAdaptiveEnabled(boolean enabled) {
+        setProperty(BATCH_READ_ADAPTIVE_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the target latency of the batch read responses of the adaptive batch reads.
+     *
+     * @return the target latency of a batch read, in milliseconds.
+     */
+    public long getBatchReadTargetLatencyMs() {
+        return getLong(BATCH_READ_TARGET_LATENCY_MS, 50L);
+    }
+
+    /**
+     * Set the target latency of the batch read responses of the adaptive batch reads.
+     *
+     * @param targetLatencyMs
+     *          the target latency of a batch read, in milliseconds.
+     * @return client configuration.
+     */
+    public ClientConfiguration setBatchReadTargetLatencyMs(long targetLatencyMs) {
+        setProperty(BATCH_READ_TARGET_LATENCY_MS, targetLatencyMs);
+        return this;
+    }
+
+    /**
+     * Get the number of entries of each stripe of the striped reads.
+     *
+     * @return the number of entries of a stripe, 0 if the striped reads are disabled.
+     * @see #setReadStripeEntries(int)
+     */
+    public int getReadStripeEntries() {
+        return getInt(READ_STRIPE_ENTRIES, 0);
+    }
+
+    /**
+     * Set the number of entries of each stripe of the striped reads.
+     *
+     * <p>When it is greater than 0, the reads of more entries are split in stripes of consecutive entries,
+     * read in parallel and reassembled in order. When batch reads can be used, each stripe is a batch read
+     * sent to the next bookie of the ensemble, so large catch-up reads are served by all the bookies instead
+     * of a single one. Otherwise each stripe is read entry by entry, like a regular read. The recovery reads
+     * are never striped.
+     *
+     * @param stripeEntries
+     *          the number of entries of a stripe, 0 disables the striped reads.
+     * @return client configuration.
+     */
+    public ClientConfiguration setReadStripeEntries(int stripeEntries) {
+        setProperty(READ_STRIPE_ENTRIES, stripeEntries);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of stripes of a striped read being read at the same time.
+     *
+     * @return the maximum number of stripes in flight, 0 for the size of the ensemble.
+     * @see #setReadStripeMaxInflight(int)
+     */
+    public int getReadStripeMaxInflight() {
+        return getInt(READ_STRIPE_MAX_INFLIGHT, 0);
+    }
+
+    /**
+     * Set the maximum number of stripes of a striped read being read at the same time. The next stripe is
+     * read as soon as one completes.
+     *
+     * @param maxInflight
+     *          the maximum number of stripes in flight, 0 for one stripe per bookie of the ensemble.
+     * @return client configuration.
+     */
+    public ClientConfiguration setReadStripeMaxInflight(int maxInflight) {
+        setProperty(READ_STRIPE_MAX_INFLIGHT, maxInflight);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of entries sent to a bookie in a single add request.
+     *
+     * <p>With more than 1 entry, consecutive adds of a ledger to the same bookie are coalesced in a single
+     * request, until the batch is full or {@link #getAddEntryBatchMaxDelayMicros()} is elapsed. Each entry
+     * still has its own entry id and callback. This requires the v3 wire protocol: the adds are batched on a
+     * connection once the bookie advertised the support of the range add requests, and sent one by one
+     * to the bookies that don't support them.
+     *
+     * @return the maximum number of entries sent in a single add request.
+     */
+    public int getAddEntryBatchMaxEntries() {
+        return getInt(ADD_ENTRY_BATCH_MAX_ENTRIES, 1);
+    }
+
+    /**
+     * Set the maximum number of entries sent to a bookie in a single add request. 1 disables add batching.
+     *
+     * @param maxEntries
+     *          the maximum number of entries sent in a single add request.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddEntryBatchMaxEntries(int maxEntries) {
+        setProperty(ADD_ENTRY_BATCH_MAX_ENTRIES, maxEntries);
+        return this;
+    }
+
+    /**
+     * Get the maximum size of the entries sent to a bookie in a single add request. It must be lower than
+     * the netty max frame size.
+     *
+     * @return the maximum size of the entries sent in a single add request, in bytes.
+     */
+    public int getAddEntryBatchMaxBytes() {
+        return getInt(ADD_ENTRY_BATCH_MAX_BYTES, 64 * 1024);
+    }
+
+    /**
+     * Set the maximum size of the entries sent to a bookie in a single add request.
+     *
+     * @param maxBytes
+     *          the maximum size of the entries sent in a single add request, in bytes.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddEntryBatchMaxBytes(int maxBytes) {
+        setProperty(ADD_ENTRY_BATCH_MAX_BYTES, maxBytes);
+        return this;
+    }
+
+    /**
+     * Get the maximum time an add waits for the next adds of its batch before being sent.
+     *
+     * @return the maximum delay of a batched add, in microseconds.
+     */
+    public long getAddEntryBatchMaxDelayMicros() {
+        return getLong(ADD_ENTRY_BATCH_MAX_DELAY_MICROS, 100L);
+    }
+
+    /**
+     * Set the maximum time an add waits for the next adds of its batch before being sent.
+     *
+     * @param maxDelayMicros
+     *          the maximum delay of a batched add, in microseconds.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddEntryBatchMaxDelayMicros(long maxDelayMicros) {
+        setProperty(ADD_ENTRY_BATCH_MAX_DELAY_MICROS, maxDelayMicros);
+        return this;
+    }
+
     @Override
     protected ClientConfiguration getThis() {
         return this;
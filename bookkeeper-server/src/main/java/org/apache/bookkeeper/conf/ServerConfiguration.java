@@ -91,6 +91,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         .build();
 
     protected static final String ENTRY_LOG_FILE_PREALLOCATION_ENABLED = "entryLogFilePreallocationEnabled";
+    protected static final String ENTRY_LOG_SPARE_FILES_COUNT = "entryLogSpareFilesCount";
 
 
     protected static final String FORCE_ALLOW_COMPACTION = "forceAllowCompaction";
@@ -105,6 +106,9 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String COMPACTION_RATE = "compactionRate";
     protected static final String COMPACTION_RATE_BY_ENTRIES = "compactionRateByEntries";
     protected static final String COMPACTION_RATE_BY_BYTES = "compactionRateByBytes";
+    protected static final String COMPACTION_IO_BUDGET_MB = "compactionIOBudgetMB";
+    protected static final String COST_BASED_COMPACTION_ENABLED = "costBasedCompactionEnabled";
+    protected static final String ZERO_COPY_COMPACTION_ENABLED = "zeroCopyCompactionEnabled";
 
     // Gc Parameters
     protected static final String GC_WAIT_TIME = "gcWaitTime";
@@ -117,6 +121,10 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String GC_ENTRYLOGMETADATA_CACHE_ENABLED = "gcEntryLogMetadataCacheEnabled";
     protected static final String GC_ENTRYLOG_METADATA_CACHE_PATH = "gcEntryLogMetadataCachePath";
     protected static final String USE_TARGET_ENTRYLOG_SIZE_FOR_GC = "useTargetEntryLogSizeForGc";
+    protected static final String GC_INCREMENTAL_ENTRYLOG_USAGE_ENABLED = "gcIncrementalEntryLogUsageEnabled";
+    protected static final String GC_SHARED_LEDGER_METADATA_SNAPSHOT_ENABLED =
+            "gcSharedLedgerMetadataSnapshotEnabled";
+    protected static final String GC_LEDGER_DELETE_THREADS = "gcLedgerDeleteThreads";
     // Scrub Parameters
     protected static final String LOCAL_SCRUB_PERIOD = "localScrubInterval";
     protected static final String LOCAL_SCRUB_RATE_LIMIT = "localScrubRateLimit";
@@ -142,7 +150,11 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_BUFFERED_WRITES_THRESHOLD = "journalBufferedWritesThreshold";
     protected static final String JOURNAL_BUFFERED_ENTRIES_THRESHOLD = "journalBufferedEntriesThreshold";
     protected static final String JOURNAL_FLUSH_WHEN_QUEUE_EMPTY = "journalFlushWhenQueueEmpty";
+    protected static final String JOURNAL_GROUP_COMMIT_STRATEGY = "journalGroupCommitStrategy";
+    protected static final String JOURNAL_GROUP_COMMIT_TARGET_LATENCY_MSEC = "journalGroupCommitTargetLatencyMSec";
     protected static final String JOURNAL_REMOVE_FROM_PAGE_CACHE = "journalRemoveFromPageCache";
+    protected static final String JOURNAL_DIRECT_IO = "journalDirectIO";
+    protected static final String JOURNAL_DIRECT_IO_IO_URING = "journalDirectIOIoUring";
     protected static final String JOURNAL_PRE_ALLOC_SIZE = "journalPreAllocSizeMB";
     protected static final String JOURNAL_WRITE_BUFFER_SIZE = "journalWriteBufferSizeKB";
     protected static final String JOURNAL_ALIGNMENT_SIZE = "journalAlignmentSize";
@@ -169,6 +181,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
 
     protected static final String JOURNAL_DIR = "journalDirectory";
     protected static final String JOURNAL_DIRS = "journalDirectories";
+    protected static final String JOURNAL_STRIPES_PER_DIRECTORY = "journalStripesPerDirectory";
     protected static final String LEDGER_DIRS = "ledgerDirectories";
     protected static final String INDEX_DIRS = "indexDirectories";
     protected static final String ALLOW_STORAGE_EXPANSION = "allowStorageExpansion";
@@ -343,6 +356,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         "maxOperationNumbersInSingleRocksdbWriteBatch";
 
     protected static final String SKIP_REPLAY_JOURNAL_INVALID_RECORD = "skipReplayJournalInvalidRecord";
+    protected static final String NUM_JOURNAL_REPLAY_THREADS = "numJournalReplayThreads";
 
     protected static final String MAX_BATCH_READ_SIZE = "maxBatchReadSize";
     protected static final int DEFAULT_MAX_BATCH_READ_SIZE = 5 * 1024 * 1024; // 5MB
@@ -406,6 +420,32 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the number of spare entry log files kept in each ledger directory.
+     *
+     * <p>Spare files are created ahead of time and have {@link #getEntryLogSizeLimit()} bytes of disk
+     * space reserved with fallocate, so that rolling over to a new entry log does not create and extend
+     * a new file. The entry logs removed by the garbage collector are truncated and recycled as spare
+     * files, until the pool is full. 0 disables the pool.
+     *
+     * @return number of spare entry log files per ledger directory.
+     */
+    public int getEntryLogSpareFilesCount() {
+        return this.getInt(ENTRY_LOG_SPARE_FILES_COUNT, 0);
+    }
+
+    /**
+     * Set the number of spare entry log files kept in each ledger directory.
+     *
+     * @param count
+     *          number of spare entry log files per ledger directory, 0 to disable the pool.
+     * @return server configuration object.
+     */
+    public ServerConfiguration setEntryLogSpareFilesCount(int count) {
+        this.setProperty(ENTRY_LOG_SPARE_FILES_COUNT, count);
+        return this;
+    }
+
     /**
      * Get Garbage collection wait time. Default value is 10 minutes.
      * The guideline is not to set a too low value for this, if using zookeeper based
@@ -573,6 +613,72 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the garbage collector tracks the entry logs holding each ledger, to only revisit the
+     * entry logs of the ledgers deleted since its previous cycle. All the entry logs are still
+     * checked by the first cycle and by the forced ones.
+     *
+     * @return true if the incremental entry log usage is enabled
+     */
+    public boolean isGcIncrementalEntryLogUsageEnabled() {
+        return getBoolean(GC_INCREMENTAL_ENTRYLOG_USAGE_ENABLED, false);
+    }
+
+    /**
+     * Enable the incremental update of the entry log usage in the garbage collector.
+     *
+     * @param enabled true to enable the incremental entry log usage
+     * @return server configuration
+     */
+    public ServerConfiguration setGcIncrementalEntryLogUsageEnabled(boolean enabled) {
+        this.setProperty(GC_INCREMENTAL_ENTRYLOG_USAGE_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the garbage collectors of the ledger directories share the scan of the ledgers of the
+     * metadata store. The first one to run in a GC cycle scans the metadata store, and the others reuse
+     * the result until it is older than {@link #getGcWaitTime()}. Only used by the DbLedgerStorage.
+     *
+     * @return true if the ledgers of the metadata store are scanned once for all the ledger directories
+     */
+    public boolean isGcSharedLedgerMetadataSnapshotEnabled() {
+        return getBoolean(GC_SHARED_LEDGER_METADATA_SNAPSHOT_ENABLED, false);
+    }
+
+    /**
+     * Share the scan of the ledgers of the metadata store between the garbage collectors of the
+     * ledger directories.
+     *
+     * @param enabled true to scan the ledgers of the metadata store once for all the ledger directories
+     * @return server configuration
+     */
+    public ServerConfiguration setGcSharedLedgerMetadataSnapshotEnabled(boolean enabled) {
+        this.setProperty(GC_SHARED_LEDGER_METADATA_SNAPSHOT_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the number of threads deleting the garbage collected ledgers from the ledger storage, in each
+     * ledger directory. With 1 thread, the ledgers are deleted by the garbage collector thread.
+     *
+     * @return the number of threads deleting the ledgers
+     */
+    public int getGcLedgerDeleteThreads() {
+        return getInt(GC_LEDGER_DELETE_THREADS, 1);
+    }
+
+    /**
+     * Set the number of threads deleting the garbage collected ledgers from the ledger storage.
+     *
+     * @param threads the number of threads deleting the ledgers
+     * @return server configuration
+     */
+    public ServerConfiguration setGcLedgerDeleteThreads(int threads) {
+        this.setProperty(GC_LEDGER_DELETE_THREADS, threads);
+        return this;
+    }
+
     /**
      * Get whether local scrub is enabled.
      *
@@ -1393,6 +1499,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return journalDirs;
     }
 
+    /**
+     * Get the number of journals writing in each journal directory. Each journal has its own
+     * journal thread, force write thread and journal files, so the journal writes of a
+     * directory are no longer limited by a single thread.
+     *
+     * @return the number of journals per journal directory
+     */
+    public int getJournalStripesPerDirectory() {
+        return this.getInt(JOURNAL_STRIPES_PER_DIRECTORY, 1);
+    }
+
+    /**
+     * Set the number of journals writing in each journal directory.
+     *
+     * @param journalStripesPerDirectory
+     *            the number of journals per journal directory
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalStripesPerDirectory(int journalStripesPerDirectory) {
+        this.setProperty(JOURNAL_STRIPES_PER_DIRECTORY, journalStripesPerDirectory);
+        return this;
+    }
+
     /**
      * Get dir names to store ledger data.
      *
@@ -2425,6 +2554,55 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getBoolean(JOURNAL_FLUSH_WHEN_QUEUE_EMPTY, false);
     }
 
+    /**
+     * Set the class name of the strategy used by the journal to group the entries
+     * before flushing them.
+     *
+     * @param strategyClassName
+     *          class name of the {@link org.apache.bookkeeper.bookie.JournalGroupCommitStrategy}.
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalGroupCommitStrategy(String strategyClassName) {
+        setProperty(JOURNAL_GROUP_COMMIT_STRATEGY, strategyClassName);
+        return this;
+    }
+
+    /**
+     * Get the class name of the strategy used by the journal to group the entries
+     * before flushing them. The default strategy uses the static thresholds
+     * {@link #getJournalMaxGroupWaitMSec()}, {@link #getJournalBufferedWritesThreshold()}
+     * and {@link #getJournalBufferedEntriesThreshold()}.
+     *
+     * @return class name of the journal group commit strategy.
+     */
+    public String getJournalGroupCommitStrategy() {
+        return getString(JOURNAL_GROUP_COMMIT_STRATEGY,
+                "org.apache.bookkeeper.bookie.DefaultJournalGroupCommitStrategy");
+    }
+
+    /**
+     * Set the target latency of the journal writes, including the fsync, used by the
+     * adaptive group commit strategy to size the batches.
+     *
+     * @param targetLatencyMSec
+     *          target latency in milliseconds.
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalGroupCommitTargetLatencyMSec(long targetLatencyMSec) {
+        setProperty(JOURNAL_GROUP_COMMIT_TARGET_LATENCY_MSEC, targetLatencyMSec);
+        return this;
+    }
+
+    /**
+     * Get the target latency of the journal writes, including the fsync, used by the
+     * adaptive group commit strategy to size the batches.
+     *
+     * @return target latency in milliseconds.
+     */
+    public long getJournalGroupCommitTargetLatencyMSec() {
+        return getLong(JOURNAL_GROUP_COMMIT_TARGET_LATENCY_MSEC, 5);
+    }
+
     /**
      * Set whether the bookie is able to go into read-only mode.
      * If this is set to false, the bookie will shutdown on encountering
@@ -2973,6 +3151,71 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the I/O budget of the compaction, in MB per second. The bytes read and written by the
+     * compaction, and the bytes written by the ledger storage, share this budget, so the compaction
+     * slows down while the foreground writes use it. 0 disables the budget.
+     *
+     * @return the I/O budget of the compaction in MB per second
+     */
+    public int getCompactionIOBudgetMB() {
+        return getInt(COMPACTION_IO_BUDGET_MB, 0);
+    }
+
+    /**
+     * Set the I/O budget of the compaction, in MB per second.
+     *
+     * @param budgetMB the I/O budget of the compaction in MB per second, 0 to disable it
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionIOBudgetMB(int budgetMB) {
+        setProperty(COMPACTION_IO_BUDGET_MB, budgetMB);
+        return this;
+    }
+
+    /**
+     * Whether the entry logs are compacted by decreasing space reclaimed per byte of I/O, instead of
+     * by increasing usage.
+     *
+     * @return true if the cost based compaction is enabled
+     */
+    public boolean isCostBasedCompactionEnabled() {
+        return getBoolean(COST_BASED_COMPACTION_ENABLED, false);
+    }
+
+    /**
+     * Enable the compaction of the entry logs by decreasing space reclaimed per byte of I/O.
+     *
+     * @param enabled true to enable the cost based compaction
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCostBasedCompactionEnabled(boolean enabled) {
+        setProperty(COST_BASED_COMPACTION_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the transactional compaction copies the surviving entries from file to file, without
+     * reading them in memory. It is only supported by the default entry logger; with the other entry
+     * loggers, the entries are still read and added one by one.
+     *
+     * @return true if the zero-copy compaction is enabled
+     */
+    public boolean isZeroCopyCompactionEnabled() {
+        return getBoolean(ZERO_COPY_COMPACTION_ENABLED, false);
+    }
+
+    /**
+     * Enable the copy of the surviving entries from file to file in the transactional compaction.
+     *
+     * @param enabled true to enable the zero-copy compaction
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setZeroCopyCompactionEnabled(boolean enabled) {
+        setProperty(ZERO_COPY_COMPACTION_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Should we remove pages from page cache after force write.
      *
@@ -2995,6 +3238,53 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Should the journal files be written with direct I/O, bypassing the page cache.
+     *
+     * @return true if the journal files are written with direct I/O
+     */
+    @Beta
+    public boolean getJournalDirectIO() {
+        return getBoolean(JOURNAL_DIRECT_IO, false);
+    }
+
+    /**
+     * Sets whether the journal files should be written with direct I/O. If direct I/O is not
+     * available, the journal falls back to the buffered writes.
+     *
+     * @param enabled
+     *            - true to write the journal files with direct I/O. otherwise, false
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setJournalDirectIO(boolean enabled) {
+        setProperty(JOURNAL_DIRECT_IO, enabled);
+        return this;
+    }
+
+    /**
+     * Should the direct I/O writes and fsyncs of the journal files be submitted with io_uring.
+     *
+     * @return true if the journal files are written with io_uring
+     */
+    @Beta
+    public boolean getJournalDirectIOIoUring() {
+        return getBoolean(JOURNAL_DIRECT_IO_IO_URING, false);
+    }
+
+    /**
+     * Sets whether the direct I/O writes and fsyncs of the journal files should be submitted with
+     * io_uring. If io_uring is not available, they are issued with blocking syscalls on a dedicated
+     * thread. Only used with {@link #setJournalDirectIO(boolean)}.
+     *
+     * @param enabled
+     *            - true to write the journal files with io_uring. otherwise, false
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setJournalDirectIOIoUring(boolean enabled) {
+        setProperty(JOURNAL_DIRECT_IO_IO_URING, enabled);
+        return this;
+    }
+
     /*
      * Get the {@link LedgerStorage} implementation class name.
      *
@@ -3193,6 +3483,10 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         if (getJournalAlignmentSize() < 512 || getJournalAlignmentSize() % 512 != 0) {
             throw new ConfigurationException("Invalid journal alignment size : " + getJournalAlignmentSize());
         }
+        if (getJournalStripesPerDirectory() < 1) {
+            throw new ConfigurationException("Invalid journal stripes per directory : "
+                    + getJournalStripesPerDirectory());
+        }
         if (getJournalAlignmentSize() > getJournalPreAllocSizeMB() * 1024 * 1024) {
             throw new ConfigurationException("Invalid preallocation size : " + getJournalPreAllocSizeMB() + " MB");
         }
@@ -4037,6 +4331,28 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this.getBoolean(SKIP_REPLAY_JOURNAL_INVALID_RECORD, false);
     }
 
+    /**
+     * Set the number of threads adding the replayed journal entries to the ledger storage on
+     * bookie startup. The journal files are read by a single thread, and the entries of different
+     * ledgers are added in parallel. With 1 thread, the entries are added by the reading thread.
+     *
+     * @param numThreads number of threads replaying the journal entries
+     * @return server configuration
+     */
+    public ServerConfiguration setNumJournalReplayThreads(int numThreads) {
+        this.setProperty(NUM_JOURNAL_REPLAY_THREADS, numThreads);
+        return this;
+    }
+
+    /**
+     * Get the number of threads adding the replayed journal entries to the ledger storage.
+     *
+     * @return number of threads replaying the journal entries
+     */
+    public int getNumJournalReplayThreads() {
+        return this.getInt(NUM_JOURNAL_REPLAY_THREADS, 1);
+    }
+
     /**
      * Get default rocksdb conf.
      *
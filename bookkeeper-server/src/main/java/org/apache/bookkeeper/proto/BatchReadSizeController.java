@@ -0,0 +1,105 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+/**
+ * Adaptive number of entries of the batch reads sent to a bookie.
+ *
+ * <p>The count is increased additively while the responses come back full and faster than the target
+ * latency, and halved when a response is slower than the target or times out. It is also capped by the
+ * number of entries fitting in the target response size, from the average size of the entries read
+ * recently. The caller's max count and max size are never exceeded.
+ */
+class BatchReadSizeController {
+
+    static final int INITIAL_COUNT = 16;
+    static final int MAX_COUNT = 64 * 1024;
+
+    // Weight of the last response in the average entry size
+    private static final double ENTRY_SIZE_WEIGHT = 0.2;
+
+    private final long targetLatencyNanos;
+    private final long targetResponseBytes;
+
+    private int count = INITIAL_COUNT;
+    private double avgEntryBytes = 0;
+
+    BatchReadSizeController(long targetLatencyNanos, long targetResponseBytes) {
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.targetResponseBytes = targetResponseBytes;
+    }
+
+    /**
+     * Get the number of entries to ask for in the next batch read.
+     *
+     * @param maxCount the max number of entries asked by the caller
+     * @param maxSize the max size of the response asked by the caller
+     */
+    synchronized int batchCount(int maxCount, long maxSize) {
+        long batchCount = count;
+        if (avgEntryBytes > 0) {
+            long responseBytes = maxSize > 0 ? Math.min(maxSize, targetResponseBytes) : targetResponseBytes;
+            batchCount = Math.min(batchCount, Math.max(1L, (long) (responseBytes / avgEntryBytes)));
+        }
+        return (int) Math.max(1L, Math.min(batchCount, maxCount));
+    }
+
+    /**
+     * Record a successful batch read response.
+     *
+     * @return true if the count has been decreased
+     */
+    synchronized boolean responseReceived(int requestedCount, int numEntries, long responseBytes,
+                                          long latencyNanos) {
+        if (numEntries > 0) {
+            double entryBytes = (double) responseBytes / numEntries;
+            avgEntryBytes = avgEntryBytes > 0
+                    ? avgEntryBytes + ENTRY_SIZE_WEIGHT * (entryBytes - avgEntryBytes)
+                    : entryBytes;
+        }
+
+        if (latencyNanos > targetLatencyNanos) {
+            return decrease();
+        }
+        // Only a response limited by the count tells that a larger batch would have been useful
+        if (numEntries >= requestedCount && requestedCount >= count) {
+            count = Math.min(MAX_COUNT, count + Math.max(1, count / 8));
+        }
+        return false;
+    }
+
+    /**
+     * Record a batch read that timed out.
+     *
+     * @return true if the count has been decreased
+     */
+    synchronized boolean timedOut() {
+        return decrease();
+    }
+
+    private boolean decrease() {
+        if (count == 1) {
+            return false;
+        }
+        count = Math.max(1, count / 2);
+        return true;
+    }
+}
@@ -118,6 +118,7 @@ public class BookieRequestProcessor implements RequestProcessor {
     private final RequestStats requestStats;
 
     final Semaphore addsSemaphore;
+    private final int maxAddsInProgress;
     final Semaphore readsSemaphore;
 
     final ChannelGroup allChannels;
@@ -200,6 +201,7 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.requestStats = new RequestStats(statsLogger);
 
         int maxAdds = serverCfg.getMaxAddsInProgressLimit();
+        maxAddsInProgress = maxAdds;
         addsSemaphore = maxAdds > 0 ? new Semaphore(maxAdds, true) : null;
 
         int maxReads = serverCfg.getMaxReadsInProgressLimit();
@@ -207,26 +209,42 @@ public class BookieRequestProcessor implements RequestProcessor {
     }
 
     protected void onAddRequestStart(Channel channel) {
+        onAddRequestStart(channel, 1);
+    }
+
+    /**
+     * Track the adds of a request adding several entries: each entry counts as an add in progress.
+     *
+     * @return the number of adds in progress taken by the request, to pass to {@link #onAddRequestFinish(int)}.
+     *         A request adding more entries than the limit of adds in progress takes all of them.
+     */
+    protected int onAddRequestStart(Channel channel, int entries) {
+        final int permits = addsSemaphore != null ? Math.min(entries, maxAddsInProgress) : entries;
         if (addsSemaphore != null) {
-            if (!addsSemaphore.tryAcquire()) {
+            if (!addsSemaphore.tryAcquire(permits)) {
                 final long throttlingStartTimeNanos = MathUtils.nowInNano();
                 channel.config().setAutoRead(false);
                 LOG.info("Too many add requests in progress, disabling autoread on channel {}", channel);
                 requestStats.blockAddRequest();
-                addsSemaphore.acquireUninterruptibly();
+                addsSemaphore.acquireUninterruptibly(permits);
                 channel.config().setAutoRead(true);
                 final long delayNanos = MathUtils.elapsedNanos(throttlingStartTimeNanos);
                 LOG.info("Re-enabled autoread on channel {} after AddRequest delay of {} nanos", channel, delayNanos);
                 requestStats.unblockAddRequest(delayNanos);
             }
         }
-        requestStats.trackAddRequest();
+        requestStats.trackAddRequest(permits);
+        return permits;
     }
 
     protected void onAddRequestFinish() {
-        requestStats.untrackAddRequest();
+        onAddRequestFinish(1);
+    }
+
+    protected void onAddRequestFinish(int permits) {
+        requestStats.untrackAddRequest(permits);
         if (addsSemaphore != null) {
-            addsSemaphore.release();
+            addsSemaphore.release(permits);
         }
     }
 
@@ -318,6 +336,9 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case ADD_ENTRY:
                         processAddRequestV3(r, requestHandler);
                         break;
+                    case RANGE_ADD_ENTRY:
+                        processRangeAddRequestV3(r, requestHandler);
+                        break;
                     case READ_ENTRY:
                         processReadRequestV3(r, requestHandler);
                         break;
@@ -474,6 +495,43 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processRangeAddRequestV3(final BookkeeperProtocol.Request r,
+                                          final BookieRequestHandler requestHandler) {
+        RangeWriteEntryProcessorV3 write = new RangeWriteEntryProcessorV3(r, requestHandler, this);
+
+        final OrderedExecutor threadPool;
+        if (RequestUtils.isHighPriority(r)) {
+            threadPool = highPriorityThreadPool;
+        } else {
+            threadPool = writeThreadPool;
+        }
+
+        if (null == threadPool) {
+            write.run();
+        } else {
+            try {
+                threadPool.executeOrdered(r.getRangeAddRequest().getLedgerId(), write);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to add entries at {}:{}. Too many pending requests",
+                              r.getRangeAddRequest().getLedgerId(), r.getRangeAddRequest().getFirstEntryId());
+                }
+                getRequestStats().getAddEntryRejectedCounter().inc();
+                BookkeeperProtocol.RangeAddResponse.Builder rangeAddResponse =
+                        BookkeeperProtocol.RangeAddResponse.newBuilder()
+                        .setLedgerId(r.getRangeAddRequest().getLedgerId())
+                        .setFirstEntryId(r.getRangeAddRequest().getFirstEntryId())
+                        .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+                BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder()
+                        .setHeader(write.getHeader())
+                        .setStatus(rangeAddResponse.getStatus())
+                        .setRangeAddResponse(rangeAddResponse);
+                BookkeeperProtocol.Response resp = response.build();
+                write.sendResponse(rangeAddResponse.getStatus(), resp, requestStats.getAddRequestStats());
+            }
+        }
+    }
+
     private void processForceLedgerRequestV3(final BookkeeperProtocol.Request r,
                                              final BookieRequestHandler requestHandler) {
         ForceLedgerProcessorV3 forceLedger = new ForceLedgerProcessorV3(r, requestHandler, this);
@@ -83,6 +83,7 @@ import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
@@ -124,6 +125,8 @@ import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerRe
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
@@ -187,6 +190,18 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     final long getBookieInfoTimeoutNanos;
     final int startTLSTimeout;
 
+    // Consecutive adds of a ledger are sent in a single RANGE_ADD_ENTRY request, when add batching is enabled
+    private final int addBatchMaxEntries;
+    private final int addBatchMaxBytes;
+    private final long addBatchMaxDelayNanos;
+    private final Object addBatchLock = new Object();
+    private AddBatch addBatch = null;
+    // The channel to a bookie that advertised the support of RANGE_ADD_ENTRY, the adds are not batched before
+    private volatile Channel rangeAddChannel = null;
+
+    // Adaptive number of entries of the batch reads, null when the caller's max count is always used
+    private final BatchReadSizeController batchReadSizeController;
+
     private final ConcurrentOpenHashMap<CompletionKey, CompletionValue> completionObjects =
             ConcurrentOpenHashMap.<CompletionKey, CompletionValue>newBuilder().autoShrink(true).build();
 
@@ -288,6 +303,16 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "the number of outstanding add_entry requests"
     )
     private final Counter readEntryOutstanding;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_BATCH_READ_COUNT,
+        help = "the number of entries asked in the batch read requests, as chosen by the adaptive batch reads"
+    )
+    private final OpStatsLogger batchReadCountLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_BATCH_READ_SHRINK,
+        help = "the number of times the adaptive batch reads decreased the number of entries asked"
+    )
+    private final Counter batchReadShrinkCounter;
     /* collect stats on all Ops that flows through netty pipeline */
     @StatsDoc(
         name = BookKeeperClientStats.NETTY_OPS,
@@ -403,6 +428,15 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         this.getBookieInfoTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getBookieInfoTimeout());
         this.startTLSTimeout = conf.getStartTLSTimeout();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
+        this.addBatchMaxEntries = useV2WireProtocol ? 1 : conf.getAddEntryBatchMaxEntries();
+        this.addBatchMaxBytes = Math.min(conf.getAddEntryBatchMaxBytes(), maxFrameSize / 2);
+        this.addBatchMaxDelayNanos = TimeUnit.MICROSECONDS.toNanos(conf.getAddEntryBatchMaxDelayMicros());
+        if (useV2WireProtocol && conf.isBatchReadAdaptiveEnabled()) {
+            this.batchReadSizeController = new BatchReadSizeController(
+                    TimeUnit.MILLISECONDS.toNanos(conf.getBatchReadTargetLatencyMs()), maxFrameSize / 2);
+        } else {
+            this.batchReadSizeController = null;
+        }
         this.preserveMdcForTaskExecution = conf.getPreserveMdcForTaskExecution();
 
         this.authProviderFactory = authProviderFactory;
@@ -437,6 +471,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         connectTimer = statsLogger.getOpStatsLogger(BookKeeperClientStats.CLIENT_CONNECT_TIMER);
         addEntryOutstanding = statsLogger.getCounter(BookKeeperClientStats.ADD_OP_OUTSTANDING);
         readEntryOutstanding = statsLogger.getCounter(BookKeeperClientStats.READ_OP_OUTSTANDING);
+        batchReadCountLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_BATCH_READ_COUNT);
+        batchReadShrinkCounter = statsLogger.getCounter(BookKeeperClientStats.CHANNEL_BATCH_READ_SHRINK);
         nettyOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.NETTY_OPS);
         activeNonTlsChannelCounter = statsLogger.getCounter(BookKeeperClientStats.ACTIVE_NON_TLS_CHANNEL_COUNTER);
         activeTlsChannelCounter = statsLogger.getCounter(BookKeeperClientStats.ACTIVE_TLS_CHANNEL_COUNTER);
@@ -775,6 +811,23 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
      */
     void addEntry(final long ledgerId, byte[] masterKey, final long entryId, ReferenceCounted toSend, WriteCallback cb,
                   Object ctx, final int options, boolean allowFastFail, final EnumSet<WriteFlag> writeFlags) {
+        if (isAddBatchingEnabled()) {
+            addEntryToBatch(ledgerId, masterKey, entryId, (ByteBufList) toSend, cb, ctx, options, allowFastFail,
+                    writeFlags);
+        } else {
+            doAddEntry(ledgerId, masterKey, entryId, toSend, cb, ctx, options, allowFastFail, writeFlags, null);
+        }
+    }
+
+    // visible for testing
+    boolean isAddBatchingEnabled() {
+        Channel c = rangeAddChannel;
+        return addBatchMaxEntries > 1 && c != null && c == channel;
+    }
+
+    private void doAddEntry(final long ledgerId, byte[] masterKey, final long entryId, ReferenceCounted toSend,
+                            WriteCallback cb, Object ctx, final int options, boolean allowFastFail,
+                            final EnumSet<WriteFlag> writeFlags, final Runnable afterWrite) {
         Object request = null;
         CompletionKey completionKey = null;
         if (useV2WireProtocol) {
@@ -803,24 +856,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
             }
 
-            ByteString body = null;
-            ByteBufList bufToSend = (ByteBufList) toSend;
-
-            if (bufToSend.hasArray()) {
-                body = UnsafeByteOperations.unsafeWrap(bufToSend.array(), bufToSend.arrayOffset(),
-                        bufToSend.readableBytes());
-            } else {
-                for (int i = 0; i < bufToSend.size(); i++) {
-                    ByteString piece = UnsafeByteOperations.unsafeWrap(bufToSend.getBuffer(i).nioBuffer());
-                    // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
-                    body = (body == null) ? piece : body.concat(piece);
-                }
-            }
             AddRequest.Builder addBuilder = AddRequest.newBuilder()
                     .setLedgerId(ledgerId)
                     .setEntryId(entryId)
                     .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
-                    .setBody(body);
+                    .setBody(toByteString((ByteBufList) toSend));
 
             if (((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
                 addBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
@@ -849,7 +889,170 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             return;
         } else {
             // addEntry times out on backpressure
-            writeAndFlush(c, completionKey, request, allowFastFail);
+            writeAndFlush(c, completionKey, request, allowFastFail, afterWrite);
+        }
+    }
+
+    private static ByteString toByteString(ByteBufList bufToSend) {
+        ByteString body = null;
+        if (bufToSend.hasArray()) {
+            body = UnsafeByteOperations.unsafeWrap(bufToSend.array(), bufToSend.arrayOffset(),
+                    bufToSend.readableBytes());
+        } else {
+            for (int i = 0; i < bufToSend.size(); i++) {
+                ByteString piece = UnsafeByteOperations.unsafeWrap(bufToSend.getBuffer(i).nioBuffer());
+                // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
+                body = (body == null) ? piece : body.concat(piece);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Append an add to the pending batch, or start a new batch if the add does not follow the pending one.
+     * A new batch is sent when it is full, or after the max batch delay.
+     */
+    private void addEntryToBatch(final long ledgerId, byte[] masterKey, final long entryId, ByteBufList toSend,
+                                 WriteCallback cb, Object ctx, final int options, boolean allowFastFail,
+                                 final EnumSet<WriteFlag> writeFlags) {
+        AddBatch newBatch = null;
+        synchronized (addBatchLock) {
+            AddBatch batch = addBatch;
+            if (batch != null && !batch.canAppend(ledgerId, entryId, toSend.readableBytes(), options, writeFlags)) {
+                addBatch = null;
+                batch.send();
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new AddBatch(ledgerId, masterKey, entryId, options, allowFastFail, writeFlags);
+                addBatch = batch;
+                newBatch = batch;
+            }
+            batch.add(toSend, cb, ctx);
+            if (batch.isFull()) {
+                addBatch = null;
+                batch.send();
+                newBatch = null;
+            }
+        }
+
+        if (newBatch != null) {
+            final AddBatch batchToFlush = newBatch;
+            Channel c = channel;
+            try {
+                if (c != null) {
+                    c.eventLoop().schedule(() -> flushAddBatch(batchToFlush), addBatchMaxDelayNanos,
+                            TimeUnit.NANOSECONDS);
+                    return;
+                }
+            } catch (RejectedExecutionException e) {
+                // the event loop is shutting down
+            }
+            flushAddBatch(batchToFlush);
+        }
+    }
+
+    private void flushAddBatch(AddBatch batch) {
+        synchronized (addBatchLock) {
+            if (addBatch != batch) {
+                // already sent
+                return;
+            }
+            addBatch = null;
+            batch.send();
+        }
+    }
+
+    /**
+     * Adds of consecutive entries of a ledger, waiting to be sent in a single request.
+     */
+    private class AddBatch {
+        final long ledgerId;
+        final byte[] masterKey;
+        final long firstEntryId;
+        final int options;
+        final boolean allowFastFail;
+        final EnumSet<WriteFlag> writeFlags;
+        final List<ByteBufList> entries = new ArrayList<>();
+        final List<WriteCallback> callbacks = new ArrayList<>();
+        final List<Object> ctxs = new ArrayList<>();
+        int bytes = 0;
+
+        AddBatch(long ledgerId, byte[] masterKey, long firstEntryId, int options, boolean allowFastFail,
+                 EnumSet<WriteFlag> writeFlags) {
+            this.ledgerId = ledgerId;
+            this.masterKey = masterKey;
+            this.firstEntryId = firstEntryId;
+            this.options = options;
+            this.allowFastFail = allowFastFail;
+            this.writeFlags = writeFlags;
+        }
+
+        boolean canAppend(long ledgerId, long entryId, int entrySize, int options, EnumSet<WriteFlag> writeFlags) {
+            return this.ledgerId == ledgerId
+                    && firstEntryId + entries.size() == entryId
+                    && bytes + entrySize <= addBatchMaxBytes
+                    && this.options == options
+                    && this.writeFlags.equals(writeFlags);
+        }
+
+        void add(ByteBufList toSend, WriteCallback cb, Object ctx) {
+            // The caller releases its buffer once the add is queued, and the PendingAddOp may complete
+            // before the batch is sent
+            entries.add(ByteBufList.clone(toSend));
+            callbacks.add(cb);
+            ctxs.add(ctx);
+            bytes += toSend.readableBytes();
+        }
+
+        boolean isFull() {
+            return entries.size() >= addBatchMaxEntries || bytes >= addBatchMaxBytes;
+        }
+
+        void release() {
+            entries.forEach(ReferenceCountUtil::release);
+        }
+
+        void send() {
+            if (entries.size() == 1) {
+                ByteBufList entry = entries.get(0);
+                doAddEntry(ledgerId, masterKey, firstEntryId, entry, callbacks.get(0), ctxs.get(0), options,
+                        allowFastFail, writeFlags, () -> ReferenceCountUtil.release(entry));
+                return;
+            }
+
+            final long txnId = getTxnId();
+            final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.RANGE_ADD_ENTRY);
+            BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                    .setVersion(ProtocolVersion.VERSION_THREE)
+                    .setOperation(OperationType.RANGE_ADD_ENTRY)
+                    .setTxnId(txnId);
+            if (((short) options & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
+                headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
+            }
+
+            RangeAddRequest.Builder rangeAddBuilder = RangeAddRequest.newBuilder()
+                    .setLedgerId(ledgerId)
+                    .setFirstEntryId(firstEntryId)
+                    .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey));
+            for (ByteBufList entry : entries) {
+                rangeAddBuilder.addBody(toByteString(entry));
+            }
+            if (((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
+                rangeAddBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
+            }
+            if (!writeFlags.isEmpty()) {
+                rangeAddBuilder.setWriteFlags(WriteFlag.getWriteFlagsValue(writeFlags));
+            }
+
+            final Request request = withRequestContext(Request.newBuilder())
+                    .setHeader(headerBuilder)
+                    .setRangeAddRequest(rangeAddBuilder)
+                    .build();
+
+            putCompletionKeyValue(completionKey, new RangeAddCompletion(completionKey, this));
+            // The request is serialized when it is written, the entries can be released after that
+            writeAndFlush(channel, completionKey, request, allowFastFail, this::release);
         }
     }
 
@@ -1037,15 +1240,20 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         Object request;
         CompletionKey completionKey;
         final long txnId = getTxnId();
+        int count = maxCount;
+        if (batchReadSizeController != null) {
+            count = batchReadSizeController.batchCount(maxCount, maxSize);
+            batchReadCountLogger.registerSuccessfulValue(count);
+        }
         if (useV2WireProtocol) {
             request = BookieProtocol.BatchedReadRequest.create(BookieProtocol.CURRENT_PROTOCOL_VERSION,
-                    ledgerId, startEntryId, (short) flags, masterKey, txnId, maxCount, maxSize);
+                    ledgerId, startEntryId, (short) flags, masterKey, txnId, count, maxSize);
             completionKey = new TxnCompletionKey(txnId, OperationType.BATCH_READ_ENTRY);
         } else {
             throw new UnsupportedOperationException("Unsupported batch read entry operation for v3 protocol.");
         }
         BatchedReadCompletion readCompletion = new BatchedReadCompletion(
-                completionKey, cb, ctx, ledgerId, startEntryId);
+                completionKey, cb, ctx, ledgerId, startEntryId, count);
         putCompletionKeyValue(completionKey, readCompletion);
 
         writeAndFlush(channel, completionKey, request, allowFastFail);
@@ -1075,6 +1283,29 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         writeAndFlush(channel, completionKey, getBookieInfoRequest);
     }
 
+    /**
+     * Ask the bookie for the optional features of the protocol it supports, once the channel is connected.
+     * The adds are batched on the channel only after the bookie advertised the support of RANGE_ADD_ENTRY:
+     * the bookies that don't know about the features leave them unset.
+     */
+    private void negotiateFeatures() {
+        if (addBatchMaxEntries <= 1) {
+            return;
+        }
+        final Channel c = channel;
+        if (c == null) {
+            return;
+        }
+        getBookieInfo(GetBookieInfoRequest.Flags.FEATURES_VALUE, (rc, bInfo, ctx) -> {
+            if (rc == BKException.Code.OK
+                    && (bInfo.getFeatures() & GetBookieInfoResponse.Features.RANGE_ADD_VALUE) != 0) {
+                rangeAddChannel = c;
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("Bookie {} does not support RANGE_ADD_ENTRY ({}), the adds are not batched", bookieId, rc);
+            }
+        }, null);
+    }
+
     private static final BiPredicate<CompletionKey, CompletionValue> timeoutCheck = (key, value) -> {
         return value.maybeTimeout();
     };
@@ -1177,9 +1408,23 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                            final CompletionKey key,
                            final Object request,
                            final boolean allowFastFail) {
+        writeAndFlush(channel, key, request, allowFastFail, null);
+    }
+
+    /**
+     * Write a request, and run afterWrite once the request has been written or has failed.
+     */
+    private void writeAndFlush(final Channel channel,
+                           final CompletionKey key,
+                           final Object request,
+                           final boolean allowFastFail,
+                           final Runnable afterWrite) {
         if (channel == null) {
             LOG.warn("Operation {} failed: channel == null", StringUtils.requestToString(request));
             errorOut(key);
+            if (afterWrite != null) {
+                afterWrite.run();
+            }
             return;
         }
 
@@ -1194,6 +1439,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     StringUtils.requestToString(request));
 
             errorOut(key, BKException.Code.TooManyRequestsException);
+            if (afterWrite != null) {
+                afterWrite.run();
+            }
             return;
         }
 
@@ -1201,6 +1449,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             final long startTime = MathUtils.nowInNano();
 
             ChannelPromise promise = channel.newPromise().addListener(future -> {
+                if (afterWrite != null) {
+                    afterWrite.run();
+                }
                 if (future.isSuccess()) {
                     nettyOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
                     CompletionValue completion = completionObjects.get(key);
@@ -1632,6 +1883,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
                     makeWritable();
 
+                    if (rc == BKException.Code.OK) {
+                        negotiateFeatures();
+                    }
+
                     for (GenericCallback<PerChannelBookieClient> pendingOp : oldPendingOps) {
                         pendingOp.operationComplete(rc, PerChannelBookieClient.this);
                     }
@@ -2022,13 +2277,16 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     class BatchedReadCompletion extends CompletionValue {
 
         final BatchedReadEntryCallback cb;
+        final int requestedCount;
 
         public BatchedReadCompletion(final CompletionKey key,
                                      final BatchedReadEntryCallback originalCallback,
                                      final Object originalCtx,
-                                     long ledgerId, final long entryId) {
+                                     long ledgerId, final long entryId,
+                                     final int requestedCount) {
             super("BatchedRead", originalCtx, ledgerId, entryId,
                     readEntryOpLogger, readTimeoutOpLogger);
+            this.requestedCount = requestedCount;
             this.cb = new BatchedReadEntryCallback() {
 
                 @Override
@@ -2053,6 +2311,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
         @Override
         public void errorOut(final int rc) {
+            if (rc == BKException.Code.TimeoutException && batchReadSizeController != null
+                    && batchReadSizeController.timedOut()) {
+                batchReadShrinkCounter.inc();
+            }
             errorOutAndRunCallback(
                     () -> cb.readEntriesComplete(rc, ledgerId,
                             entryId, null, ctx));
@@ -2086,6 +2348,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                         long lacUpdateTimestamp) { // the timestamp when the lac is updated.
             int rc = convertStatus(status, BKException.Code.ReadException);
 
+            if (rc == BKException.Code.OK && buffers != null && batchReadSizeController != null
+                    && batchReadSizeController.responseReceived(requestedCount, buffers.size(),
+                            buffers.readableBytes(), MathUtils.elapsedNanos(startTime))) {
+                batchReadShrinkCounter.inc();
+            }
+
             if (maxLAC > INVALID_ENTRY_ID && (ctx instanceof ReadEntryCallbackCtx)) {
                 ((ReadEntryCallbackCtx) ctx).setLastAddConfirmed(maxLAC);
             }
@@ -2196,6 +2464,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
             long freeDiskSpace = getBookieInfoResponse.getFreeDiskSpace();
             long totalDiskSpace = getBookieInfoResponse.getTotalDiskCapacity();
+            long features = getBookieInfoResponse.getFeatures();
 
             if (LOG.isDebugEnabled()) {
                 logResponse(status, "freeDisk", freeDiskSpace, "totalDisk", totalDiskSpace);
@@ -2204,7 +2473,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             int rc = convertStatus(status, BKException.Code.ReadException);
             cb.getBookieInfoComplete(rc,
                                      new BookieInfo(totalDiskSpace,
-                                                    freeDiskSpace), ctx);
+                                                    freeDiskSpace, features), ctx);
         }
     }
 
@@ -2369,6 +2638,75 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    class RangeAddCompletion extends CompletionValue {
+        final CompletionKey key;
+        final long firstEntryId;
+        final List<WriteCallback> callbacks;
+        final List<Object> ctxs;
+
+        RangeAddCompletion(final CompletionKey key, AddBatch batch) {
+            super("RangeAdd", null, batch.ledgerId, batch.firstEntryId, addEntryOpLogger, addTimeoutOpLogger);
+            this.key = key;
+            this.firstEntryId = batch.firstEntryId;
+            this.callbacks = batch.callbacks;
+            this.ctxs = batch.ctxs;
+        }
+
+        @Override
+        boolean maybeTimeout() {
+            if (MathUtils.elapsedNanos(startTime) >= addEntryTimeoutNanos) {
+                timeout();
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(() -> {
+                for (int i = 0; i < callbacks.size(); i++) {
+                    writeComplete(i, rc);
+                }
+            });
+        }
+
+        @Override
+        public void setOutstanding() {
+            addEntryOutstanding.addCount(callbacks.size());
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            addEntryOutstanding.addCount(-callbacks.size());
+            RangeAddResponse rangeAddResponse = response.getRangeAddResponse();
+            for (int i = 0; i < callbacks.size(); i++) {
+                StatusCode status;
+                if (response.getStatus() != StatusCode.EOK) {
+                    status = response.getStatus();
+                } else if (i < rangeAddResponse.getEntryStatusCount()) {
+                    status = rangeAddResponse.getEntryStatus(i);
+                } else {
+                    status = rangeAddResponse.getStatus();
+                }
+                if (LOG.isDebugEnabled()) {
+                    logResponse(status, "ledger", ledgerId, "entry", firstEntryId + i);
+                }
+                writeComplete(i, convertStatus(status, BKException.Code.WriteException));
+            }
+        }
+
+        private void writeComplete(int index, int rc) {
+            logOpResult(rc);
+            callbacks.get(index).writeComplete(rc, ledgerId, firstEntryId + index, bookieId, ctxs.get(index));
+        }
+    }
+
     // visable for testing
     CompletionKey newCompletionKey(long txnId, OperationType operationType) {
         return new TxnCompletionKey(txnId, operationType);
@@ -2671,6 +3009,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 pendingOps = new ArrayDeque<>();
             }
 
+            if (rc == BKException.Code.OK) {
+                negotiateFeatures();
+            }
+
             for (GenericCallback<PerChannelBookieClient> pendingOp : oldPendingOps) {
                 pendingOp.operationComplete(rc, PerChannelBookieClient.this);
             }
@@ -0,0 +1,239 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.BookieException.OperationRejectedException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Add the entries of a {@link RangeAddRequest}. Each entry is added as with {@link WriteEntryProcessorV3},
+ * and the response is sent once all of them have been written, with the status of each entry.
+ */
+class RangeWriteEntryProcessorV3 extends PacketProcessorBaseV3 {
+    private static final Logger logger = LoggerFactory.getLogger(RangeWriteEntryProcessorV3.class);
+
+    // Each entry of the range counts as an add in progress
+    private final int addPermits;
+
+    public RangeWriteEntryProcessorV3(Request request, BookieRequestHandler requestHandler,
+                                      BookieRequestProcessor requestProcessor) {
+        super(request, requestHandler, requestProcessor);
+        this.addPermits = requestProcessor.onAddRequestStart(requestHandler.ctx().channel(),
+                Math.max(1, request.getRangeAddRequest().getBodyCount()));
+    }
+
+    // Returns null if the entries have been submitted, and the response will be sent once they are written
+    private RangeAddResponse getRangeAddResponse() {
+        final long startTimeNanos = MathUtils.nowInNano();
+        RangeAddRequest rangeAddRequest = request.getRangeAddRequest();
+        long ledgerId = rangeAddRequest.getLedgerId();
+        long firstEntryId = rangeAddRequest.getFirstEntryId();
+        int numEntries = rangeAddRequest.getBodyCount();
+
+        final RangeAddResponse.Builder rangeAddResponse = RangeAddResponse.newBuilder()
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId);
+
+        if (!isVersionCompatible()) {
+            rangeAddResponse.setStatus(StatusCode.EBADVERSION);
+            return rangeAddResponse.build();
+        }
+
+        if (requestProcessor.getBookie().isReadOnly()
+            && !(RequestUtils.isHighPriority(request)
+                    && requestProcessor.getBookie().isAvailableForHighPriorityWrites())) {
+            logger.warn("BookieServer is running as readonly mode, so rejecting the request from the client!");
+            rangeAddResponse.setStatus(StatusCode.EREADONLY);
+            return rangeAddResponse.build();
+        }
+
+        if (numEntries == 0) {
+            rangeAddResponse.setStatus(StatusCode.EBADREQ);
+            return rangeAddResponse.build();
+        }
+
+        final StatusCode[] entryStatus = new StatusCode[numEntries];
+        final AtomicInteger pendingEntries = new AtomicInteger(numEntries);
+        BookkeeperInternalCallbacks.WriteCallback wcb = new BookkeeperInternalCallbacks.WriteCallback() {
+            @Override
+            public void writeComplete(int rc, long ledgerId, long entryId,
+                                      BookieId addr, Object ctx) {
+                if (BookieProtocol.EOK == rc) {
+                    requestProcessor.getRequestStats().getAddEntryStats()
+                        .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+                } else {
+                    requestProcessor.getRequestStats().getAddEntryStats()
+                        .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+                }
+
+                StatusCode status;
+                switch (rc) {
+                    case BookieProtocol.EOK:
+                        status = StatusCode.EOK;
+                        break;
+                    case BookieProtocol.EIO:
+                        status = StatusCode.EIO;
+                        break;
+                    default:
+                        status = StatusCode.EUA;
+                        break;
+                }
+                entryCompleted(entryStatus, (int) (entryId - firstEntryId), status, pendingEntries,
+                        rangeAddResponse);
+            }
+        };
+        final EnumSet<WriteFlag> writeFlags;
+        if (rangeAddRequest.hasWriteFlags()) {
+            writeFlags = WriteFlag.getWriteFlags(rangeAddRequest.getWriteFlags());
+        } else {
+            writeFlags = WriteFlag.NONE;
+        }
+        final boolean ackBeforeSync = writeFlags.contains(WriteFlag.DEFERRED_SYNC);
+        final boolean recoveryAdd = rangeAddRequest.hasFlag()
+                && rangeAddRequest.getFlag() == AddRequest.Flag.RECOVERY_ADD;
+        byte[] masterKey = rangeAddRequest.getMasterKey().toByteArray();
+        for (int i = 0; i < numEntries; i++) {
+            long entryId = firstEntryId + i;
+            StatusCode status;
+            ByteBuf entryToAdd = Unpooled.wrappedBuffer(rangeAddRequest.getBody(i).asReadOnlyByteBuffer());
+            try {
+                if (entryToAdd.readableBytes() < 2 * Long.BYTES
+                        || entryToAdd.getLong(0) != ledgerId || entryToAdd.getLong(Long.BYTES) != entryId) {
+                    // The callback locates the entry by its id, so the ids must be consecutive
+                    logger.error("Entry {} of the range add of ledger {} does not match its position",
+                            entryId, ledgerId);
+                    status = StatusCode.EBADREQ;
+                } else {
+                    if (recoveryAdd) {
+                        requestProcessor.getBookie().recoveryAddEntry(entryToAdd, wcb,
+                                requestHandler.ctx().channel(), masterKey);
+                    } else {
+                        requestProcessor.getBookie().addEntry(entryToAdd, ackBeforeSync, wcb,
+                                requestHandler.ctx().channel(), masterKey);
+                    }
+                    continue;
+                }
+            } catch (OperationRejectedException e) {
+                requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
+                // Avoid to log each occurence of this exception as this can happen when the ledger storage is
+                // unable to keep up with the write rate.
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Operation rejected while writing {}", request, e);
+                }
+                status = StatusCode.ETOOMANYREQUESTS;
+            } catch (IOException e) {
+                logger.error("Error writing entry:{} to ledger:{}",
+                        entryId, ledgerId, e);
+                status = StatusCode.EIO;
+            } catch (BookieException.LedgerFencedException e) {
+                logger.error("Ledger fenced while writing entry:{} to ledger:{}",
+                        entryId, ledgerId, e);
+                status = StatusCode.EFENCED;
+            } catch (BookieException e) {
+                logger.error("Unauthorized access to ledger:{} while writing entry:{}",
+                        ledgerId, entryId, e);
+                status = StatusCode.EUA;
+            } catch (Throwable t) {
+                logger.error("Unexpected exception while writing {}@{} : ",
+                        entryId, ledgerId, t);
+                // some bad request which cause unexpected exception
+                status = StatusCode.EBADREQ;
+            }
+            entryCompleted(entryStatus, i, status, pendingEntries, rangeAddResponse);
+        }
+        return null;
+    }
+
+    private void entryCompleted(StatusCode[] entryStatus, int index, StatusCode status,
+                                AtomicInteger pendingEntries, RangeAddResponse.Builder rangeAddResponse) {
+        entryStatus[index] = status;
+        if (pendingEntries.decrementAndGet() > 0) {
+            return;
+        }
+
+        // The last entry has been written, the decrement orders the writes of the other statuses before
+        StatusCode responseStatus = StatusCode.EOK;
+        for (StatusCode s : entryStatus) {
+            rangeAddResponse.addEntryStatus(s);
+            if (s != StatusCode.EOK && responseStatus == StatusCode.EOK) {
+                responseStatus = s;
+            }
+        }
+        rangeAddResponse.setStatus(responseStatus);
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(StatusCode.EOK)
+                .setRangeAddResponse(rangeAddResponse);
+        Response resp = response.build();
+        sendResponse(responseStatus, resp, requestProcessor.getRequestStats().getAddRequestStats());
+    }
+
+    @Override
+    public void run() {
+        requestProcessor.getRequestStats().getWriteThreadQueuedLatency()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+        RangeAddResponse rangeAddResponse = getRangeAddResponse();
+        if (null != rangeAddResponse) {
+            // This means there was an error and we should send this back.
+            Response.Builder response = Response.newBuilder()
+                    .setHeader(getHeader())
+                    .setStatus(rangeAddResponse.getStatus())
+                    .setRangeAddResponse(rangeAddResponse);
+            Response resp = response.build();
+            sendResponse(rangeAddResponse.getStatus(), resp,
+                         requestProcessor.getRequestStats().getAddRequestStats());
+        }
+    }
+
+    @Override
+    protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
+        super.sendResponse(code, response, statsLogger);
+        requestProcessor.onAddRequestFinish(addPermits);
+    }
+
+    /**
+     * this toString method filters out body and masterKey from the output.
+     * masterKey contains the password of the ledger and body is customer data,
+     * so it is not appropriate to have these in logs or system output.
+     */
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
@@ -344,12 +344,20 @@ public class RequestStats {
     }
 
     void trackAddRequest() {
-        final int curr = addsInProgress.incrementAndGet();
+        trackAddRequest(1);
+    }
+
+    void trackAddRequest(int adds) {
+        final int curr = addsInProgress.addAndGet(adds);
         maxAddsInProgress.accumulateAndGet(curr, Integer::max);
     }
 
     void untrackAddRequest() {
-        addsInProgress.decrementAndGet();
+        untrackAddRequest(1);
+    }
+
+    void untrackAddRequest(int adds) {
+        addsInProgress.addAndGet(-adds);
     }
 
     int maxAddsInProgressCount() {
@@ -23,6 +23,7 @@ import com.google.common.util.concurrent.UncheckedExecutionException;
 import io.netty.buffer.PooledByteBufAllocator;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.apache.bookkeeper.bookie.Bookie;
@@ -33,6 +34,7 @@ import org.apache.bookkeeper.bookie.InterleavedLedgerStorage;
 import org.apache.bookkeeper.bookie.LedgerCache;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorage;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageMappedLocations;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.tools.cli.helpers.BookieCommand;
@@ -168,8 +170,14 @@ public class ConvertToInterleavedStorageCommand extends BookieCommand<ConvertToI
         Files.move(FileSystems.getDefault().getPath(baseDir, "ledgers"),
             FileSystems.getDefault().getPath(baseDir, "ledgers.backup"));
 
-        Files.move(FileSystems.getDefault().getPath(baseDir, "locations"),
-            FileSystems.getDefault().getPath(baseDir, "locations.backup"));
+        // The entry location index is either in RocksDB or in memory-mapped files
+        for (String locationsIndex : new String[] { "locations",
+                KeyValueStorageMappedLocations.getDirectoryName("locations") }) {
+            Path locationsIndexPath = FileSystems.getDefault().getPath(baseDir, locationsIndex);
+            if (Files.exists(locationsIndexPath)) {
+                Files.move(locationsIndexPath, FileSystems.getDefault().getPath(baseDir, locationsIndex + ".backup"));
+            }
+        }
 
         LOG.info("---- Done Converting {} ledgers ----", convertedLedgers);
         return true;
@@ -20,12 +20,15 @@ package org.apache.bookkeeper.tools.cli.commands.bookie;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import java.io.File;
 import java.io.IOException;
+import org.apache.bookkeeper.bookie.BookieImpl;
 import org.apache.bookkeeper.bookie.Journal;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.LogMark;
 import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.tools.cli.helpers.BookieCommand;
 import org.apache.bookkeeper.tools.framework.CliFlags;
 import org.apache.bookkeeper.tools.framework.CliSpec;
@@ -64,12 +67,17 @@ public class LastMarkCommand extends BookieCommand<CliFlags> {
             File[] journalDirs = conf.getJournalDirs();
 
             for (int idx = 0; idx < journalDirs.length; idx++) {
-                Journal journal = new Journal(idx, journalDirs[idx], conf, dirsManager);
-                LogMark lastLogMark = journal.getLastLogMark().getCurMark();
-                LOG.info("LastLogMark : Journal Id - {}({}.txn), Pos - {}",
-                    lastLogMark.getLogFileId(),
-                    Long.toHexString(lastLogMark.getLogFileId()),
-                    lastLogMark.getLogFileOffset());
+                File journalDir = BookieImpl.getCurrentDirectory(journalDirs[idx]);
+                for (int stripe : Journal.listJournalStripes(journalDir)) {
+                    Journal journal = new Journal(idx, stripe, Journal.getJournalStripeDirectory(journalDir, stripe),
+                            conf, dirsManager, NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT);
+                    LogMark lastLogMark = journal.getLastLogMark().getCurMark();
+                    LOG.info("LastLogMark : Journal Id - {}({}.txn), Pos - {}, Stripe - {}",
+                        lastLogMark.getLogFileId(),
+                        Long.toHexString(lastLogMark.getLogFileId()),
+                        lastLogMark.getLogFileOffset(),
+                        stripe);
+                }
             }
             return true;
         } catch (IOException e) {
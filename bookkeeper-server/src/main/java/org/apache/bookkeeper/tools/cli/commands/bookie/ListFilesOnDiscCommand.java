@@ -25,7 +25,9 @@ import java.io.IOException;
 import java.util.List;
 import lombok.Setter;
 import lombok.experimental.Accessors;
+import org.apache.bookkeeper.bookie.BookieImpl;
 import org.apache.bookkeeper.bookie.BookieShell;
+import org.apache.bookkeeper.bookie.Journal;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.tools.cli.helpers.BookieCommand;
 import org.apache.bookkeeper.tools.framework.CliFlags;
@@ -77,11 +79,20 @@ public class ListFilesOnDiscCommand extends BookieCommand<ListFilesOnDiscCommand
 
     private boolean handler(ServerConfiguration conf, LFODFlags cmd) throws IOException {
         if (cmd.journal) {
-            File[] journalDirs = conf.getJournalDirs();
-            List<File> journalFiles = BookieShell.listFilesAndSort(journalDirs, "txn");
             LOG.info("--------- Printing the list of Journal Files ---------");
-            for (File journalFile : journalFiles) {
-                LOG.info("{}", journalFile.getCanonicalPath());
+            for (File journalDir : conf.getJournalDirs()) {
+                File currentDir = BookieImpl.getCurrentDirectory(journalDir);
+                // the journal files of each stripe are listed apart, they are replayed by different journals
+                for (int stripe : Journal.listJournalStripes(currentDir)) {
+                    File stripeDir = Journal.getJournalStripeDirectory(currentDir, stripe);
+                    List<File> journalFiles = BookieShell.listFilesAndSort(new File[] { stripeDir }, "txn");
+                    LOG.info("Journal directory {}, stripe {}", stripeDir.getCanonicalPath(), stripe);
+                    for (File journalFile : journalFiles) {
+                        if (journalFile.getParentFile().equals(stripeDir)) {
+                            LOG.info("{}", journalFile.getCanonicalPath());
+                        }
+                    }
+                }
             }
             LOG.info("");
         }
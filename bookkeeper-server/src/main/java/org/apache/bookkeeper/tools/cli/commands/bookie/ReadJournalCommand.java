@@ -22,6 +22,7 @@ import com.beust.jcommander.Parameter;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -31,6 +32,7 @@ import lombok.experimental.Accessors;
 import org.apache.bookkeeper.bookie.Journal;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.tools.cli.helpers.BookieCommand;
 import org.apache.bookkeeper.tools.framework.CliFlags;
 import org.apache.bookkeeper.tools.framework.CliSpec;
@@ -80,8 +82,8 @@ public class ReadJournalCommand extends BookieCommand<ReadJournalCommand.ReadJou
         @Parameter(names = {"-m", "--msg"}, description = "Print message body")
         private boolean msg;
 
-        @Parameter(names = { "-d", "--dir" }, description = "Journal directory (needed if more than one journal "
-                                                                + "configured)")
+        @Parameter(names = { "-d", "--dir" }, description = "Journal directory, or directory of a journal"
+                + " stripe (needed if more than one journal configured)")
         private String dir = DEFAULT;
 
         @Parameter(names = {"-id", "--journalid"}, description = "Journal Id")
@@ -177,11 +179,17 @@ public class ReadJournalCommand extends BookieCommand<ReadJournalCommand.ReadJou
     private synchronized List<Journal> getJournals(ServerConfiguration conf) throws IOException {
         if (null == journals) {
             journals = Lists.newArrayListWithCapacity(conf.getJournalDirs().length);
+            LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                    new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
             int idx = 0;
             for (File journalDir : conf.getJournalDirs()) {
-                journals.add(new Journal(idx++, new File(journalDir, BookKeeperConstants.CURRENT_DIR), conf,
-                         new LedgerDirsManager(conf, conf.getLedgerDirs(),
-                               new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
+                File currentDir = new File(journalDir, BookKeeperConstants.CURRENT_DIR);
+                // every stripe found on disk, the journal files of each stripe are in their own directory
+                for (int stripe : Journal.listJournalStripes(currentDir)) {
+                    journals.add(new Journal(idx, stripe, Journal.getJournalStripeDirectory(currentDir, stripe),
+                            conf, ledgerDirsManager, NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT));
+                }
+                idx++;
             }
         }
         return journals;
@@ -0,0 +1,130 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRange;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ActiveLedgersSnapshot}.
+ */
+public class ActiveLedgersSnapshotTest {
+
+    /**
+     * Iterate over the ledgers in ranges of 2 ledgers.
+     */
+    static LedgerRangeIterator newLedgerRangeIterator(Collection<Long> ledgers) {
+        List<Long> sorted = new ArrayList<>(ledgers);
+        sorted.sort(null);
+        Iterator<Long> it = sorted.iterator();
+        return new LedgerRangeIterator() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public LedgerRange next() {
+                Set<Long> range = new HashSet<>();
+                range.add(it.next());
+                if (it.hasNext()) {
+                    range.add(it.next());
+                }
+                return new LedgerRange(range);
+            }
+        };
+    }
+
+    @Test
+    public void snapshotIsShared() throws Exception {
+        Set<Long> ledgers = new HashSet<>(Arrays.asList(1L, 2L, 3L, 5L, 8L));
+        LedgerManager ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.getLedgerRanges(anyLong())).thenAnswer(invocation -> newLedgerRangeIterator(ledgers));
+        ActiveLedgersSnapshot activeLedgers = new ActiveLedgersSnapshot(ledgerManager, TimeUnit.HOURS.toMillis(1));
+
+        long beforeScan = System.nanoTime();
+        ActiveLedgersSnapshot.Snapshot snapshot = activeLedgers.get(1000);
+        assertTrue(snapshot.getScanStartNanos() - beforeScan >= 0);
+        for (long ledgerId = 0; ledgerId < 10; ledgerId++) {
+            assertEquals(ledgers.contains(ledgerId), snapshot.contains(ledgerId));
+        }
+
+        // Reused until it gets too old, even if the metadata store changed
+        ledgers.add(4L);
+        assertSame(snapshot, activeLedgers.get(1000));
+        assertFalse(activeLedgers.get(1000).contains(4L));
+        verify(ledgerManager, times(1)).getLedgerRanges(1000);
+    }
+
+    @Test
+    public void snapshotExpires() throws Exception {
+        Set<Long> ledgers = new HashSet<>(Arrays.asList(1L, 2L));
+        LedgerManager ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.getLedgerRanges(anyLong())).thenAnswer(invocation -> newLedgerRangeIterator(ledgers));
+        ActiveLedgersSnapshot activeLedgers = new ActiveLedgersSnapshot(ledgerManager, 0);
+
+        ActiveLedgersSnapshot.Snapshot snapshot = activeLedgers.get(1000);
+        ledgers.add(3L);
+        ActiveLedgersSnapshot.Snapshot newSnapshot = activeLedgers.get(1000);
+        assertNotSame(snapshot, newSnapshot);
+        assertTrue(newSnapshot.contains(3L));
+        assertTrue(newSnapshot.getScanStartNanos() - snapshot.getScanStartNanos() >= 0);
+        verify(ledgerManager, times(2)).getLedgerRanges(1000);
+    }
+
+    @Test
+    public void failedScan() throws Exception {
+        LedgerManager ledgerManager = mock(LedgerManager.class);
+        LedgerRangeIterator failingIterator = mock(LedgerRangeIterator.class);
+        when(failingIterator.hasNext()).thenThrow(new IOException("metadata store unavailable"));
+        when(ledgerManager.getLedgerRanges(anyLong()))
+                .thenReturn(failingIterator)
+                .thenAnswer(invocation -> newLedgerRangeIterator(Arrays.asList(1L)));
+        ActiveLedgersSnapshot activeLedgers = new ActiveLedgersSnapshot(ledgerManager, TimeUnit.HOURS.toMillis(1));
+
+        // No partial snapshot is kept: the next call scans again
+        assertThrows(IOException.class, () -> activeLedgers.get(1000));
+        assertTrue(activeLedgers.get(1000).contains(1L));
+    }
+}
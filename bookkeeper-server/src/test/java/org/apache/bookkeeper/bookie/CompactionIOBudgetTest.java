@@ -0,0 +1,108 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CompactionIOBudget}.
+ */
+public class CompactionIOBudgetTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void fullBudgetWithoutForegroundWrites() {
+        CompactionIOBudget budget = new CompactionIOBudget(100 * MB);
+        assertEquals(100 * MB, budget.getCompactionRate(), 1);
+
+        budget.maybeAdjustRate(System.nanoTime() + SECOND);
+        assertEquals(100 * MB, budget.getCompactionRate(), 1);
+    }
+
+    @Test
+    public void compactionYieldsToForegroundWrites() {
+        CompactionIOBudget budget = new CompactionIOBudget(100 * MB);
+        long now = System.nanoTime() + 10 * SECOND;
+        budget.maybeAdjustRate(now);
+
+        // 60 MB written in a second: 40 MB/s left to the compaction
+        budget.recordForegroundBytes(60 * MB);
+        now += SECOND;
+        budget.maybeAdjustRate(now);
+        assertEquals(40 * MB, budget.getCompactionRate(), 1);
+
+        // The foreground writes exceed the budget: the compaction keeps a tenth of it
+        budget.recordForegroundBytes(200 * MB);
+        now += SECOND;
+        budget.maybeAdjustRate(now);
+        assertEquals(10 * MB, budget.getCompactionRate(), 1);
+
+        // The foreground writes stop: the whole budget is back
+        now += SECOND;
+        budget.maybeAdjustRate(now);
+        assertEquals(100 * MB, budget.getCompactionRate(), 1);
+    }
+
+    @Test
+    public void foregroundRateOverTheElapsedTime() {
+        CompactionIOBudget budget = new CompactionIOBudget(100 * MB);
+        long now = System.nanoTime() + 10 * SECOND;
+        budget.maybeAdjustRate(now);
+
+        // 60 MB written in 2 seconds
+        budget.recordForegroundBytes(60 * MB);
+        now += 2 * SECOND;
+        budget.maybeAdjustRate(now);
+        assertEquals(70 * MB, budget.getCompactionRate(), 1);
+    }
+
+    @Test
+    public void rateAdjustedOncePerSecond() {
+        CompactionIOBudget budget = new CompactionIOBudget(100 * MB);
+        long now = System.nanoTime() + 10 * SECOND;
+        budget.maybeAdjustRate(now);
+
+        budget.recordForegroundBytes(60 * MB);
+        budget.maybeAdjustRate(now + SECOND / 2);
+        assertEquals(100 * MB, budget.getCompactionRate(), 1);
+
+        // The bytes recorded before are still accounted at the next adjustment
+        budget.maybeAdjustRate(now + SECOND);
+        assertEquals(40 * MB, budget.getCompactionRate(), 1);
+    }
+
+    @Test
+    public void tryAcquire() {
+        CompactionIOBudget budget = new CompactionIOBudget(MB);
+        // The rate limiter starts without stored permits, the first acquire is always granted
+        assertTrue(budget.tryAcquire((int) MB, 0, TimeUnit.MILLISECONDS));
+        // The next one waits for a second of budget
+        assertFalse(budget.tryAcquire((int) MB, 0, TimeUnit.MILLISECONDS));
+        assertTrue(budget.tryAcquire((int) MB, 2, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CompactionPlanner}.
+ */
+public class CompactionPlannerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private static EntryLogMetadata newMeta(long entryLogId, long totalSize, long remainingSize) {
+        EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+        meta.addLedgerSize(1, remainingSize);
+        meta.addLedgerSize(2, totalSize - remainingSize);
+        // ledger 2 is deleted
+        meta.removeLedgerIf(ledgerId -> ledgerId == 2);
+        assertEquals(totalSize, meta.getTotalSize());
+        assertEquals(remainingSize, meta.getRemainingSize());
+        return meta;
+    }
+
+    @Test
+    public void score() {
+        // 75 MB reclaimed for 100 MB read, 25 MB written and 1 MB of fixed cost
+        assertEquals(75.0 / 126, CompactionPlanner.score(newMeta(1, 100 * MB, 25 * MB)), 1e-9);
+        // Nothing to reclaim
+        assertEquals(0.0, CompactionPlanner.score(newMeta(2, 100 * MB, 100 * MB)), 1e-9);
+        // An empty log only has the fixed cost
+        assertEquals(0.0, CompactionPlanner.score(new EntryLogMetadata(3)), 1e-9);
+        // A log without remaining entries is only read
+        assertEquals(100.0 / 101, CompactionPlanner.score(newMeta(4, 100 * MB, 0)), 1e-9);
+    }
+
+    @Test
+    public void lowerUsageFirst() {
+        CompactionPlanner planner = new CompactionPlanner();
+        planner.add(newMeta(1, 100 * MB, 50 * MB), 0.5);
+        planner.add(newMeta(2, 100 * MB, 10 * MB), 0.1);
+        planner.add(newMeta(3, 100 * MB, 30 * MB), 0.3);
+
+        assertEquals(Arrays.asList(2L, 3L, 1L), entryLogIds(planner.plan()));
+    }
+
+    @Test
+    public void largerLogsFirstAtTheSameUsage() {
+        CompactionPlanner planner = new CompactionPlanner();
+        planner.add(newMeta(1, 2 * MB, MB), 0.5);
+        planner.add(newMeta(2, 1024 * MB, 512 * MB), 0.5);
+        planner.add(newMeta(3, 64 * MB, 32 * MB), 0.5);
+
+        assertEquals(Arrays.asList(2L, 3L, 1L), entryLogIds(planner.plan()));
+    }
+
+    @Test
+    public void smallLogWithLowerUsageAfterLargeLog() {
+        // The fixed cost outweighs the better usage of a tiny log
+        EntryLogMetadata tiny = newMeta(1, 512 * 1024, 64 * 1024);
+        EntryLogMetadata large = newMeta(2, 1024 * MB, 256 * MB);
+        assertTrue(CompactionPlanner.score(large) > CompactionPlanner.score(tiny));
+
+        CompactionPlanner planner = new CompactionPlanner();
+        planner.add(tiny, 0.125);
+        planner.add(large, 0.25);
+        List<CompactionPlanner.Candidate> plan = planner.plan();
+        assertEquals(Arrays.asList(2L, 1L), entryLogIds(plan));
+        // The usage is kept for the reporting
+        assertEquals(0.25, plan.get(0).usage, 1e-9);
+        assertEquals(0.125, plan.get(1).usage, 1e-9);
+    }
+
+    @Test
+    public void emptyPlan() {
+        assertTrue(new CompactionPlanner().plan().isEmpty());
+    }
+
+    private static List<Long> entryLogIds(List<CompactionPlanner.Candidate> plan) {
+        return plan.stream().map(c -> c.entryLogId).collect(Collectors.toList());
+    }
+}
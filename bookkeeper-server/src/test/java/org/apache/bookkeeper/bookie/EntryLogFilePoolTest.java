@@ -0,0 +1,253 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link EntryLogFilePool}: the recycling of the entry logs as spare files, and the
+ * reuse of the spare files after a restart.
+ */
+@Timeout(60)
+public class EntryLogFilePoolTest {
+
+    private static final long FILE_SIZE = 1024 * 1024;
+
+    @TempDir
+    File dir;
+
+    private EntryLogFilePool newPool(int filesPerDir) {
+        return new EntryLogFilePool(Collections.singletonList(dir), filesPerDir, FILE_SIZE);
+    }
+
+    private File newLogFile(String name, int size) throws Exception {
+        File logFile = new File(dir, name);
+        Files.write(logFile.toPath(), new byte[size]);
+        return logFile;
+    }
+
+    private File[] spareFiles() {
+        return dir.listFiles(f -> f.getName().endsWith(EntryLogFilePool.SPARE_FILE_SUFFIX));
+    }
+
+    @Test
+    public void fillAndTake() throws Exception {
+        EntryLogFilePool pool = newPool(3);
+        assertTrue(pool.isEnabled());
+        assertEquals(0, pool.getSpareFilesCount(dir));
+        pool.fill();
+        assertEquals(3, pool.getSpareFilesCount(dir));
+        assertEquals(3, spareFiles().length);
+
+        File logFile = new File(dir, "1.log");
+        assertTrue(pool.take(dir, logFile));
+        assertTrue(logFile.exists());
+        assertEquals(0, logFile.length());
+        assertEquals(2, pool.getSpareFilesCount(dir));
+
+        // Only refilled when the directory has no spare file left
+        pool.fillEmpty();
+        assertEquals(2, pool.getSpareFilesCount(dir));
+        assertTrue(pool.take(dir, new File(dir, "2.log")));
+        assertTrue(pool.take(dir, new File(dir, "3.log")));
+        assertFalse(pool.take(dir, new File(dir, "4.log")));
+        pool.fillEmpty();
+        assertEquals(1, pool.getSpareFilesCount(dir));
+    }
+
+    @Test
+    public void recycle() throws Exception {
+        EntryLogFilePool pool = newPool(2);
+        File logFile1 = newLogFile("1.log", 4096);
+        File logFile2 = newLogFile("2.log", 4096);
+        File logFile3 = newLogFile("3.log", 4096);
+
+        assertTrue(pool.recycle(logFile1));
+        assertTrue(pool.recycle(logFile2));
+        assertFalse(logFile1.exists());
+        assertFalse(logFile2.exists());
+        for (File spareFile : spareFiles()) {
+            assertEquals(0, spareFile.length());
+        }
+
+        // The pool is full: the entry log must be deleted
+        assertFalse(pool.recycle(logFile3));
+        assertTrue(logFile3.exists());
+        assertEquals(2, pool.getSpareFilesCount(dir));
+
+        File newLogFile = new File(dir, "4.log");
+        assertTrue(pool.take(dir, newLogFile));
+        assertEquals(0, newLogFile.length());
+    }
+
+    @Test
+    public void reuseSpareFilesAfterRestart() throws Exception {
+        EntryLogFilePool pool = newPool(2);
+        pool.fill();
+        assertTrue(pool.take(dir, new File(dir, "1.log")));
+        assertTrue(pool.recycle(newLogFile("2.log", 4096)));
+
+        // The spare files are loaded again, and the new spare files don't reuse their names
+        EntryLogFilePool restartedPool = newPool(2);
+        assertEquals(2, restartedPool.getSpareFilesCount(dir));
+        assertTrue(restartedPool.take(dir, new File(dir, "3.log")));
+        assertTrue(restartedPool.recycle(newLogFile("4.log", 4096)));
+        assertTrue(new File(dir, "3" + EntryLogFilePool.SPARE_FILE_SUFFIX).exists());
+        assertEquals(2, spareFiles().length);
+        assertEquals(2, restartedPool.getSpareFilesCount(dir));
+
+        // The extra spare files are deleted when the pool gets smaller
+        EntryLogFilePool smallerPool = newPool(1);
+        assertEquals(1, smallerPool.getSpareFilesCount(dir));
+        assertEquals(1, spareFiles().length);
+    }
+
+    @Test
+    public void truncateStaleSpareFilesAfterRestart() throws Exception {
+        // The bookie stopped after an entry log was renamed as a spare file, but before it was truncated
+        File staleSpareFile = newLogFile("5" + EntryLogFilePool.SPARE_FILE_SUFFIX, 4096);
+
+        EntryLogFilePool pool = newPool(2);
+        assertEquals(1, pool.getSpareFilesCount(dir));
+        assertEquals(0, staleSpareFile.length());
+
+        File newLogFile = new File(dir, "1.log");
+        assertTrue(pool.take(dir, newLogFile));
+        assertEquals(0, newLogFile.length());
+
+        // Named after the stale spare file
+        pool.fill();
+        assertTrue(new File(dir, "6" + EntryLogFilePool.SPARE_FILE_SUFFIX).exists());
+    }
+
+    @Test
+    public void truncateStaleSpareFileOnTake() throws Exception {
+        EntryLogFilePool pool = newPool(1);
+        pool.fill();
+        File spareFile = spareFiles()[0];
+        Files.write(spareFile.toPath(), new byte[4096]);
+
+        File newLogFile = new File(dir, "1.log");
+        assertTrue(pool.take(dir, newLogFile));
+        assertEquals(0, newLogFile.length());
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        EntryLogFilePool pool = newPool(0);
+        assertFalse(pool.isEnabled());
+        pool.fill();
+        assertEquals(0, spareFiles().length);
+        assertFalse(pool.recycle(newLogFile("1.log", 4096)));
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) (ledgerId + entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private static void waitForSpareFiles(DefaultEntryLogger entryLogger, File dir, int count) throws Exception {
+        EntryLogFilePool pool = entryLogger.getEntryLoggerAllocator().getSpareFilePool();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pool.getSpareFilesCount(dir) < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, pool.getSpareFilesCount(dir));
+    }
+
+    @Test
+    public void entryLoggerRecyclesAndRestarts() throws Exception {
+        File ledgerDir = BookieImpl.getCurrentDirectory(dir);
+        BookieImpl.checkDirectoryStructure(ledgerDir);
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { dir.getPath() });
+        conf.setEntryLogSpareFilesCount(2);
+        conf.setEntryLogSizeLimit(FILE_SIZE);
+
+        DefaultEntryLogger entryLogger = new DefaultEntryLogger(conf);
+        long[] locations = new long[30];
+        try {
+            waitForSpareFiles(entryLogger, ledgerDir, 2);
+            // 3 MB: the entry logs are rolled over
+            for (int entryId = 0; entryId < locations.length; entryId++) {
+                locations[entryId] = entryLogger.addEntry(1L, newEntry(1, entryId, 100 * 1024));
+            }
+            entryLogger.flush();
+            long firstLogId = DefaultEntryLogger.logIdForOffset(locations[0]);
+            assertTrue(DefaultEntryLogger.logIdForOffset(locations[locations.length - 1]) > firstLogId);
+
+            assertTrue(entryLogger.removeEntryLog(firstLogId));
+            assertTrue(entryLogger.getEntryLoggerAllocator().getSpareFilePool().getSpareFilesCount(ledgerDir) > 0);
+        } finally {
+            entryLogger.close();
+        }
+
+        // A crash while recycling an entry log leaves a spare file with its content, the only one left
+        Files.write(new File(ledgerDir, "ff" + EntryLogFilePool.SPARE_FILE_SUFFIX).toPath(), new byte[8192]);
+        for (File spareFile : ledgerDir.listFiles(f -> f.getName().endsWith(EntryLogFilePool.SPARE_FILE_SUFFIX))) {
+            if (spareFile.length() == 0) {
+                assertTrue(spareFile.delete());
+            }
+        }
+
+        entryLogger = new DefaultEntryLogger(conf);
+        try {
+            // The new entry logs are created from the truncated spare file
+            for (int entryId = 0; entryId < locations.length; entryId++) {
+                locations[entryId] = entryLogger.addEntry(2L, newEntry(2, entryId, 100 * 1024));
+            }
+            entryLogger.flush();
+            for (int entryId = 0; entryId < locations.length; entryId++) {
+                ByteBuf entry = entryLogger.readEntry(2L, entryId, locations[entryId]);
+                try {
+                    assertEquals(newEntry(2, entryId, 100 * 1024), entry);
+                } finally {
+                    entry.release();
+                }
+            }
+            File firstLogFile = new File(ledgerDir,
+                    Long.toHexString(DefaultEntryLogger.logIdForOffset(locations[0])) + ".log");
+            assertTrue(firstLogFile.exists());
+            assertFalse(new File(ledgerDir, "ff" + EntryLogFilePool.SPARE_FILE_SUFFIX).exists());
+        } finally {
+            entryLogger.close();
+        }
+    }
+}
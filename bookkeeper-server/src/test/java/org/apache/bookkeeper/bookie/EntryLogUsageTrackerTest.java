@@ -0,0 +1,144 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link EntryLogUsageTracker}.
+ */
+public class EntryLogUsageTrackerTest {
+
+    private static EntryLogMetadata newMetadata(long entryLogId, long... ledgerSizes) {
+        EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+        for (int i = 0; i < ledgerSizes.length; i += 2) {
+            meta.addLedgerSize(ledgerSizes[i], ledgerSizes[i + 1]);
+        }
+        return meta;
+    }
+
+    private static List<Long> sorted(List<Long> entryLogIds) {
+        Collections.sort(entryLogIds);
+        return entryLogIds;
+    }
+
+    @Test
+    public void ledgerDeleted() {
+        EntryLogUsageTracker tracker = new EntryLogUsageTracker();
+        tracker.addEntryLog(newMetadata(1, 10, 100, 11, 200));
+        tracker.addEntryLog(newMetadata(2, 10, 300, 12, 400));
+        assertEquals(1000, tracker.getTotalRemainingSize());
+        assertTrue(tracker.drainModifiedEntryLogs().isEmpty());
+
+        // The deletion is applied to the entry logs holding the ledger only
+        tracker.ledgerDeleted(10);
+        assertEquals(600, tracker.getTotalRemainingSize());
+        assertEquals(Arrays.asList(1L, 2L), sorted(tracker.drainModifiedEntryLogs()));
+        assertTrue(tracker.drainModifiedEntryLogs().isEmpty());
+
+        tracker.ledgerDeleted(12);
+        assertEquals(200, tracker.getTotalRemainingSize());
+        assertEquals(Collections.singletonList(2L), tracker.drainModifiedEntryLogs());
+
+        // Deleted twice, or unknown
+        tracker.ledgerDeleted(12);
+        tracker.ledgerDeleted(13);
+        assertEquals(200, tracker.getTotalRemainingSize());
+        assertTrue(tracker.drainModifiedEntryLogs().isEmpty());
+    }
+
+    @Test
+    public void refreshForgetsTheRemovedLedgers() {
+        EntryLogUsageTracker tracker = new EntryLogUsageTracker();
+        EntryLogMetadata meta = newMetadata(1, 10, 100, 11, 200);
+        tracker.addEntryLog(meta);
+
+        // The garbage collector removes a ledger from the metadata, and refreshes the entry log
+        meta.removeLedgerIf(ledgerId -> ledgerId == 11);
+        tracker.addEntryLog(meta);
+        assertEquals(100, tracker.getTotalRemainingSize());
+
+        // The ledger doesn't belong to the entry log anymore
+        tracker.ledgerDeleted(11);
+        assertEquals(100, tracker.getTotalRemainingSize());
+        assertTrue(tracker.drainModifiedEntryLogs().isEmpty());
+
+        tracker.ledgerDeleted(10);
+        assertEquals(0, tracker.getTotalRemainingSize());
+        assertEquals(Collections.singletonList(1L), tracker.drainModifiedEntryLogs());
+    }
+
+    @Test
+    public void refreshWithNewLedgers() {
+        EntryLogUsageTracker tracker = new EntryLogUsageTracker();
+        tracker.addEntryLog(newMetadata(1, 10, 100));
+        tracker.addEntryLog(newMetadata(1, 10, 100, 11, 200));
+        assertEquals(300, tracker.getTotalRemainingSize());
+
+        tracker.ledgerDeleted(11);
+        assertEquals(100, tracker.getTotalRemainingSize());
+        assertEquals(Collections.singletonList(1L), tracker.drainModifiedEntryLogs());
+    }
+
+    @Test
+    public void removeEntryLog() {
+        EntryLogUsageTracker tracker = new EntryLogUsageTracker();
+        EntryLogMetadata meta = newMetadata(1, 10, 100, 11, 200);
+        tracker.addEntryLog(meta);
+        tracker.addEntryLog(newMetadata(2, 11, 300));
+        tracker.ledgerDeleted(10);
+        assertEquals(500, tracker.getTotalRemainingSize());
+
+        // The metadata was modified since the entry log was tracked: all its ledgers are forgotten anyway
+        meta.removeLedgerIf(ledgerId -> ledgerId == 11);
+        tracker.removeEntryLog(meta);
+        assertEquals(300, tracker.getTotalRemainingSize());
+        assertTrue(tracker.drainModifiedEntryLogs().isEmpty());
+
+        tracker.ledgerDeleted(11);
+        assertEquals(0, tracker.getTotalRemainingSize());
+        assertEquals(Collections.singletonList(2L), tracker.drainModifiedEntryLogs());
+
+        // Tracked again from scratch
+        tracker.addEntryLog(newMetadata(1, 10, 100));
+        assertEquals(100, tracker.getTotalRemainingSize());
+    }
+
+    @Test
+    public void clear() {
+        EntryLogUsageTracker tracker = new EntryLogUsageTracker();
+        tracker.addEntryLog(newMetadata(1, 10, 100));
+        tracker.ledgerDeleted(10);
+        tracker.addEntryLog(newMetadata(2, 11, 200));
+        tracker.clear();
+        assertEquals(0, tracker.getTotalRemainingSize());
+        assertTrue(tracker.drainModifiedEntryLogs().isEmpty());
+
+        tracker.ledgerDeleted(11);
+        assertTrue(tracker.drainModifiedEntryLogs().isEmpty());
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the replay of the journal files written with direct I/O, and the fallback to the buffered writes.
+ */
+@Timeout(60)
+public class JournalDirectIOTest {
+
+    @TempDir
+    File journalDir;
+
+    @TempDir
+    File ledgerDir;
+
+    private ServerConfiguration newConf(boolean directIO, int alignmentSize) {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setJournalDirectIO(directIO);
+        conf.setJournalAlignmentSize(alignmentSize);
+        conf.setProperty("journalPreAllocSizeMB", 1);
+        conf.setJournalWriteBufferSizeKB(16);
+        conf.setJournalRemovePagesFromCache(false);
+        return conf;
+    }
+
+    private Journal newJournal(ServerConfiguration conf) throws Exception {
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(journalDir));
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        return new Journal(0, BookieImpl.getCurrentDirectory(journalDir), conf, ledgerDirsManager);
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) (ledgerId + entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private static int entrySize(long entryId) {
+        // Entries smaller and larger than a block, ending at every offset of a block
+        return 16 + (int) (entryId * 97 % 10_000);
+    }
+
+    /**
+     * Write the entries, waiting for the acknowledgement of some of them so the journal is flushed
+     * in the middle of the blocks.
+     */
+    private static void writeEntries(Journal journal, long ledgerId, int entries) throws Exception {
+        List<CompletableFuture<Integer>> acks = new ArrayList<>();
+        for (long entryId = 0; entryId < entries; entryId++) {
+            CompletableFuture<Integer> ack = new CompletableFuture<>();
+            journal.logAddEntry(ledgerId, entryId, newEntry(ledgerId, entryId, entrySize(entryId)), false,
+                    (rc, l, e, addr, ctx) -> ack.complete(rc), null);
+            acks.add(ack);
+            if (entryId % 7 == 0) {
+                assertEquals(BookieException.Code.OK, (int) ack.get(10, TimeUnit.SECONDS));
+            }
+        }
+        for (CompletableFuture<Integer> ack : acks) {
+            assertEquals(BookieException.Code.OK, (int) ack.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static List<ByteBuf> replay(Journal journal) throws Exception {
+        List<ByteBuf> replayed = new ArrayList<>();
+        for (long journalId : Journal.listJournalIds(journal.getJournalDirectory(), null)) {
+            journal.scanJournal(journalId, 0, (version, offset, entry) -> {
+                ByteBuffer copy = ByteBuffer.allocate(entry.remaining());
+                copy.put(entry);
+                copy.flip();
+                replayed.add(Unpooled.wrappedBuffer(copy));
+            }, false);
+        }
+        return replayed;
+    }
+
+    private static void assertReplayed(List<ByteBuf> replayed, long ledgerId, int entries) {
+        assertEquals(entries, replayed.size());
+        for (int entryId = 0; entryId < entries; entryId++) {
+            assertEquals(newEntry(ledgerId, entryId, entrySize(entryId)), replayed.get(entryId));
+        }
+    }
+
+    private void writeAndReplay(ServerConfiguration conf) throws Exception {
+        Journal journal = newJournal(conf);
+        journal.start();
+        try {
+            writeEntries(journal, 1, 500);
+        } finally {
+            journal.shutdown();
+        }
+
+        // Replayed by a journal writing without direct I/O
+        Journal replayJournal = newJournal(newConf(false, conf.getJournalAlignmentSize()));
+        assertReplayed(replay(replayJournal), 1, 500);
+    }
+
+    @Test
+    public void replayDirectIOJournal() throws Exception {
+        // The flushes end on block boundaries
+        writeAndReplay(newConf(true, 4096));
+    }
+
+    @Test
+    public void replayDirectIOJournalWithPartialBlocks() throws Exception {
+        // The flushes end in the middle of the blocks, that are written again with the following entries
+        writeAndReplay(newConf(true, 512));
+    }
+
+    @Test
+    public void replayDirectIOJournalWithIoUring() throws Exception {
+        // The writes and fsyncs are submitted to io_uring, or to the blocking ring if it is not available
+        ServerConfiguration conf = newConf(true, 512);
+        conf.setJournalDirectIOIoUring(true);
+        writeAndReplay(conf);
+    }
+
+    @Test
+    public void replayDirectIOJournalAfterRollover() throws Exception {
+        replayDirectIOJournalAfterRollover(newConf(true, 4096));
+    }
+
+    @Test
+    public void replayDirectIOJournalAfterRolloverWithIoUring() throws Exception {
+        ServerConfiguration conf = newConf(true, 4096);
+        conf.setJournalDirectIOIoUring(true);
+        replayDirectIOJournalAfterRollover(conf);
+    }
+
+    private void replayDirectIOJournalAfterRollover(ServerConfiguration conf) throws Exception {
+        conf.setMaxJournalSizeMB(1);
+        conf.setMaxBackupJournals(100);
+        Journal journal = newJournal(conf);
+        journal.start();
+        try {
+            writeEntries(journal, 1, 500);
+        } finally {
+            journal.shutdown();
+        }
+
+        assertTrue(Journal.listJournalIds(journal.getJournalDirectory(), null).size() > 1);
+        assertReplayed(replay(newJournal(newConf(false, 4096))), 1, 500);
+    }
+
+    @Test
+    public void directIOChannel() throws Exception {
+        directIOChannel(newConf(true, 512));
+    }
+
+    @Test
+    public void directIOChannelWithIoUring() throws Exception {
+        ServerConfiguration conf = newConf(true, 512);
+        conf.setJournalDirectIOIoUring(true);
+        directIOChannel(conf);
+    }
+
+    private void directIOChannel(ServerConfiguration conf) throws Exception {
+        Journal journal = newJournal(conf);
+        File file = new File(journalDir, "test.txn");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel fc = raf.getChannel();
+        BufferedChannel bc = journal.getBufferedChannelBuilder().create(file, fc, 4096);
+        try {
+            assertTrue(bc instanceof DirectJournalBufferedChannel);
+
+            bc.write(newEntry(1, 0, 100));
+            bc.flushAndForceWrite(false);
+            // Padded with zeros up to the alignment
+            assertEquals(4096, fc.size());
+            assertEquals(100, bc.position());
+
+            // The partial block is written again with the following data
+            bc.write(newEntry(1, 1, 5000));
+            bc.flushAndForceWrite(false);
+            assertEquals(8192, fc.size());
+            assertEquals(5100, bc.position());
+
+            // Flushed without waiting for the write, which completes before the force write returns.
+            // The data written after the flush is not forced
+            bc.write(newEntry(1, 2, 3000));
+            bc.flush();
+            bc.write(newEntry(1, 3, 200));
+            assertEquals(8100, bc.forceWrite(false));
+            assertEquals(8192, fc.size());
+            assertEquals(8300, bc.position());
+        } finally {
+            bc.close();
+            raf.close();
+            journal.shutdown();
+        }
+
+        byte[] expected = new byte[8192];
+        newEntry(1, 0, 100).readBytes(expected, 0, 100);
+        newEntry(1, 1, 5000).readBytes(expected, 100, 5000);
+        newEntry(1, 2, 3000).readBytes(expected, 5100, 3000);
+        assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void fallbackToBufferedWrites() throws Exception {
+        ServerConfiguration conf = newConf(true, 512);
+        Journal journal = newJournal(conf);
+
+        // The file can't be opened with direct I/O: the journal falls back to the buffered writes
+        File file = new File(journalDir, "test.txn");
+        File missingFile = new File(journalDir, "missing/test.txn");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            BufferedChannel bc = journal.getBufferedChannelBuilder().create(missingFile, raf.getChannel(), 4096);
+            assertFalse(bc instanceof DirectJournalBufferedChannel);
+            bc.close();
+        }
+
+        // And keeps writing without direct I/O
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            BufferedChannel bc = journal.getBufferedChannelBuilder().create(file, raf.getChannel(), 4096);
+            assertFalse(bc instanceof DirectJournalBufferedChannel);
+            bc.close();
+        }
+        assertTrue(file.delete());
+
+        journal.start();
+        try {
+            writeEntries(journal, 1, 500);
+        } finally {
+            journal.shutdown();
+        }
+        assertReplayed(replay(newJournal(newConf(false, 512))), 1, 500);
+    }
+
+    @Test
+    public void bufferedJournal() throws Exception {
+        Journal journal = newJournal(newConf(false, 512));
+        File file = new File(journalDir, "test.txn");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            BufferedChannel bc = journal.getBufferedChannelBuilder().create(file, raf.getChannel(), 4096);
+            assertFalse(bc instanceof DirectJournalBufferedChannel);
+            bc.close();
+        }
+    }
+}
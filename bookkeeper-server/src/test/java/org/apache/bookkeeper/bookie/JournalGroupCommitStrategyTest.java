@@ -0,0 +1,169 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the {@link JournalGroupCommitStrategy} implementations.
+ */
+public class JournalGroupCommitStrategyTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static ServerConfiguration newConf() {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalMaxGroupWaitMSec(3);
+        conf.setJournalBufferedWritesThreshold(512 * 1024);
+        conf.setJournalBufferedEntriesThreshold(1000);
+        conf.setJournalGroupCommitTargetLatencyMSec(10);
+        return conf;
+    }
+
+    @Test
+    public void defaultStrategy() throws Exception {
+        ServerConfiguration conf = newConf();
+        JournalGroupCommitStrategy strategy =
+                JournalGroupCommitStrategy.newStrategy(conf.getJournalGroupCommitStrategy(), conf);
+
+        assertTrue(strategy instanceof DefaultJournalGroupCommitStrategy);
+        assertEquals(3 * MS, strategy.getMaxGroupWaitNanos());
+        assertEquals(512 * 1024, strategy.getMaxGroupBytes());
+        assertEquals(1000, strategy.getMaxGroupEntries());
+
+        // The thresholds do not depend on the load
+        strategy.onSync(50 * MS);
+        strategy.onBatchWritten(1, 100);
+        assertEquals(3 * MS, strategy.getMaxGroupWaitNanos());
+        assertEquals(512 * 1024, strategy.getMaxGroupBytes());
+    }
+
+    @Test
+    public void invalidStrategy() {
+        ServerConfiguration conf = newConf();
+        assertThrows(IOException.class, () -> JournalGroupCommitStrategy.newStrategy("not.a.Strategy", conf));
+        assertThrows(IOException.class,
+                () -> JournalGroupCommitStrategy.newStrategy(String.class.getName(), conf));
+    }
+
+    @Test
+    public void adaptiveStrategyStartsWithoutWaiting() throws Exception {
+        ServerConfiguration conf = newConf();
+        conf.setJournalGroupCommitStrategy(AdaptiveJournalGroupCommitStrategy.class.getName());
+        JournalGroupCommitStrategy strategy =
+                JournalGroupCommitStrategy.newStrategy(conf.getJournalGroupCommitStrategy(), conf);
+
+        assertTrue(strategy instanceof AdaptiveJournalGroupCommitStrategy);
+        assertEquals(0, strategy.getMaxGroupWaitNanos());
+        assertEquals(512 * 1024, strategy.getMaxGroupBytes());
+        assertEquals(1000, strategy.getMaxGroupEntries());
+    }
+
+    @Test
+    public void adaptiveStrategyUnderHighLoad() {
+        AdaptiveJournalGroupCommitStrategy strategy = new AdaptiveJournalGroupCommitStrategy(newConf());
+
+        // 100 entries of 1 KB every ms, with a fsync of 2 ms
+        strategy.onSync(2 * MS);
+        long now = 1_000 * MS;
+        for (int i = 0; i < 10; i++) {
+            strategy.onBatchWritten(100, 100 * 1024, now);
+            now += MS;
+        }
+
+        // The batch waits for the target latency not spent in the fsync
+        assertEquals(8 * MS, strategy.getMaxGroupWaitNanos());
+        // And holds the bytes arriving during a fsync: 2 ms * 100 KB/ms
+        assertEquals(200 * 1024, strategy.getMaxGroupBytes());
+    }
+
+    @Test
+    public void adaptiveStrategyUnderLowLoad() {
+        AdaptiveJournalGroupCommitStrategy strategy = new AdaptiveJournalGroupCommitStrategy(newConf());
+
+        // One entry every 100 ms: no other entry is expected while waiting, so the batch is flushed right away
+        strategy.onSync(2 * MS);
+        long now = 1_000 * MS;
+        for (int i = 0; i < 10; i++) {
+            strategy.onBatchWritten(1, 1024, now);
+            now += 100 * MS;
+        }
+
+        assertEquals(0, strategy.getMaxGroupWaitNanos());
+        // Never lower than 4 KB
+        assertEquals(4 * 1024, strategy.getMaxGroupBytes());
+    }
+
+    @Test
+    public void adaptiveStrategyWithSlowSync() {
+        AdaptiveJournalGroupCommitStrategy strategy = new AdaptiveJournalGroupCommitStrategy(newConf());
+
+        // The fsync alone exceeds the target latency
+        strategy.onSync(20 * MS);
+        long now = 1_000 * MS;
+        for (int i = 0; i < 10; i++) {
+            strategy.onBatchWritten(1000, 1000 * 1024, now);
+            now += MS;
+        }
+
+        assertEquals(0, strategy.getMaxGroupWaitNanos());
+        // Bounded by journalBufferedWritesThreshold
+        assertEquals(512 * 1024, strategy.getMaxGroupBytes());
+    }
+
+    @Test
+    public void adaptiveStrategyFollowsTheLoad() {
+        AdaptiveJournalGroupCommitStrategy strategy = new AdaptiveJournalGroupCommitStrategy(newConf());
+        strategy.onSync(2 * MS);
+
+        long now = 1_000 * MS;
+        for (int i = 0; i < 50; i++) {
+            strategy.onBatchWritten(100, 100 * 1024, now);
+            now += MS;
+        }
+        assertEquals(8 * MS, strategy.getMaxGroupWaitNanos());
+
+        // The load drops: the moving average converges to no wait
+        for (int i = 0; i < 50; i++) {
+            now += 100 * MS;
+            strategy.onBatchWritten(1, 1024, now);
+        }
+        assertEquals(0, strategy.getMaxGroupWaitNanos());
+
+        // The fsync gets faster: a larger part of the target latency is available to wait
+        for (int i = 0; i < 50; i++) {
+            strategy.onSync(MS / 2);
+        }
+        for (int i = 0; i < 50; i++) {
+            now += MS;
+            strategy.onBatchWritten(100, 100 * 1024, now);
+        }
+        long wait = strategy.getMaxGroupWaitNanos();
+        assertTrue(wait > 9 * MS && wait <= 10 * MS, "wait: " + wait);
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link JournalReplayExecutor}, and for the replay of the journal with several threads.
+ */
+@Timeout(60)
+public class JournalReplayExecutorTest {
+
+    @TempDir
+    File journalDir;
+
+    @TempDir
+    File ledgerDir;
+
+    private final ExecutorService readerExecutor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    public void teardown() {
+        readerExecutor.shutdownNow();
+    }
+
+    private static ByteBuffer newRecord(long ledgerId, long entryId) {
+        ByteBuffer record = ByteBuffer.allocate(64);
+        record.putLong(ledgerId);
+        record.putLong(entryId);
+        record.flip();
+        return record;
+    }
+
+    @Test
+    public void recordsOfALedgerAreProcessedInOrder() throws Exception {
+        Map<Long, List<Long>> processed = new ConcurrentHashMap<>();
+        Map<Long, String> threads = new ConcurrentHashMap<>();
+        AtomicInteger sameThread = new AtomicInteger();
+        Random random = new Random(1);
+        JournalScanner scanner = (journalVersion, offset, record) -> {
+            long ledgerId = record.getLong();
+            long entryId = record.getLong();
+            String thread = Thread.currentThread().getName();
+            if (!thread.equals(threads.computeIfAbsent(ledgerId, l -> thread))) {
+                sameThread.incrementAndGet();
+            }
+            processed.computeIfAbsent(ledgerId, l -> new ArrayList<>()).add(entryId);
+            if (random.nextInt(100) == 0) {
+                Thread.yield();
+            }
+        };
+
+        int ledgers = 20;
+        int entries = 500;
+        try (JournalReplayExecutor replayExecutor = new JournalReplayExecutor(scanner, 4, 1024 * 1024)) {
+            JournalScanner replayScanner = replayExecutor.asScanner();
+            // The records of the ledgers are interleaved, the same buffer is reused for every record
+            ByteBuffer recBuff = ByteBuffer.allocate(64);
+            for (long entryId = 0; entryId < entries; entryId++) {
+                for (long ledgerId = 0; ledgerId < ledgers; ledgerId++) {
+                    recBuff.clear();
+                    recBuff.put(newRecord(ledgerId, entryId));
+                    recBuff.flip();
+                    replayScanner.process(JournalChannel.V5, entryId, recBuff);
+                }
+            }
+            replayExecutor.awaitPendingRecords();
+        }
+
+        assertEquals(ledgers, processed.size());
+        for (long ledgerId = 0; ledgerId < ledgers; ledgerId++) {
+            List<Long> entryIds = processed.get(ledgerId);
+            assertEquals(entries, entryIds.size());
+            for (int entryId = 0; entryId < entries; entryId++) {
+                assertEquals(entryId, (long) entryIds.get(entryId));
+            }
+        }
+        // The records of a ledger always go to the same thread
+        assertEquals(0, sameThread.get());
+        // And the ledgers are spread across the threads
+        assertTrue(threads.values().stream().distinct().count() > 1);
+    }
+
+    @Test
+    public void barrierWaitsForThePendingRecords() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        AtomicInteger processed = new AtomicInteger();
+        JournalScanner scanner = (journalVersion, offset, record) -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            processed.incrementAndGet();
+        };
+
+        try (JournalReplayExecutor replayExecutor = new JournalReplayExecutor(scanner, 2, 1024 * 1024)) {
+            JournalScanner replayScanner = replayExecutor.asScanner();
+            for (long ledgerId = 0; ledgerId < 10; ledgerId++) {
+                replayScanner.process(JournalChannel.V5, 0, newRecord(ledgerId, 0));
+            }
+
+            Future<?> barrier = readerExecutor.submit(() -> {
+                replayExecutor.awaitPendingRecords();
+                return null;
+            });
+            assertThrows(TimeoutException.class, () -> barrier.get(100, TimeUnit.MILLISECONDS));
+
+            blocked.countDown();
+            barrier.get(10, TimeUnit.SECONDS);
+            assertEquals(10, processed.get());
+
+            // Nothing pending
+            replayExecutor.awaitPendingRecords();
+        }
+    }
+
+    @Test
+    public void failureStopsTheReplay() throws Exception {
+        List<Long> processed = new ArrayList<>();
+        JournalScanner scanner = (journalVersion, offset, record) -> {
+            long entryId = record.getLong(8);
+            if (entryId == 5) {
+                throw new IOException("Failed to add entry");
+            }
+            synchronized (processed) {
+                processed.add(entryId);
+            }
+        };
+
+        try (JournalReplayExecutor replayExecutor = new JournalReplayExecutor(scanner, 2, 1024 * 1024)) {
+            JournalScanner replayScanner = replayExecutor.asScanner();
+            for (long entryId = 0; entryId < 10; entryId++) {
+                replayScanner.process(JournalChannel.V5, entryId, newRecord(1, entryId));
+            }
+
+            IOException e = assertThrows(IOException.class, replayExecutor::awaitPendingRecords);
+            assertEquals("Failed to add entry", e.getCause().getMessage());
+
+            // The records following the failure are not applied
+            synchronized (processed) {
+                assertEquals(5, processed.size());
+                assertFalse(processed.contains(5L));
+            }
+            // And no more records are accepted
+            assertThrows(IOException.class, () -> replayScanner.process(JournalChannel.V5, 10, newRecord(1, 10)));
+        }
+    }
+
+    @Test
+    public void pendingRecordsAreBounded() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        JournalScanner scanner = (journalVersion, offset, record) -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        };
+
+        // Room for 2 records of 64 bytes
+        try (JournalReplayExecutor replayExecutor = new JournalReplayExecutor(scanner, 2, 128)) {
+            JournalScanner replayScanner = replayExecutor.asScanner();
+            Future<?> reader = readerExecutor.submit(() -> {
+                for (long entryId = 0; entryId < 10; entryId++) {
+                    replayScanner.process(JournalChannel.V5, entryId, newRecord(1, entryId));
+                }
+                return null;
+            });
+
+            // The reader waits for the records to be processed
+            assertThrows(TimeoutException.class, () -> reader.get(100, TimeUnit.MILLISECONDS));
+
+            blocked.countDown();
+            reader.get(10, TimeUnit.SECONDS);
+            replayExecutor.awaitPendingRecords();
+        }
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(256);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1); // lac
+        while (entry.isWritable()) {
+            entry.writeByte((byte) (ledgerId + entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private static ByteBuf newMetaEntry(long ledgerId, long metaEntryId, byte[] payload) {
+        ByteBuf entry = Unpooled.buffer();
+        entry.writeLong(ledgerId);
+        entry.writeLong(metaEntryId);
+        if (payload != null) {
+            entry.writeInt(payload.length);
+            entry.writeBytes(payload);
+        }
+        return entry;
+    }
+
+    @Test
+    public void replayJournalWithSeveralThreads() throws Exception {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setJournalRemovePagesFromCache(false);
+        conf.setMaxJournalSizeMB(1);
+        conf.setNumJournalReplayThreads(4);
+
+        // The ledger key, the entries and the fence records of the ledgers interleaved in the journal files
+        int ledgers = 10;
+        int entries = 500;
+        List<ByteBuf> records = new ArrayList<>();
+        for (long ledgerId = 0; ledgerId < ledgers; ledgerId++) {
+            records.add(newMetaEntry(ledgerId, BookieImpl.METAENTRY_ID_LEDGER_KEY, "key".getBytes()));
+        }
+        for (long entryId = 0; entryId < entries; entryId++) {
+            for (long ledgerId = 0; ledgerId < ledgers; ledgerId++) {
+                records.add(newEntry(ledgerId, entryId));
+            }
+        }
+        for (long ledgerId = 0; ledgerId < ledgers; ledgerId += 2) {
+            records.add(newMetaEntry(ledgerId, BookieImpl.METAENTRY_ID_FENCE_KEY, null));
+        }
+
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(journalDir));
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        Journal journal = new Journal(0, BookieImpl.getCurrentDirectory(journalDir), conf, ledgerDirsManager,
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT);
+        journal.start();
+        try {
+            List<CompletableFuture<Integer>> acks = new ArrayList<>();
+            for (ByteBuf record : records) {
+                CompletableFuture<Integer> ack = new CompletableFuture<>();
+                journal.logAddEntry(record, false, (rc, l, e, addr, ctx) -> ack.complete(rc), null);
+                acks.add(ack);
+            }
+            for (CompletableFuture<Integer> ack : acks) {
+                assertEquals(BookieException.Code.OK, (int) ack.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            journal.shutdown();
+        }
+        assertTrue(Journal.listJournalIds(journal.getJournalDirectory(), null).size() > 1);
+
+        TestBookieImpl bookie = new TestBookieImpl(conf);
+        bookie.start();
+        try {
+            assertEquals(100, bookie.getJournalReplayProgress());
+            for (long ledgerId = 0; ledgerId < ledgers; ledgerId++) {
+                assertEquals(ledgerId % 2 == 0, bookie.getLedgerStorage().isFenced(ledgerId));
+                for (long entryId = 0; entryId < entries; entryId++) {
+                    ByteBuf entry = bookie.readEntry(ledgerId, entryId);
+                    try {
+                        assertEquals(newEntry(ledgerId, entryId), entry);
+                    } finally {
+                        entry.release();
+                    }
+                }
+            }
+        } finally {
+            bookie.shutdown();
+        }
+    }
+}
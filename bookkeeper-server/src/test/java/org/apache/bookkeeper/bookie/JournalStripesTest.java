@@ -0,0 +1,223 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of the journal stripes: the replay of all the stripes of the journal directories on startup.
+ */
+@Timeout(60)
+public class JournalStripesTest {
+
+    private static final byte[] MASTER_KEY = "key".getBytes();
+
+    @TempDir
+    File journalDir;
+
+    @TempDir
+    File journalDir2;
+
+    @TempDir
+    File ledgerDir;
+
+    private ServerConfiguration newConf(int stripes) {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setJournalStripesPerDirectory(stripes);
+        conf.setJournalRemovePagesFromCache(false);
+        return conf;
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(1024);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1); // lac
+        while (entry.isWritable()) {
+            entry.writeByte((byte) (ledgerId + entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private static ByteBuf newMasterKeyEntry(long ledgerId) {
+        ByteBuf entry = Unpooled.buffer();
+        entry.writeLong(ledgerId);
+        entry.writeLong(BookieImpl.METAENTRY_ID_LEDGER_KEY);
+        entry.writeInt(MASTER_KEY.length);
+        entry.writeBytes(MASTER_KEY);
+        return entry;
+    }
+
+    /**
+     * Write the entries of a ledger in the journal of a stripe, without adding them to the ledger storage.
+     */
+    private void writeJournal(ServerConfiguration conf, int stripe, long ledgerId, int entries) throws Exception {
+        File currentDir = BookieImpl.getCurrentDirectory(journalDir);
+        File stripeDir = Journal.getJournalStripeDirectory(currentDir, stripe);
+        BookieImpl.checkDirectoryStructure(currentDir);
+        assertTrue(stripeDir.isDirectory() || stripeDir.mkdirs());
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        Journal journal = new Journal(0, stripe, stripeDir, conf, ledgerDirsManager, NullStatsLogger.INSTANCE,
+                UnpooledByteBufAllocator.DEFAULT);
+        journal.start();
+        try {
+            List<CompletableFuture<Integer>> acks = new ArrayList<>();
+            List<ByteBuf> toWrite = new ArrayList<>();
+            toWrite.add(newMasterKeyEntry(ledgerId));
+            for (long entryId = 0; entryId < entries; entryId++) {
+                toWrite.add(newEntry(ledgerId, entryId));
+            }
+            for (ByteBuf entry : toWrite) {
+                CompletableFuture<Integer> ack = new CompletableFuture<>();
+                journal.logAddEntry(entry, false, (rc, l, e, addr, ctx) -> ack.complete(rc), null);
+                acks.add(ack);
+            }
+            for (CompletableFuture<Integer> ack : acks) {
+                assertEquals(BookieException.Code.OK, (int) ack.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            journal.shutdown();
+        }
+    }
+
+    private static void assertEntries(Bookie bookie, long ledgerId, int entries) throws Exception {
+        for (long entryId = 0; entryId < entries; entryId++) {
+            ByteBuf entry = bookie.readEntry(ledgerId, entryId);
+            try {
+                assertEquals(newEntry(ledgerId, entryId), entry);
+            } finally {
+                entry.release();
+            }
+        }
+    }
+
+    @Test
+    public void replayAllStripes() throws Exception {
+        ServerConfiguration conf = newConf(3);
+        for (int stripe = 0; stripe < 3; stripe++) {
+            writeJournal(conf, stripe, stripe + 1, 50 + stripe);
+        }
+
+        TestBookieImpl bookie = new TestBookieImpl(conf);
+        assertEquals(3, bookie.journals.size());
+        bookie.start();
+        try {
+            for (int stripe = 0; stripe < 3; stripe++) {
+                assertEntries(bookie, stripe + 1, 50 + stripe);
+                // The last log mark of each stripe moved past its journal files
+                assertTrue(bookie.journals.get(stripe).getLastLogMark().getCurMark().getLogFileId() > 0);
+            }
+        } finally {
+            bookie.shutdown();
+        }
+    }
+
+    @Test
+    public void replayStripesOfSeveralDirectories() throws Exception {
+        ServerConfiguration conf = newConf(2);
+        conf.setJournalDirsName(new String[] { journalDir.getPath(), journalDir2.getPath() });
+        writeJournal(conf, 0, 1, 20);
+        writeJournal(conf, 1, 2, 20);
+
+        TestBookieImpl bookie = new TestBookieImpl(conf);
+        // The stripes are interleaved across the directories
+        assertEquals(4, bookie.journals.size());
+        assertEquals(BookieImpl.getCurrentDirectory(journalDir), bookie.journals.get(0).getJournalDirectory());
+        assertEquals(BookieImpl.getCurrentDirectory(journalDir2), bookie.journals.get(1).getJournalDirectory());
+        assertEquals(new File(BookieImpl.getCurrentDirectory(journalDir), "stripe-1"),
+                bookie.journals.get(2).getJournalDirectory());
+        bookie.start();
+        try {
+            assertEntries(bookie, 1, 20);
+            assertEntries(bookie, 2, 20);
+        } finally {
+            bookie.shutdown();
+        }
+    }
+
+    @Test
+    public void refuseToDropStripes() throws Exception {
+        writeJournal(newConf(3), 2, 1, 10);
+
+        // The journal files of stripe 2 would not be replayed
+        IOException e = assertThrows(IOException.class, () -> new TestBookieImpl(newConf(2)));
+        assertTrue(e.getMessage().contains("stripe 2"), e.getMessage());
+
+        // Without journal files, the stripe directory is ignored
+        File stripeDir = Journal.getJournalStripeDirectory(BookieImpl.getCurrentDirectory(journalDir), 2);
+        for (File f : stripeDir.listFiles()) {
+            assertTrue(f.delete());
+        }
+        new TestBookieImpl(newConf(2)).shutdown();
+    }
+
+    @Test
+    public void listJournalStripes() throws Exception {
+        assertEquals(Collections.singletonList(0), Journal.listJournalStripes(journalDir));
+        assertTrue(new File(journalDir, "stripe-10").mkdirs());
+        assertTrue(new File(journalDir, "stripe-2").mkdirs());
+        assertTrue(new File(journalDir, "stripe-x").mkdirs());
+        assertTrue(new File(journalDir, "stripe-3").createNewFile());
+        assertEquals(Arrays.asList(0, 2, 10), Journal.listJournalStripes(journalDir));
+    }
+
+    @Test
+    public void everyStripeIsLabeled() throws Exception {
+        ServerConfiguration conf = newConf(2);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        StatsLogger statsLogger = mock(StatsLogger.class);
+        when(statsLogger.scopeLabel(anyString(), anyString())).thenReturn(statsLogger);
+        when(statsLogger.scope(anyString())).thenReturn(statsLogger);
+
+        new Journal(0, 0, journalDir, conf, ledgerDirsManager, statsLogger, UnpooledByteBufAllocator.DEFAULT);
+        verify(statsLogger).scopeLabel("journalStripe", "0");
+    }
+}
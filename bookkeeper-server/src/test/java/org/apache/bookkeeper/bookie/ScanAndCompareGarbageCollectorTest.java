@@ -0,0 +1,191 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Unit tests for {@link ScanAndCompareGarbageCollector}: the shared scan of the metadata store and the
+ * parallel deletes.
+ */
+@Timeout(60)
+public class ScanAndCompareGarbageCollectorTest {
+
+    // The ledgers in the metadata store
+    private final Set<Long> metadataLedgers = Collections.synchronizedSet(new HashSet<>());
+
+    private LedgerManager newLedgerManager() {
+        LedgerManager ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.getLedgerRanges(anyLong())).thenAnswer(
+                invocation -> ActiveLedgersSnapshotTest.newLedgerRangeIterator(new ArrayList<>(metadataLedgers)));
+        when(ledgerManager.readLedgerMetadata(anyLong())).thenAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(0);
+            CompletableFuture<Versioned<LedgerMetadata>> future = new CompletableFuture<>();
+            if (metadataLedgers.contains(ledgerId)) {
+                LedgerMetadata metadata = mock(LedgerMetadata.class);
+                when(metadata.getAllEnsembles()).thenReturn(Collections.emptyNavigableMap());
+                future.complete(new Versioned<>(metadata, new LongVersion(1)));
+            } else {
+                future.completeExceptionally(new BKException.BKNoSuchLedgerExistsOnMetadataServerException());
+            }
+            return future;
+        });
+        return ledgerManager;
+    }
+
+    private static CompactableLedgerStorage newLedgerStorage(Long... ledgers) throws Exception {
+        CompactableLedgerStorage ledgerStorage = mock(CompactableLedgerStorage.class);
+        when(ledgerStorage.getActiveLedgersInRange(0, Long.MAX_VALUE))
+                .thenReturn(new TreeSet<>(Arrays.asList(ledgers)));
+        return ledgerStorage;
+    }
+
+    @Test
+    public void shareTheMetadataScan() throws Exception {
+        metadataLedgers.addAll(Arrays.asList(1L, 2L, 3L));
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        LedgerManager ledgerManager = newLedgerManager();
+        ActiveLedgersSnapshot snapshot = new ActiveLedgersSnapshot(ledgerManager, TimeUnit.HOURS.toMillis(1));
+
+        ScanAndCompareGarbageCollector gc1 = new ScanAndCompareGarbageCollector(ledgerManager,
+                newLedgerStorage(1L, 4L), conf, NullStatsLogger.INSTANCE);
+        gc1.setActiveLedgersSnapshot(snapshot);
+        Set<Long> cleaned1 = new ConcurrentSkipListSet<>();
+        gc1.gc(cleaned1::add);
+        assertEquals(Collections.singleton(4L), cleaned1);
+        // The snapshot was taken after the ledgers of the directory were listed: no metadata is read
+        verify(ledgerManager, times(0)).readLedgerMetadata(anyLong());
+
+        // Ledger 6 is created after the snapshot
+        metadataLedgers.add(6L);
+        ScanAndCompareGarbageCollector gc2 = new ScanAndCompareGarbageCollector(ledgerManager,
+                newLedgerStorage(2L, 5L, 6L), conf, NullStatsLogger.INSTANCE);
+        gc2.setActiveLedgersSnapshot(snapshot);
+        Set<Long> cleaned2 = new ConcurrentSkipListSet<>();
+        gc2.gc(cleaned2::add);
+
+        // The second directory reuses the snapshot, and checks the metadata of the ledgers missing from it
+        verify(ledgerManager, times(1)).getLedgerRanges(anyLong());
+        assertEquals(Collections.singleton(5L), cleaned2);
+        verify(ledgerManager).readLedgerMetadata(5L);
+        verify(ledgerManager).readLedgerMetadata(6L);
+        gc1.close();
+        gc2.close();
+    }
+
+    @Test
+    public void withoutSharedSnapshot() throws Exception {
+        metadataLedgers.addAll(Arrays.asList(1L, 2L, 3L));
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        LedgerManager ledgerManager = newLedgerManager();
+
+        for (int i = 0; i < 2; i++) {
+            ScanAndCompareGarbageCollector gc = new ScanAndCompareGarbageCollector(ledgerManager,
+                    newLedgerStorage(1L, 4L, 7L), conf, NullStatsLogger.INSTANCE);
+            Set<Long> cleaned = new ConcurrentSkipListSet<>();
+            gc.gc(cleaned::add);
+            assertEquals(new HashSet<>(Arrays.asList(4L, 7L)), cleaned);
+            gc.close();
+        }
+        // Each directory scans the metadata store
+        verify(ledgerManager, times(2)).getLedgerRanges(anyLong());
+    }
+
+    @Test
+    public void parallelDeletes() throws Exception {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setGcLedgerDeleteThreads(4);
+        Long[] ledgers = new Long[100];
+        for (int i = 0; i < ledgers.length; i++) {
+            ledgers[i] = (long) i;
+        }
+        ScanAndCompareGarbageCollector gc = new ScanAndCompareGarbageCollector(newLedgerManager(),
+                newLedgerStorage(ledgers), conf, NullStatsLogger.INSTANCE);
+
+        // The first deletes wait for each other: they only complete if they run concurrently
+        CountDownLatch concurrentDeletes = new CountDownLatch(2);
+        Set<Long> cleaned = new ConcurrentSkipListSet<>();
+        Set<String> threads = new ConcurrentSkipListSet<>();
+        gc.gc(ledgerId -> {
+            threads.add(Thread.currentThread().getName());
+            concurrentDeletes.countDown();
+            try {
+                assertTrue(concurrentDeletes.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (ledgerId == 50) {
+                throw new RuntimeException("failed delete");
+            }
+            cleaned.add(ledgerId);
+        });
+
+        // All the deletes completed before the end of the cycle, despite the failure of one of them
+        assertEquals(99, cleaned.size());
+        assertTrue(threads.size() > 1, threads.toString());
+        assertTrue(threads.stream().allMatch(t -> t.startsWith("GarbageCollectorDelete")), threads.toString());
+        gc.close();
+    }
+
+    @Test
+    public void sequentialDeletes() throws Exception {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        ScanAndCompareGarbageCollector gc = new ScanAndCompareGarbageCollector(newLedgerManager(),
+                newLedgerStorage(1L, 2L, 3L), conf, NullStatsLogger.INSTANCE);
+        List<Long> cleaned = new ArrayList<>();
+        Set<Thread> threads = new HashSet<>();
+        gc.gc(ledgerId -> {
+            threads.add(Thread.currentThread());
+            cleaned.add(ledgerId);
+        });
+        assertEquals(Arrays.asList(1L, 2L, 3L), cleaned);
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+        gc.close();
+    }
+}
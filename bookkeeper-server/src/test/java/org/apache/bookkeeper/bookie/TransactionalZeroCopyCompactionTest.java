@@ -0,0 +1,286 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogTransferScanner;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the transactional compaction copying the entries from file to file, and its recovery.
+ */
+@Timeout(60)
+public class TransactionalZeroCopyCompactionTest {
+
+    @TempDir
+    File ledgerDir;
+
+    private ServerConfiguration conf;
+    private DefaultEntryLogger entryLogger;
+    private final List<EntryLocation> updatedLocations = new ArrayList<>();
+    private final List<Long> removedLogs = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() throws Exception {
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+        conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setUseTransactionalCompaction(true);
+        conf.setZeroCopyCompactionEnabled(true);
+        entryLogger = new DefaultEntryLogger(conf);
+    }
+
+    @AfterEach
+    public void teardown() {
+        if (entryLogger != null) {
+            entryLogger.close();
+        }
+    }
+
+    private TransactionalEntryLogCompactor newCompactor() throws Exception {
+        CompactableLedgerStorage ledgerStorage = mock(CompactableLedgerStorage.class);
+        doAnswer(invocation -> {
+            Iterable<EntryLocation> locations = invocation.getArgument(0);
+            locations.forEach(updatedLocations::add);
+            return null;
+        }).when(ledgerStorage).updateEntriesLocations(any());
+        return new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, removedLogs::add);
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) (ledgerId + entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private static int entrySize(long ledgerId, long entryId) {
+        // The entries of ledger 3 are larger, so their adjacent copies are split in ranges of 1 MB
+        return ledgerId == 3 ? 100 * 1024 : 16 + (int) (entryId * 97 % 5000);
+    }
+
+    /**
+     * Write the entries of the ledgers 1, 2 and 3 in an entry log: the entries of ledgers 1 and 2 are
+     * interleaved, followed by a run of entries of ledger 3.
+     *
+     * @return the id of the entry log
+     */
+    private long writeEntryLog() throws Exception {
+        long location = 0;
+        for (long entryId = 0; entryId < 50; entryId++) {
+            location = entryLogger.addEntry(1, newEntry(1, entryId, entrySize(1, entryId)));
+            entryLogger.addEntry(2, newEntry(2, entryId, entrySize(2, entryId)));
+            if (entryId % 10 == 0) {
+                // Adjacent entries of ledger 1
+                entryLogger.addEntry(1, newEntry(1, 1000 + entryId, entrySize(1, 1000 + entryId)));
+            }
+        }
+        for (long entryId = 0; entryId < 25; entryId++) {
+            entryLogger.addEntry(3, newEntry(3, entryId, entrySize(3, entryId)));
+        }
+        entryLogger.flush();
+        return DefaultEntryLogger.logIdForOffset(location);
+    }
+
+    /**
+     * The metadata of the entry log, once ledger 2 is deleted.
+     */
+    private static EntryLogMetadata newMetadata(long logId) {
+        EntryLogMetadata metadata = new EntryLogMetadata(logId);
+        metadata.addLedgerSize(1, 1);
+        metadata.addLedgerSize(3, 1);
+        return metadata;
+    }
+
+    private void assertCompacted(long srcLogId) throws Exception {
+        assertEquals(1, removedLogs.size());
+        assertEquals(srcLogId, (long) removedLogs.get(0));
+
+        Map<Long, Integer> entriesPerLedger = new HashMap<>();
+        for (EntryLocation location : updatedLocations) {
+            assertTrue(DefaultEntryLogger.logIdForOffset(location.getLocation()) != srcLogId);
+            entriesPerLedger.merge(location.getLedger(), 1, Integer::sum);
+            ByteBuf entry = entryLogger.readEntry(location.getLedger(), location.getEntry(), location.getLocation());
+            try {
+                assertEquals(newEntry(location.getLedger(), location.getEntry(),
+                        entrySize(location.getLedger(), location.getEntry())), entry);
+            } finally {
+                entry.release();
+            }
+        }
+        assertEquals(55, (int) entriesPerLedger.get(1L));
+        assertEquals(25, (int) entriesPerLedger.get(3L));
+        assertFalse(entriesPerLedger.containsKey(2L));
+
+        File[] leftovers = BookieImpl.getCurrentDirectory(ledgerDir).listFiles(
+                f -> f.getName().endsWith(TransactionalEntryLogCompactor.COMPACTING_SUFFIX)
+                        || f.getName().endsWith(TransactionalEntryLogCompactor.COMPACTED_SUFFIX));
+        assertEquals(0, leftovers.length);
+    }
+
+    @Test
+    public void zeroCopyCompaction() throws Exception {
+        long srcLogId = writeEntryLog();
+        assertTrue(newCompactor().compact(newMetadata(srcLogId)));
+        assertCompacted(srcLogId);
+    }
+
+    @Test
+    public void entriesAreAcquiredBeforeTheirCopy() throws Exception {
+        long srcLogId = writeEntryLog();
+        CompactionEntryLog compactionLog = entryLogger.newCompactionLog(srcLogId);
+        File compactingFile = new File(BookieImpl.getCurrentDirectory(ledgerDir),
+                Long.toHexString(compactionLog.getDstLogId()) + TransactionalEntryLogCompactor.COMPACTING_SUFFIX);
+        List<Long> acquired = new ArrayList<>();
+        List<Long> processed = new ArrayList<>();
+        long[] copiedBytes = new long[1];
+
+        compactionLog.transferEntries(entryLogger, new EntryLogTransferScanner() {
+            @Override
+            public boolean accept(long ledgerId) {
+                return ledgerId != 2;
+            }
+
+            @Override
+            public void beforeTransfer(long ledgerId, long entryId, int entrySize) {
+                // Nothing is copied before the entries are acquired
+                assertTrue(compactingFile.length() <= DefaultEntryLogger.LOGFILE_HEADER_SIZE + copiedBytes[0]);
+                assertEquals(entrySize(ledgerId, entryId), entrySize);
+                acquired.add(entryId);
+            }
+
+            @Override
+            public void process(long ledgerId, long entryId, long location, int entrySize) {
+                assertTrue(acquired.contains(entryId));
+                copiedBytes[0] += 4 + entrySize;
+                processed.add(entryId);
+            }
+        });
+        assertEquals(80, acquired.size());
+        assertEquals(acquired, processed);
+        compactionLog.abort();
+    }
+
+    @Test
+    public void copyingFallback() throws Exception {
+        long srcLogId = writeEntryLog();
+        List<ByteBuf> added = new ArrayList<>();
+        CompactionEntryLog compactionLog = mock(CompactionEntryLog.class);
+        when(compactionLog.getSrcLogId()).thenReturn(srcLogId);
+        when(compactionLog.addEntry(anyLong(), any())).thenAnswer(invocation -> {
+            ByteBuf entry = invocation.getArgument(1);
+            added.add(Unpooled.copiedBuffer(entry));
+            return (long) added.size();
+        });
+        doCallRealMethod().when(compactionLog).transferEntries(any(), any());
+
+        List<EntryLocation> locations = new ArrayList<>();
+        compactionLog.transferEntries(entryLogger, new EntryLogTransferScanner() {
+            @Override
+            public boolean accept(long ledgerId) {
+                return ledgerId == 1;
+            }
+
+            @Override
+            public void beforeTransfer(long ledgerId, long entryId, int entrySize) {
+                assertEquals(locations.size(), added.size());
+            }
+
+            @Override
+            public void process(long ledgerId, long entryId, long location, int entrySize) {
+                assertEquals(entrySize(ledgerId, entryId), entrySize);
+                locations.add(new EntryLocation(ledgerId, entryId, location));
+            }
+        });
+
+        // The entries are read and added one by one
+        assertEquals(55, locations.size());
+        for (int i = 0; i < locations.size(); i++) {
+            EntryLocation location = locations.get(i);
+            assertEquals(i + 1, location.getLocation());
+            assertEquals(newEntry(1, location.getEntry(), entrySize(1, location.getEntry())), added.get(i));
+        }
+    }
+
+    @Test
+    public void recoverAfterMarkCompacted() throws Exception {
+        long srcLogId = writeEntryLog();
+        TransactionalEntryLogCompactor compactor = newCompactor();
+        CompactionEntryLog compactionLog = entryLogger.newCompactionLog(srcLogId);
+        assertTrue(compactor.new ScanEntryLogPhase(newMetadata(srcLogId), compactionLog).run());
+        assertTrue(compactor.new FlushCompactionLogPhase(compactionLog).run());
+
+        // Crash before the index is updated: the locations are recovered from the compacted log on restart
+        entryLogger.close();
+        entryLogger = new DefaultEntryLogger(conf);
+        assertTrue(updatedLocations.isEmpty());
+        newCompactor().cleanUpAndRecover();
+        assertCompacted(srcLogId);
+    }
+
+    @Test
+    public void recoverDuringTheCopy() throws Exception {
+        long srcLogId = writeEntryLog();
+        TransactionalEntryLogCompactor compactor = newCompactor();
+        CompactionEntryLog compactionLog = entryLogger.newCompactionLog(srcLogId);
+        assertTrue(compactor.new ScanEntryLogPhase(newMetadata(srcLogId), compactionLog).run());
+
+        // Crash before the compaction log is marked compacted: it is dropped on restart, and the entry log kept
+        entryLogger.close();
+        entryLogger = new DefaultEntryLogger(conf);
+        newCompactor().cleanUpAndRecover();
+        assertTrue(updatedLocations.isEmpty());
+        assertTrue(removedLogs.isEmpty());
+        File[] leftovers = BookieImpl.getCurrentDirectory(ledgerDir).listFiles(
+                f -> f.getName().endsWith(TransactionalEntryLogCompactor.COMPACTING_SUFFIX));
+        assertEquals(0, leftovers.length);
+
+        // And compacted again
+        assertTrue(newCompactor().compact(newMetadata(srcLogId)));
+        assertCompacted(srcLogId);
+    }
+}
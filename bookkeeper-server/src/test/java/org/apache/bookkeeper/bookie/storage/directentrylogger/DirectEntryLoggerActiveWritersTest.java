@@ -0,0 +1,265 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.bookkeeper.slogger.Slogger;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link DirectEntryLogger} writing the entries of each ledger to its own entry log.
+ */
+@Timeout(60)
+public class DirectEntryLoggerActiveWritersTest {
+
+    private static final int ENTRY_SIZE = 1024;
+
+    @TempDir
+    File ledgerDir;
+
+    private final NativeIO nativeIO = new NativeIOImpl();
+    private final AtomicInteger ids = new AtomicInteger();
+    private ExecutorService writeExecutor;
+    private ExecutorService flushExecutor;
+
+    @BeforeEach
+    public void setup() {
+        writeExecutor = Executors.newSingleThreadExecutor();
+        flushExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    public void teardown() {
+        writeExecutor.shutdownNow();
+        flushExecutor.shutdownNow();
+    }
+
+    private DirectEntryLogger newEntryLogger(int maxActiveWriters, int writerIdleTimeSeconds) throws Exception {
+        return newEntryLogger(maxActiveWriters, writerIdleTimeSeconds, 64 * 1024);
+    }
+
+    private DirectEntryLogger newEntryLogger(int maxActiveWriters, int writerIdleTimeSeconds, int maxSaneEntrySize)
+            throws Exception {
+        return new DirectEntryLogger(ledgerDir, ids::incrementAndGet, nativeIO, ByteBufAllocator.DEFAULT,
+                writeExecutor, flushExecutor, 1024 * 1024, maxSaneEntrySize, 4 * 1024 * 1024, 1024 * 1024,
+                64 * 1024, 1, 300, false, maxActiveWriters, writerIdleTimeSeconds, Slogger.NULL,
+                NullStatsLogger.INSTANCE);
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) (ledgerId + entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private static int logId(long location) {
+        return (int) (location >> 32);
+    }
+
+    private static void assertEntry(DirectEntryLogger entryLogger, long ledgerId, long entryId, long location)
+            throws Exception {
+        ByteBuf entry = entryLogger.readEntry(ledgerId, entryId, location);
+        try {
+            assertEquals(newEntry(ledgerId, entryId), entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    /**
+     * Get the ledgers of the entries of an entry log, with their count.
+     */
+    private static Map<Long, Integer> scanLedgers(DirectEntryLogger entryLogger, int logId) throws IOException {
+        Map<Long, Integer> ledgers = new HashMap<>();
+        entryLogger.scanEntryLog(logId, new EntryLogScanner() {
+            @Override
+            public boolean accept(long ledgerId) {
+                return true;
+            }
+
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) {
+                ledgers.merge(ledgerId, 1, Integer::sum);
+            }
+        });
+        return ledgers;
+    }
+
+    @Test
+    public void eachLedgerHasItsLog() throws Exception {
+        long[][] locations = new long[3][100];
+        try (DirectEntryLogger entryLogger = newEntryLogger(4, 0)) {
+            for (int entryId = 0; entryId < 100; entryId++) {
+                for (int ledgerId = 0; ledgerId < 3; ledgerId++) {
+                    locations[ledgerId][entryId] = entryLogger.addEntry(ledgerId, newEntry(ledgerId, entryId));
+                }
+            }
+            entryLogger.flush();
+
+            Set<Integer> logIds = new HashSet<>();
+            for (int ledgerId = 0; ledgerId < 3; ledgerId++) {
+                int logId = logId(locations[ledgerId][0]);
+                assertTrue(logIds.add(logId));
+                for (int entryId = 0; entryId < 100; entryId++) {
+                    assertEquals(logId, logId(locations[ledgerId][entryId]));
+                    assertEntry(entryLogger, ledgerId, entryId, locations[ledgerId][entryId]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void evictTheLeastRecentlyWrittenLog() throws Exception {
+        try (DirectEntryLogger entryLogger = newEntryLogger(2, 0)) {
+            long l1 = entryLogger.addEntry(1, newEntry(1, 0));
+            long l2 = entryLogger.addEntry(2, newEntry(2, 0));
+            // Ledger 1 is written again: ledger 2 is the least recently written
+            assertEquals(logId(l1), logId(entryLogger.addEntry(1, newEntry(1, 1))));
+
+            long l3 = entryLogger.addEntry(3, newEntry(3, 0));
+            assertEquals(logId(l1), logId(entryLogger.addEntry(1, newEntry(1, 2))));
+            assertEquals(logId(l3), logId(entryLogger.addEntry(3, newEntry(3, 1))));
+
+            // The log of ledger 2 was closed: its next entry goes to a new log
+            long l2b = entryLogger.addEntry(2, newEntry(2, 1));
+            assertNotEquals(logId(l2), logId(l2b));
+            assertTrue(logId(l2b) > logId(l3));
+            entryLogger.flush();
+
+            assertEntry(entryLogger, 2, 0, l2);
+            assertEntry(entryLogger, 2, 1, l2b);
+            assertEquals(1, (int) scanLedgers(entryLogger, logId(l2)).get(2L));
+            assertTrue(entryLogger.getFlushedLogIds().contains((long) logId(l2)));
+        }
+    }
+
+    @Test
+    public void closeIdleLogs() throws Exception {
+        try (DirectEntryLogger entryLogger = newEntryLogger(4, 1)) {
+            long l1 = entryLogger.addEntry(1, newEntry(1, 0));
+            long l2 = entryLogger.addEntry(2, newEntry(2, 0));
+            Thread.sleep(1100);
+            assertEquals(logId(l2), logId(entryLogger.addEntry(2, newEntry(2, 1))));
+
+            // Ledger 1 has not been written for the idle time: its log is closed on flush
+            entryLogger.flush();
+            assertTrue(entryLogger.getFlushedLogIds().contains((long) logId(l1)));
+            long l1b = entryLogger.addEntry(1, newEntry(1, 1));
+            assertNotEquals(logId(l1), logId(l1b));
+            assertEquals(logId(l2), logId(entryLogger.addEntry(2, newEntry(2, 2))));
+            entryLogger.flush();
+
+            assertEntry(entryLogger, 1, 0, l1);
+            assertEntry(entryLogger, 1, 1, l1b);
+        }
+    }
+
+    @Test
+    public void recoverTheLogsOfSeveralWriters() throws Exception {
+        int ledgers = 6;
+        int entries = 200;
+        List<long[]> locations = new ArrayList<>();
+        for (int ledgerId = 0; ledgerId < ledgers; ledgerId++) {
+            locations.add(new long[entries]);
+        }
+
+        // More ledgers than writers, and logs rolled over at 1 MB
+        DirectEntryLogger entryLogger = newEntryLogger(4, 0);
+        for (int entryId = 0; entryId < entries; entryId++) {
+            for (int ledgerId = 0; ledgerId < ledgers; ledgerId++) {
+                locations.get(ledgerId)[entryId] = entryLogger.addEntry(ledgerId, newEntry(ledgerId, entryId));
+            }
+        }
+        entryLogger.flush();
+
+        // The bookie restarts without closing the open logs
+        Set<Integer> logIds = new HashSet<>();
+        try (DirectEntryLogger recovered = newEntryLogger(4, 0)) {
+            Map<Long, Integer> scannedEntries = new HashMap<>();
+            for (int ledgerId = 0; ledgerId < ledgers; ledgerId++) {
+                for (int entryId = 0; entryId < entries; entryId++) {
+                    long location = locations.get(ledgerId)[entryId];
+                    assertEntry(recovered, ledgerId, entryId, location);
+                    logIds.add(logId(location));
+                }
+            }
+            for (int logId : logIds) {
+                // Each log holds the entries of a single ledger
+                Map<Long, Integer> logLedgers = scanLedgers(recovered, logId);
+                assertEquals(1, logLedgers.size(), logLedgers.toString());
+                logLedgers.forEach((ledgerId, count) -> scannedEntries.merge(ledgerId, count, Integer::sum));
+            }
+            for (long ledgerId = 0; ledgerId < ledgers; ledgerId++) {
+                assertEquals(entries, (int) scannedEntries.get(ledgerId));
+            }
+
+            // The recovered entry logger writes new logs
+            long location = recovered.addEntry(0, newEntry(0, entries));
+            assertFalse(logIds.contains(logId(location)));
+            recovered.flush();
+            assertEntry(recovered, 0, entries, location);
+        } finally {
+            entryLogger.close();
+        }
+    }
+
+    @Test
+    public void invalidConfiguration() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> newEntryLogger(0, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> newEntryLogger(DirectEntryLogger.MAX_ACTIVE_WRITERS + 1, 0));
+        // The write buffers of 4 MB split across 64 writers cannot hold entries of 1 MB
+        assertThrows(IllegalArgumentException.class, () -> newEntryLogger(64, 0, 1024 * 1024));
+        newEntryLogger(1, 0, 1024 * 1024).close();
+        newEntryLogger(DirectEntryLogger.MAX_ACTIVE_WRITERS, 0, 4 * 1024).close();
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.bookkeeper.common.util.nativeio.NativeIORing;
+import org.apache.bookkeeper.slogger.Slogger;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of the rings submitting the writes of {@link DirectEntryLogger}: the io_uring ring, and the
+ * blocking ring used in its place when io_uring is not available.
+ */
+@Timeout(60)
+public class DirectEntryLoggerIoRingTest {
+
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BLOCKS = 16;
+
+    @TempDir
+    File tmpDir;
+
+    private final NativeIO nativeIO = new NativeIOImpl();
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor();
+    private byte[] data;
+    private long buffer;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        buffer = nativeIO.posix_memalign(BLOCK_SIZE, BLOCK_SIZE * BLOCKS);
+
+        // Fill the native buffer, by reading the data from a file
+        data = new byte[BLOCK_SIZE * BLOCKS];
+        new Random(1).nextBytes(data);
+        File source = new File(tmpDir, "source");
+        Files.write(source.toPath(), data);
+        int fd = nativeIO.open(source.getPath(), NativeIO.O_RDONLY, 0644);
+        try {
+            assertEquals(data.length, nativeIO.pread(fd, buffer, data.length, 0));
+        } finally {
+            nativeIO.close(fd);
+        }
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        writeExecutor.shutdownNow();
+        flushExecutor.shutdownNow();
+        nativeIO.free(buffer);
+    }
+
+    private NativeIORing newIoUringRing(int entries) {
+        try {
+            return nativeIO.newIoUringRing(entries);
+        } catch (NativeIOException e) {
+            assumeTrue(false, "io_uring is not available: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeBlocks(NativeIORing ring, File file) throws Exception {
+        int fd = nativeIO.open(file.getPath(), NativeIO.O_CREAT | NativeIO.O_WRONLY, 0644);
+        try {
+            // Write the blocks in reverse order, with a single submit
+            List<CompletableFuture<Integer>> writes = new ArrayList<>();
+            for (int i = BLOCKS - 1; i >= 0; i--) {
+                writes.add(ring.pwrite(fd, buffer + (long) i * BLOCK_SIZE, BLOCK_SIZE, (long) i * BLOCK_SIZE));
+            }
+            CompletableFuture<Integer> fsync = ring.fsync(fd);
+            ring.submit();
+
+            for (CompletableFuture<Integer> write : writes) {
+                assertEquals(BLOCK_SIZE, (int) write.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(0, (int) fsync.get(10, TimeUnit.SECONDS));
+        } finally {
+            nativeIO.close(fd);
+        }
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void writeWithIoUring() throws Exception {
+        NativeIORing ring = newIoUringRing(64);
+        try {
+            writeBlocks(ring, new File(tmpDir, "target"));
+            // Nothing to submit
+            ring.submit();
+        } finally {
+            ring.close();
+        }
+    }
+
+    @Test
+    public void writeMoreThanTheSubmissionQueue() throws Exception {
+        // The submission queue gets full, and is submitted while the operations are queued
+        NativeIORing ring = newIoUringRing(2);
+        try {
+            writeBlocks(ring, new File(tmpDir, "target"));
+        } finally {
+            ring.close();
+        }
+    }
+
+    @Test
+    public void fsyncsOfSeveralFilesWithIoUring() throws Exception {
+        NativeIORing ring = newIoUringRing(64);
+        File file1 = new File(tmpDir, "target1");
+        File file2 = new File(tmpDir, "target2");
+        int fd1 = nativeIO.open(file1.getPath(), NativeIO.O_CREAT | NativeIO.O_WRONLY, 0644);
+        int fd2 = nativeIO.open(file2.getPath(), NativeIO.O_CREAT | NativeIO.O_WRONLY, 0644);
+        try {
+            // The writes of both files are interleaved, each fsync only waits for the writes of its file
+            List<CompletableFuture<Integer>> writes = new ArrayList<>();
+            for (int i = 0; i < BLOCKS; i++) {
+                writes.add(ring.pwrite(fd1, buffer + (long) i * BLOCK_SIZE, BLOCK_SIZE, (long) i * BLOCK_SIZE));
+                writes.add(ring.pwrite(fd2, buffer + (long) i * BLOCK_SIZE, BLOCK_SIZE, (long) i * BLOCK_SIZE));
+            }
+            CompletableFuture<Integer> fsync1 = ring.fsync(fd1);
+            CompletableFuture<Integer> fsync2 = ring.fsync(fd2);
+            // Nothing written to the file since its last fsync
+            CompletableFuture<Integer> fsync3 = ring.fsync(fd1);
+            ring.submit();
+
+            assertEquals(0, (int) fsync1.get(10, TimeUnit.SECONDS));
+            assertEquals(0, (int) fsync2.get(10, TimeUnit.SECONDS));
+            assertEquals(0, (int) fsync3.get(10, TimeUnit.SECONDS));
+            for (CompletableFuture<Integer> write : writes) {
+                assertTrue(write.isDone());
+            }
+        } finally {
+            nativeIO.close(fd1);
+            nativeIO.close(fd2);
+            ring.close();
+        }
+        assertArrayEquals(data, Files.readAllBytes(file1.toPath()));
+        assertArrayEquals(data, Files.readAllBytes(file2.toPath()));
+    }
+
+    @Test
+    public void failedIoUringOperation() throws Exception {
+        NativeIORing ring = newIoUringRing(8);
+        try {
+            // Invalid file descriptor: the failure is reported by the completion, not by the submit
+            CompletableFuture<Integer> write = ring.pwrite(-1, buffer, BLOCK_SIZE, 0);
+            ring.submit();
+            ExecutionException e = assertThrows(ExecutionException.class, () -> write.get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof NativeIOException);
+
+            // The ring is still usable
+            writeBlocks(ring, new File(tmpDir, "target"));
+        } finally {
+            ring.close();
+        }
+    }
+
+    @Test
+    public void closedIoUringRing() throws Exception {
+        NativeIORing ring = newIoUringRing(8);
+        File file = new File(tmpDir, "target");
+        int fd = nativeIO.open(file.getPath(), NativeIO.O_CREAT | NativeIO.O_WRONLY, 0644);
+        try {
+            // The operations submitted before the close complete
+            CompletableFuture<Integer> write = ring.pwrite(fd, buffer, BLOCK_SIZE, 0);
+            ring.submit();
+            ring.close();
+            assertEquals(BLOCK_SIZE, (int) write.get(10, TimeUnit.SECONDS));
+
+            assertThrows(NativeIOException.class, () -> ring.pwrite(fd, buffer, BLOCK_SIZE, 0));
+            assertThrows(NativeIOException.class, () -> ring.fsync(fd));
+            assertThrows(NativeIOException.class, ring::submit);
+            // Closing again has no effect
+            ring.close();
+        } finally {
+            nativeIO.close(fd);
+        }
+    }
+
+    @Test
+    public void writeWithBlockingRing() throws Exception {
+        NativeIORing ring = nativeIO.newBlockingRing(writeExecutor);
+        try {
+            writeBlocks(ring, new File(tmpDir, "target"));
+        } finally {
+            ring.close();
+        }
+    }
+
+    @Test
+    public void entryLoggerWithIoUring() throws Exception {
+        // Uses io_uring when available, the blocking ring otherwise
+        writeAndReadEntries(nativeIO);
+    }
+
+    @Test
+    public void entryLoggerFallsBackToBlockingRing() throws Exception {
+        AtomicInteger ioUringRequests = new AtomicInteger();
+        NativeIO withoutIoUring = new DelegatingNativeIO(nativeIO) {
+            @Override
+            public NativeIORing newIoUringRing(int entries) throws NativeIOException {
+                ioUringRequests.incrementAndGet();
+                throw new NativeIOException("io_uring is not available");
+            }
+        };
+        writeAndReadEntries(withoutIoUring);
+        assertEquals(2, ioUringRequests.get());
+    }
+
+    private DirectEntryLogger newEntryLogger(NativeIO nativeIO, File ledgerDir, AtomicInteger ids)
+            throws Exception {
+        return new DirectEntryLogger(ledgerDir, ids::incrementAndGet, nativeIO, ByteBufAllocator.DEFAULT,
+                writeExecutor, flushExecutor, 1024 * 1024, 1024 * 1024, 4 * 1024 * 1024, 1024 * 1024,
+                64 * 1024, 1, 300, true, Slogger.NULL, NullStatsLogger.INSTANCE);
+    }
+
+    private void writeAndReadEntries(NativeIO nativeIO) throws Exception {
+        File ledgerDir = new File(tmpDir, "ledgers");
+        assertTrue(ledgerDir.mkdirs());
+        AtomicInteger ids = new AtomicInteger();
+
+        // Enough entries to roll over the entry logs of 1 MB
+        int entries = 500;
+        long[] locations = new long[entries];
+        try (DirectEntryLogger entryLogger = newEntryLogger(nativeIO, ledgerDir, ids)) {
+            for (int i = 0; i < entries; i++) {
+                locations[i] = entryLogger.addEntry(1, newEntry(1, i));
+            }
+            entryLogger.flush();
+            assertEntries(entryLogger, locations);
+        }
+
+        try (DirectEntryLogger entryLogger = newEntryLogger(nativeIO, ledgerDir, ids)) {
+            assertEntries(entryLogger, locations);
+        }
+    }
+
+    private static void assertEntries(DirectEntryLogger entryLogger, long[] locations) throws Exception {
+        for (int i = 0; i < locations.length; i++) {
+            ByteBuf entry = entryLogger.readEntry(1, i, locations[i]);
+            try {
+                assertEquals(newEntry(1, i), entry);
+            } finally {
+                entry.release();
+            }
+        }
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(10 * 1024);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) (entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private static class DelegatingNativeIO implements NativeIO {
+        private final NativeIO delegate;
+
+        DelegatingNativeIO(NativeIO delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int open(String pathname, int flags, int mode) throws NativeIOException {
+            return delegate.open(pathname, flags, mode);
+        }
+
+        @Override
+        public int fsync(int fd) throws NativeIOException {
+            return delegate.fsync(fd);
+        }
+
+        @Override
+        public int fallocate(int fd, int mode, long offset, long len) throws NativeIOException {
+            return delegate.fallocate(fd, mode, offset, len);
+        }
+
+        @Override
+        public int posix_fadvise(int fd, long offset, long len, int flag) throws NativeIOException {
+            return delegate.posix_fadvise(fd, offset, len, flag);
+        }
+
+        @Override
+        public int pwrite(int fd, long pointer, int count, long offset) throws NativeIOException {
+            return delegate.pwrite(fd, pointer, count, offset);
+        }
+
+        @Override
+        public long posix_memalign(int alignment, int size) throws NativeIOException {
+            return delegate.posix_memalign(alignment, size);
+        }
+
+        @Override
+        public void free(long pointer) throws NativeIOException {
+            delegate.free(pointer);
+        }
+
+        @Override
+        public long lseek(int fd, long offset, int whence) throws NativeIOException {
+            return delegate.lseek(fd, offset, whence);
+        }
+
+        @Override
+        public long pread(int fd, long pointer, long size, long offset) throws NativeIOException {
+            return delegate.pread(fd, pointer, size, offset);
+        }
+
+        @Override
+        public int close(int fd) throws NativeIOException {
+            return delegate.close(fd);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ArrayGroupSort}.
+ */
+public class ArrayGroupSortTest {
+
+    @Test
+    public void simple() {
+        long[] items = new long[] {
+                1, 2, 3, 4,
+                1, 1, 5, 5,
+                0, 9, 6, 6,
+                1, 0, 7, 7,
+        };
+
+        ArrayGroupSort.sort(items);
+
+        assertArrayEquals(new long[] {
+                0, 9, 6, 6,
+                1, 0, 7, 7,
+                1, 1, 5, 5,
+                1, 2, 3, 4,
+        }, items);
+    }
+
+    @Test
+    public void sortSubRangeWithOffset() {
+        // The groups outside of the range must not be touched, in particular the ones before the offset
+        long[] items = new long[] {
+                0, 0, 1, 1,
+                9, 9, 2, 2,
+                5, 0, 3, 3,
+                3, 0, 4, 4,
+                4, 0, 5, 5,
+                -1, -1, 6, 6,
+        };
+
+        ArrayGroupSort.sort(items, 8, 12);
+
+        assertArrayEquals(new long[] {
+                0, 0, 1, 1,
+                9, 9, 2, 2,
+                3, 0, 4, 4,
+                4, 0, 5, 5,
+                5, 0, 3, 3,
+                -1, -1, 6, 6,
+        }, items);
+    }
+
+    @Test
+    public void sortSubRangesAgainstReference() {
+        Random random = new Random(1);
+        // Both below and above the insertion sort threshold
+        for (int groups : new int[] { 1, 2, 5, 24, 25, 26, 100, 1000 }) {
+            for (int offsetGroups : new int[] { 0, 1, 3 }) {
+                int trailingGroups = 2;
+                long[] items = new long[(offsetGroups + groups + trailingGroups) * 4];
+                for (int i = 0; i < items.length; i++) {
+                    // Few distinct keys, to have duplicates
+                    items[i] = i % 4 < 2 ? random.nextInt(10) : random.nextLong();
+                }
+
+                long[] expected = referenceSort(items, offsetGroups * 4, groups * 4);
+                ArrayGroupSort.sort(items, offsetGroups * 4, groups * 4);
+                assertSameGroups(expected, items, offsetGroups * 4, groups * 4);
+            }
+        }
+    }
+
+    @Test
+    public void invalidLength() {
+        assertThrows(IllegalArgumentException.class, () -> ArrayGroupSort.sort(new long[] { 1, 2, 3 }));
+        assertThrows(IllegalArgumentException.class, () -> ArrayGroupSort.sort(new long[8], 4, 3));
+    }
+
+    private static long[] referenceSort(long[] items, int offset, int length) {
+        long[][] groups = groups(items, offset, length);
+        Arrays.sort(groups, Comparator.<long[]>comparingLong(g -> g[0]).thenComparingLong(g -> g[1]));
+
+        long[] sorted = items.clone();
+        for (int i = 0; i < groups.length; i++) {
+            System.arraycopy(groups[i], 0, sorted, offset + i * 4, 4);
+        }
+        return sorted;
+    }
+
+    // The sort is not stable: groups with the same key can be in any order
+    private static void assertSameGroups(long[] expected, long[] actual, int offset, int length) {
+        assertArrayEquals(Arrays.copyOfRange(expected, 0, offset), Arrays.copyOfRange(actual, 0, offset));
+        assertArrayEquals(Arrays.copyOfRange(expected, offset + length, expected.length),
+                Arrays.copyOfRange(actual, offset + length, actual.length));
+
+        long[] expectedKeys = new long[length / 2];
+        long[] actualKeys = new long[length / 2];
+        for (int i = 0; i < length / 4; i++) {
+            expectedKeys[2 * i] = expected[offset + i * 4];
+            expectedKeys[2 * i + 1] = expected[offset + i * 4 + 1];
+            actualKeys[2 * i] = actual[offset + i * 4];
+            actualKeys[2 * i + 1] = actual[offset + i * 4 + 1];
+        }
+        assertArrayEquals(expectedKeys, actualKeys);
+
+        long[][] expectedGroups = groups(expected, offset, length);
+        long[][] actualGroups = groups(actual, offset, length);
+        Comparator<long[]> all = Comparator.<long[]>comparingLong(g -> g[0]).thenComparingLong(g -> g[1])
+                .thenComparingLong(g -> g[2]).thenComparingLong(g -> g[3]);
+        Arrays.sort(expectedGroups, all);
+        Arrays.sort(actualGroups, all);
+        for (int i = 0; i < expectedGroups.length; i++) {
+            assertArrayEquals(expectedGroups[i], actualGroups[i]);
+        }
+    }
+
+    private static long[][] groups(long[] items, int offset, int length) {
+        long[][] groups = new long[length / 4][];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = Arrays.copyOfRange(items, offset + i * 4, offset + i * 4 + 4);
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.TestBookieImpl;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the ring of write caches of {@link SingleDirectoryDbLedgerStorage}, and for its pipelined flush.
+ */
+@Timeout(120)
+public class DbLedgerStorageWriteCachesTest {
+
+    private static final int ENTRY_SIZE = 100 * 1024;
+
+    @TempDir
+    File tmpDir;
+
+    private DbLedgerStorage storage;
+
+    @AfterEach
+    public void teardown() throws Exception {
+        if (storage != null) {
+            storage.shutdown();
+        }
+    }
+
+    private DbLedgerStorage newStorage(int writeCachesCount) throws Exception {
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(tmpDir));
+
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setGcWaitTime(1000);
+        conf.setLedgerStorageClass(DbLedgerStorage.class.getName());
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 4);
+        conf.setProperty(DbLedgerStorage.WRITE_CACHES_COUNT, writeCachesCount);
+        conf.setProperty(DbLedgerStorage.MAX_THROTTLE_TIME_MILLIS, 30_000);
+        conf.setLedgerDirNames(new String[] { tmpDir.toString() });
+        Bookie bookie = new TestBookieImpl(conf);
+        return (DbLedgerStorage) bookie.getLedgerStorage();
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1); // lac
+        while (entry.isWritable()) {
+            entry.writeByte((byte) (ledgerId + entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private void assertEntry(long ledgerId, long entryId, int size) throws Exception {
+        ByteBuf entry = storage.getEntry(ledgerId, entryId);
+        try {
+            assertEquals(newEntry(ledgerId, entryId, size), entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    private boolean isFlushRequired() {
+        return storage.getLedgerStorageList().stream().anyMatch(SingleDirectoryDbLedgerStorage::isFlushRequired);
+    }
+
+    @Test
+    public void addAndReadAcrossWriteCaches() throws Exception {
+        storage = newStorage(4);
+        storage.setMasterKey(1, "key".getBytes());
+
+        // 3 MB: more than a single write cache of 1 MB
+        int entries = 30;
+        for (long entryId = 0; entryId < entries; entryId++) {
+            storage.addEntry(newEntry(1, entryId, ENTRY_SIZE));
+
+            // Every entry is readable, whether it's in the current write cache, in a sealed one or flushed
+            for (long e = 0; e <= entryId; e++) {
+                assertEntry(1, e, ENTRY_SIZE);
+            }
+            ByteBuf lastEntry = storage.getLastEntry(1);
+            assertEquals(newEntry(1, entryId, ENTRY_SIZE), lastEntry);
+            lastEntry.release();
+        }
+
+        storage.flush();
+        assertFalse(isFlushRequired());
+        assertEquals(entries - 1, storage.getLastEntryInLedger(1));
+        for (long entryId = 0; entryId < entries; entryId++) {
+            assertEntry(1, entryId, ENTRY_SIZE);
+        }
+
+        // The write caches are reused after the flush
+        for (long entryId = entries; entryId < 2 * entries; entryId++) {
+            storage.addEntry(newEntry(1, entryId, ENTRY_SIZE));
+        }
+        storage.flush();
+        for (long entryId = 0; entryId < 2 * entries; entryId++) {
+            assertEntry(1, entryId, ENTRY_SIZE);
+        }
+    }
+
+    @Test
+    public void entriesArePersistedInOrder() throws Exception {
+        storage = newStorage(4);
+        storage.setMasterKey(1, "key".getBytes());
+
+        // The same entry is written again in a later write cache: the most recent one must be kept
+        int entries = 30;
+        for (long entryId = 0; entryId < entries; entryId++) {
+            storage.addEntry(newEntry(1, entryId, ENTRY_SIZE));
+        }
+        storage.addEntry(newEntry(1, 0, 2 * ENTRY_SIZE));
+        storage.flush();
+        storage.shutdown();
+
+        storage = newStorage(4);
+        assertEntry(1, 0, 2 * ENTRY_SIZE);
+        for (long entryId = 1; entryId < entries; entryId++) {
+            assertEntry(1, entryId, ENTRY_SIZE);
+        }
+        assertEquals(entries - 1, storage.getLastEntryInLedger(1));
+    }
+
+    @Test
+    public void deleteLedgerInSealedWriteCaches() throws Exception {
+        storage = newStorage(4);
+        storage.setMasterKey(1, "key".getBytes());
+        storage.setMasterKey(2, "key".getBytes());
+
+        for (long entryId = 0; entryId < 15; entryId++) {
+            storage.addEntry(newEntry(1, entryId, ENTRY_SIZE));
+            storage.addEntry(newEntry(2, entryId, ENTRY_SIZE));
+        }
+        storage.deleteLedger(1);
+        for (long entryId = 0; entryId < 15; entryId++) {
+            assertEntry(2, entryId, ENTRY_SIZE);
+        }
+
+        storage.flush();
+        for (long entryId = 0; entryId < 15; entryId++) {
+            assertEntry(2, entryId, ENTRY_SIZE);
+        }
+        // The entries flushed before the deletion are removed from the index in background, after the flush
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (storage.getLocation(1, 0) != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        for (long entryId = 0; entryId < 15; entryId++) {
+            long e = entryId;
+            assertEquals(0, storage.getLocation(1, entryId));
+            assertThrows(Exception.class, () -> storage.getEntry(1, e));
+        }
+    }
+
+    @Test
+    public void concurrentWritersWithPipelinedFlush() throws Exception {
+        storage = newStorage(4);
+        int writers = 4;
+        int entries = 200;
+        int entrySize = 20 * 1024;
+        for (long ledgerId = 0; ledgerId < writers; ledgerId++) {
+            storage.setMasterKey(ledgerId, "key".getBytes());
+        }
+
+        // 16 MB in total, so the write caches are sealed and flushed many times while the writers go on
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (long ledgerId = 0; ledgerId < writers; ledgerId++) {
+                long l = ledgerId;
+                futures.add(executor.submit(() -> {
+                    for (long entryId = 0; entryId < entries; entryId++) {
+                        storage.addEntry(newEntry(l, entryId, entrySize));
+                    }
+                    return null;
+                }));
+            }
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10; i++) {
+                    storage.flush();
+                    Thread.sleep(10);
+                }
+                return null;
+            }));
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        storage.flush();
+        assertFalse(isFlushRequired());
+        for (long ledgerId = 0; ledgerId < writers; ledgerId++) {
+            assertEquals(entries - 1, storage.getLastEntryInLedger(ledgerId));
+            for (long entryId = 0; entryId < entries; entryId++) {
+                assertEntry(ledgerId, entryId, entrySize);
+            }
+        }
+    }
+
+    @Test
+    public void twoWriteCaches() throws Exception {
+        storage = newStorage(2);
+        storage.setMasterKey(1, "key".getBytes());
+
+        // Larger than a write cache of 2 MB: the add is throttled until the flush swaps the write caches
+        int entries = 50;
+        for (long entryId = 0; entryId < entries; entryId++) {
+            storage.addEntry(newEntry(1, entryId, ENTRY_SIZE));
+        }
+        storage.flush();
+        assertFalse(isFlushRequired());
+        for (long entryId = 0; entryId < entries; entryId++) {
+            assertEntry(1, entryId, ENTRY_SIZE);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link EntryLocationIndex}.
+ */
+public class EntryLocationIndexTest {
+
+    @TempDir
+    File baseDir;
+
+    private KeyValueStorage storage;
+
+    private EntryLocationIndex open() throws Exception {
+        return open(EntryLocationIndex.STORAGE_MAPPED);
+    }
+
+    // Open the index, keeping a spy of its storage to check which lookups reach it
+    private EntryLocationIndex open(String storageType) throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setProperty(DbLedgerStorage.ENTRY_LOCATION_INDEX_STORAGE, storageType);
+        KeyValueStorageFactory factory = EntryLocationIndex.getStorageFactory(conf);
+        return new EntryLocationIndex(conf, (basePath, subPath, dbConfigType, c) -> {
+            storage = spy(factory.newKeyValueStorage(basePath, subPath, dbConfigType, c));
+            return storage;
+        }, baseDir.getPath(), NullStatsLogger.INSTANCE);
+    }
+
+    @Test
+    public void lookupsDoNotTrackLedgers() throws Exception {
+        try (EntryLocationIndex index = open()) {
+            for (long ledgerId = 0; ledgerId < 1000; ledgerId++) {
+                assertEquals(0, index.getLocation(ledgerId, 0));
+            }
+            assertEquals(0, index.watermarksCount());
+        }
+    }
+
+    @Test
+    public void lookupsPastTheLastEntry() throws Exception {
+        try (EntryLocationIndex index = open()) {
+            index.addLocation(1, 0, 100);
+            index.addLocation(1, 1, 200);
+            assertEquals(1, index.watermarksCount());
+
+            assertEquals(100, index.getLocation(1, 0));
+            assertEquals(200, index.getLocation(1, 1));
+            assertEquals(0, index.getLocation(1, 2));
+
+            index.addLocation(1, 5, 300);
+            assertEquals(300, index.getLocation(1, 5));
+            assertEquals(0, index.getLocation(1, 3));
+        }
+
+        // After a restart the watermark is loaded with the index
+        try (EntryLocationIndex index = open()) {
+            assertEquals(1, index.watermarksCount());
+            assertEquals(300, index.getLocation(1, 5));
+            assertEquals(0, index.getLocation(1, 6));
+
+            index.addLocation(1, 3, 400);
+            assertEquals(400, index.getLocation(1, 3));
+            assertEquals(300, index.getLocation(1, 5));
+            assertEquals(1, index.watermarksCount());
+        }
+    }
+
+    @Test
+    public void deleteDropsTheWatermark() throws Exception {
+        try (EntryLocationIndex index = open()) {
+            index.addLocation(1, 0, 100);
+            index.addLocation(2, 0, 100);
+            assertEquals(2, index.watermarksCount());
+
+            index.delete(1);
+            assertEquals(1, index.watermarksCount());
+            index.removeOffsetFromDeletedLedgers();
+            assertEquals(0, index.getLocation(1, 0));
+            assertEquals(100, index.getLocation(2, 0));
+            assertEquals(1, index.watermarksCount());
+        }
+    }
+
+    @Test
+    public void negativeLookupsAfterRestart() throws Exception {
+        negativeLookupsAfterRestart(EntryLocationIndex.STORAGE_MAPPED);
+    }
+
+    @Test
+    public void negativeLookupsAfterRestartWithRocksDB() throws Exception {
+        negativeLookupsAfterRestart(EntryLocationIndex.STORAGE_ROCKSDB);
+    }
+
+    private void negativeLookupsAfterRestart(String storageType) throws Exception {
+        try (EntryLocationIndex index = open(storageType)) {
+            for (long ledgerId = 1; ledgerId <= 100; ledgerId += 3) {
+                for (long entryId = 0; entryId < ledgerId; entryId++) {
+                    index.addLocation(ledgerId, entryId, ledgerId * 1000 + entryId + 1);
+                }
+            }
+            index.addLocation(Long.MAX_VALUE, 0, 1);
+        }
+
+        try (EntryLocationIndex index = open(storageType)) {
+            assertEquals(35, index.watermarksCount());
+            clearInvocations(storage);
+
+            // Unknown ledgers and entries past the last entry of the ledgers written before the restart
+            for (long ledgerId = 0; ledgerId <= 101; ledgerId++) {
+                long lastEntryId = ledgerId % 3 == 1 ? ledgerId - 1 : -1;
+                assertEquals(0, index.getLocation(ledgerId, lastEntryId + 1));
+                assertEquals(0, index.getLocation(ledgerId, lastEntryId + 10));
+            }
+            verify(storage, never()).get(any(byte[].class), any(byte[].class));
+
+            // The entries written before the restart are still found
+            for (long ledgerId = 1; ledgerId <= 100; ledgerId += 3) {
+                for (long entryId = 0; entryId < ledgerId; entryId++) {
+                    assertEquals(ledgerId * 1000 + entryId + 1, index.getLocation(ledgerId, entryId));
+                }
+            }
+            assertEquals(1, index.getLocation(Long.MAX_VALUE, 0));
+        }
+    }
+}
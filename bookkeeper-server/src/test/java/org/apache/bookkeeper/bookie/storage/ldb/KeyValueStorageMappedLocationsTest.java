@@ -0,0 +1,425 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link KeyValueStorageMappedLocations}.
+ */
+public class KeyValueStorageMappedLocationsTest {
+
+    private static final String SUB_PATH = "locations";
+
+    @TempDir
+    File baseDir;
+
+    private static byte[] key(long ledgerId, long entryId) {
+        byte[] key = new byte[16];
+        ArrayUtil.setLong(key, 0, ledgerId);
+        ArrayUtil.setLong(key, 8, entryId);
+        return key;
+    }
+
+    private static byte[] value(long location) {
+        byte[] value = new byte[8];
+        ArrayUtil.setLong(value, 0, location);
+        return value;
+    }
+
+    // A location that is never 0
+    private static long location(long ledgerId, long entryId) {
+        return (ledgerId << 32) + entryId + 1;
+    }
+
+    private static long getLocation(KeyValueStorage storage, long ledgerId, long entryId) throws IOException {
+        byte[] value = storage.get(key(ledgerId, entryId));
+        return value != null ? ArrayUtil.getLong(value, 0) : 0;
+    }
+
+    private KeyValueStorageMappedLocations open() throws IOException {
+        return new KeyValueStorageMappedLocations(baseDir.getPath(), SUB_PATH);
+    }
+
+    private File indexDir() {
+        return new File(baseDir, KeyValueStorageMappedLocations.getDirectoryName(SUB_PATH));
+    }
+
+    private File slotsFile(long ledgerId) {
+        return new File(indexDir(), Long.toHexString(ledgerId) + ".loc");
+    }
+
+    private File sparseFile(long ledgerId) {
+        return new File(indexDir(), Long.toHexString(ledgerId) + ".sparse");
+    }
+
+    @Test
+    public void putGetAndReopen() throws Exception {
+        KeyValueStorageMappedLocations storage = open();
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            for (long entryId = 0; entryId < 100; entryId++) {
+                storage.put(key(ledgerId, entryId), value(location(ledgerId, entryId)));
+            }
+        }
+        // Too far from the other entries to be stored in the slots
+        storage.put(key(2, 1_000_000), value(location(2, 1_000_000)));
+        assertEquals(301, storage.count());
+        storage.close();
+
+        storage = open();
+        assertEquals(301, storage.count());
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            for (long entryId = 0; entryId < 100; entryId++) {
+                assertEquals(location(ledgerId, entryId), getLocation(storage, ledgerId, entryId));
+            }
+            assertEquals(0, getLocation(storage, ledgerId, 100));
+        }
+        assertEquals(location(2, 1_000_000), getLocation(storage, 2, 1_000_000));
+        assertEquals(0, getLocation(storage, 4, 0));
+
+        Entry<byte[], byte[]> floor = storage.getFloor(key(2, Long.MAX_VALUE));
+        assertArrayEquals(key(2, 1_000_000), floor.getKey());
+        floor = storage.getFloor(key(2, 1_000_000));
+        assertArrayEquals(key(2, 99), floor.getKey());
+        floor = storage.getFloor(key(2, 0));
+        assertArrayEquals(key(1, 99), floor.getKey());
+        assertNull(storage.getFloor(key(1, 0)));
+
+        Entry<byte[], byte[]> ceil = storage.getCeil(key(2, 100));
+        assertArrayEquals(key(2, 1_000_000), ceil.getKey());
+        assertArrayEquals(value(location(2, 1_000_000)), ceil.getValue());
+        ceil = storage.getCeil(key(2, 1_000_001));
+        assertArrayEquals(key(3, 0), ceil.getKey());
+
+        // Keys are iterated in order
+        long previousLedgerId = -1;
+        long previousEntryId = -1;
+        int keys = 0;
+        try (CloseableIterator<byte[]> iterator = storage.keys()) {
+            while (iterator.hasNext()) {
+                byte[] key = iterator.next();
+                long ledgerId = ArrayUtil.getLong(key, 0);
+                long entryId = ArrayUtil.getLong(key, 8);
+                assertTrue(ledgerId > previousLedgerId || (ledgerId == previousLedgerId && entryId > previousEntryId));
+                previousLedgerId = ledgerId;
+                previousEntryId = entryId;
+                keys++;
+            }
+        }
+        assertEquals(301, keys);
+        storage.close();
+    }
+
+    @Test
+    public void resize() throws Exception {
+        KeyValueStorageMappedLocations storage = open();
+        storage.put(key(1, 0), value(location(1, 0)));
+        // Stored in the sparse map first, then in the slots once they grow to cover it
+        storage.put(key(1, 3000), value(location(1, 3000)));
+        storage.sync();
+        assertTrue(sparseFile(1).exists());
+        long initialSize = slotsFile(1).length();
+
+        try (Batch batch = storage.newBatch()) {
+            for (long entryId = 0; entryId < 10_000; entryId++) {
+                if (entryId != 0 && entryId != 3000) {
+                    batch.put(key(1, entryId), value(location(1, entryId)));
+                }
+            }
+            batch.flush();
+        }
+        assertTrue(slotsFile(1).length() > initialSize);
+        assertFalse(sparseFile(1).exists());
+        assertEquals(10_000, storage.count());
+        for (long entryId = 0; entryId < 10_000; entryId++) {
+            assertEquals(location(1, entryId), getLocation(storage, 1, entryId));
+        }
+        storage.close();
+
+        storage = open();
+        assertEquals(10_000, storage.count());
+        for (long entryId = 0; entryId < 10_000; entryId++) {
+            assertEquals(location(1, entryId), getLocation(storage, 1, entryId));
+        }
+        assertArrayEquals(key(1, 9999), storage.getFloor(key(1, Long.MAX_VALUE)).getKey());
+        storage.close();
+    }
+
+    @Test
+    public void delete() throws Exception {
+        KeyValueStorageMappedLocations storage = open();
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            for (long entryId = 0; entryId < 100; entryId++) {
+                storage.put(key(ledgerId, entryId), value(location(ledgerId, entryId)));
+            }
+        }
+        storage.put(key(2, 1_000_000), value(location(2, 1_000_000)));
+        storage.sync();
+        assertTrue(slotsFile(2).exists());
+        assertTrue(sparseFile(2).exists());
+
+        // Delete a whole ledger, and part of another one
+        try (Batch batch = storage.newBatch()) {
+            batch.deleteRange(key(2, 0), key(2, Long.MAX_VALUE));
+            batch.deleteRange(key(3, 0), key(3, 50));
+            batch.flush();
+        }
+        assertFalse(slotsFile(2).exists());
+        assertFalse(sparseFile(2).exists());
+        assertEquals(0, getLocation(storage, 2, 0));
+        assertEquals(0, getLocation(storage, 2, 1_000_000));
+        assertEquals(0, getLocation(storage, 3, 49));
+        assertEquals(location(3, 50), getLocation(storage, 3, 50));
+        assertEquals(150, storage.count());
+
+        // Removing the last entries of a ledger deletes it
+        for (long entryId = 0; entryId < 100; entryId++) {
+            storage.delete(key(1, entryId));
+        }
+        assertFalse(slotsFile(1).exists());
+        assertEquals(50, storage.count());
+
+        // A deleted ledger can be added again
+        storage.put(key(2, 5), value(location(2, 5)));
+        assertEquals(location(2, 5), getLocation(storage, 2, 5));
+        storage.close();
+
+        storage = open();
+        assertEquals(51, storage.count());
+        assertEquals(0, getLocation(storage, 1, 0));
+        assertEquals(0, getLocation(storage, 2, 0));
+        assertEquals(location(2, 5), getLocation(storage, 2, 5));
+        assertEquals(0, getLocation(storage, 2, 1_000_000));
+        assertEquals(location(3, 99), getLocation(storage, 3, 99));
+        storage.close();
+    }
+
+    @Test
+    public void recoverAfterCrash() throws Exception {
+        KeyValueStorageMappedLocations storage = open();
+        for (long entryId = 0; entryId < 100; entryId++) {
+            storage.put(key(1, entryId), value(location(1, entryId)));
+        }
+        storage.put(key(1, 1_000_000), value(location(1, 1_000_000)));
+        storage.sync();
+
+        // Crash in the middle of the update of the sparse map, before it was renamed
+        File tmpFile = new File(indexDir(), sparseFile(1).getName() + ".tmp");
+        Files.write(tmpFile.toPath(), "garbage".getBytes(StandardCharsets.UTF_8));
+
+        // The storage is opened again without being closed
+        KeyValueStorageMappedLocations recovered = open();
+        assertFalse(tmpFile.exists());
+        assertEquals(101, recovered.count());
+        for (long entryId = 0; entryId < 100; entryId++) {
+            assertEquals(location(1, entryId), getLocation(recovered, 1, entryId));
+        }
+        assertEquals(location(1, 1_000_000), getLocation(recovered, 1, 1_000_000));
+        recovered.close();
+        storage.close();
+    }
+
+    @Test
+    public void staleFilesOfDeletedLedgerAreNotReused() throws Exception {
+        KeyValueStorageMappedLocations storage = open();
+        for (long entryId = 0; entryId < 100; entryId++) {
+            storage.put(key(1, entryId), value(location(1, entryId)));
+        }
+        storage.put(key(1, 1_000_000), value(location(1, 1_000_000)));
+        storage.put(key(2, 0), value(location(2, 0)));
+        storage.sync();
+        byte[] sparse = Files.readAllBytes(sparseFile(1).toPath());
+
+        try (Batch batch = storage.newBatch()) {
+            batch.deleteRange(key(1, 0), key(1, Long.MAX_VALUE));
+            batch.flush();
+        }
+        storage.close();
+
+        // Crash while the files of the deleted ledger were being removed
+        Files.write(sparseFile(1).toPath(), sparse);
+        storage = open();
+        assertEquals(1, storage.count());
+        assertEquals(0, getLocation(storage, 1, 1_000_000));
+
+        // Creating the ledger again does not pick up the stale entries
+        storage.put(key(1, 10), value(location(1, 10)));
+        assertEquals(0, getLocation(storage, 1, 1_000_000));
+        storage.close();
+
+        storage = open();
+        assertEquals(2, storage.count());
+        assertEquals(location(1, 10), getLocation(storage, 1, 10));
+        assertEquals(0, getLocation(storage, 1, 1_000_000));
+        storage.close();
+    }
+
+    @Test
+    public void corruptedFiles() throws Exception {
+        KeyValueStorageMappedLocations storage = open();
+        storage.put(key(1, 0), value(location(1, 0)));
+        storage.put(key(2, 0), value(location(2, 0)));
+        storage.close();
+
+        // Truncated file
+        try (RandomAccessFile raf = new RandomAccessFile(slotsFile(1), "rw")) {
+            raf.setLength(100);
+        }
+        assertThrows(IOException.class, this::open);
+        Files.delete(slotsFile(1).toPath());
+
+        // Invalid header
+        try (RandomAccessFile raf = new RandomAccessFile(slotsFile(2), "rw")) {
+            raf.writeInt(0);
+        }
+        assertThrows(IOException.class, this::open);
+    }
+
+    @Test
+    public void rocksDbIndexIsNotSilentlyIgnored() throws Exception {
+        assertTrue(new File(baseDir, SUB_PATH).mkdirs());
+        assertThrows(IOException.class, this::open);
+    }
+
+    @Test
+    public void boundedNumberOfMappings() throws Exception {
+        int maxMapped = 4;
+        KeyValueStorageMappedLocations storage =
+                new KeyValueStorageMappedLocations(baseDir.getPath(), SUB_PATH, maxMapped);
+        for (long ledgerId = 0; ledgerId < 100; ledgerId++) {
+            for (long entryId = 0; entryId < 10; entryId++) {
+                storage.put(key(ledgerId, entryId), value(location(ledgerId, entryId)));
+            }
+            assertTrue(storage.mappedLedgersCount() <= maxMapped);
+        }
+        assertTrue(mappedFiles() <= maxMapped);
+
+        for (long ledgerId = 0; ledgerId < 100; ledgerId++) {
+            for (long entryId = 0; entryId < 10; entryId++) {
+                assertEquals(location(ledgerId, entryId), getLocation(storage, ledgerId, entryId));
+            }
+            assertTrue(storage.mappedLedgersCount() <= maxMapped);
+        }
+        assertTrue(mappedFiles() <= maxMapped);
+
+        int keys = 0;
+        try (CloseableIterator<byte[]> iterator = storage.keys()) {
+            while (iterator.hasNext()) {
+                iterator.next();
+                keys++;
+            }
+        }
+        assertEquals(1000, keys);
+        assertTrue(storage.mappedLedgersCount() <= maxMapped);
+        storage.close();
+
+        // Everything written through evicted mappings was kept
+        storage = new KeyValueStorageMappedLocations(baseDir.getPath(), SUB_PATH, maxMapped);
+        for (long ledgerId = 0; ledgerId < 100; ledgerId++) {
+            assertEquals(location(ledgerId, 9), getLocation(storage, ledgerId, 9));
+        }
+        storage.close();
+        assertEquals(0, mappedFiles());
+    }
+
+    @Test
+    public void concurrentAccessWithEvictions() throws Exception {
+        int numLedgers = 50;
+        KeyValueStorageMappedLocations storage =
+                new KeyValueStorageMappedLocations(baseDir.getPath(), SUB_PATH, 2);
+        for (long ledgerId = 0; ledgerId < numLedgers; ledgerId++) {
+            for (long entryId = 0; entryId < 100; entryId++) {
+                storage.put(key(ledgerId, entryId), value(location(ledgerId, entryId)));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final boolean writer = t % 4 == 0;
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20_000; i++) {
+                        long ledgerId = random.nextInt(numLedgers);
+                        long entryId = random.nextInt(100);
+                        if (writer) {
+                            storage.put(key(ledgerId, entryId), value(location(ledgerId, entryId)));
+                        } else {
+                            assertEquals(location(ledgerId, entryId), getLocation(storage, ledgerId, entryId));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(numLedgers * 100, storage.count());
+        storage.close();
+    }
+
+    // Number of mappings of the index files in this process, or 0 where it cannot be known
+    private long mappedFiles() throws IOException {
+        File maps = new File("/proc/self/maps");
+        if (!maps.exists()) {
+            return 0;
+        }
+        String indexDir = indexDir().getCanonicalPath();
+        try (Stream<String> lines = Files.lines(maps.toPath())) {
+            return lines.filter(line -> line.contains(indexDir) && line.endsWith(".loc")).count();
+        }
+    }
+
+    @Test
+    public void directoryName() {
+        assertNotNull(KeyValueStorageMappedLocations.getDirectoryName(SUB_PATH));
+        assertEquals("locations.mapped", KeyValueStorageMappedLocations.getDirectoryName(SUB_PATH));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.ldb.ReadAheadPrefetcher.Result;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ReadAheadPrefetcher}.
+ */
+public class ReadAheadPrefetcherTest {
+
+    @Test
+    public void deduplicateOverlappingPrefetches() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        try (ReadAheadPrefetcher prefetcher = new ReadAheadPrefetcher("test-read-ahead", 1, 10)) {
+            assertEquals(Result.SUBMITTED, prefetcher.prefetch(1, 10, 20, () -> {
+                started.countDown();
+                awaitUninterruptibly(blocked);
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // The first entry is already being prefetched
+            assertEquals(Result.DEDUPLICATED, prefetcher.prefetch(1, 10, 20, () -> { }));
+            assertEquals(Result.DEDUPLICATED, prefetcher.prefetch(1, 15, 30, () -> { }));
+            assertEquals(Result.DEDUPLICATED, prefetcher.prefetch(1, 20, 30, () -> { }));
+            // Other ranges and other ledgers are not
+            assertEquals(Result.SUBMITTED, prefetcher.prefetch(1, 21, 30, () -> { }));
+            assertEquals(Result.SUBMITTED, prefetcher.prefetch(1, 0, 9, () -> { }));
+            assertEquals(Result.SUBMITTED, prefetcher.prefetch(2, 10, 20, () -> { }));
+
+            blocked.countDown();
+        }
+    }
+
+    @Test
+    public void completedPrefetchIsNotTrackedAnymore() throws Exception {
+        try (ReadAheadPrefetcher prefetcher = new ReadAheadPrefetcher("test-read-ahead", 1, 10)) {
+            CountDownLatch done = new CountDownLatch(1);
+            assertEquals(Result.SUBMITTED, prefetcher.prefetch(1, 10, 20, done::countDown));
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+
+            // The tracking is removed right after the task completes
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            Result result;
+            do {
+                result = prefetcher.prefetch(1, 10, 20, () -> { });
+            } while (result == Result.DEDUPLICATED && System.nanoTime() < deadline);
+            assertEquals(Result.SUBMITTED, result);
+        }
+    }
+
+    @Test
+    public void rejectWhenTooManyPendingPrefetches() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        try (ReadAheadPrefetcher prefetcher = new ReadAheadPrefetcher("test-read-ahead", 1, 2)) {
+            assertEquals(Result.SUBMITTED, prefetcher.prefetch(1, 0, 10, () -> {
+                started.countDown();
+                awaitUninterruptibly(blocked);
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // Two prefetches fit in the queue
+            assertEquals(Result.SUBMITTED, prefetcher.prefetch(2, 0, 10, () -> { }));
+            assertEquals(Result.SUBMITTED, prefetcher.prefetch(3, 0, 10, () -> { }));
+            assertEquals(Result.REJECTED, prefetcher.prefetch(4, 0, 10, () -> { }));
+
+            // A rejected prefetch is not tracked, it can be submitted again later
+            blocked.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            Result result;
+            do {
+                result = prefetcher.prefetch(4, 0, 10, () -> { });
+            } while (result == Result.REJECTED && System.nanoTime() < deadline);
+            assertEquals(Result.SUBMITTED, result);
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
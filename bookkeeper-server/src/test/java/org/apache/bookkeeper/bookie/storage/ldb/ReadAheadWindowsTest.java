@@ -0,0 +1,86 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ReadAheadWindows}.
+ */
+public class ReadAheadWindowsTest {
+
+    @Test
+    public void sequentialReadsGrowTheWindow() {
+        ReadAheadWindows windows = new ReadAheadWindows(16);
+
+        assertEquals(100, windows.nextWindow(1, 0, 100, 800));
+        // The next miss is right after the read-ahead entries
+        assertEquals(200, windows.nextWindow(1, 101, 100, 800));
+        assertEquals(400, windows.nextWindow(1, 302, 100, 800));
+        assertEquals(800, windows.nextWindow(1, 703, 100, 800));
+        // Capped by the max window
+        assertEquals(800, windows.nextWindow(1, 1504, 100, 800));
+    }
+
+    @Test
+    public void randomReadsShrinkTheWindow() {
+        ReadAheadWindows windows = new ReadAheadWindows(16);
+
+        assertEquals(100, windows.nextWindow(1, 1000, 100, 800));
+        assertEquals(25, windows.nextWindow(1, 5, 100, 800));
+        assertEquals(6, windows.nextWindow(1, 5000, 100, 800));
+        assertEquals(1, windows.nextWindow(1, 10, 100, 800));
+        assertEquals(0, windows.nextWindow(1, 20000, 100, 800));
+        // Once sequential reads resume, the window restarts from the initial one
+        assertEquals(100, windows.nextWindow(1, 20001, 100, 800));
+    }
+
+    @Test
+    public void ledgersAreTrackedSeparately() {
+        ReadAheadWindows windows = new ReadAheadWindows(ReadAheadWindows.DEFAULT_NUM_SLOTS);
+
+        assertEquals(100, windows.nextWindow(1, 0, 100, 800));
+        assertEquals(100, windows.nextWindow(2, 1000, 100, 800));
+        assertEquals(200, windows.nextWindow(1, 101, 100, 800));
+        assertEquals(25, windows.nextWindow(2, 0, 100, 800));
+    }
+
+    @Test
+    public void slotTakenOverByAnotherLedger() {
+        // All the ledgers share the single slot
+        ReadAheadWindows windows = new ReadAheadWindows(1);
+
+        assertEquals(100, windows.nextWindow(1, 0, 100, 800));
+        assertEquals(200, windows.nextWindow(1, 101, 100, 800));
+        assertEquals(100, windows.nextWindow(2, 302, 100, 800));
+        // The window of ledger 1 was lost
+        assertEquals(100, windows.nextWindow(1, 302, 100, 800));
+    }
+
+    @Test
+    public void invalidNumberOfSlots() {
+        assertThrows(IllegalArgumentException.class, () -> new ReadAheadWindows(0));
+        assertThrows(IllegalArgumentException.class, () -> new ReadAheadWindows(100));
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Unit tests for {@link ReadCache}.
+ */
+public class ReadCacheTest {
+
+    private static final int ENTRY_SIZE = 128;
+
+    // The entry content is derived from its ids, so a reader can tell a torn or misplaced copy
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        while (entry.isWritable()) {
+            entry.writeLong(ledgerId * 31 + entryId);
+        }
+        return entry;
+    }
+
+    private static void checkEntry(long ledgerId, long entryId, ByteBuf entry) {
+        assertEquals(ENTRY_SIZE, entry.readableBytes());
+        while (entry.isReadable()) {
+            assertEquals(ledgerId * 31 + entryId, entry.readLong(), "L" + ledgerId + " E" + entryId);
+        }
+    }
+
+    @Test
+    public void simple() {
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 10 * 1024);
+
+        assertEquals(0, cache.count());
+        assertEquals(0, cache.size());
+
+        ByteBuf entry = entry(0, 0);
+        cache.put(0, 0, entry);
+        entry.release();
+
+        assertEquals(1, cache.count());
+        assertEquals(ENTRY_SIZE, cache.size());
+        assertTrue(cache.hasEntry(0, 0));
+
+        ByteBuf res = cache.get(0, 0);
+        assertNotNull(res);
+        checkEntry(0, 0, res);
+        res.release();
+
+        assertNull(cache.get(0, 1));
+        assertNull(cache.get(1, 0));
+        cache.close();
+    }
+
+    @Test
+    public void rollover() {
+        // 4 segments of 8 entries
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 4 * 8 * ENTRY_SIZE, 8 * ENTRY_SIZE);
+
+        for (int i = 0; i < 32; i++) {
+            ByteBuf entry = entry(1, i);
+            cache.put(1, i, entry);
+            entry.release();
+        }
+        assertEquals(32, cache.count());
+        assertEquals(0, cache.evictedCount());
+
+        // The next entry rolls over the oldest segment
+        ByteBuf entry = entry(1, 32);
+        cache.put(1, 32, entry);
+        entry.release();
+
+        assertEquals(32 - 8 + 1, cache.count());
+        assertEquals(8, cache.evictedCount());
+        for (int i = 0; i < 8; i++) {
+            assertNull(cache.get(1, i));
+        }
+        for (int i = 8; i <= 32; i++) {
+            ByteBuf res = cache.get(1, i);
+            checkEntry(1, i, res);
+            res.release();
+        }
+        cache.close();
+    }
+
+    @Test
+    @Timeout(60)
+    public void concurrentPutGetAndRollover() throws Exception {
+        // Tiny segments, so that the segments are recycled while they are being read
+        concurrentPutGetAndRollover(new ReadCache(UnpooledByteBufAllocator.DEFAULT, 4 * 2 * ENTRY_SIZE,
+                2 * ENTRY_SIZE));
+    }
+
+    @Test
+    @Timeout(60)
+    public void concurrentPutGetAndRolloverWithSegmentedLru() throws Exception {
+        concurrentPutGetAndRollover(new ReadCache(UnpooledByteBufAllocator.DEFAULT, 8 * 2 * ENTRY_SIZE,
+                2 * ENTRY_SIZE, ReadCache.EvictionPolicy.SEGMENTED_LRU, 0.5));
+    }
+
+    @Test
+    public void segmentedLruPromotion() {
+        // Probation and protected rings of 4 segments of 8 entries each
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 2 * 4 * 8 * ENTRY_SIZE, 8 * ENTRY_SIZE,
+                ReadCache.EvictionPolicy.SEGMENTED_LRU, 0.5);
+
+        for (int i = 0; i < 8; i++) {
+            ByteBuf entry = entry(1, i);
+            cache.put(1, i, entry);
+            entry.release();
+        }
+
+        // Read the first entries again, they are moved to the protected ring
+        for (int i = 0; i < 4; i++) {
+            ByteBuf res = cache.get(1, i);
+            checkEntry(1, i, res);
+            res.release();
+        }
+        assertEquals(4, cache.promotedCount());
+        assertEquals(8, cache.count());
+
+        // A scan of cold entries rolls over the probation ring only
+        for (int i = 100; i < 200; i++) {
+            ByteBuf entry = entry(2, i);
+            cache.put(2, i, entry);
+            entry.release();
+        }
+        for (int i = 0; i < 4; i++) {
+            assertTrue(cache.hasEntry(1, i));
+        }
+        for (int i = 4; i < 8; i++) {
+            assertFalse(cache.hasEntry(1, i));
+        }
+
+        // Entries in the protected ring are not promoted again while they are not about to be evicted
+        ByteBuf res = cache.get(1, 0);
+        checkEntry(1, 0, res);
+        res.release();
+        assertEquals(4, cache.promotedCount());
+        cache.close();
+    }
+
+    @Test
+    public void segmentedLruSecondChance() {
+        // Protected ring of 2 segments of 8 entries
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 4 * 8 * ENTRY_SIZE, 8 * ENTRY_SIZE,
+                ReadCache.EvictionPolicy.SEGMENTED_LRU, 0.5);
+
+        // Fill the first protected segment and start the second one
+        for (int i = 0; i < 9; i++) {
+            ByteBuf entry = entry(1, i);
+            cache.put(1, i, entry);
+            entry.release();
+            cache.get(1, i).release();
+        }
+        assertEquals(9, cache.promotedCount());
+
+        // Entry 0 is in the oldest protected segment, reading it again moves it to the current one
+        cache.get(1, 0).release();
+        assertEquals(10, cache.promotedCount());
+        assertEquals(9, cache.count());
+
+        // Rolling over the protected ring drops the entries of the oldest segment, but not entry 0
+        for (int i = 9; i < 17; i++) {
+            ByteBuf entry = entry(1, i);
+            cache.put(1, i, entry);
+            entry.release();
+            cache.get(1, i).release();
+        }
+        assertTrue(cache.hasEntry(1, 0));
+        assertFalse(cache.hasEntry(1, 1));
+        cache.close();
+    }
+
+    @Test
+    @Timeout(60)
+    public void concurrentPromotion() throws Exception {
+        int numEntries = 1000;
+        int readers = 8;
+        // Large enough for the entries to never roll over, so any duplicate would be counted
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 16 * numEntries * ENTRY_SIZE,
+                numEntries * ENTRY_SIZE, ReadCache.EvictionPolicy.SEGMENTED_LRU, 0.5);
+        for (int i = 0; i < numEntries; i++) {
+            ByteBuf entry = entry(1, i);
+            cache.put(1, i, entry);
+            entry.release();
+        }
+
+        // All the readers read the same entries at the same time
+        CyclicBarrier barrier = new CyclicBarrier(readers);
+        ExecutorService executor = Executors.newFixedThreadPool(readers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int r = 0; r < readers; r++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < numEntries; i++) {
+                        barrier.await();
+                        ByteBuf res = cache.get(1, i);
+                        if (res != null) {
+                            try {
+                                checkEntry(1, i, res);
+                            } finally {
+                                res.release();
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(numEntries, cache.promotedCount());
+        assertEquals(numEntries, cache.count());
+        cache.close();
+    }
+
+    static void concurrentPutGetAndRollover(ReadCache cache) throws Exception {
+        int writers = 2;
+        int readers = 8;
+        int entriesPerWriter = 200_000;
+        CyclicBarrier barrier = new CyclicBarrier(writers + readers);
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                final long ledgerId = w;
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    for (long i = 0; i < entriesPerWriter; i++) {
+                        // Keep re-inserting the entries that the readers look up
+                        long entryId = i % 16;
+                        ByteBuf entry = entry(ledgerId, entryId);
+                        cache.put(ledgerId, entryId, entry);
+                        entry.release();
+                    }
+                    return null;
+                }));
+            }
+            for (int r = 0; r < readers; r++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 4 * entriesPerWriter; i++) {
+                        long ledgerId = random.nextInt(writers);
+                        long entryId = random.nextInt(16);
+                        ByteBuf res = cache.get(ledgerId, entryId);
+                        if (res != null) {
+                            try {
+                                checkEntry(ledgerId, entryId, res);
+                            } finally {
+                                res.release();
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Every segment must still be recyclable once the readers are gone
+        for (long entryId = 0; entryId < 1000; entryId++) {
+            ByteBuf entry = entry(writers, entryId);
+            cache.put(writers, entryId, entry);
+            entry.release();
+        }
+        ByteBuf res = cache.get(writers, 999);
+        checkEntry(writers, 999, res);
+        res.release();
+        assertTrue(cache.evictedCount() > 0);
+        cache.close();
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Unit tests for {@link PendingAddQueue}.
+ */
+@Timeout(60)
+public class PendingAddQueueTest {
+
+    private final LedgerHandle lh = newLedgerHandle();
+
+    private static LedgerHandle newLedgerHandle() {
+        LedgerHandle lh = mock(LedgerHandle.class);
+        DistributionSchedule schedule = mock(DistributionSchedule.class);
+        when(lh.getDistributionSchedule()).thenReturn(schedule);
+        return lh;
+    }
+
+    private PendingAddOp newOp(int entryLength) {
+        return PendingAddOp.create(lh, null, null, Unpooled.wrappedBuffer(new byte[entryLength]), WriteFlag.NONE,
+                null, null);
+    }
+
+    @Test
+    public void entryIdsAndLengthsAreAssigned() {
+        PendingAddQueue queue = new PendingAddQueue(9, 1000);
+        PendingAddOp op1 = newOp(10);
+        PendingAddOp op2 = newOp(20);
+        assertTrue(queue.offerNext(op1));
+        // offer() appends as offerNext()
+        assertTrue(queue.offer(op2));
+
+        assertEquals(10, op1.getEntryId());
+        assertEquals(1010, op1.currentLedgerLength);
+        assertEquals(11, op2.getEntryId());
+        assertEquals(1030, op2.currentLedgerLength);
+        assertEquals(11, queue.getLastAddPushed());
+        assertEquals(1030, queue.getLength());
+        assertEquals(2, queue.size());
+
+        assertSame(op1, queue.peek());
+        assertSame(op1, queue.poll());
+        assertSame(op2, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        // Polling does not change the last add pushed
+        assertEquals(11, queue.getLastAddPushed());
+    }
+
+    @Test
+    public void sealedQueueRefusesAdds() {
+        PendingAddQueue queue = new PendingAddQueue(-1, 0);
+        PendingAddOp op = newOp(10);
+        assertTrue(queue.offerNext(op));
+        queue.seal();
+
+        assertFalse(queue.offerNext(newOp(10)));
+        assertFalse(queue.offer(newOp(10)));
+        assertThrows(IllegalStateException.class, () -> queue.add(newOp(10)));
+
+        // The changes of the last add pushed and of the length keep the queue sealed
+        queue.setLastAddPushed(5);
+        queue.setLength(100);
+        assertFalse(queue.offerNext(newOp(10)));
+        assertEquals(5, queue.getLastAddPushed());
+        assertEquals(100, queue.getLength());
+
+        // The adds appended before the seal are still there
+        assertSame(op, queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void changesOfTheLengthAreSeenByTheNextAdds() {
+        PendingAddQueue queue = new PendingAddQueue(-1, 0);
+        PendingAddOp op1 = newOp(10);
+        queue.offerNext(op1);
+        assertEquals(5, queue.addToLength(-5));
+        queue.advance(3, 2);
+        assertEquals(3, queue.getLastAddPushed());
+        assertEquals(5, queue.getLength());
+        queue.advance(2, 50);
+        assertEquals(3, queue.getLastAddPushed());
+        assertEquals(50, queue.getLength());
+
+        PendingAddOp op2 = newOp(10);
+        queue.offerNext(op2);
+        assertEquals(4, op2.getEntryId());
+        assertEquals(60, op2.currentLedgerLength);
+
+        // The changes of the length did not add any node
+        assertEquals(2, queue.size());
+        assertEquals(3, queue.nodeCount());
+        List<PendingAddOp> ops = new ArrayList<>();
+        queue.forEach(ops::add);
+        assertEquals(2, ops.size());
+        assertSame(op1, ops.get(0));
+        assertSame(op2, ops.get(1));
+        assertSame(op1, queue.poll());
+        assertSame(op2, queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void offerRefusesAddsWithEntryId() {
+        PendingAddQueue queue = new PendingAddQueue(-1, 0);
+        PendingAddOp op = newOp(10);
+        op.setEntryId(5);
+        assertThrows(IllegalArgumentException.class, () -> queue.offer(op));
+        assertEquals(5, op.getEntryId());
+        assertEquals(-1, queue.getLastAddPushed());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void metadataChangesDoNotGrowTheQueue() throws Exception {
+        ClientContext clientCtx = newClientContext();
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(1)
+                .withPassword(new byte[0])
+                .withDigestType(BookKeeper.DigestType.CRC32C.toApiDigestType())
+                .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                .newEnsembleEntry(0, Arrays.asList(BookieId.parse("127.0.0.1:3181"),
+                        BookieId.parse("127.0.0.1:3182"), BookieId.parse("127.0.0.1:3183")))
+                .build();
+
+        // The adds of a LedgerHandleAdv are queued in its own queue, but change the length of the ledger
+        LedgerHandleAdv adv = new LedgerHandleAdv(clientCtx, 1, new Versioned<>(metadata, new LongVersion(0)),
+                BookKeeper.DigestType.CRC32C, new byte[0], EnumSet.noneOf(WriteFlag.class));
+        for (long entryId = 0; entryId < 10_000; entryId++) {
+            adv.asyncAddEntry(entryId, Unpooled.wrappedBuffer(new byte[10]), (rc, lh, e, latency, ctx) -> { },
+                    null);
+        }
+        assertEquals(100_000, adv.getLength());
+        assertEquals(10_000, adv.getPendingAddOps().size());
+        assertEquals(1, adv.pendingAddQueue.nodeCount());
+        assertEquals(0, adv.pendingAddQueue.size());
+
+        // A tailing reader advances the last add confirmed and the length of the ledger
+        ReadOnlyLedgerHandle reader = new ReadOnlyLedgerHandle(clientCtx, 1,
+                new Versioned<>(metadata, new LongVersion(0)), BookKeeper.DigestType.CRC32C, new byte[0], false);
+        for (long lac = 0; lac < 10_000; lac++) {
+            reader.updateLastConfirmed(lac, lac * 10);
+        }
+        assertEquals(9_999, reader.getLastAddPushed());
+        assertEquals(99_990, reader.getLength());
+        assertEquals(1, reader.pendingAddQueue.nodeCount());
+        assertTrue(reader.pendingAddQueue.isEmpty());
+    }
+
+    private static ClientContext newClientContext() {
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(new ClientConfiguration()));
+        when(clientCtx.getMainWorkerPool()).thenReturn(mock(OrderedExecutor.class));
+        when(clientCtx.getScheduler()).thenReturn(mock(OrderedScheduler.class));
+        when(clientCtx.getBookieClient()).thenReturn(mock(BookieClient.class));
+        when(clientCtx.getPlacementPolicy()).thenReturn(mock(EnsemblePlacementPolicy.class));
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+        return clientCtx;
+    }
+
+    @Test
+    public void concurrentProducersAndDrain() throws Exception {
+        final int producers = 4;
+        final int addsPerProducer = 20_000;
+        PendingAddQueue queue = new PendingAddQueue(-1, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(producers + 1);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < addsPerProducer; i++) {
+                        assertTrue(queue.offerNext(newOp(1 + i % 7)));
+                    }
+                    return null;
+                }));
+            }
+
+            // As LedgerHandle.drainPendingAddsAndAdjustLength(), racing with the producers
+            AtomicBoolean producing = new AtomicBoolean(true);
+            List<Long> drained = new ArrayList<>();
+            Future<?> drain = executor.submit(() -> {
+                start.await();
+                boolean last = false;
+                while (!last) {
+                    last = !producing.get();
+                    PendingAddOp op;
+                    while ((op = queue.poll()) != null) {
+                        queue.addToLength(-op.entryLength);
+                        drained.add(op.getEntryId());
+                    }
+                }
+                return null;
+            });
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            producing.set(false);
+            drain.get(30, TimeUnit.SECONDS);
+
+            // Every add was queued once, in entry id order, and no change of the length was lost
+            assertEquals(producers * addsPerProducer, drained.size());
+            for (int i = 0; i < drained.size(); i++) {
+                assertEquals(i, (long) drained.get(i));
+            }
+            assertEquals(producers * addsPerProducer - 1, queue.getLastAddPushed());
+            assertEquals(0, queue.getLength());
+            assertTrue(queue.isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentProducersAndSeal() throws Exception {
+        final int producers = 4;
+        PendingAddQueue queue = new PendingAddQueue(-1, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                futures.add(executor.submit(() -> {
+                    int appended = 0;
+                    while (queue.offerNext(newOp(1))) {
+                        appended++;
+                    }
+                    return appended;
+                }));
+            }
+            while (queue.size() < 1000) {
+                Thread.sleep(1);
+            }
+            queue.seal();
+
+            int appended = 0;
+            for (Future<Integer> future : futures) {
+                appended += future.get(30, TimeUnit.SECONDS);
+            }
+            // The adds appended before the seal are exactly the ones in the queue
+            assertEquals(appended, queue.size());
+            assertEquals(appended - 1, queue.getLastAddPushed());
+            assertEquals(appended, queue.getLength());
+            long expectedEntryId = 0;
+            PendingAddOp op;
+            while ((op = queue.poll()) != null) {
+                assertEquals(expectedEntryId++, op.getEntryId());
+            }
+            assertEquals(appended, expectedEntryId);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Unit tests for {@link StripedReadOp}.
+ */
+@Timeout(60)
+public class StripedReadOpTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int MAX_FRAME_SIZE = 1024 * 1024;
+
+    private final List<ByteBuf> buffers = new ArrayList<>();
+    // The start and the number of entries of the reads sent, in order
+    private final List<String> reads = new ArrayList<>();
+
+    private static List<BookieId> newEnsemble(int first) {
+        List<BookieId> ensemble = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ensemble.add(BookieId.parse("127.0.0.1:" + (3181 + first + i)));
+        }
+        return ensemble;
+    }
+
+    private static LedgerMetadata newMetadata(long... ensembleStarts) {
+        LedgerMetadataBuilder builder = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withPassword(new byte[0])
+                .withDigestType(BookKeeper.DigestType.CRC32C.toApiDigestType())
+                .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2);
+        for (int i = 0; i < ensembleStarts.length; i++) {
+            builder.newEnsembleEntry(ensembleStarts[i], newEnsemble(i * 3));
+        }
+        return builder.build();
+    }
+
+    private static LedgerHandle newLedgerHandle(LedgerMetadata metadata, boolean batched) {
+        LedgerHandle lh = mock(LedgerHandle.class);
+        when(lh.getId()).thenReturn(LEDGER_ID);
+        when(lh.getLedgerMetadata()).thenReturn(metadata);
+        when(lh.canBatchRead()).thenAnswer(invocation -> batched && !lh.notSupportBatch);
+        return lh;
+    }
+
+    private static ClientContext newClientContext(int stripeEntries, int maxInflight) {
+        ClientConfiguration conf = new ClientConfiguration()
+                .setReadStripeEntries(stripeEntries)
+                .setReadStripeMaxInflight(maxInflight)
+                .setNettyMaxFrameSizeBytes(MAX_FRAME_SIZE);
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        return clientCtx;
+    }
+
+    private LedgerEntries newEntries(long start, int count) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (long entryId = start; entryId < start + count; entryId++) {
+            ByteBuf buf = Unpooled.buffer(8).writeLong(entryId);
+            buffers.add(buf);
+            entries.add(LedgerEntryImpl.create(LEDGER_ID, entryId, buf.readableBytes(), buf));
+        }
+        return LedgerEntriesImpl.create(entries);
+    }
+
+    // Batch reads returning at most maxEntries entries
+    private void answerBatchReads(LedgerHandle lh, int maxEntries) {
+        when(lh.batchReadEntriesInternalAsync(anyLong(), anyInt(), anyLong(), anyBoolean(), anyInt()))
+                .thenAnswer(invocation -> {
+                    long start = invocation.getArgument(0);
+                    int count = invocation.getArgument(1);
+                    reads.add(start + ":" + count);
+                    return CompletableFuture.completedFuture(newEntries(start, Math.min(count, maxEntries)));
+                });
+    }
+
+    private static void assertEntries(LedgerEntries result, long first, long last) {
+        long expected = first;
+        for (LedgerEntry entry : result) {
+            assertEquals(expected, entry.getEntryId());
+            assertEquals(expected, entry.getEntryBuffer().getLong(0));
+            expected++;
+        }
+        assertEquals(last + 1, expected);
+    }
+
+    private void assertReleased() {
+        for (ByteBuf buf : buffers) {
+            assertEquals(0, buf.refCnt());
+        }
+    }
+
+    @Test
+    public void stripesDoNotCrossEnsembleChanges() throws Exception {
+        LedgerHandle lh = newLedgerHandle(newMetadata(0, 15), true);
+        answerBatchReads(lh, Integer.MAX_VALUE);
+
+        StripedReadOp op = new StripedReadOp(lh, newClientContext(10, 2), 0, 29);
+        op.initiate();
+        try (LedgerEntries result = op.future().get(10, TimeUnit.SECONDS)) {
+            assertEntries(result, 0, 29);
+        }
+        // The stripe starting at 10 stops at the ensemble change
+        assertEquals(Arrays.asList("0:10", "10:5", "15:10", "25:5"), reads);
+        // The batch reads are sent to the bookies of the ensemble, round-robin
+        verify(lh).batchReadEntriesInternalAsync(0, 10, MAX_FRAME_SIZE, false, 0);
+        verify(lh).batchReadEntriesInternalAsync(10, 5, MAX_FRAME_SIZE, false, 1);
+        verify(lh).batchReadEntriesInternalAsync(15, 10, MAX_FRAME_SIZE, false, 2);
+        verify(lh).batchReadEntriesInternalAsync(25, 5, MAX_FRAME_SIZE, false, 0);
+        assertReleased();
+    }
+
+    @Test
+    public void shortBatchesContinueTheStripe() throws Exception {
+        LedgerHandle lh = newLedgerHandle(newMetadata(0), true);
+        // The responses are cut at 3 entries
+        answerBatchReads(lh, 3);
+
+        StripedReadOp op = new StripedReadOp(lh, newClientContext(10, 2), 0, 19);
+        op.initiate();
+        try (LedgerEntries result = op.future().get(10, TimeUnit.SECONDS)) {
+            assertEntries(result, 0, 19);
+        }
+        assertEquals(Arrays.asList("0:10", "3:7", "6:4", "9:1", "10:10", "13:7", "16:4", "19:1"), reads);
+        assertReleased();
+    }
+
+    @Test
+    public void fallbackToEntryByEntryReads() throws Exception {
+        LedgerHandle lh = newLedgerHandle(newMetadata(0), true);
+        CompletableFuture<LedgerEntries> unsupported = new CompletableFuture<>();
+        unsupported.completeExceptionally(new BKException.BKBookieHandleNotAvailableException());
+        when(lh.batchReadEntriesInternalAsync(anyLong(), anyInt(), anyLong(), anyBoolean(), anyInt()))
+                .thenReturn(unsupported);
+        when(lh.readEntriesUnstripedAsync(anyLong(), anyLong(), anyBoolean())).thenAnswer(invocation -> {
+            long start = invocation.getArgument(0);
+            long end = invocation.getArgument(1);
+            reads.add(start + ":" + (end - start + 1));
+            return CompletableFuture.completedFuture(newEntries(start, (int) (end - start + 1)));
+        });
+
+        StripedReadOp op = new StripedReadOp(lh, newClientContext(10, 2), 0, 29);
+        op.initiate();
+        try (LedgerEntries result = op.future().get(10, TimeUnit.SECONDS)) {
+            assertEntries(result, 0, 29);
+        }
+        // The first stripe is read again entry by entry, and the batch reads are not tried anymore
+        assertTrue(lh.notSupportBatch);
+        verify(lh).batchReadEntriesInternalAsync(anyLong(), anyInt(), anyLong(), anyBoolean(), anyInt());
+        assertEquals(Arrays.asList("0:10", "10:10", "20:10"), reads);
+        assertReleased();
+    }
+
+    @Test
+    public void releaseEntriesOnFailure() throws Exception {
+        LedgerHandle lh = newLedgerHandle(newMetadata(0), true);
+        List<CompletableFuture<LedgerEntries>> pending = new ArrayList<>();
+        when(lh.batchReadEntriesInternalAsync(anyLong(), anyInt(), anyLong(), anyBoolean(), anyInt()))
+                .thenAnswer(invocation -> {
+                    long start = invocation.getArgument(0);
+                    int count = invocation.getArgument(1);
+                    reads.add(start + ":" + count);
+                    CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+                    pending.add(future);
+                    return future;
+                });
+
+        StripedReadOp op = new StripedReadOp(lh, newClientContext(10, 2), 0, 39);
+        op.initiate();
+        assertEquals(Arrays.asList("0:10", "10:10"), reads);
+
+        // The first stripe is read partially, the second one entirely, so the third one is started
+        pending.get(0).complete(newEntries(0, 3));
+        pending.get(1).complete(newEntries(10, 10));
+        assertEquals(Arrays.asList("0:10", "10:10", "3:7", "20:10"), reads);
+
+        // The rest of the first stripe fails: the entries already read are released
+        pending.get(2).completeExceptionally(new BKException.BKReadException());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> op.future().get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof BKException.BKReadException);
+        assertReleased();
+
+        // The stripe still in flight is released when it completes, and no other stripe is started
+        pending.get(3).complete(newEntries(20, 10));
+        assertReleased();
+        assertEquals(4, reads.size());
+        verify(lh, never()).readEntriesUnstripedAsync(anyLong(), anyLong(), anyBoolean());
+        assertFalse(lh.notSupportBatch);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link BatchReadSizeController}.
+ */
+public class BatchReadSizeControllerTest {
+
+    private static final long TARGET_LATENCY = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long TARGET_RESPONSE_BYTES = 1024 * 1024;
+
+    private final BatchReadSizeController controller =
+            new BatchReadSizeController(TARGET_LATENCY, TARGET_RESPONSE_BYTES);
+
+    // Grow the count with full responses of 1 byte entries
+    private int grow(int times) {
+        for (int i = 0; i < times; i++) {
+            int count = controller.batchCount(Integer.MAX_VALUE, 0);
+            assertFalse(controller.responseReceived(count, count, count, FAST));
+        }
+        return controller.batchCount(Integer.MAX_VALUE, 0);
+    }
+
+    @Test
+    public void initialCount() {
+        assertEquals(BatchReadSizeController.INITIAL_COUNT, controller.batchCount(Integer.MAX_VALUE, 0));
+        // The max count of the caller is never exceeded, and at least one entry is read
+        assertEquals(4, controller.batchCount(4, 0));
+        assertEquals(1, controller.batchCount(0, 0));
+    }
+
+    @Test
+    public void growWithFullAndFastResponses() {
+        // Increased by an eighth of the count
+        assertEquals(18, grow(1));
+        assertEquals(20, grow(1));
+        assertEquals(22, grow(1));
+        assertTrue(grow(10) > 22);
+    }
+
+    @Test
+    public void growOnlyWhenLimitedByTheCount() {
+        // The response is cut before the count, by the size or by the end of the ledger
+        assertFalse(controller.responseReceived(16, 10, 10, FAST));
+        assertEquals(16, controller.batchCount(Integer.MAX_VALUE, 0));
+
+        // The count was capped by the caller
+        assertFalse(controller.responseReceived(8, 8, 8, FAST));
+        assertEquals(16, controller.batchCount(Integer.MAX_VALUE, 0));
+    }
+
+    @Test
+    public void shrinkWithSlowResponses() {
+        assertTrue(controller.responseReceived(16, 16, 16, SLOW));
+        assertEquals(8, controller.batchCount(Integer.MAX_VALUE, 0));
+        // Even when the response is full
+        assertTrue(controller.responseReceived(8, 8, 8, SLOW));
+        assertEquals(4, controller.batchCount(Integer.MAX_VALUE, 0));
+
+        assertTrue(controller.responseReceived(4, 1, 1, SLOW));
+        assertTrue(controller.responseReceived(2, 2, 2, SLOW));
+        assertEquals(1, controller.batchCount(Integer.MAX_VALUE, 0));
+        // Never below a single entry
+        assertFalse(controller.responseReceived(1, 1, 1, SLOW));
+        assertEquals(1, controller.batchCount(Integer.MAX_VALUE, 0));
+
+        // And grows again
+        assertEquals(2, grow(1));
+    }
+
+    @Test
+    public void shrinkOnTimeout() {
+        assertEquals(30, grow(6));
+        assertTrue(controller.timedOut());
+        assertEquals(15, controller.batchCount(Integer.MAX_VALUE, 0));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(controller.timedOut());
+        }
+        assertEquals(1, controller.batchCount(Integer.MAX_VALUE, 0));
+        assertFalse(controller.timedOut());
+    }
+
+    @Test
+    public void maxCount() {
+        int count = grow(200);
+        assertEquals(BatchReadSizeController.MAX_COUNT, count);
+        assertEquals(BatchReadSizeController.MAX_COUNT, grow(1));
+    }
+
+    @Test
+    public void cappedByTheResponseSize() {
+        // Entries of 100 KB: 10 entries fit in the target response size
+        assertFalse(controller.responseReceived(16, 4, 4 * 100 * 1024, FAST));
+        assertEquals(10, controller.batchCount(Integer.MAX_VALUE, 0));
+        // And 2 in the max size of the caller
+        assertEquals(2, controller.batchCount(Integer.MAX_VALUE, 200 * 1024));
+        // The target response size still applies to a larger max size
+        assertEquals(10, controller.batchCount(Integer.MAX_VALUE, 10 * TARGET_RESPONSE_BYTES));
+
+        // An entry larger than the response is still read
+        assertEquals(1, controller.batchCount(Integer.MAX_VALUE, 1024));
+    }
+
+    @Test
+    public void averageEntrySize() {
+        assertFalse(controller.responseReceived(16, 1, 100 * 1024, FAST));
+        assertEquals(10, controller.batchCount(Integer.MAX_VALUE, 0));
+
+        // Moving average: the size of a single response only moves it by a fifth of the difference
+        assertFalse(controller.responseReceived(16, 1, 1024, FAST));
+        long avgEntryBytes = 100 * 1024 + (1024 - 100 * 1024) / 5;
+        assertEquals(TARGET_RESPONSE_BYTES / avgEntryBytes, controller.batchCount(Integer.MAX_VALUE, 0));
+
+        // Smaller entries: the count is back to the one of the controller
+        for (int i = 0; i < 50; i++) {
+            controller.responseReceived(16, 1, 1, FAST);
+        }
+        assertEquals(16, controller.batchCount(Integer.MAX_VALUE, 0));
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.protobuf.ExtensionRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.auth.AuthProviderFactoryFactory;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.processor.RequestProcessor;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Tests the batching of the adds of {@link PerChannelBookieClient} in range add requests, against a bookie
+ * answering the requests as the test asks.
+ */
+@Timeout(60)
+public class PerChannelBookieClientAddBatchTest {
+
+    private static final byte[] MASTER_KEY = "key".getBytes();
+
+    private final FakeBookie fakeBookie = new FakeBookie();
+    private BookieNettyServer server;
+    private ServerConfiguration serverConf;
+    private EventLoopGroup eventLoopGroup;
+    private OrderedExecutor executor;
+    private PerChannelBookieClient client;
+
+    /**
+     * Records the requests, and answers them as a bookie would, or not at all.
+     */
+    private static class FakeBookie implements RequestProcessor {
+        final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+        final Set<Long> fencedEntries = ConcurrentHashMap.newKeySet();
+        volatile boolean supportsRangeAdd = true;
+        volatile boolean answerRangeAdds = true;
+        volatile BookieRequestHandler lastRequestHandler;
+
+        @Override
+        public void processRequest(Object msg, BookieRequestHandler requestHandler) {
+            Request request = (Request) msg;
+            lastRequestHandler = requestHandler;
+            BKPacketHeader header = request.getHeader();
+            Response.Builder response = Response.newBuilder().setHeader(header).setStatus(StatusCode.EOK);
+            switch (header.getOperation()) {
+                case GET_BOOKIE_INFO:
+                    GetBookieInfoResponse.Builder info = GetBookieInfoResponse.newBuilder().setStatus(StatusCode.EOK);
+                    if (supportsRangeAdd && (request.getGetBookieInfoRequest().getRequested()
+                            & GetBookieInfoRequest.Flags.FEATURES_VALUE) != 0) {
+                        info.setFeatures(GetBookieInfoResponse.Features.RANGE_ADD_VALUE);
+                    }
+                    response.setGetBookieInfoResponse(info);
+                    break;
+                case ADD_ENTRY:
+                    response.setAddResponse(AddResponse.newBuilder()
+                            .setStatus(StatusCode.EOK)
+                            .setLedgerId(request.getAddRequest().getLedgerId())
+                            .setEntryId(request.getAddRequest().getEntryId()));
+                    break;
+                case RANGE_ADD_ENTRY:
+                    if (!answerRangeAdds) {
+                        requests.add(request);
+                        return;
+                    }
+                    RangeAddRequest rangeAdd = request.getRangeAddRequest();
+                    RangeAddResponse.Builder rangeAddResponse = RangeAddResponse.newBuilder()
+                            .setStatus(StatusCode.EOK)
+                            .setLedgerId(rangeAdd.getLedgerId())
+                            .setFirstEntryId(rangeAdd.getFirstEntryId());
+                    for (int i = 0; i < rangeAdd.getBodyCount(); i++) {
+                        if (fencedEntries.contains(rangeAdd.getFirstEntryId() + i)) {
+                            rangeAddResponse.setStatus(StatusCode.EFENCED).addEntryStatus(StatusCode.EFENCED);
+                        } else {
+                            rangeAddResponse.addEntryStatus(StatusCode.EOK);
+                        }
+                    }
+                    response.setRangeAddResponse(rangeAddResponse);
+                    break;
+                default:
+                    response.setStatus(StatusCode.EBADREQ);
+                    break;
+            }
+            requests.add(request);
+            requestHandler.ctx().channel().writeAndFlush(response.build());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @BeforeEach
+    public void setup() throws Exception {
+        serverConf = TestBKConfiguration.newServerConfiguration();
+        server = new BookieNettyServer(serverConf, fakeBookie, UnpooledByteBufAllocator.DEFAULT);
+        server.start();
+        eventLoopGroup = new NioEventLoopGroup(1);
+        executor = OrderedExecutor.newBuilder().numThreads(1).name("add-batch-test").build();
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        server.shutdown();
+        executor.shutdown();
+        eventLoopGroup.shutdownGracefully();
+    }
+
+    private PerChannelBookieClient connect(int maxEntries, long maxDelayMicros) throws Exception {
+        ClientConfiguration conf = TestBKConfiguration.newClientConfiguration();
+        conf.setAddEntryBatchMaxEntries(maxEntries);
+        conf.setAddEntryBatchMaxDelayMicros(maxDelayMicros);
+        client = new PerChannelBookieClient(conf, executor, eventLoopGroup, UnpooledByteBufAllocator.DEFAULT,
+                BookieImpl.getBookieId(serverConf), NullStatsLogger.INSTANCE,
+                AuthProviderFactoryFactory.newClientAuthProviderFactory(conf), ExtensionRegistry.newInstance(),
+                null, null, BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+        CompletableFuture<Integer> connected = new CompletableFuture<>();
+        client.connectIfNeededAndDoOp((rc, c) -> connected.complete(rc));
+        assertEquals(BKException.Code.OK, (int) connected.get(10, TimeUnit.SECONDS));
+
+        // The answer of the bookie to the features request is received before the answer to this one
+        CompletableFuture<Integer> info = new CompletableFuture<>();
+        client.getBookieInfo(GetBookieInfoRequest.Flags.FREE_DISK_SPACE_VALUE,
+                (rc, bInfo, ctx) -> info.complete(rc), null);
+        assertEquals(BKException.Code.OK, (int) info.get(10, TimeUnit.SECONDS));
+        return client;
+    }
+
+    private static ByteBufList newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(64);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) (ledgerId + entryId + entry.writerIndex()));
+        }
+        return ByteBufList.get(entry);
+    }
+
+    private CompletableFuture<Integer> add(long ledgerId, long entryId) {
+        CompletableFuture<Integer> written = new CompletableFuture<>();
+        ByteBufList entry = newEntry(ledgerId, entryId);
+        client.addEntry(ledgerId, MASTER_KEY, entryId, entry, (rc, l, e, addr, ctx) -> {
+            assertEquals(ledgerId, l);
+            assertEquals(entryId, e);
+            written.complete(rc);
+        }, null, BookieProtocol.FLAG_NONE, false, WriteFlag.NONE);
+        // As PendingAddOp, the entry is released once it is queued
+        entry.release();
+        return written;
+    }
+
+    private static void assertWritten(int rc, List<CompletableFuture<Integer>> adds) throws Exception {
+        for (CompletableFuture<Integer> add : adds) {
+            assertEquals(rc, (int) add.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private List<Request> addRequests() {
+        List<Request> requests = new ArrayList<>();
+        for (Request request : fakeBookie.requests) {
+            if (request.getHeader().getOperation() != OperationType.GET_BOOKIE_INFO) {
+                requests.add(request);
+            }
+        }
+        return requests;
+    }
+
+    private static void assertRangeAdd(Request request, long ledgerId, long firstEntryId, int entries) {
+        assertEquals(OperationType.RANGE_ADD_ENTRY, request.getHeader().getOperation());
+        assertEquals(ledgerId, request.getRangeAddRequest().getLedgerId());
+        assertEquals(firstEntryId, request.getRangeAddRequest().getFirstEntryId());
+        assertEquals(entries, request.getRangeAddRequest().getBodyCount());
+        for (int i = 0; i < entries; i++) {
+            assertEquals(newEntry(ledgerId, firstEntryId + i).getBuffer(0),
+                    Unpooled.wrappedBuffer(request.getRangeAddRequest().getBody(i).asReadOnlyByteBuffer()));
+        }
+    }
+
+    @Test
+    public void fullBatchesAreSentRightAway() throws Exception {
+        connect(4, TimeUnit.SECONDS.toMicros(30));
+        assertTrue(client.isAddBatchingEnabled());
+
+        List<CompletableFuture<Integer>> adds = new ArrayList<>();
+        for (long entryId = 0; entryId < 8; entryId++) {
+            adds.add(add(1, entryId));
+        }
+        // Without waiting for the max delay
+        assertWritten(BKException.Code.OK, adds);
+
+        List<Request> requests = addRequests();
+        assertEquals(2, requests.size());
+        assertRangeAdd(requests.get(0), 1, 0, 4);
+        assertRangeAdd(requests.get(1), 1, 4, 4);
+    }
+
+    @Test
+    public void partialBatchIsFlushedAfterTheMaxDelay() throws Exception {
+        connect(100, TimeUnit.MILLISECONDS.toMicros(10));
+
+        List<CompletableFuture<Integer>> adds = new ArrayList<>();
+        for (long entryId = 0; entryId < 3; entryId++) {
+            adds.add(add(1, entryId));
+        }
+        assertWritten(BKException.Code.OK, adds);
+
+        List<Request> requests = addRequests();
+        assertEquals(1, requests.size());
+        assertRangeAdd(requests.get(0), 1, 0, 3);
+    }
+
+    @Test
+    public void batchIsCutByTheAddOfAnotherLedger() throws Exception {
+        connect(100, TimeUnit.MILLISECONDS.toMicros(10));
+
+        List<CompletableFuture<Integer>> adds = new ArrayList<>();
+        adds.add(add(1, 0));
+        adds.add(add(1, 1));
+        adds.add(add(2, 0));
+        assertWritten(BKException.Code.OK, adds);
+
+        List<Request> requests = addRequests();
+        assertEquals(2, requests.size());
+        assertRangeAdd(requests.get(0), 1, 0, 2);
+        // A batch of a single entry is sent as a plain add
+        assertEquals(OperationType.ADD_ENTRY, requests.get(1).getHeader().getOperation());
+        assertEquals(2, requests.get(1).getAddRequest().getLedgerId());
+    }
+
+    @Test
+    public void noBatchingWithBookiesWithoutRangeAdds() throws Exception {
+        fakeBookie.supportsRangeAdd = false;
+        connect(4, TimeUnit.SECONDS.toMicros(30));
+        assertFalse(client.isAddBatchingEnabled());
+
+        List<CompletableFuture<Integer>> adds = new ArrayList<>();
+        for (long entryId = 0; entryId < 4; entryId++) {
+            adds.add(add(1, entryId));
+        }
+        assertWritten(BKException.Code.OK, adds);
+
+        List<Request> requests = addRequests();
+        assertEquals(4, requests.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(OperationType.ADD_ENTRY, requests.get(i).getHeader().getOperation());
+            assertEquals(i, requests.get(i).getAddRequest().getEntryId());
+        }
+    }
+
+    @Test
+    public void statusOfEachEntry() throws Exception {
+        fakeBookie.fencedEntries.add(1L);
+        connect(4, TimeUnit.SECONDS.toMicros(30));
+
+        List<CompletableFuture<Integer>> adds = new ArrayList<>();
+        for (long entryId = 0; entryId < 4; entryId++) {
+            adds.add(add(1, entryId));
+        }
+        assertWritten(BKException.Code.OK, Collections.singletonList(adds.get(0)));
+        assertWritten(BKException.Code.LedgerFencedException, Collections.singletonList(adds.get(1)));
+        assertWritten(BKException.Code.OK, adds.subList(2, 4));
+    }
+
+    @Test
+    public void pendingBatchIsErroredOutOnDisconnect() throws Exception {
+        fakeBookie.answerRangeAdds = false;
+        connect(4, TimeUnit.SECONDS.toMicros(30));
+
+        List<CompletableFuture<Integer>> adds = new ArrayList<>();
+        for (long entryId = 0; entryId < 4; entryId++) {
+            adds.add(add(1, entryId));
+        }
+        Request request = null;
+        while (request == null || request.getHeader().getOperation() != OperationType.RANGE_ADD_ENTRY) {
+            request = fakeBookie.requests.poll(10, TimeUnit.SECONDS);
+        }
+        assertRangeAdd(request, 1, 0, 4);
+        assertFalse(adds.get(0).isDone());
+
+        // Every add of the batch fails with the connection
+        fakeBookie.lastRequestHandler.ctx().channel().close();
+        assertWritten(BKException.Code.BookieHandleNotAvailableException, adds);
+    }
+}
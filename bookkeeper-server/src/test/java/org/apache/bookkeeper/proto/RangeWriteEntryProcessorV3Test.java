@@ -0,0 +1,274 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.ExtensionRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link RangeWriteEntryProcessorV3}, and for the encoding of the range add requests.
+ */
+public class RangeWriteEntryProcessorV3Test {
+
+    private static final byte[] MASTER_KEY = "key".getBytes();
+
+    private Channel channel;
+    private BookieRequestHandler requestHandler;
+    private Bookie bookie;
+    private BookieRequestProcessor requestProcessor;
+    private final List<Response> responses = new ArrayList<>();
+    private final List<WriteCallback> pendingWrites = new ArrayList<>();
+    private final List<Long> pendingEntryIds = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() throws Exception {
+        channel = mock(Channel.class);
+        when(channel.isActive()).thenReturn(true);
+        when(channel.isWritable()).thenReturn(true);
+        when(channel.writeAndFlush(any())).thenAnswer(invocation -> {
+            responses.add(invocation.getArgument(0));
+            return mock(ChannelPromise.class);
+        });
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+
+        // The writes complete when the test calls their callback
+        bookie = mock(Bookie.class);
+        doAnswer(invocation -> {
+            pendingEntryIds.add(invocation.<ByteBuf>getArgument(0).getLong(Long.BYTES));
+            pendingWrites.add(invocation.getArgument(2));
+            return null;
+        }).when(bookie).addEntry(any(ByteBuf.class), anyBoolean(), any(WriteCallback.class), any(),
+                any(byte[].class));
+
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setNumAddWorkerThreads(0);
+        conf.setNumReadWorkerThreads(0);
+        conf.setNumLongPollWorkerThreads(1);
+        conf.setNumHighPriorityWorkerThreads(0);
+        conf.setMaxAddsInProgressLimit(8);
+        requestProcessor = new BookieRequestProcessor(conf, bookie, NullStatsLogger.INSTANCE, null,
+                UnpooledByteBufAllocator.DEFAULT, null);
+    }
+
+    @AfterEach
+    public void teardown() {
+        requestProcessor.close();
+    }
+
+    private static ByteString newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(64);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) (ledgerId + entryId + entry.writerIndex()));
+        }
+        return ByteString.copyFrom(entry.nioBuffer());
+    }
+
+    private static Request newRangeAddRequest(long ledgerId, long firstEntryId, int entries) {
+        RangeAddRequest.Builder rangeAddRequest = RangeAddRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId)
+                .setMasterKey(ByteString.copyFrom(MASTER_KEY));
+        for (int i = 0; i < entries; i++) {
+            rangeAddRequest.addBody(newEntry(ledgerId, firstEntryId + i));
+        }
+        return Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.RANGE_ADD_ENTRY)
+                        .setTxnId(System.nanoTime()))
+                .setRangeAddRequest(rangeAddRequest)
+                .build();
+    }
+
+    private void completeWrite(int index, int rc) {
+        pendingWrites.get(index).writeComplete(rc, 1L, pendingEntryIds.get(index), null, null);
+    }
+
+    private void completeWrites(int rc) {
+        for (int i = 0; i < pendingWrites.size(); i++) {
+            completeWrite(i, rc);
+        }
+    }
+
+    private RangeAddResponse lastResponse() {
+        Response response = responses.get(responses.size() - 1);
+        assertEquals(OperationType.RANGE_ADD_ENTRY, response.getHeader().getOperation());
+        return response.getRangeAddResponse();
+    }
+
+    @Test
+    public void protocolRoundTrip() throws Exception {
+        Request request = newRangeAddRequest(1, 10, 3);
+        request = request.toBuilder()
+                .setRangeAddRequest(request.getRangeAddRequest().toBuilder()
+                        .setFlag(AddRequest.Flag.RECOVERY_ADD)
+                        .setWriteFlags(1))
+                .build();
+        BookieProtoEncoding.RequestEnDecoderV3 requestCodec = new BookieProtoEncoding.RequestEnDecoderV3(
+                ExtensionRegistry.newInstance());
+        ByteBuf encoded = (ByteBuf) requestCodec.encode(request, UnpooledByteBufAllocator.DEFAULT);
+        assertEquals(encoded.readableBytes() - Integer.BYTES, encoded.readInt());
+        assertEquals(request, requestCodec.decode(encoded));
+        encoded.release();
+
+        Response response = Response.newBuilder()
+                .setHeader(request.getHeader())
+                .setStatus(StatusCode.EOK)
+                .setRangeAddResponse(RangeAddResponse.newBuilder()
+                        .setStatus(StatusCode.EFENCED)
+                        .setLedgerId(1)
+                        .setFirstEntryId(10)
+                        .addAllEntryStatus(Arrays.asList(StatusCode.EOK, StatusCode.EFENCED, StatusCode.EOK)))
+                .build();
+        BookieProtoEncoding.ResponseEnDecoderV3 responseCodec = new BookieProtoEncoding.ResponseEnDecoderV3(
+                ExtensionRegistry.newInstance());
+        encoded = (ByteBuf) responseCodec.encode(response, UnpooledByteBufAllocator.DEFAULT);
+        assertEquals(encoded.readableBytes() - Integer.BYTES, encoded.readInt());
+        assertEquals(response, responseCodec.decode(encoded));
+        encoded.release();
+    }
+
+    @Test
+    public void rangeAddIsAnsweredOnceAllEntriesAreWritten() throws Exception {
+        requestProcessor.processRequest(newRangeAddRequest(1, 0, 3), requestHandler);
+        assertEquals(3, pendingWrites.size());
+        assertTrue(responses.isEmpty());
+
+        completeWrite(0, BookieProtocol.EOK);
+        completeWrite(2, BookieProtocol.EIO);
+        assertTrue(responses.isEmpty());
+        completeWrite(1, BookieProtocol.EOK);
+
+        assertEquals(1, responses.size());
+        RangeAddResponse response = lastResponse();
+        assertEquals(1, response.getLedgerId());
+        assertEquals(0, response.getFirstEntryId());
+        assertEquals(StatusCode.EIO, response.getStatus());
+        assertEquals(Arrays.asList(StatusCode.EOK, StatusCode.EOK, StatusCode.EIO), response.getEntryStatusList());
+    }
+
+    @Test
+    public void eachEntryIsAnAddInProgress() throws Exception {
+        requestProcessor.processRequest(newRangeAddRequest(1, 0, 3), requestHandler);
+        assertEquals(5, requestProcessor.addsSemaphore.availablePermits());
+        assertEquals(3, requestProcessor.maxAddsInProgressCount());
+
+        // A range larger than the limit takes all the adds in progress, instead of waiting forever
+        requestProcessor.addsSemaphore.release(3);
+        requestProcessor.processRequest(newRangeAddRequest(2, 0, 20), requestHandler);
+        assertEquals(0, requestProcessor.addsSemaphore.availablePermits());
+
+        // The adds are released with the response
+        for (int i = 3; i < 23; i++) {
+            completeWrite(i, BookieProtocol.EOK);
+        }
+        assertEquals(1, responses.size());
+        assertEquals(8, requestProcessor.addsSemaphore.availablePermits());
+        assertEquals(StatusCode.EOK, lastResponse().getStatus());
+    }
+
+    @Test
+    public void invalidEntriesAreRejected() throws Exception {
+        // The second entry does not have the id of its position
+        Request request = newRangeAddRequest(1, 0, 3);
+        request = request.toBuilder()
+                .setRangeAddRequest(request.getRangeAddRequest().toBuilder().setBody(1, newEntry(1, 5)))
+                .build();
+        requestProcessor.processRequest(request, requestHandler);
+        assertEquals(2, pendingWrites.size());
+        completeWrites(BookieProtocol.EOK);
+
+        RangeAddResponse response = lastResponse();
+        assertEquals(StatusCode.EBADREQ, response.getStatus());
+        assertEquals(Arrays.asList(StatusCode.EOK, StatusCode.EBADREQ, StatusCode.EOK),
+                response.getEntryStatusList());
+        assertEquals(8, requestProcessor.addsSemaphore.availablePermits());
+    }
+
+    @Test
+    public void fencedLedger() throws Exception {
+        doThrow(BookieException.create(BookieException.Code.LedgerFencedException))
+                .when(bookie).addEntry(any(ByteBuf.class), anyBoolean(), any(WriteCallback.class), any(),
+                        any(byte[].class));
+        requestProcessor.processRequest(newRangeAddRequest(1, 0, 2), requestHandler);
+
+        RangeAddResponse response = lastResponse();
+        assertEquals(StatusCode.EFENCED, response.getStatus());
+        assertEquals(Arrays.asList(StatusCode.EFENCED, StatusCode.EFENCED), response.getEntryStatusList());
+        assertEquals(8, requestProcessor.addsSemaphore.availablePermits());
+    }
+
+    @Test
+    public void readOnlyBookie() throws Exception {
+        when(bookie.isReadOnly()).thenReturn(true);
+        requestProcessor.processRequest(newRangeAddRequest(1, 0, 2), requestHandler);
+
+        verify(bookie, never()).addEntry(any(ByteBuf.class), anyBoolean(), any(WriteCallback.class), any(),
+                any(byte[].class));
+        RangeAddResponse response = lastResponse();
+        assertEquals(StatusCode.EREADONLY, response.getStatus());
+        assertEquals(0, response.getEntryStatusCount());
+        assertEquals(8, requestProcessor.addsSemaphore.availablePermits());
+    }
+}
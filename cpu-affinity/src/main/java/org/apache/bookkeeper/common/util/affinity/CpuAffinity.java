@@ -21,6 +21,7 @@
 
 package org.apache.bookkeeper.common.util.affinity;
 
+import java.util.SortedSet;
 import lombok.experimental.UtilityClass;
 import org.apache.bookkeeper.common.util.affinity.impl.CpuAffinityImpl;
 
@@ -47,4 +48,28 @@ public class CpuAffinity {
     public static void acquireCore() {
         CpuAffinityImpl.acquireCore();
     }
+
+    /**
+     * Get the ids of the NUMA nodes, having at least one CPU, of the host.
+     *
+     * @return the NUMA node ids, or an empty set if the NUMA topology is not known
+     */
+    public static SortedSet<Integer> getNumaNodes() {
+        return CpuAffinityImpl.getNumaNodes();
+    }
+
+    /**
+     * Run a task on a thread bound to a CPU of a NUMA node, and wait for its completion.
+     *
+     * <p>With the default Linux memory policy, memory pages are placed on the NUMA node of the CPU that touches them
+     * first. Writing a newly allocated memory region from the task places it on the given node.
+     *
+     * <p>If the thread cannot be bound to the node, eg: the NUMA topology is not known or the CPU affinity library is
+     * not available, the task is run on the current thread.
+     *
+     * @return true if the task was run on the NUMA node, false if it was run on the current thread
+     */
+    public static boolean runOnNumaNode(int numaNode, Runnable task) {
+        return CpuAffinityImpl.runOnNumaNode(numaNode, task);
+    }
 }
@@ -20,6 +20,8 @@
  */
 package org.apache.bookkeeper.common.util.affinity.impl;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
@@ -28,10 +30,15 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 
@@ -54,6 +61,11 @@ public class CpuAffinityImpl {
 
     private static ProcessorsInfo processorsInfo = null;
 
+    private static NumaTopology numaTopology = null;
+
+    // NUMA node id -> executor with a single thread bound to a CPU of the node, or null if the thread cannot be bound
+    private static final Map<Integer, ExecutorService> numaNodeExecutors = new HashMap<>();
+
     public static synchronized void acquireCore() {
         if (!isInitialized) {
             init();
@@ -77,6 +89,84 @@ public class CpuAffinityImpl {
         }
     }
 
+    public static synchronized SortedSet<Integer> getNumaNodes() {
+        if (numaTopology == null) {
+            numaTopology = NumaTopology.parseNodes();
+        }
+        return numaTopology.getNodes();
+    }
+
+    public static boolean runOnNumaNode(int numaNode, Runnable task) {
+        ExecutorService executor = getNumaNodeExecutor(numaNode);
+        if (executor == null) {
+            task.run();
+            return false;
+        }
+
+        try {
+            executor.submit(task).get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while running task on NUMA node " + numaNode, e);
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static synchronized ExecutorService getNumaNodeExecutor(int numaNode) {
+        if (numaNodeExecutors.containsKey(numaNode)) {
+            return numaNodeExecutors.get(numaNode);
+        }
+
+        ExecutorService executor = createNumaNodeExecutor(numaNode);
+        numaNodeExecutors.put(numaNode, executor);
+        return executor;
+    }
+
+    private static ExecutorService createNumaNodeExecutor(int numaNode) {
+        if (!isInitialized) {
+            init();
+        }
+
+        if (!isSupported) {
+            log.info("Unable to run tasks on NUMA node {}, CPU affinity is not supported", numaNode);
+            return null;
+        }
+
+        if (!getNumaNodes().contains(numaNode)) {
+            log.info("Unable to run tasks on NUMA node {}, the NUMA topology is not known", numaNode);
+            return null;
+        }
+
+        // Prefer a CPU that was not acquired by a thread of this process
+        SortedSet<Integer> cpus = numaTopology.getCpus(numaNode);
+        int cpu = cpus.stream().filter(c -> !acquiredProcessors.contains(c)).findFirst().orElse(cpus.first());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("numa-node-" + numaNode)
+                .setDaemon(true)
+                .build());
+        try {
+            executor.submit(() -> {
+                CpuAffinityJni.setAffinity(cpu);
+                return null;
+            }).get();
+            log.info("Bound thread of NUMA node {} to cpu {}", numaNode, cpu);
+            return executor;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdown();
+            return null;
+        } catch (ExecutionException e) {
+            log.warn("Unable to bind thread to cpu {} of NUMA node {}: {}", cpu, numaNode,
+                    e.getCause().getMessage());
+            executor.shutdown();
+            return null;
+        }
+    }
+
     private static final String LOCK_FILE_PREFIX = Paths.get(System.getProperty("java.io.tmpdir"), "cpu-lock-")
             .toString();
 
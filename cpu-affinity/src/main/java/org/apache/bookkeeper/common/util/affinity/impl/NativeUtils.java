@@ -24,9 +24,9 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import lombok.experimental.UtilityClass;
 
 /**
@@ -51,10 +51,7 @@ public class NativeUtils {
         String[] parts = path.split("/");
         String filename = (parts.length > 0) ? parts[parts.length - 1] : null;
 
-        File dir = File.createTempFile("native", "");
-        if (!(dir.mkdir())) {
-            throw new IOException("Failed to create temp directory " + dir.getAbsolutePath());
-        }
+        File dir = Files.createTempDirectory("native").toFile();
         dir.deleteOnExit();
         File temp = new File(dir, filename);
         temp.deleteOnExit();
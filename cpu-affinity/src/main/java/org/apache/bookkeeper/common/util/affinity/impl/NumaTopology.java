@@ -0,0 +1,126 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.common.util.affinity.impl;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Discover the NUMA nodes, and the CPUs of each node, from /sys/devices/system/node.
+ */
+class NumaTopology {
+
+    private static final Charset ENCODING = StandardCharsets.US_ASCII;
+
+    private static final String NODES_PATH = "/sys/devices/system/node";
+    private static final String NODE_PREFIX = "node";
+
+    // NUMA node id -> CPUs of the node
+    private final SortedMap<Integer, SortedSet<Integer>> nodes = new TreeMap<>();
+
+    /**
+     * Get the NUMA nodes having at least one CPU.
+     */
+    public SortedSet<Integer> getNodes() {
+        return Collections.unmodifiableSortedSet(new TreeSet<>(nodes.keySet()));
+    }
+
+    /**
+     * Get the CPUs of a NUMA node, or an empty set if the node is not known.
+     */
+    public SortedSet<Integer> getCpus(int node) {
+        SortedSet<Integer> cpus = nodes.get(node);
+        return cpus != null ? Collections.unmodifiableSortedSet(cpus) : Collections.emptySortedSet();
+    }
+
+    static NumaTopology parseNodes(Path nodesPath) throws IOException {
+        NumaTopology topology = new NumaTopology();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(nodesPath, NODE_PREFIX + "*")) {
+            for (Path nodePath : stream) {
+                Path fileName = nodePath.getFileName();
+                String nodeId = fileName != null ? fileName.toString().substring(NODE_PREFIX.length()) : "";
+                Path cpuListPath = nodePath.resolve("cpulist");
+                if (!StringUtils.isNumeric(nodeId) || !Files.exists(cpuListPath)) {
+                    continue;
+                }
+
+                SortedSet<Integer> cpus = parseCpuList(new String(Files.readAllBytes(cpuListPath), ENCODING));
+                if (!cpus.isEmpty()) {
+                    // Nodes without CPUs, like memory-only nodes, cannot run the threads touching the memory
+                    topology.nodes.put(Integer.parseInt(nodeId), cpus);
+                }
+            }
+        }
+
+        return topology;
+    }
+
+    /**
+     * Parse the NUMA topology of the host. If it cannot be discovered, the topology will not have any node.
+     */
+    static NumaTopology parseNodes() {
+        Path nodesPath = Paths.get(NODES_PATH);
+        if (!Files.isDirectory(nodesPath)) {
+            return new NumaTopology();
+        }
+
+        try {
+            return parseNodes(nodesPath);
+        } catch (IOException | RuntimeException e) {
+            return new NumaTopology();
+        }
+    }
+
+    /**
+     * Parse a list of cpus in the format used by the kernel. Eg: <code>0-3,8,10-11</code>.
+     */
+    static SortedSet<Integer> parseCpuList(String cpuList) {
+        SortedSet<Integer> cpus = new TreeSet<>();
+
+        for (String range : StringUtils.trim(cpuList).split(",")) {
+            range = StringUtils.trim(range);
+            if (range.isEmpty()) {
+                continue;
+            }
+
+            String[] parts = range.split("-", 2);
+            int first = Integer.parseInt(StringUtils.trim(parts[0]));
+            int last = parts.length == 2 ? Integer.parseInt(StringUtils.trim(parts[1])) : first;
+            for (int cpu = first; cpu <= last; cpu++) {
+                cpus.add(cpu);
+            }
+        }
+
+        return cpus;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.common.util.affinity.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.TreeSet;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link NumaTopology}.
+ */
+public class NumaTopologyTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private Path nodesDir;
+
+    @Before
+    public void setup() {
+        nodesDir = tmpFolder.getRoot().toPath();
+    }
+
+    private static TreeSet<Integer> cpus(Integer... cpus) {
+        return new TreeSet<>(Arrays.asList(cpus));
+    }
+
+    @Test
+    public void parseCpuList() {
+        assertEquals(cpus(0), NumaTopology.parseCpuList("0"));
+        assertEquals(cpus(0, 1, 2, 3), NumaTopology.parseCpuList("0-3"));
+        assertEquals(cpus(0, 1, 2, 3, 8, 10, 11), NumaTopology.parseCpuList("0-3,8,10-11"));
+        // As read from sysfs, with the trailing new line
+        assertEquals(cpus(4, 5, 6, 7), NumaTopology.parseCpuList("4-7\n"));
+        assertEquals(cpus(1, 2, 5), NumaTopology.parseCpuList(" 1 - 2 , 5 "));
+        // Overlapping and unordered ranges
+        assertEquals(cpus(0, 1, 2, 3), NumaTopology.parseCpuList("2-3,0-2"));
+    }
+
+    @Test
+    public void parseEmptyCpuList() {
+        // Memory-only nodes have an empty cpu list
+        assertTrue(NumaTopology.parseCpuList("").isEmpty());
+        assertTrue(NumaTopology.parseCpuList("\n").isEmpty());
+        assertTrue(NumaTopology.parseCpuList(",").isEmpty());
+    }
+
+    @Test
+    public void parseInvalidCpuList() {
+        assertThrows(NumberFormatException.class, () -> NumaTopology.parseCpuList("a-b"));
+        assertThrows(NumberFormatException.class, () -> NumaTopology.parseCpuList("0-"));
+        assertTrue(NumaTopology.parseCpuList("3-1").isEmpty());
+    }
+
+    @Test
+    public void parseNodes() throws Exception {
+        writeCpuList("node0", "0-3,8-11\n");
+        writeCpuList("node1", "4-7,12-15\n");
+        // Memory-only node
+        writeCpuList("node2", "\n");
+        // Not a node
+        writeCpuList("nodeX", "16\n");
+        Files.createDirectories(nodesDir.resolve("node3"));
+        Files.createDirectories(nodesDir.resolve("power"));
+
+        NumaTopology topology = NumaTopology.parseNodes(nodesDir);
+        assertEquals(cpus(0, 1), topology.getNodes());
+        assertEquals(cpus(0, 1, 2, 3, 8, 9, 10, 11), topology.getCpus(0));
+        assertEquals(cpus(4, 5, 6, 7, 12, 13, 14, 15), topology.getCpus(1));
+        assertTrue(topology.getCpus(2).isEmpty());
+        assertTrue(topology.getCpus(3).isEmpty());
+    }
+
+    @Test
+    public void parseNoNodes() throws Exception {
+        assertTrue(NumaTopology.parseNodes(nodesDir).getNodes().isEmpty());
+    }
+
+    private void writeCpuList(String node, String cpuList) throws Exception {
+        Path nodeDir = Files.createDirectories(nodesDir.resolve(node));
+        Files.write(nodeDir.resolve("cpulist"), cpuList.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.bookkeeper.bookie.storage.ldb.ReadCache;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmark of the DbLedgerStorage read cache under concurrent read-ahead fills and reads.
+ *
+ * <p>{@link ReadCache} is compared with {@link LockingReadCache}, a copy of the previous read cache
+ * implementation that protected all the operations with a global read-write lock.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class ReadCacheBenchmark {
+
+    private static final int CACHE_SIZE = 64 * 1024 * 1024;
+    private static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int ENTRY_SIZE = 1024;
+    private static final int LEDGERS = 64;
+    private static final int ENTRIES_PER_LEDGER = 10_000;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+
+        @Param({"lock-free", "locking"})
+        private String implementation;
+
+        private ReadCache readCache;
+        private LockingReadCache lockingReadCache;
+
+        private ByteBuf entry;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            if ("locking".equals(implementation)) {
+                lockingReadCache = new LockingReadCache(PooledByteBufAllocator.DEFAULT, CACHE_SIZE, SEGMENT_SIZE);
+            } else {
+                readCache = new ReadCache(PooledByteBufAllocator.DEFAULT, CACHE_SIZE, SEGMENT_SIZE);
+            }
+
+            entry = Unpooled.directBuffer(ENTRY_SIZE, ENTRY_SIZE);
+            entry.writerIndex(ENTRY_SIZE);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            if (readCache != null) {
+                readCache.close();
+            }
+            if (lockingReadCache != null) {
+                lockingReadCache.close();
+            }
+            entry.release();
+        }
+
+        void put(long ledgerId, long entryId) {
+            if (readCache != null) {
+                readCache.put(ledgerId, entryId, entry);
+            } else {
+                lockingReadCache.put(ledgerId, entryId, entry);
+            }
+        }
+
+        ByteBuf get(long ledgerId, long entryId) {
+            if (readCache != null) {
+                return readCache.get(ledgerId, entryId);
+            } else {
+                return lockingReadCache.get(ledgerId, entryId);
+            }
+        }
+    }
+
+    @Benchmark
+    public void put(TestState s) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        s.put(r.nextInt(LEDGERS), r.nextInt(ENTRIES_PER_LEDGER));
+    }
+
+    @Benchmark
+    public void get(TestState s) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        ReferenceCountUtil.release(s.get(r.nextInt(LEDGERS), r.nextInt(ENTRIES_PER_LEDGER)));
+    }
+
+    @Benchmark
+    public void putAndGet(TestState s) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        long ledgerId = r.nextInt(LEDGERS);
+        long entryId = r.nextInt(ENTRIES_PER_LEDGER);
+        s.put(ledgerId, entryId);
+        ReferenceCountUtil.release(s.get(ledgerId, entryId + 1));
+    }
+
+    /**
+     * The read cache implementation before the lock-free redesign, kept as a baseline.
+     */
+    static class LockingReadCache {
+        private final List<ByteBuf> cacheSegments = new ArrayList<>();
+        private final List<ConcurrentLongLongPairHashMap> cacheIndexes = new ArrayList<>();
+
+        private int currentSegmentIdx;
+        private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+
+        private final int segmentSize;
+
+        private final ByteBufAllocator allocator;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        LockingReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+            this.allocator = allocator;
+            int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
+            segmentSize = (int) (maxCacheSize / segmentsCount);
+
+            for (int i = 0; i < segmentsCount; i++) {
+                cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
+                cacheIndexes.add(ConcurrentLongLongPairHashMap.newBuilder()
+                        .expectedItems(4096)
+                        .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                        .build());
+            }
+        }
+
+        void close() {
+            cacheSegments.forEach(ReferenceCountUtil::safeRelease);
+        }
+
+        void put(long ledgerId, long entryId, ByteBuf entry) {
+            int entrySize = entry.readableBytes();
+            int alignedSize = (entrySize + 63) & ~63;
+
+            lock.readLock().lock();
+            try {
+                int offset = currentSegmentOffset.getAndAdd(alignedSize);
+                if (offset + entrySize <= segmentSize) {
+                    cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(), entrySize);
+                    cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
+                    return;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            lock.writeLock().lock();
+            try {
+                int offset = currentSegmentOffset.getAndAdd(entrySize);
+                if (offset + entrySize > segmentSize) {
+                    currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
+                    currentSegmentOffset.set(alignedSize);
+                    cacheIndexes.get(currentSegmentIdx).clear();
+                    offset = 0;
+                }
+
+                cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(), entrySize);
+                cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        ByteBuf get(long ledgerId, long entryId) {
+            lock.readLock().lock();
+            try {
+                int size = cacheSegments.size();
+                for (int i = 0; i < size; i++) {
+                    int segmentIdx = (currentSegmentIdx + (size - i)) % size;
+
+                    LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
+                    if (res != null) {
+                        int entryLen = (int) res.second;
+                        ByteBuf entry = allocator.buffer(entryLen, entryLen);
+                        entry.writeBytes(cacheSegments.get(segmentIdx), (int) res.first, entryLen);
+                        return entry;
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCounted;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.common.util.TokenBucketController;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks of the adds to a single ledger by concurrent producer threads.
+ *
+ * <p>The bookies are replaced by a client acknowledging every write right away, on the ordered executor
+ * like the real responses, so the benchmark measures the add pipeline of {@link LedgerHandle}: the entry
+ * id assignment, the digest and the ordered completion of the adds.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class LedgerAddBenchmark {
+
+    private static final int MAX_PENDING_ADDS = 10_000;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        private OrderedExecutor executor;
+        private OrderedScheduler scheduler;
+        private LedgerHandle lh;
+        private final Semaphore pendingAdds = new Semaphore(MAX_PENDING_ADDS);
+        private final byte[] data = new byte[100];
+
+        private final AsyncCallback.AddCallback callback = (rc, handle, entryId, ctx) -> pendingAdds.release();
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            executor = OrderedExecutor.newBuilder().name("benchmark-worker").numThreads(1).build();
+            scheduler = OrderedScheduler.newSchedulerBuilder().name("benchmark-scheduler").numThreads(1).build();
+
+            // no client throttling, the producers are only limited by the max pending adds
+            ClientConfiguration conf = new ClientConfiguration().setThrottleValue(0);
+            ClientInternalConf internalConf = ClientInternalConf.fromConfig(conf);
+            BookKeeperClientStats clientStats = BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE);
+            BookieClient bookieClient = new AckingBookieClient(executor);
+
+            ClientContext clientCtx = new ClientContext() {
+                @Override
+                public ClientInternalConf getConf() {
+                    return internalConf;
+                }
+
+                @Override
+                public LedgerManager getLedgerManager() {
+                    return null;
+                }
+
+                @Override
+                public BookieWatcher getBookieWatcher() {
+                    return null;
+                }
+
+                @Override
+                public EnsemblePlacementPolicy getPlacementPolicy() {
+                    return null;
+                }
+
+                @Override
+                public BookieClient getBookieClient() {
+                    return bookieClient;
+                }
+
+                @Override
+                public ByteBufAllocator getByteBufAllocator() {
+                    return PooledByteBufAllocator.DEFAULT;
+                }
+
+                @Override
+                public OrderedExecutor getMainWorkerPool() {
+                    return executor;
+                }
+
+                @Override
+                public OrderedScheduler getScheduler() {
+                    return scheduler;
+                }
+
+                @Override
+                public BookKeeperClientStats getClientStats() {
+                    return clientStats;
+                }
+
+                @Override
+                public boolean isClientClosed() {
+                    return false;
+                }
+
+                @Override
+                public TokenBucketController getAddThrottler() {
+                    return null;
+                }
+            };
+
+            List<BookieId> ensemble = Arrays.asList(BookieId.parse("bookie-1:3181"),
+                    BookieId.parse("bookie-2:3181"), BookieId.parse("bookie-3:3181"));
+            LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                    .withId(1L)
+                    .withEnsembleSize(3).withWriteQuorumSize(2).withAckQuorumSize(2)
+                    .withPassword(new byte[0])
+                    .withDigestType(DigestType.CRC32C)
+                    .newEnsembleEntry(0L, ensemble)
+                    .build();
+            lh = new LedgerHandle(clientCtx, 1L, new Versioned<>(metadata, new LongVersion(0L)),
+                    BookKeeper.DigestType.CRC32C, new byte[0], WriteFlag.NONE);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            pendingAdds.acquire(MAX_PENDING_ADDS);
+            executor.shutdown();
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Bookie client acknowledging every write right away, on the ordered executor like the real responses.
+     * The benchmark does not read: the reads fail.
+     */
+    private static class AckingBookieClient implements BookieClient {
+        private final OrderedExecutor executor;
+        private volatile boolean closed = false;
+
+        AckingBookieClient(OrderedExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public List<BookieId> getFaultyBookies() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isWritable(BookieId address, long ledgerId) {
+            return true;
+        }
+
+        @Override
+        public long getNumPendingRequests(BookieId address, long ledgerId) {
+            return 0L;
+        }
+
+        @Override
+        public void forceLedger(BookieId address, long ledgerId, ForceLedgerCallback cb, Object ctx) {
+            executor.executeOrdered(ledgerId,
+                    () -> cb.forceLedgerComplete(BKException.Code.OK, ledgerId, address, ctx));
+        }
+
+        @Override
+        public void readLac(BookieId address, long ledgerId, ReadLacCallback cb, Object ctx) {
+            executor.executeOrdered(ledgerId,
+                    () -> cb.readLacComplete(BKException.Code.IllegalOpException, ledgerId, null, null, ctx));
+        }
+
+        @Override
+        public void writeLac(BookieId address, long ledgerId, byte[] masterKey, long lac, ByteBufList toSend,
+                             WriteLacCallback cb, Object ctx) {
+            executor.executeOrdered(ledgerId,
+                    () -> cb.writeLacComplete(BKException.Code.OK, ledgerId, address, ctx));
+        }
+
+        @Override
+        public void addEntry(BookieId address, long ledgerId, byte[] masterKey, long entryId,
+                             ReferenceCounted toSend, WriteCallback cb, Object ctx, int options,
+                             boolean allowFastFail, EnumSet<WriteFlag> writeFlags) {
+            executor.executeOrdered(ledgerId,
+                    () -> cb.writeComplete(BKException.Code.OK, ledgerId, entryId, address, ctx));
+        }
+
+        @Override
+        public void readEntry(BookieId address, long ledgerId, long entryId, ReadEntryCallback cb, Object ctx,
+                              int flags, byte[] masterKey, boolean allowFastFail) {
+            executor.executeOrdered(ledgerId,
+                    () -> cb.readEntryComplete(BKException.Code.IllegalOpException, ledgerId, entryId, null, ctx));
+        }
+
+        @Override
+        public void batchReadEntries(BookieId address, long ledgerId, long startEntryId, int maxCount,
+                                     long maxSize, BatchedReadEntryCallback cb, Object ctx, int flags,
+                                     byte[] masterKey, boolean allowFastFail) {
+            executor.executeOrdered(ledgerId, () -> cb.readEntriesComplete(BKException.Code.IllegalOpException,
+                    ledgerId, startEntryId, null, ctx));
+        }
+
+        @Override
+        public void readEntryWaitForLACUpdate(BookieId address, long ledgerId, long entryId, long previousLAC,
+                                              long timeOutInMillis, boolean piggyBackEntry,
+                                              ReadEntryCallback cb, Object ctx) {
+            executor.executeOrdered(ledgerId,
+                    () -> cb.readEntryComplete(BKException.Code.IllegalOpException, ledgerId, entryId, null, ctx));
+        }
+
+        @Override
+        public void getBookieInfo(BookieId address, long requested, GetBookieInfoCallback cb, Object ctx) {
+            executor.execute(() -> cb.getBookieInfoComplete(BKException.Code.IllegalOpException,
+                    new BookieInfoReader.BookieInfo(), ctx));
+        }
+
+        @Override
+        public CompletableFuture<AvailabilityOfEntriesOfLedger> getListOfEntriesOfLedger(BookieId address,
+                                                                                         long ledgerId) {
+            return FutureUtils.exception(BKException.create(BKException.Code.IllegalOpException));
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static void addEntry(TestState s) throws InterruptedException {
+        s.pendingAdds.acquire();
+        s.lh.asyncAddEntry(Unpooled.wrappedBuffer(s.data), s.callback, null);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void addEntry1Producer(TestState s) throws Exception {
+        addEntry(s);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void addEntry4Producers(TestState s) throws Exception {
+        addEntry(s);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void addEntry16Producers(TestState s) throws Exception {
+        addEntry(s);
+    }
+}
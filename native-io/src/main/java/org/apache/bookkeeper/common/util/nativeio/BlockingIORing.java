@@ -0,0 +1,95 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.common.util.nativeio;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link NativeIORing} running each operation with a blocking syscall on an executor,
+ * for the systems where io_uring is not available.
+ */
+class BlockingIORing implements NativeIORing {
+
+    private final NativeIO nativeIO;
+    private final Executor executor;
+
+    // Operations queued since the last submit
+    private final List<Runnable> queued = new ArrayList<>();
+    // Writes a fsync of their file has to wait for, by file descriptor
+    private final Map<Integer, List<CompletableFuture<Integer>>> outstandingWrites = new HashMap<>();
+
+    BlockingIORing(NativeIO nativeIO, Executor executor) {
+        this.nativeIO = nativeIO;
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized CompletableFuture<Integer> pwrite(int fd, long pointer, int count, long offset) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        queued.add(() -> executor.execute(() -> run(future, () -> nativeIO.pwrite(fd, pointer, count, offset))));
+        List<CompletableFuture<Integer>> writes = outstandingWrites.computeIfAbsent(fd, ignored -> new ArrayList<>());
+        writes.removeIf(CompletableFuture::isDone);
+        writes.add(future);
+        return future;
+    }
+
+    @Override
+    public synchronized CompletableFuture<Integer> fsync(int fd) {
+        // Only wait for the writes of the same file
+        List<CompletableFuture<Integer>> writes = outstandingWrites.remove(fd);
+        CompletableFuture<?> previous = writes == null
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]));
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        queued.add(() -> previous.whenComplete((ignore, e) ->
+                executor.execute(() -> run(future, () -> nativeIO.fsync(fd)))));
+        return future;
+    }
+
+    @Override
+    public synchronized void submit() {
+        queued.forEach(Runnable::run);
+        queued.clear();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static void run(CompletableFuture<Integer> future, Operation operation) {
+        try {
+            future.complete(operation.run());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+
+    private interface Operation {
+        int run() throws NativeIOException;
+    }
+}
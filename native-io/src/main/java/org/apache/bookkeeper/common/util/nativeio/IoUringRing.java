@@ -0,0 +1,221 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.common.util.nativeio;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link NativeIORing} backed by a Linux io_uring instance.
+ *
+ * <p>The submission queue is filled by the callers, one at a time, while a dedicated thread
+ * waits for the completions and completes the futures.
+ *
+ * <p>A fsync is only ordered with the writes of its own file: it is queued once they have completed,
+ * so the operations on the other files sharing the ring are never held back by it.
+ */
+class IoUringRing implements NativeIORing {
+
+    // User data of the operation waking up the completion thread on close
+    private static final long CLOSE_USER_DATA = -1L;
+    private static final int MAX_COMPLETIONS_PER_WAIT = 64;
+
+    private final long ring;
+    private final Thread completionThread;
+    private final ConcurrentHashMap<Long, CompletableFuture<Integer>> pending = new ConcurrentHashMap<>();
+
+    // Guarded by this
+    private long nextUserData = 0;
+    private boolean closed = false;
+    // Queued writes a fsync of their file has to wait for, by file descriptor
+    private final Map<Integer, List<CompletableFuture<Integer>>> outstandingWrites = new HashMap<>();
+
+    IoUringRing(int entries) throws NativeIOException {
+        this.ring = NativeIOJni.ioUringSetup(entries);
+        this.completionThread = new Thread(this::processCompletions, "io-uring-completions");
+        this.completionThread.setDaemon(true);
+        this.completionThread.start();
+    }
+
+    @Override
+    public synchronized CompletableFuture<Integer> pwrite(int fd, long pointer, int count, long offset)
+            throws NativeIOException {
+        checkOpen();
+        long userData = nextUserData++;
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        pending.put(userData, future);
+        try {
+            while (!NativeIOJni.ioUringPrepareWrite(ring, fd, pointer, count, offset, userData)) {
+                // The submission queue is full
+                NativeIOJni.ioUringSubmit(ring);
+            }
+        } catch (NativeIOException e) {
+            pending.remove(userData);
+            throw e;
+        }
+
+        List<CompletableFuture<Integer>> writes = outstandingWrites.computeIfAbsent(fd, ignored -> new ArrayList<>());
+        writes.removeIf(CompletableFuture::isDone);
+        writes.add(future);
+        return future;
+    }
+
+    @Override
+    public synchronized CompletableFuture<Integer> fsync(int fd) throws NativeIOException {
+        checkOpen();
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        List<CompletableFuture<Integer>> writes = outstandingWrites.remove(fd);
+        if (writes != null) {
+            writes.removeIf(CompletableFuture::isDone);
+        }
+        if (writes == null || writes.isEmpty()) {
+            prepareFsync(fd, future);
+            return future;
+        }
+
+        // A fsync does not wait for the writes in flight, so it is queued once the writes of the file are done.
+        // The writes are completed by the completion thread, which submits the fsync right away
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).whenComplete((ignore, e) -> {
+            synchronized (this) {
+                try {
+                    checkOpen();
+                    prepareFsync(fd, future);
+                    NativeIOJni.ioUringSubmit(ring);
+                } catch (NativeIOException ne) {
+                    future.completeExceptionally(ne);
+                }
+            }
+        });
+        return future;
+    }
+
+    // Guarded by this
+    private void prepareFsync(int fd, CompletableFuture<Integer> future) throws NativeIOException {
+        long userData = nextUserData++;
+        pending.put(userData, future);
+        try {
+            while (!NativeIOJni.ioUringPrepareFsync(ring, fd, userData)) {
+                NativeIOJni.ioUringSubmit(ring);
+            }
+        } catch (NativeIOException e) {
+            pending.remove(userData);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void submit() throws NativeIOException {
+        checkOpen();
+        NativeIOJni.ioUringSubmit(ring);
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            try {
+                // The nop completes after all the submitted operations
+                while (!NativeIOJni.ioUringPrepareNop(ring, CLOSE_USER_DATA)) {
+                    NativeIOJni.ioUringSubmit(ring);
+                }
+                NativeIOJni.ioUringSubmit(ring);
+            } catch (NativeIOException e) {
+                // The completion thread cannot be stopped, so the ring cannot be released
+                failPending(e);
+                return;
+            }
+        }
+
+        try {
+            completionThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        failPending(new NativeIOException("io_uring is closed"));
+        NativeIOJni.ioUringClose(ring);
+    }
+
+    private void processCompletions() {
+        long[] userData = new long[MAX_COMPLETIONS_PER_WAIT];
+        int[] results = new int[MAX_COMPLETIONS_PER_WAIT];
+
+        while (true) {
+            int completions;
+            try {
+                completions = NativeIOJni.ioUringWaitCompletions(ring, userData, results);
+            } catch (NativeIOException e) {
+                failPending(e);
+                return;
+            }
+
+            boolean closing = false;
+            for (int i = 0; i < completions; i++) {
+                if (userData[i] == CLOSE_USER_DATA) {
+                    closing = true;
+                    continue;
+                }
+
+                CompletableFuture<Integer> future = pending.remove(userData[i]);
+                if (future == null) {
+                    continue;
+                }
+
+                if (results[i] < 0) {
+                    // The result of a failed operation is the negated errno
+                    future.completeExceptionally(new NativeIOException("io_uring operation failed", -results[i]));
+                } else {
+                    future.complete(results[i]);
+                }
+            }
+
+            if (closing) {
+                return;
+            }
+        }
+    }
+
+    private void failPending(NativeIOException e) {
+        pending.keySet().forEach(userData -> {
+            CompletableFuture<Integer> future = pending.remove(userData);
+            if (future != null) {
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    private void checkOpen() throws NativeIOException {
+        if (closed) {
+            throw new NativeIOException("io_uring is closed");
+        }
+    }
+}
@@ -19,6 +19,8 @@
 
 package org.apache.bookkeeper.common.util.nativeio;
 
+import java.util.concurrent.Executor;
+
 /**
  * NativeIO API.
  */
@@ -35,6 +37,7 @@ public interface NativeIO {
     int SEEK_SET = 0;
     int SEEK_END = 2;
 
+    int FALLOC_FL_KEEP_SIZE = 0x01;
     int FALLOC_FL_ZERO_RANGE = 0x10;
 
     int open(String pathname, int flags, int mode) throws NativeIOException;
@@ -64,4 +67,24 @@ public interface NativeIO {
     long pread(int fd, long pointer, long size, long offset) throws NativeIOException;
 
     int close(int fd) throws NativeIOException;
+
+    /**
+     * Create a ring backed by io_uring, to submit batches of asynchronous writes and fsyncs
+     * with a single syscall. io_uring is a linux-only API, only available on recent kernels,
+     * so callers must handle the possibility that it does not exist and fall back to
+     * {@link #newBlockingRing(Executor)}.
+     *
+     * @param entries size of the submission queue
+     */
+    default NativeIORing newIoUringRing(int entries) throws NativeIOException {
+        throw new NativeIOException("io_uring is not available");
+    }
+
+    /**
+     * Create a ring running each operation with {@link #pwrite} and {@link #fsync} on the
+     * given executor.
+     */
+    default NativeIORing newBlockingRing(Executor executor) {
+        return new BlockingIORing(this, executor);
+    }
 }
@@ -20,6 +20,8 @@
  */
 package org.apache.bookkeeper.common.util.nativeio;
 
+import org.apache.commons.lang3.SystemUtils;
+
 /**
  * NativeIOImpl.
  */
@@ -70,6 +72,14 @@ public class NativeIOImpl implements NativeIO {
         NativeIOJni.free(pointer);
     }
 
+    @Override
+    public NativeIORing newIoUringRing(int entries) throws NativeIOException {
+        if (!SystemUtils.IS_OS_LINUX) {
+            throw new NativeIOException("io_uring is not available");
+        }
+        return new IoUringRing(entries);
+    }
+
     @Override
     public long pread(int fd, long pointer, long size, long offset) throws NativeIOException {
         return NativeIOJni.pread(fd, pointer, size, offset);
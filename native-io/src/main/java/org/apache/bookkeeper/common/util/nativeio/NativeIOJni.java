@@ -48,6 +48,21 @@ class NativeIOJni {
 
     static native int close(int fd) throws NativeIOException;
 
+    static native long ioUringSetup(int entries) throws NativeIOException;
+
+    static native boolean ioUringPrepareWrite(long ring, int fd, long pointer, int count, long offset,
+                                              long userData) throws NativeIOException;
+
+    static native boolean ioUringPrepareFsync(long ring, int fd, long userData) throws NativeIOException;
+
+    static native boolean ioUringPrepareNop(long ring, long userData) throws NativeIOException;
+
+    static native int ioUringSubmit(long ring) throws NativeIOException;
+
+    static native int ioUringWaitCompletions(long ring, long[] userData, int[] results) throws NativeIOException;
+
+    static native void ioUringClose(long ring);
+
     static {
         try {
             if (SystemUtils.IS_OS_MAC_OSX) {
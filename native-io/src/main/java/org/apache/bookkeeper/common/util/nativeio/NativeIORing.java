@@ -0,0 +1,59 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.common.util.nativeio;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous writes and fsyncs on files opened with {@link NativeIO}.
+ *
+ * <p>The operations are queued by {@link #pwrite} and {@link #fsync}, and handed over to the
+ * operating system in a batch by {@link #submit()}. The returned futures complete, from a
+ * thread of the ring, with the result of the operation or with a {@link NativeIOException}.
+ */
+public interface NativeIORing extends AutoCloseable {
+
+    /**
+     * Queue the write of count bytes, starting at pointer, at the given offset of the file.
+     *
+     * @return a future completed with the number of bytes written
+     */
+    CompletableFuture<Integer> pwrite(int fd, long pointer, int count, long offset) throws NativeIOException;
+
+    /**
+     * Queue a fsync of the file, which starts after all the previously queued writes of the
+     * same file have completed. It is not ordered with the operations on the other files.
+     */
+    CompletableFuture<Integer> fsync(int fd) throws NativeIOException;
+
+    /**
+     * Submit the queued operations.
+     */
+    void submit() throws NativeIOException;
+
+    /**
+     * Wait for the submitted operations to complete and release the ring.
+     */
+    @Override
+    void close();
+}
@@ -26,6 +26,12 @@
 #include <string.h>
 #include <unistd.h>
 
+#ifdef __linux__
+#include <linux/io_uring.h>
+#include <sys/mman.h>
+#include <sys/syscall.h>
+#endif
+
 #include <org_apache_bookkeeper_common_util_nativeio_NativeIOJni.h>
 
 #ifdef _WIN32
@@ -311,3 +317,329 @@ JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJ
      free((const void*) pointer);
 }
 
+
+#if defined(__linux__) && defined(__NR_io_uring_setup)
+
+// Max attempts to submit when the kernel is interrupted or temporarily out of resources
+#define IO_URING_MAX_SUBMIT_RETRIES 1000
+
+/*
+ * The shared rings of an io_uring instance. The submission queue is only accessed by
+ * one thread at a time, the completion queue only by the thread reaping the completions.
+ */
+struct bk_io_uring {
+    int fd;
+
+    void* sq_ptr;
+    size_t sq_len;
+    unsigned* sq_head;
+    unsigned* sq_tail;
+    unsigned* sq_mask;
+    unsigned* sq_array;
+    struct io_uring_sqe* sqes;
+    size_t sqes_len;
+    unsigned to_submit;
+
+    void* cq_ptr;
+    size_t cq_len;
+    unsigned* cq_head;
+    unsigned* cq_tail;
+    unsigned* cq_mask;
+    struct io_uring_cqe* cqes;
+};
+
+static struct io_uring_sqe* bk_io_uring_get_sqe(struct bk_io_uring* ring) {
+    unsigned head = __atomic_load_n(ring->sq_head, __ATOMIC_ACQUIRE);
+    unsigned tail = *ring->sq_tail + ring->to_submit;
+    if (tail - head > *ring->sq_mask) {
+        // The submission queue is full
+        return NULL;
+    }
+
+    unsigned index = tail & *ring->sq_mask;
+    struct io_uring_sqe* sqe = &ring->sqes[index];
+    memset(sqe, 0, sizeof(*sqe));
+    ring->sq_array[index] = index;
+    ring->to_submit++;
+    return sqe;
+}
+
+static void bk_io_uring_free(struct bk_io_uring* ring) {
+    if (ring->sqes != NULL && ring->sqes != MAP_FAILED) {
+        munmap(ring->sqes, ring->sqes_len);
+    }
+    if (ring->cq_ptr != NULL && ring->cq_ptr != MAP_FAILED && ring->cq_ptr != ring->sq_ptr) {
+        munmap(ring->cq_ptr, ring->cq_len);
+    }
+    if (ring->sq_ptr != NULL && ring->sq_ptr != MAP_FAILED) {
+        munmap(ring->sq_ptr, ring->sq_len);
+    }
+    if (ring->fd >= 0) {
+        close(ring->fd);
+    }
+    free(ring);
+}
+
+#endif
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringSetup
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringSetup
+  (JNIEnv * env, jclass clazz, jint entries) {
+#if defined(__linux__) && defined(__NR_io_uring_setup)
+    struct io_uring_params params;
+    memset(&params, 0, sizeof(params));
+
+    struct bk_io_uring* ring = calloc(1, sizeof(struct bk_io_uring));
+    if (ring == NULL) {
+        throwException(env, "Failed to allocate io_uring");
+        return 0;
+    }
+
+    ring->fd = syscall(__NR_io_uring_setup, entries, &params);
+    if (ring->fd < 0) {
+        throwExceptionWithErrno(env, "Failed to setup io_uring");
+        free(ring);
+        return 0;
+    }
+
+    if (!(params.features & IORING_FEAT_RW_CUR_POS)) {
+        // IORING_OP_WRITE was added in the same kernel release (5.6)
+        close(ring->fd);
+        free(ring);
+        errno = ENOSYS;
+        throwExceptionWithErrno(env, "io_uring does not support IORING_OP_WRITE");
+        return 0;
+    }
+
+    ring->sq_len = params.sq_off.array + params.sq_entries * sizeof(unsigned);
+    ring->cq_len = params.cq_off.cqes + params.cq_entries * sizeof(struct io_uring_cqe);
+    if (params.features & IORING_FEAT_SINGLE_MMAP) {
+        if (ring->cq_len > ring->sq_len) {
+            ring->sq_len = ring->cq_len;
+        }
+        ring->cq_len = ring->sq_len;
+    }
+
+    ring->sq_ptr = mmap(NULL, ring->sq_len, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                        ring->fd, IORING_OFF_SQ_RING);
+    if (ring->sq_ptr == MAP_FAILED) {
+        throwExceptionWithErrno(env, "Failed to map io_uring submission queue");
+        bk_io_uring_free(ring);
+        return 0;
+    }
+
+    if (params.features & IORING_FEAT_SINGLE_MMAP) {
+        ring->cq_ptr = ring->sq_ptr;
+    } else {
+        ring->cq_ptr = mmap(NULL, ring->cq_len, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                            ring->fd, IORING_OFF_CQ_RING);
+        if (ring->cq_ptr == MAP_FAILED) {
+            throwExceptionWithErrno(env, "Failed to map io_uring completion queue");
+            bk_io_uring_free(ring);
+            return 0;
+        }
+    }
+
+    ring->sqes_len = params.sq_entries * sizeof(struct io_uring_sqe);
+    ring->sqes = mmap(NULL, ring->sqes_len, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                      ring->fd, IORING_OFF_SQES);
+    if (ring->sqes == MAP_FAILED) {
+        throwExceptionWithErrno(env, "Failed to map io_uring submission entries");
+        bk_io_uring_free(ring);
+        return 0;
+    }
+
+    ring->sq_head = (unsigned*) ((char*) ring->sq_ptr + params.sq_off.head);
+    ring->sq_tail = (unsigned*) ((char*) ring->sq_ptr + params.sq_off.tail);
+    ring->sq_mask = (unsigned*) ((char*) ring->sq_ptr + params.sq_off.ring_mask);
+    ring->sq_array = (unsigned*) ((char*) ring->sq_ptr + params.sq_off.array);
+
+    ring->cq_head = (unsigned*) ((char*) ring->cq_ptr + params.cq_off.head);
+    ring->cq_tail = (unsigned*) ((char*) ring->cq_ptr + params.cq_off.tail);
+    ring->cq_mask = (unsigned*) ((char*) ring->cq_ptr + params.cq_off.ring_mask);
+    ring->cqes = (struct io_uring_cqe*) ((char*) ring->cq_ptr + params.cq_off.cqes);
+
+    return (jlong) ring;
+#else
+    throwException(env, "io_uring is not available");
+    return 0;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringPrepareWrite
+ * Signature: (JIJIJJ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringPrepareWrite
+  (JNIEnv * env, jclass clazz, jlong ringPtr, jint fd, jlong pointer, jint count, jlong offset, jlong userData) {
+#if defined(__linux__) && defined(__NR_io_uring_setup)
+    struct io_uring_sqe* sqe = bk_io_uring_get_sqe((struct bk_io_uring*) ringPtr);
+    if (sqe == NULL) {
+        return JNI_FALSE;
+    }
+
+    sqe->opcode = IORING_OP_WRITE;
+    sqe->fd = fd;
+    sqe->addr = (unsigned long) pointer;
+    sqe->len = count;
+    sqe->off = offset;
+    sqe->user_data = userData;
+    return JNI_TRUE;
+#else
+    throwException(env, "io_uring is not available");
+    return JNI_FALSE;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringPrepareFsync
+ * Signature: (JIJ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringPrepareFsync
+  (JNIEnv * env, jclass clazz, jlong ringPtr, jint fd, jlong userData) {
+#if defined(__linux__) && defined(__NR_io_uring_setup)
+    struct io_uring_sqe* sqe = bk_io_uring_get_sqe((struct bk_io_uring*) ringPtr);
+    if (sqe == NULL) {
+        return JNI_FALSE;
+    }
+
+    // The fsync is not ordered with the other operations of the ring, it is only queued once the writes
+    // of the file have completed
+    sqe->opcode = IORING_OP_FSYNC;
+    sqe->fd = fd;
+    sqe->user_data = userData;
+    return JNI_TRUE;
+#else
+    throwException(env, "io_uring is not available");
+    return JNI_FALSE;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringPrepareNop
+ * Signature: (JJ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringPrepareNop
+  (JNIEnv * env, jclass clazz, jlong ringPtr, jlong userData) {
+#if defined(__linux__) && defined(__NR_io_uring_setup)
+    struct io_uring_sqe* sqe = bk_io_uring_get_sqe((struct bk_io_uring*) ringPtr);
+    if (sqe == NULL) {
+        return JNI_FALSE;
+    }
+
+    sqe->opcode = IORING_OP_NOP;
+    sqe->fd = -1;
+    // Only complete once all the previously submitted operations have completed
+    sqe->flags = IOSQE_IO_DRAIN;
+    sqe->user_data = userData;
+    return JNI_TRUE;
+#else
+    throwException(env, "io_uring is not available");
+    return JNI_FALSE;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringSubmit
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringSubmit
+  (JNIEnv * env, jclass clazz, jlong ringPtr) {
+#if defined(__linux__) && defined(__NR_io_uring_setup)
+    struct bk_io_uring* ring = (struct bk_io_uring*) ringPtr;
+    if (ring->to_submit == 0) {
+        return 0;
+    }
+
+    // Publish the new entries before telling the kernel about them
+    __atomic_store_n(ring->sq_tail, *ring->sq_tail + ring->to_submit, __ATOMIC_RELEASE);
+    unsigned to_submit = ring->to_submit;
+    ring->to_submit = 0;
+
+    int submitted = 0;
+    int retries = 0;
+    while (submitted < to_submit) {
+        int res = syscall(__NR_io_uring_enter, ring->fd, to_submit - submitted, 0, 0, NULL, 0);
+        if (res < 0) {
+            if ((errno == EINTR || errno == EAGAIN) && ++retries < IO_URING_MAX_SUBMIT_RETRIES) {
+                continue;
+            }
+            throwExceptionWithErrno(env, "Failed to submit to io_uring");
+            return -1;
+        }
+        if (res == 0) {
+            // The kernel did not consume any entry, calling it again would spin forever
+            throwException(env, "Failed to submit to io_uring, no entry was consumed");
+            return -1;
+        }
+        submitted += res;
+    }
+    return submitted;
+#else
+    throwException(env, "io_uring is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringWaitCompletions
+ * Signature: (J[J[I)I
+ */
+JNIEXPORT jint JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringWaitCompletions
+  (JNIEnv * env, jclass clazz, jlong ringPtr, jlongArray userDataArray, jintArray resultArray) {
+#if defined(__linux__) && defined(__NR_io_uring_setup)
+    struct bk_io_uring* ring = (struct bk_io_uring*) ringPtr;
+    jsize max = (*env)->GetArrayLength(env, userDataArray);
+
+    unsigned head = *ring->cq_head;
+    while (head == __atomic_load_n(ring->cq_tail, __ATOMIC_ACQUIRE)) {
+        int res = syscall(__NR_io_uring_enter, ring->fd, 0, 1, IORING_ENTER_GETEVENTS, NULL, 0);
+        if (res < 0 && errno != EINTR) {
+            throwExceptionWithErrno(env, "Failed to wait for io_uring completions");
+            return -1;
+        }
+    }
+
+    jlong* userData = (*env)->GetLongArrayElements(env, userDataArray, NULL);
+    jint* results = (*env)->GetIntArrayElements(env, resultArray, NULL);
+
+    int count = 0;
+    unsigned tail = __atomic_load_n(ring->cq_tail, __ATOMIC_ACQUIRE);
+    while (head != tail && count < max) {
+        struct io_uring_cqe* cqe = &ring->cqes[head & *ring->cq_mask];
+        userData[count] = cqe->user_data;
+        results[count] = cqe->res;
+        count++;
+        head++;
+    }
+    __atomic_store_n(ring->cq_head, head, __ATOMIC_RELEASE);
+
+    (*env)->ReleaseLongArrayElements(env, userDataArray, userData, 0);
+    (*env)->ReleaseIntArrayElements(env, resultArray, results, 0);
+    return count;
+#else
+    throwException(env, "io_uring is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringClose
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringClose
+  (JNIEnv * env, jclass clazz, jlong ringPtr) {
+#if defined(__linux__) && defined(__NR_io_uring_setup)
+    bk_io_uring_free((struct bk_io_uring*) ringPtr);
+#endif
+}
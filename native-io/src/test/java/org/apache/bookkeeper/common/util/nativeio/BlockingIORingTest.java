@@ -0,0 +1,202 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.common.util.nativeio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link BlockingIORing}, the ring used when io_uring is not available.
+ */
+public class BlockingIORingTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Record the operations, optionally blocking the writes until released.
+     */
+    private static class RecordingNativeIO implements NativeIO {
+        final List<String> operations = new CopyOnWriteArrayList<>();
+        volatile CountDownLatch writesBlocked = new CountDownLatch(0);
+        volatile NativeIOException failure;
+
+        @Override
+        public int pwrite(int fd, long pointer, int count, long offset) throws NativeIOException {
+            try {
+                writesBlocked.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            operations.add("pwrite-" + offset);
+            return count;
+        }
+
+        @Override
+        public int fsync(int fd) {
+            operations.add("fsync-" + fd);
+            return 0;
+        }
+
+        @Override
+        public int open(String pathname, int flags, int mode) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int fallocate(int fd, int mode, long offset, long len) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int posix_fadvise(int fd, long offset, long len, int flag) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long posix_memalign(int alignment, int size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void free(long pointer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long lseek(int fd, long offset, int whence) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long pread(int fd, long pointer, long size, long offset) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int close(int fd) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    public void operationsRunOnSubmit() throws Exception {
+        RecordingNativeIO nativeIO = new RecordingNativeIO();
+        NativeIORing ring = nativeIO.newBlockingRing(executor);
+
+        CompletableFuture<Integer> write = ring.pwrite(1, 0L, 4096, 0);
+        CompletableFuture<Integer> fsync = ring.fsync(1);
+        Thread.sleep(100);
+        assertFalse(write.isDone());
+        assertFalse(fsync.isDone());
+        assertTrue(nativeIO.operations.isEmpty());
+
+        ring.submit();
+        assertEquals(4096, (int) write.get(10, TimeUnit.SECONDS));
+        assertEquals(0, (int) fsync.get(10, TimeUnit.SECONDS));
+        ring.close();
+    }
+
+    @Test
+    public void fsyncWaitsForPreviousWrites() throws Exception {
+        RecordingNativeIO nativeIO = new RecordingNativeIO();
+        nativeIO.writesBlocked = new CountDownLatch(1);
+        NativeIORing ring = nativeIO.newBlockingRing(executor);
+
+        CompletableFuture<Integer> write1 = ring.pwrite(1, 0L, 4096, 0);
+        CompletableFuture<Integer> write2 = ring.pwrite(1, 0L, 4096, 4096);
+        CompletableFuture<Integer> fsync = ring.fsync(1);
+        ring.submit();
+
+        Thread.sleep(100);
+        assertFalse(fsync.isDone());
+        assertTrue(nativeIO.operations.isEmpty());
+
+        nativeIO.writesBlocked.countDown();
+        fsync.get(10, TimeUnit.SECONDS);
+        assertTrue(write1.isDone());
+        assertTrue(write2.isDone());
+        assertEquals(3, nativeIO.operations.size());
+        assertEquals("fsync-1", nativeIO.operations.get(2));
+        ring.close();
+    }
+
+    @Test
+    public void fsyncOnlyWaitsForTheWritesOfItsFile() throws Exception {
+        RecordingNativeIO nativeIO = new RecordingNativeIO();
+        nativeIO.writesBlocked = new CountDownLatch(1);
+        NativeIORing ring = nativeIO.newBlockingRing(executor);
+
+        CompletableFuture<Integer> write = ring.pwrite(1, 0L, 4096, 0);
+        CompletableFuture<Integer> fsync1 = ring.fsync(1);
+        CompletableFuture<Integer> fsync2 = ring.fsync(2);
+        ring.submit();
+
+        // The fsync of the other file is not held back by the blocked write
+        assertEquals(0, (int) fsync2.get(10, TimeUnit.SECONDS));
+        assertFalse(fsync1.isDone());
+        assertEquals("fsync-2", nativeIO.operations.get(0));
+
+        nativeIO.writesBlocked.countDown();
+        fsync1.get(10, TimeUnit.SECONDS);
+        assertTrue(write.isDone());
+        assertEquals("fsync-1", nativeIO.operations.get(2));
+        ring.close();
+    }
+
+    @Test
+    public void failedWrite() throws Exception {
+        RecordingNativeIO nativeIO = new RecordingNativeIO();
+        nativeIO.failure = new NativeIOException("test", 5);
+        NativeIORing ring = nativeIO.newBlockingRing(executor);
+
+        CompletableFuture<Integer> write = ring.pwrite(1, 0L, 4096, 0);
+        CompletableFuture<Integer> fsync = ring.fsync(1);
+        ring.submit();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> write.get(10, TimeUnit.SECONDS));
+        assertSame(nativeIO.failure, e.getCause());
+        // The fsync still runs once the write is done
+        assertEquals(0, (int) fsync.get(10, TimeUnit.SECONDS));
+        ring.close();
+    }
+}